@@ -0,0 +1,37 @@
+/**
+Personal and Payroll moved from a foreign key on the unique payrate to a shared primary key.
+one_to_one_payroll.empid_of_payroll now holds the id of its personal row and is the foreign
+key to it, one_to_one_personal.foreignkey_payroll_payrate is gone. Run on MySQL with the
+application stopped. The old payroll table is kept as one_to_one_payroll_old, payroll rows
+no personal pointed at are left there and reported by the last select.
+**/
+create table one_to_one_payroll_new (
+  empid_of_payroll int not null,
+  payrate double precision not null,
+  primary key (empid_of_payroll),
+  constraint fk_payroll_personal foreign key (empid_of_payroll) references one_to_one_personal (empid_personal)
+) engine=InnoDB;
+
+insert into one_to_one_payroll_new (empid_of_payroll, payrate)
+select psl.empid_personal, prl.payrate
+from one_to_one_personal psl
+inner join one_to_one_payroll prl on prl.payrate = psl.foreignkey_payroll_payrate;
+
+/**
+The foreign key hibernate created on the old column has a generated name, look it up
+**/
+set @fk = (select constraint_name from information_schema.key_column_usage
+           where table_schema = database() and table_name = 'one_to_one_personal'
+           and column_name = 'foreignkey_payroll_payrate' and referenced_table_name is not null);
+set @sql = concat('alter table one_to_one_personal drop foreign key ', @fk);
+prepare drop_fk from @sql;
+execute drop_fk;
+deallocate prepare drop_fk;
+
+alter table one_to_one_personal drop column foreignkey_payroll_payrate;
+
+rename table one_to_one_payroll to one_to_one_payroll_old, one_to_one_payroll_new to one_to_one_payroll;
+
+select count(*) as migrated from one_to_one_payroll;
+select old.* from one_to_one_payroll_old old
+where not exists (select 1 from one_to_one_payroll prl where prl.payrate = old.payrate);
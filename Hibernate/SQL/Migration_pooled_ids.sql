@@ -0,0 +1,12 @@
+/**
+Paginator and Coders ids moved from IDENTITY (auto increment) to a pooled sequence.
+On MySQL hibernate creates the tables paginator_seq and coders_seq with a single next_val
+row starting at 1, move them past the ids which already exist so new rows do not clash.
+The pooled optimizer (increment_size 50) reads next_val as the top of its first block and
+hands out next_val - 49 .. next_val, so next_val must be a full increment above max(id).
+**/
+update paginator_seq set next_val = (select coalesce(max(id), 0) + 50 from paginator);
+update coders_seq set next_val = (select coalesce(max(coder_id), 0) + 50 from coders_information);
+
+select * from paginator_seq;
+select * from coders_seq;
@@ -0,0 +1,246 @@
+package orm.hibernate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hibernate.CacheMode;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.jboss.logging.Logger;
+
+
+/**
+ * Process wide SessionFactory per configuration file.
+ *
+ * Building a SessionFactory reads the configuration, the mappings, builds every
+ * entity persister and starts the connection pool, it is by far the most expensive
+ * object in hibernate and is thread safe, so it is built once and shared. The first
+ * get(..) of a configuration builds the factory and optionally warms it up, every
+ * later call returns the same instance. A factory is warmed up once, by the first
+ * call that passes a warm up. All factories are closed on JVM shutdown.
+ */
+public final class SessionFactoryRegistry {
+
+	public static final String DEFAULT_CONFIG = "orm/hibernate/hibernateConfig.cfg.xml";
+
+	public static final String XML_BASED_CONFIG = "orm/hibernate/hibernateXmlBasedConfig.cfg.xml";
+
+	private static final Logger LOGGER = Logger.getLogger(SessionFactoryRegistry.class);
+
+	private static final Map<String, Entry> FACTORIES = new ConcurrentHashMap<>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(SessionFactoryRegistry::closeAll, "session-factory-shutdown"));
+	}
+
+	private SessionFactoryRegistry() {
+	}
+
+	/**
+	 * Factory of the given cfg.xml classpath resource, built on first use
+	 */
+	public static SessionFactory get(String configResource) {
+		return get(configResource, null);
+	}
+
+	/**
+	 * Factory of the given cfg.xml classpath resource. If this call builds the factory
+	 * the warm up runs before it is returned to anyone, if the factory already exists
+	 * but was not warmed up yet the warm up runs against it before this call returns.
+	 * Once a factory is warmed up later warm ups are ignored.
+	 */
+	public static SessionFactory get(String configResource, WarmUp warmUp) {
+		return FACTORIES.computeIfAbsent(configResource, Entry::new).factory(warmUp);
+	}
+
+	/**
+	 * Build and warm up time of a factory in milliseconds, -1 when it was not built yet
+	 */
+	public static long bootstrapMillis(String configResource) {
+		Entry entry = FACTORIES.get(configResource);
+		return entry == null ? -1 : entry.bootstrapMillis;
+	}
+
+	/**
+	 * Runs a warm up against an already built factory
+	 */
+	public static void warmUp(SessionFactory sessionFactory, WarmUp warmUp) {
+		SessionFactoryImplementor factory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+
+		/**
+		 * Named queries are already parsed while the factory is built
+		 * (hibernate.query.startup_check), creating a query parses the ad hoc HQL into
+		 * the plan cache without running it
+		 */
+		if (!warmUp.hql.isEmpty()) {
+			try (Session session = sessionFactory.openSession()) {
+				for (String hql : warmUp.hql) {
+					session.createQuery(hql);
+				}
+			}
+		}
+
+		/**
+		 * Open the connections now instead of on the first requests
+		 */
+		if (warmUp.connections > 0) {
+			ConnectionProvider provider = factory.getServiceRegistry().getService(ConnectionProvider.class);
+			List<Connection> connections = new ArrayList<>();
+			try {
+				for (int i = 0; i < warmUp.connections; i++) {
+					Connection connection = provider.getConnection();
+					connections.add(connection);
+					connection.isValid(5);
+				}
+			} catch (SQLException e) {
+				throw new HibernateException("Could not prime the connection pool", e);
+			} finally {
+				for (Connection connection : connections) {
+					try {
+						provider.closeConnection(connection);
+					} catch (SQLException e) {
+						LOGGER.warn("Could not return a warm up connection", e);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Load the rows of cached entities into their second level cache regions
+		 */
+		for (Class<?> entity : warmUp.cachedEntities) {
+			try (Session session = sessionFactory.openSession()) {
+				session.setCacheMode(CacheMode.PUT);
+				session.setDefaultReadOnly(true);
+				session.createQuery("from " + entity.getName(), entity).setMaxResults(warmUp.maxCachedRows).list();
+			}
+		}
+	}
+
+	/**
+	 * Closes the factory of one configuration, the next get(..) builds a new one
+	 */
+	public static void close(String configResource) {
+		Entry entry = FACTORIES.remove(configResource);
+		if (entry != null) {
+			entry.close();
+		}
+	}
+
+	public static void closeAll() {
+		for (String configResource : new ArrayList<>(FACTORIES.keySet())) {
+			close(configResource);
+		}
+	}
+
+	private static final class Entry {
+
+		private final String configResource;
+		private volatile SessionFactory sessionFactory;
+		private volatile long bootstrapMillis = -1;
+		private volatile boolean warmedUp;
+
+		Entry(String configResource) {
+			this.configResource = configResource;
+		}
+
+		SessionFactory factory(WarmUp warmUp) {
+			SessionFactory factory = sessionFactory;
+			if (factory == null) {
+				synchronized (this) {
+					factory = sessionFactory;
+					if (factory == null) {
+						long start = System.nanoTime();
+						factory = new Configuration().configure(configResource).buildSessionFactory();
+						long built = System.nanoTime();
+						if (warmUp != null) {
+							try {
+								warmUp(factory, warmUp);
+							} catch (RuntimeException e) {
+								/**
+								 * Nobody gets this factory, release its pool, MBeans and caches
+								 */
+								factory.close();
+								throw e;
+							}
+							warmedUp = true;
+						}
+						long end = System.nanoTime();
+						bootstrapMillis = (end - start) / 1_000_000;
+						LOGGER.infof("SessionFactory for %s built in %d ms, warmed up in %d ms", configResource,
+								(built - start) / 1_000_000, (end - built) / 1_000_000);
+						sessionFactory = factory;
+						return factory;
+					}
+				}
+			}
+			if (warmUp != null && !warmedUp) {
+				synchronized (this) {
+					if (!warmedUp) {
+						long start = System.nanoTime();
+						warmUp(factory, warmUp);
+						warmedUp = true;
+						LOGGER.infof("SessionFactory for %s was already built, warmed up in %d ms", configResource,
+								(System.nanoTime() - start) / 1_000_000);
+					}
+				}
+			}
+			return factory;
+		}
+
+		synchronized void close() {
+			if (sessionFactory != null && sessionFactory.isOpen()) {
+				sessionFactory.close();
+			}
+			sessionFactory = null;
+			warmedUp = false;
+		}
+	}
+
+	/**
+	 * What to do with a factory before it serves its first request
+	 */
+	public static class WarmUp {
+
+		private final Set<String> hql = new LinkedHashSet<>();
+		private final Set<Class<?>> cachedEntities = new LinkedHashSet<>();
+		private int connections;
+		private int maxCachedRows = 1000;
+
+		/**
+		 * HQL to parse into the query plan cache
+		 */
+		public WarmUp hql(String... queries) {
+			Collections.addAll(hql, queries);
+			return this;
+		}
+
+		/**
+		 * Number of connections to open and validate
+		 */
+		public WarmUp connections(int count) {
+			this.connections = count;
+			return this;
+		}
+
+		/**
+		 * Entities whose rows, at most maxRows each, are put into the second level cache
+		 */
+		public WarmUp cachedEntities(int maxRows, Class<?>... entities) {
+			this.maxCachedRows = maxRows;
+			Collections.addAll(cachedEntities, entities);
+			return this;
+		}
+	}
+}
@@ -1,6 +1,6 @@
 package orm.hibernate.annotation;
 
-import java.util.Arrays;
+import java.sql.Blob;
 import java.util.Date;
 
 import javax.persistence.*;
@@ -48,10 +48,17 @@ public class Address {
 	
 	/**
 	 * Stores student photo
+	 * 
+	 * A Blob is a handle, the bytes are streamed in (see AddressPhotos) instead of being
+	 * copied into a byte[], on MySQL they are read back as one copy. The column is lazy,
+	 * it is only selected when getPhoto() is called, which needs the bytecode enhancement
+	 * of the hibernate-enhance-maven-plugin (without it hibernate silently loads the
+	 * column eagerly).
 	 */
 	@Column(name="student_photo",length = 100000)
 	@Lob
-	private byte[] photo;
+	@Basic(fetch = FetchType.LAZY)
+	private Blob photo;
 	
 	/**
 	 * To store Enum types of variables
@@ -105,11 +112,11 @@ public class Address {
 		this.stores_date = stores_date;
 	}
 
-	public byte[] getPhoto() {
+	public Blob getPhoto() {
 		return photo;
 	}
 
-	public void setPhoto(byte[] photo) {
+	public void setPhoto(Blob photo) {
 		this.photo = photo;
 	}
 
@@ -125,7 +132,6 @@ public class Address {
 	@Override
 	public String toString() {
 		return "Address [unique_identifier=" + unique_identifier + ", address1=" + address1 + ", address2=" + address2
-				+ ", stores_timestamp=" + stores_timestamp + ", stores_date=" + stores_date + ", photo="
-				+ Arrays.toString(photo) + ", form=" + form + "]";
+				+ ", stores_timestamp=" + stores_timestamp + ", stores_date=" + stores_date + ", form=" + form + "]";
 	}	
 }
@@ -0,0 +1,83 @@
+package orm.hibernate.annotation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.SQLException;
+
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+
+/**
+ * Moves Address photos between files and the database without holding them in the heap.
+ *
+ * Writing hands the JDBC driver an InputStream over a FileChannel, which it reads while
+ * the insert or update executes. Reading copies Blob.getBinaryStream() into a FileChannel
+ * in chunks, which keeps the file out of the application's own buffers but does not
+ * stream on MySQL: Connector/J reads the whole value into memory when the lazy select of
+ * the photo is fetched, getBinaryStream() reads that copy. Its emulateLocators=true
+ * would stream, but only for result sets that select the primary key, and the lazy
+ * select of hibernate selects the photo column alone, the driver then fails the read.
+ */
+public final class AddressPhotos {
+
+	private AddressPhotos() {
+	}
+
+	/**
+	 * Stores the file as photo of the address. The file is read while the address is
+	 * written, so this saves or updates the address and flushes the session.
+	 */
+	public static void attach(Session session, Address address, Path photo) throws IOException {
+		try (FileChannel channel = FileChannel.open(photo, StandardOpenOption.READ);
+				InputStream in = Channels.newInputStream(channel)) {
+			address.setPhoto(Hibernate.getLobCreator(session).createBlob(in, channel.size()));
+			session.saveOrUpdate(address);
+			session.flush();
+		}
+	}
+
+	/**
+	 * Writes the photo of the address to target, returns the number of bytes or -1 when
+	 * the address has no photo. The session of the address must still be open, reading
+	 * the photo is what loads it. On MySQL the whole photo is in the heap while it is
+	 * copied.
+	 */
+	public static long copyTo(Address address, Path target) throws IOException {
+		Blob photo = address.getPhoto();
+		if (photo == null) {
+			return -1;
+		}
+		try (InputStream in = photo.getBinaryStream();
+				ReadableByteChannel source = Channels.newChannel(in);
+				FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = 0;
+			long copied;
+			while ((copied = out.transferFrom(source, position, Long.MAX_VALUE)) > 0) {
+				position += copied;
+			}
+			return position;
+		} catch (SQLException e) {
+			throw new HibernateException("Could not read the photo of address " + address.getUnique_identifier(), e);
+		}
+	}
+
+	/**
+	 * Size of the photo in bytes without reading it, -1 when there is none
+	 */
+	public static long size(Address address) {
+		Blob photo = address.getPhoto();
+		try {
+			return photo == null ? -1 : photo.length();
+		} catch (SQLException e) {
+			throw new HibernateException("Could not read the photo of address " + address.getUnique_identifier(), e);
+		}
+	}
+}
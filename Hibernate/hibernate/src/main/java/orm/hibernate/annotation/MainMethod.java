@@ -1,49 +1,37 @@
 package orm.hibernate.annotation;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
-import org.hibernate.cfg.Configuration;
 
+import orm.hibernate.SessionFactoryRegistry;
 import orm.hibernate.annotation.Address.formStatus;
 import orm.hibernate.annotation.manytomany.EmployeeProjects;
 import orm.hibernate.annotation.manytomany.Projects;
 import orm.hibernate.annotation.onetomany.Customer;
 import orm.hibernate.annotation.onetomany.CustomerOrder;
+import orm.hibernate.annotation.onetomany.CustomerQueries;
 import orm.hibernate.annotation.onetoone.Payroll;
 import orm.hibernate.annotation.onetoone.Personal;
 
 public class MainMethod {
   public static void main(String[] args) {
 
-	  /**
-	   * This line creates a new instance of the Configuration class from Hibernate.
-	   * The Configuration object is used to configure Hibernate and set up its properties.
-	   */
-	  Configuration con=new Configuration();
-	  
-	  /**
-	   * This line tells the Configuration object to load the configuration settings from the file
-	   *  hibernateConfig.cfg.xml, located in the orm/hibernate directory.
-	   * The XML file contains important settings such as database connection details, dialect, 
-	   *  mappings, and other Hibernate configurations.
-	   */
-	  con.configure("orm/hibernate/hibernateConfig.cfg.xml");
-  
 	  /**
 	   * The SessionFactory is a crucial object in Hibernate. It is a factory for Session objects, 
-	   * which are used to interact with the database. The SessionFactory is typically created once 
-	   * and used to create multiple Session instances.
+	   * which are used to interact with the database. It is expensive to build, so it is created once
+	   * per configuration file by SessionFactoryRegistry and shared by every entry point.
 	   */
-	  SessionFactory ssf=con.buildSessionFactory();
+	  SessionFactory ssf=SessionFactoryRegistry.get(SessionFactoryRegistry.DEFAULT_CONFIG,
+				new SessionFactoryRegistry.WarmUp().connections(4));
 	  
 	  /**
 	   * Created a session
@@ -73,22 +61,18 @@ public class MainMethod {
 	  address.setForm(formStatus.PENDING);
 	  address.setStores_date(new Date());
 	  address.setStores_timestamp(new Date());
+	  session.save(address);
+	  
+	  /**
+	   * The photo is streamed from the file into the database, it is never copied into a byte[]
+	   */
 	  try {
-		FileInputStream fis=new FileInputStream("src/main/java/orm/hibernate/annotation/image.png");
-		try {
-			byte[] image=new byte[fis.available()];
-			address.setPhoto(image);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-	} catch (FileNotFoundException e) {
+		AddressPhotos.attach(session, address, Paths.get("src/main/java/orm/hibernate/annotation/image.png"));
+	} catch (IOException e) {
 		// TODO Auto-generated catch block
 		e.printStackTrace();
 	}
 	  
-	  session.save(address);
-	  
 	  /**
 	   * Using Get Method, fetch based on primary key as its where clause
 	   */
@@ -161,11 +145,12 @@ public class MainMethod {
 	  proj2.setProjectId(405);
 	  proj2.setProjectName("Hibernate");
 	  
-	  empProject1.setEmpWorkingonProjects(Arrays.asList(proj1,proj2));
-	  empProject2.setEmpWorkingonProjects(Arrays.asList(proj1));
-	  
-	  proj1.setProjectAssignToemp(Arrays.asList(empProject1,empProject2));
-	  proj2.setProjectAssignToemp(Arrays.asList(empProject2));
+	  /**
+	   * Only the owning side is set, the enhanced setter adds the employee to
+	   * projectAssignToemp of each project. The sets must be mutable for that
+	   */
+	  empProject1.setEmpWorkingonProjects(new HashSet<>(Arrays.asList(proj1,proj2)));
+	  empProject2.setEmpWorkingonProjects(new HashSet<>(Arrays.asList(proj1)));
 	  
 	  session.save(empProject1);
 	  session.save(empProject2);
@@ -175,7 +160,7 @@ public class MainMethod {
 	  /**
 	   * Cascading
 	   */
-	  allOrders.clear();
+	  allOrders=new ArrayList<>();
 	  Customer cust1=new Customer();
 	  cust1.setCustId(2);
 	  cust1.setCustName("Meet");
@@ -222,10 +207,13 @@ public class MainMethod {
 	  
 	  
 	  /**
-	   * Eager loading
+	   * Orders of a customer are lazy, a plain get only selects the customer. The detail
+	   * plan (Customer.withOrders entity graph) loads the customer and its orders in one query
 	   */
-	  System.out.println("All data are loaded once");
-	  Customer custvalue=session.get(Customer.class, 1);
+	  System.out.println("Customer and orders are loaded once");
+	  session.clear();
+	  Customer custvalue=CustomerQueries.detail(session, 1);
+	  System.out.println(custvalue.getCustName()+" has "+custvalue.getAllOrdersofACustomer().size()+" orders");
 	  
 	  
 	  /**
@@ -12,11 +12,13 @@ import javax.persistence.Table;
  * Applicable for second level of caching,
  * READ_WRITE states that this entity will be having
  * read as well as write operation.
+ * The region name is the cache name in application.conf, it must not
+ * contain dots (the default would be the class name).
  */
 @Entity
 @Table(name="Student_data")
 @Cacheable
-@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "student")
 public class Student {
 	
 	@Id
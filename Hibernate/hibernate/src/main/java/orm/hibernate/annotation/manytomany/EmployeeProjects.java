@@ -1,6 +1,7 @@
 package orm.hibernate.annotation.manytomany;
 
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.persistence.*;
 
@@ -13,13 +14,20 @@ public class EmployeeProjects {
 	
 	private String empName;
 	
+	/**
+	 * A Set, not a List. A List without @OrderColumn is a bag, it may hold duplicates
+	 * and its rows have no identity, so hibernate deletes every join row of the employee
+	 * and inserts them all again when one project is added or removed. The rows of a
+	 * Set are identified by both columns, only the added and removed rows are written,
+	 * in hibernate.jdbc.batch_size batches. Projects therefore need equals and hashCode.
+	 */
 	@ManyToMany
 	@JoinTable(
 			name ="joined_table_employee_project",
 			joinColumns= { @JoinColumn( name="employee_ids") }, //EmployeeProject -> empid
 			inverseJoinColumns = { @JoinColumn( name="project_ids") } //Projects -> projectId 
 			)
-	private List<Projects> empWorkingonProjects;
+	private Set<Projects> empWorkingonProjects = new HashSet<>();
 
 	public int getEmpId() {
 		return empId;
@@ -37,13 +45,31 @@ public class EmployeeProjects {
 		this.empName = empName;
 	}
 
-	public List<Projects> getEmpWorkingonProjects() {
+	public Set<Projects> getEmpWorkingonProjects() {
 		return empWorkingonProjects;
 	}
 
-	public void setEmpWorkingonProjects(List<Projects> empWorkingonProjects) {
+	public void setEmpWorkingonProjects(Set<Projects> empWorkingonProjects) {
 		this.empWorkingonProjects = empWorkingonProjects;
 	}
-	
-	
+
+	/**
+	 * Ids are assigned, equal ids are the same employee. Uses the getter so that
+	 * uninitialized proxies compare correctly
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof EmployeeProjects)) {
+			return false;
+		}
+		return empId == ((EmployeeProjects) obj).getEmpId();
+	}
+
+	@Override
+	public int hashCode() {
+		return Integer.hashCode(empId);
+	}
 }
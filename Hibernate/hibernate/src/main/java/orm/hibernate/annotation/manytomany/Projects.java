@@ -1,6 +1,7 @@
 package orm.hibernate.annotation.manytomany;
 
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.persistence.*;
 
@@ -14,7 +15,7 @@ public class Projects {
 	private String projectName;
 	
 	@ManyToMany(mappedBy = "empWorkingonProjects")
-	private List<EmployeeProjects> projectAssignToemp;
+	private Set<EmployeeProjects> projectAssignToemp = new HashSet<>();
 
 	public int getProjectId() {
 		return projectId;
@@ -32,14 +33,31 @@ public class Projects {
 		this.projectName = projectName;
 	}
 
-	public List<EmployeeProjects> getProjectAssignToemp() {
+	public Set<EmployeeProjects> getProjectAssignToemp() {
 		return projectAssignToemp;
 	}
 
-	public void setProjectAssignToemp(List<EmployeeProjects> projectAssignToemp) {
+	public void setProjectAssignToemp(Set<EmployeeProjects> projectAssignToemp) {
 		this.projectAssignToemp = projectAssignToemp;
 	}
-	
-	
-	
+
+	/**
+	 * Ids are assigned, equal ids are the same project. Uses the getter so that
+	 * uninitialized proxies compare correctly
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Projects)) {
+			return false;
+		}
+		return projectId == ((Projects) obj).getProjectId();
+	}
+
+	@Override
+	public int hashCode() {
+		return Integer.hashCode(projectId);
+	}
 }
@@ -1,13 +1,26 @@
 package orm.hibernate.annotation.onetomany;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+
+/**
+ * Orders are lazy, a listing of customers is a single select. Screens that need the
+ * orders of many customers touch the collections, which are then loaded for all
+ * customers of the same query with one subselect. The detail of one customer asks for
+ * the Customer.withOrders entity graph (one select with a join). See CustomerQueries.
+ */
 @Entity
 @Table(name="one_to_many_customer")
+@NamedEntityGraph(name = Customer.WITH_ORDERS, attributeNodes = @NamedAttributeNode("allOrdersofACustomer"))
 public class Customer {
 
+	public static final String WITH_ORDERS = "Customer.withOrders";
+
 	@Id
 	private int custId;
 	
@@ -17,9 +30,13 @@ public class Customer {
 	
 	/**
 	 * Extra column will not be created in Customer class
+	 * 
+	 * Initializing the collection of one customer initializes the collections of every
+	 * customer loaded by the same query, with "where foreignkey_cust_id in (select ..)"
 	 */
-	@OneToMany(mappedBy = "customerIdhavingMultipleOrders",fetch = FetchType.EAGER,cascade = CascadeType.ALL)
-	private List<CustomerOrder> allOrdersofACustomer;
+	@OneToMany(mappedBy = "customerIdhavingMultipleOrders",fetch = FetchType.LAZY,cascade = CascadeType.ALL)
+	@Fetch(FetchMode.SUBSELECT)
+	private List<CustomerOrder> allOrdersofACustomer = new ArrayList<>();
 
 	public int getCustId() {
 		return custId;
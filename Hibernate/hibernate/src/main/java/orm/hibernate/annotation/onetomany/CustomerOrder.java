@@ -12,7 +12,10 @@ public class CustomerOrder {
 	
 	private String orderNumber;
 	
-	@ManyToOne(fetch = FetchType.EAGER)
+	/**
+	 * Lazy, the customer is usually already in the session when its orders are read
+	 */
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name="foreignkey_cust_id", referencedColumnName = "custId")
 	private Customer customerIdhavingMultipleOrders ;
 
@@ -0,0 +1,52 @@
+package orm.hibernate.annotation.onetomany;
+
+import java.util.List;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.graph.GraphSemantic;
+import org.hibernate.graph.RootGraph;
+
+/**
+ * Fetch plans for Customer, one per kind of screen.
+ *
+ * listing    - customers only, 1 select, orders stay uninitialized
+ * withOrders - the customers of listing(..), then the orders of all of them with 1 subselect
+ * detail     - one customer with its orders through the Customer.withOrders graph
+ *
+ * Code that starts from listing(..) and touches the orders afterwards also costs only
+ * one more select, the collection is mapped with FetchMode.SUBSELECT.
+ */
+public final class CustomerQueries {
+
+	private CustomerQueries() {
+	}
+
+	public static List<Customer> listing(Session session) {
+		return session.createQuery("from Customer c order by c.custId", Customer.class).list();
+	}
+
+	/**
+	 * No join: every customer row is read once and every order row once. Initializing
+	 * the orders of the first customer loads those of the whole list with
+	 * "where foreignkey_cust_id in (select custId from .. )".
+	 */
+	public static List<Customer> withOrders(Session session) {
+		List<Customer> customers = listing(session);
+		if (!customers.isEmpty()) {
+			Hibernate.initialize(customers.get(0).getAllOrdersofACustomer());
+		}
+		return customers;
+	}
+
+	public static Customer detail(Session session, int custId) {
+		return session.byId(Customer.class)
+				.with(ordersGraph(session), GraphSemantic.FETCH)
+				.load(custId);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static RootGraph<Customer> ordersGraph(Session session) {
+		return (RootGraph<Customer>) session.getEntityGraph(Customer.WITH_ORDERS);
+	}
+}
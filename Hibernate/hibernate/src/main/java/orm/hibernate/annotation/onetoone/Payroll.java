@@ -6,13 +6,23 @@ import javax.persistence.*;
 @Table(name="one_to_one_payroll")
 public class Payroll {
 
+	/**
+	 * Same value as the id of the Personal row, see personal
+	 */
 	@Id
 	private int empid_of_payroll;
 	
-	@Column(unique = true)
 	private double payrate;
 	
-	@OneToOne(mappedBy = "personalEmployeesPayroll",fetch = FetchType.LAZY)
+	/**
+	 * Shared primary key, the payroll row has the id of its Personal row and
+	 * empid_of_payroll is also the foreign key to it. Hibernate knows the id of the
+	 * personal without a select, so the association can be a lazy proxy.
+	 * Existing tables are converted with Hibernate/SQL/Migration_payroll_shared_key.sql
+	 */
+	@MapsId
+	@OneToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name="empid_of_payroll")
 	private Personal personal;
 
 
@@ -4,10 +4,12 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
-import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.LazyToOne;
+import org.hibernate.annotations.LazyToOneOption;
+
 @Entity
 @Table(name="one_to_one_personal")
 public class Personal {
@@ -22,9 +24,14 @@ public class Personal {
 	
 	/**
 	 * Default fetching type is lazy
+	 * 
+	 * The payroll row shares the primary key of this row (see Payroll.personal). This
+	 * side has no column, hibernate cannot tell from the personal row whether a payroll
+	 * exists, so without bytecode enhancement it would select it right away. With the
+	 * enhanced classes NO_PROXY loads it when the getter is called.
 	 */
-	@OneToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name="foreignkey_payroll_payrate",referencedColumnName = "payrate")
+	@OneToOne(mappedBy = "personal",fetch = FetchType.LAZY)
+	@LazyToOne(LazyToOneOption.NO_PROXY)
 	private Payroll personalEmployeesPayroll;
 
 
@@ -0,0 +1,366 @@
+package orm.hibernate.async;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import orm.hibernate.pool.PoolMetrics;
+import orm.hibernate.pool.PooledConnectionProvider;
+import orm.hibernate.session.SessionPerTaskExecutor;
+
+/**
+ * Runs the database work of one SessionFactory on its own bounded pool and hands out
+ * CompletableFutures instead of blocking the caller.
+ *
+ * The pool has one thread per pooled connection and a bounded queue. When the queue is
+ * full the caller runs the task itself, it cannot submit more until that is done, so a
+ * producer that is faster than the database slows down instead of queueing without
+ * limit. Tasks run through SessionPerTaskExecutor, each in its own session and
+ * transaction.
+ *
+ * Reads are not run one session each. get(..), read(..) and the reads of a Reads batch
+ * are queued, and one task takes everything queued (at most maxBatch reads) into one
+ * read-only session, the gets of an entity with one multiLoad. While the threads are
+ * busy new reads pile up for the next task, independent reads of a fan-out handler
+ * need one session and a few statements instead of one session and connection each.
+ * A read that fails fails only its own future.
+ *
+ * Entities come back detached, lazy associations they did not load are not available,
+ * initialize them inside read(..). Writes are not coalesced, each write(..) is one
+ * transaction.
+ */
+public class AsyncDatabase implements AutoCloseable {
+
+	private final ThreadPoolExecutor pool;
+	private final SessionPerTaskExecutor tasks;
+	private final int maxBatch;
+	private final ConcurrentLinkedQueue<PendingRead<?>> pendingReads = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder readBatches = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+	private final LongAdder callerRuns = new LongAdder();
+
+	/**
+	 * One thread per pooled connection, a queue of 1000 tasks and at most 500 reads per session
+	 */
+	public AsyncDatabase(SessionFactory sessionFactory) {
+		this(sessionFactory, poolSize(sessionFactory), 1000, 500);
+	}
+
+	/**
+	 * @param threads       threads and sessions at the same time, at most the connections of the pool
+	 * @param queueCapacity tasks waiting for a thread before callers run them themselves
+	 * @param maxBatch      reads taken into one session
+	 */
+	public AsyncDatabase(SessionFactory sessionFactory, int threads, int queueCapacity, int maxBatch) {
+		if (threads <= 0 || queueCapacity <= 0 || maxBatch <= 0) {
+			throw new IllegalArgumentException("threads, queueCapacity and maxBatch must be > 0");
+		}
+		AtomicInteger count = new AtomicInteger();
+		this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+					Thread thread = new Thread(runnable, "async-database-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, (runnable, executor) -> {
+					if (executor.isShutdown()) {
+						throw new RejectedExecutionException("AsyncDatabase is closed");
+					}
+					callerRuns.increment();
+					runnable.run();
+				});
+		this.tasks = new SessionPerTaskExecutor(sessionFactory, threads, pool);
+		this.maxBatch = maxBatch;
+	}
+
+	/**
+	 * Typed facade for one entity
+	 */
+	public <T, ID extends Serializable> AsyncRepository<T, ID> repository(Class<T> entity) {
+		return new AsyncRepository<>(this, entity);
+	}
+
+	/**
+	 * Entity by id, null when there is none. Coalesced with the other pending reads.
+	 */
+	public <T> CompletableFuture<T> get(Class<T> entity, Object id) {
+		Reads batch = reads();
+		CompletableFuture<T> read = batch.get(entity, id);
+		batch.submitAll();
+		return read;
+	}
+
+	/**
+	 * Read-only work, coalesced with the other pending reads into one session
+	 */
+	public <R> CompletableFuture<R> read(Function<Session, R> work) {
+		Reads batch = reads();
+		CompletableFuture<R> read = batch.read(work);
+		batch.submitAll();
+		return read;
+	}
+
+	/**
+	 * Work in its own session and transaction
+	 */
+	public <R> CompletableFuture<R> write(Function<Session, R> work) {
+		writes.increment();
+		return tasks.submit(work);
+	}
+
+	/**
+	 * Collects reads and queues them at once with submitAll(), they end up in the same
+	 * session unless the batch is larger than maxBatch
+	 */
+	public Reads reads() {
+		return new Reads();
+	}
+
+	private void enqueue(List<PendingRead<?>> batch) {
+		pendingReads.addAll(batch);
+		reads.add(batch.size());
+		scheduleDrain();
+	}
+
+	/**
+	 * A drain that fails fails the reads it took. One that could not even start, no
+	 * session or connection, fails every queued read instead of leaving it waiting. The
+	 * reads a drain left behind schedule the next one once its session is closed, the
+	 * next drain would otherwise wait for a second connection while holding one. The
+	 * futures complete after the session is closed as well, what the callers chain to
+	 * them does not run on a borrowed connection.
+	 */
+	private void scheduleDrain() {
+		if (drainScheduled.compareAndSet(false, true)) {
+			AtomicBoolean started = new AtomicBoolean();
+			List<PendingRead<?>> batch = new ArrayList<>();
+			try {
+				tasks.execute(session -> {
+					started.set(true);
+					drain(session, batch);
+				}).whenComplete((result, e) -> {
+					batch.forEach(read -> read.publish(e));
+					if (e != null) {
+						if (!started.get()) {
+							drainScheduled.set(false);
+							failPending(e);
+						}
+					}
+					if (!pendingReads.isEmpty()) {
+						scheduleDrain();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				drainScheduled.set(false);
+				failPending(e);
+			}
+		}
+	}
+
+	/**
+	 * Runs in a session of SessionPerTaskExecutor. Takes up to maxBatch of the reads
+	 * queued up to now into batch.
+	 */
+	private void drain(Session session, List<PendingRead<?>> batch) {
+		drainScheduled.set(false);
+		PendingRead<?> read;
+		while (batch.size() < maxBatch && (read = pendingReads.poll()) != null) {
+			batch.add(read);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		readBatches.increment();
+		session.setDefaultReadOnly(true);
+		session.setHibernateFlushMode(FlushMode.MANUAL);
+
+		/**
+		 * The gets of one entity, each id once
+		 */
+		Map<Class<?>, Map<Object, List<PendingRead<?>>>> gets = new LinkedHashMap<>();
+		for (PendingRead<?> pending : batch) {
+			if (pending.entity != null) {
+				gets.computeIfAbsent(pending.entity, entity -> new LinkedHashMap<>())
+						.computeIfAbsent(pending.id, id -> new ArrayList<>()).add(pending);
+			}
+		}
+		for (Map.Entry<Class<?>, Map<Object, List<PendingRead<?>>>> entity : gets.entrySet()) {
+			List<Serializable> ids = new ArrayList<>();
+			entity.getValue().keySet().forEach(id -> ids.add((Serializable) id));
+			try {
+				List<?> rows = session.byMultipleIds(entity.getKey()).withBatchSize(maxBatch).multiLoad(ids);
+				for (int i = 0; i < ids.size(); i++) {
+					for (PendingRead<?> pending : entity.getValue().get(ids.get(i))) {
+						pending.read(rows.get(i));
+					}
+				}
+			} catch (RuntimeException e) {
+				for (List<PendingRead<?>> pendings : entity.getValue().values()) {
+					pendings.forEach(pending -> pending.error = e);
+				}
+			}
+		}
+		for (PendingRead<?> pending : batch) {
+			if (pending.work != null) {
+				try {
+					pending.read(pending.work.apply(session));
+				} catch (RuntimeException e) {
+					pending.error = e;
+				}
+			}
+		}
+	}
+
+	private void failPending(Throwable e) {
+		PendingRead<?> read;
+		while ((read = pendingReads.poll()) != null) {
+			read.future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Reads queued so far
+	 */
+	public long getReads() {
+		return reads.sum();
+	}
+
+	/**
+	 * Sessions the reads were coalesced into
+	 */
+	public long getReadBatches() {
+		return readBatches.sum();
+	}
+
+	public long getWrites() {
+		return writes.sum();
+	}
+
+	/**
+	 * Tasks the callers ran themselves because the queue was full
+	 */
+	public long getCallerRuns() {
+		return callerRuns.sum();
+	}
+
+	/**
+	 * Tasks waiting for a thread
+	 */
+	public int getQueueDepth() {
+		return pool.getQueue().size();
+	}
+
+	/**
+	 * Waits for the queued tasks to finish
+	 */
+	@Override
+	public void close() {
+		tasks.close();
+		failPending(new RejectedExecutionException("AsyncDatabase is closed"));
+	}
+
+	@Override
+	public String toString() {
+		return "AsyncDatabase [reads=" + getReads() + ", readBatches=" + getReadBatches() + ", writes=" + getWrites()
+				+ ", callerRuns=" + getCallerRuns() + ", queueDepth=" + getQueueDepth() + "]";
+	}
+
+	private static int poolSize(SessionFactory sessionFactory) {
+		PoolMetrics metrics = PooledConnectionProvider.metricsOf(sessionFactory);
+		return metrics != null && metrics.getMaxConnections() > 0 ? metrics.getMaxConnections() : 10;
+	}
+
+	/**
+	 * Reads queued together
+	 */
+	public class Reads {
+
+		private final List<PendingRead<?>> batch = new ArrayList<>();
+
+		private Reads() {
+		}
+
+		/**
+		 * Entity by id, null when there is none
+		 */
+		public <T> CompletableFuture<T> get(Class<T> entity, Object id) {
+			PendingRead<T> read = new PendingRead<>(entity, id, null);
+			batch.add(read);
+			return read.future;
+		}
+
+		/**
+		 * Read-only work in the session of the batch
+		 */
+		public <R> CompletableFuture<R> read(Function<Session, R> work) {
+			PendingRead<R> read = new PendingRead<>(null, null, work);
+			batch.add(read);
+			return read.future;
+		}
+
+		/**
+		 * Queues the reads, the futures returned by get(..) and read(..) complete as they
+		 * are read. Completes when all of them have.
+		 */
+		public CompletableFuture<Void> submitAll() {
+			List<PendingRead<?>> reads = new ArrayList<>(batch);
+			batch.clear();
+			enqueue(reads);
+			return CompletableFuture.allOf(reads.stream().map(read -> read.future).toArray(CompletableFuture[]::new));
+		}
+	}
+
+	private static final class PendingRead<T> {
+
+		private final Class<?> entity;
+		private final Object id;
+		private final Function<Session, T> work;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private Object result;
+		private Throwable error;
+		private boolean done;
+
+		PendingRead(Class<?> entity, Object id, Function<Session, T> work) {
+			this.entity = entity;
+			this.id = id;
+			this.work = work;
+		}
+
+		void read(Object row) {
+			result = row;
+			done = true;
+		}
+
+		/**
+		 * Completes the future with what was read, with the failure of the drain if it
+		 * failed before the read was done
+		 */
+		@SuppressWarnings("unchecked")
+		void publish(Throwable drainFailure) {
+			if (error != null) {
+				future.completeExceptionally(error);
+			} else if (!done) {
+				future.completeExceptionally(drainFailure);
+			} else {
+				future.complete((T) result);
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package orm.hibernate.async;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.hibernate.query.Query;
+
+/**
+ * Non blocking access to one mapped entity (Student, Customer, Paginator, Workers, ...)
+ * through an AsyncDatabase. Reads are coalesced with the other reads of the database,
+ * every write is its own transaction. The entities returned are detached.
+ */
+public class AsyncRepository<T, ID extends Serializable> {
+
+	private final AsyncDatabase database;
+	private final Class<T> entity;
+
+	AsyncRepository(AsyncDatabase database, Class<T> entity) {
+		this.database = database;
+		this.entity = entity;
+	}
+
+	/**
+	 * The entity, null when there is none
+	 */
+	public CompletableFuture<T> findById(ID id) {
+		return database.get(entity, id);
+	}
+
+	/**
+	 * The entities of the ids that exist, in the order of the ids, read in one session
+	 */
+	public CompletableFuture<List<T>> findAllById(Collection<ID> ids) {
+		AsyncDatabase.Reads reads = database.reads();
+		List<CompletableFuture<T>> rows = new ArrayList<>(ids.size());
+		for (ID id : ids) {
+			rows.add(reads.get(entity, id));
+		}
+		return reads.submitAll().thenApply(done -> rows.stream().map(CompletableFuture::join)
+				.filter(row -> row != null).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Entities matching the where clause, HQL over alias e
+	 */
+	public CompletableFuture<List<T>> findWhere(String where, Map<String, ?> parameters) {
+		return database.read(session -> {
+			Query<T> query = session.createQuery("from " + entity.getName() + " e where " + where, entity);
+			parameters.forEach(query::setParameter);
+			return query.list();
+		});
+	}
+
+	/**
+	 * Inserts the entity, completes with its id
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<ID> save(T row) {
+		return database.write(session -> (ID) session.save(row));
+	}
+
+	/**
+	 * Copies the state of a detached entity onto the row, completes with the merged copy
+	 */
+	public CompletableFuture<T> merge(T row) {
+		return database.write(session -> entity.cast(session.merge(row)));
+	}
+
+	/**
+	 * Deletes the row, completes with false when there was none
+	 */
+	public CompletableFuture<Boolean> deleteById(ID id) {
+		return database.write(session -> {
+			T row = session.get(entity, id);
+			if (row == null) {
+				return false;
+			}
+			session.delete(row);
+			return true;
+		});
+	}
+
+	public Class<T> getEntity() {
+		return entity;
+	}
+}
@@ -0,0 +1,350 @@
+package orm.hibernate.caching;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.jboss.logging.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Publishes hit, miss, put and eviction counts of every second level cache region
+ * and of every cached query string.
+ *
+ * The numbers come from hibernate statistics (hibernate.generate_statistics=true),
+ * which are LongAdder based counters updated on every cache access, and from the
+ * JCache statistics of the region (monitoring.statistics in application.conf) for
+ * evictions, hibernate does not count those. Without them the JMX getters return -1
+ * and the endpoint has no eviction sample for the region. Nothing is computed until
+ * someone reads, either over JMX (register()) or from the Prometheus style text
+ * endpoint served on http://localhost:port/metrics (start(port)). The endpoint shows
+ * the cached HQL strings, it only listens on the loopback interface unless another
+ * address is passed to start(address, port).
+ */
+public class CacheStatisticsExporter implements CacheStatisticsMXBean, AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(CacheStatisticsExporter.class);
+
+	private final SessionFactory sessionFactory;
+	private final String name;
+	private ObjectName objectName;
+	private HttpServer server;
+
+	/**
+	 * @param name identifies the session factory in the JMX object name
+	 */
+	public CacheStatisticsExporter(SessionFactory sessionFactory, String name) {
+		this.sessionFactory = sessionFactory;
+		this.name = name;
+		if (!sessionFactory.getStatistics().isStatisticsEnabled()) {
+			LOGGER.warn("hibernate.generate_statistics is off, cache statistics will stay at 0");
+		}
+	}
+
+	@Override
+	public List<RegionStatistics> getRegions() {
+		Statistics statistics = sessionFactory.getStatistics();
+		List<RegionStatistics> regions = new ArrayList<>();
+		for (String region : statistics.getSecondLevelCacheRegionNames()) {
+			CacheRegionStatistics stats = statistics.getCacheRegionStatistics(region);
+			if (stats != null) {
+				regions.add(new RegionStatistics(region, stats.getHitCount(), stats.getMissCount(),
+						stats.getPutCount(), evictions(region), stats.getElementCountInMemory()));
+			}
+		}
+		String queryRegion = "default-query-results-region";
+		CacheRegionStatistics queryStats = statistics.isStatisticsEnabled()
+				? statistics.getQueryRegionStatistics(queryRegion)
+				: null;
+		if (queryStats != null && regions.stream().noneMatch(r -> r.getRegion().equals(queryRegion))) {
+			regions.add(new RegionStatistics(queryRegion, queryStats.getHitCount(), queryStats.getMissCount(),
+					queryStats.getPutCount(), evictions(queryRegion), queryStats.getElementCountInMemory()));
+		}
+		return regions;
+	}
+
+	@Override
+	public List<QueryCacheStatistics> getCachedQueries() {
+		Statistics statistics = sessionFactory.getStatistics();
+		List<QueryCacheStatistics> queries = new ArrayList<>();
+		for (String query : statistics.getQueries()) {
+			QueryStatistics stats = statistics.getQueryStatistics(query);
+			if (stats.getCacheHitCount() + stats.getCacheMissCount() + stats.getCachePutCount() > 0) {
+				queries.add(new QueryCacheStatistics(query, stats.getCacheHitCount(), stats.getCacheMissCount(),
+						stats.getCachePutCount(), stats.getExecutionCount()));
+			}
+		}
+		return queries;
+	}
+
+	@Override
+	public void clear() {
+		sessionFactory.getStatistics().clear();
+	}
+
+	/**
+	 * Registers the MXBean as orm.hibernate:type=CacheStatistics,name=<name>
+	 */
+	public CacheStatisticsExporter register() throws JMException {
+		objectName = new ObjectName("orm.hibernate:type=CacheStatistics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return this;
+	}
+
+	/**
+	 * Serves the counters in Prometheus text format on /metrics of the loopback
+	 * interface, port 0 picks a free port
+	 */
+	public CacheStatisticsExporter start(int port) throws IOException {
+		return start(InetAddress.getLoopbackAddress(), port);
+	}
+
+	/**
+	 * Serves the counters on /metrics of the given address, the wildcard address
+	 * (new InetSocketAddress(port).getAddress()) listens on every interface
+	 */
+	public CacheStatisticsExporter start(InetAddress address, int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(address, port), 0);
+		server.createContext("/metrics", exchange -> {
+			byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		return this;
+	}
+
+	/**
+	 * Port of the metrics endpoint, -1 when it is not started
+	 */
+	public int getPort() {
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+
+	/**
+	 * Address the metrics endpoint listens on, null when it is not started
+	 */
+	public InetAddress getAddress() {
+		return server == null ? null : server.getAddress().getAddress();
+	}
+
+	/**
+	 * Current counters in Prometheus text exposition format
+	 */
+	public String scrape() {
+		StringBuilder out = new StringBuilder();
+		List<RegionStatistics> regions = getRegions();
+		metric(out, "hibernate_cache_region_hits_total", "Second level cache hits per region");
+		for (RegionStatistics region : regions) {
+			sample(out, "hibernate_cache_region_hits_total", "region", region.getRegion(), region.getHitCount());
+		}
+		metric(out, "hibernate_cache_region_misses_total", "Second level cache misses per region");
+		for (RegionStatistics region : regions) {
+			sample(out, "hibernate_cache_region_misses_total", "region", region.getRegion(), region.getMissCount());
+		}
+		metric(out, "hibernate_cache_region_puts_total", "Second level cache puts per region");
+		for (RegionStatistics region : regions) {
+			sample(out, "hibernate_cache_region_puts_total", "region", region.getRegion(), region.getPutCount());
+		}
+		metric(out, "hibernate_cache_region_evictions_total", "Entries evicted by the cache provider per region");
+		for (RegionStatistics region : regions) {
+			/**
+			 * No sample when the provider does not count evictions, -1 is not a counter value
+			 */
+			if (region.getEvictionCount() >= 0) {
+				sample(out, "hibernate_cache_region_evictions_total", "region", region.getRegion(),
+						region.getEvictionCount());
+			}
+		}
+		List<QueryCacheStatistics> queries = getCachedQueries();
+		metric(out, "hibernate_query_cache_hits_total", "Query cache hits per query string");
+		for (QueryCacheStatistics query : queries) {
+			sample(out, "hibernate_query_cache_hits_total", "query", query.getQuery(), query.getHitCount());
+		}
+		metric(out, "hibernate_query_cache_misses_total", "Query cache misses per query string");
+		for (QueryCacheStatistics query : queries) {
+			sample(out, "hibernate_query_cache_misses_total", "query", query.getQuery(), query.getMissCount());
+		}
+		metric(out, "hibernate_query_cache_puts_total", "Query cache puts per query string");
+		for (QueryCacheStatistics query : queries) {
+			sample(out, "hibernate_query_cache_puts_total", "query", query.getQuery(), query.getPutCount());
+		}
+		return out.toString();
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOGGER.warn("Could not unregister cache statistics MBean", e);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Evictions reported by the JCache statistics MBean of the region, -1 when the
+	 * provider does not publish them
+	 */
+	private static long evictions(String region) {
+		try {
+			MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+			Set<ObjectName> names = mbeans.queryNames(
+					new ObjectName("javax.cache:type=CacheStatistics,Cache=" + ObjectName.quote(region) + ",*"), null);
+			if (names.isEmpty()) {
+				names = mbeans.queryNames(new ObjectName("javax.cache:type=CacheStatistics,Cache=" + region + ",*"),
+						null);
+			}
+			long evictions = -1;
+			for (ObjectName mbean : names) {
+				evictions = Math.max(0, evictions) + ((Number) mbeans.getAttribute(mbean, "CacheEvictions")).longValue();
+			}
+			return evictions;
+		} catch (JMException | RuntimeException e) {
+			return -1;
+		}
+	}
+
+	private static void metric(StringBuilder out, String metric, String help) {
+		out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(metric).append(" counter\n");
+	}
+
+	private static void sample(StringBuilder out, String metric, String label, String value, long count) {
+		out.append(metric).append('{').append(label).append("=\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				out.append('\\').append(c);
+			} else if (c == '\n') {
+				out.append("\\n");
+			} else {
+				out.append(c);
+			}
+		}
+		out.append("\"} ").append(count).append('\n');
+	}
+
+	/**
+	 * Counters of one second level cache region
+	 */
+	public static class RegionStatistics {
+
+		private final String region;
+		private final long hitCount;
+		private final long missCount;
+		private final long putCount;
+		private final long evictionCount;
+		private final long elementCount;
+
+		@ConstructorProperties({ "region", "hitCount", "missCount", "putCount", "evictionCount", "elementCount" })
+		public RegionStatistics(String region, long hitCount, long missCount, long putCount, long evictionCount,
+				long elementCount) {
+			this.region = region;
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.putCount = putCount;
+			this.evictionCount = evictionCount;
+			this.elementCount = elementCount;
+		}
+
+		public String getRegion() {
+			return region;
+		}
+
+		public long getHitCount() {
+			return hitCount;
+		}
+
+		public long getMissCount() {
+			return missCount;
+		}
+
+		public long getPutCount() {
+			return putCount;
+		}
+
+		/**
+		 * -1 when the cache provider does not report evictions
+		 */
+		public long getEvictionCount() {
+			return evictionCount;
+		}
+
+		/**
+		 * -1 when the cache provider does not report its size
+		 */
+		public long getElementCount() {
+			return elementCount;
+		}
+	}
+
+	/**
+	 * Query cache counters of one HQL string
+	 */
+	public static class QueryCacheStatistics {
+
+		private final String query;
+		private final long hitCount;
+		private final long missCount;
+		private final long putCount;
+		private final long executionCount;
+
+		@ConstructorProperties({ "query", "hitCount", "missCount", "putCount", "executionCount" })
+		public QueryCacheStatistics(String query, long hitCount, long missCount, long putCount, long executionCount) {
+			this.query = query;
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.putCount = putCount;
+			this.executionCount = executionCount;
+		}
+
+		public String getQuery() {
+			return query;
+		}
+
+		public long getHitCount() {
+			return hitCount;
+		}
+
+		public long getMissCount() {
+			return missCount;
+		}
+
+		public long getPutCount() {
+			return putCount;
+		}
+
+		/**
+		 * Times the query actually ran against the database
+		 */
+		public long getExecutionCount() {
+			return executionCount;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package orm.hibernate.caching;
+
+import java.util.List;
+
+/**
+ * JMX view of the second level and query cache counters, registered by
+ * CacheStatisticsExporter as orm.hibernate:type=CacheStatistics,name=<factory name>
+ */
+public interface CacheStatisticsMXBean {
+
+	/**
+	 * One entry per second level cache region, entity, collection and query regions
+	 */
+	List<CacheStatisticsExporter.RegionStatistics> getRegions();
+
+	/**
+	 * One entry per cacheable query string that hit, missed or was put into the query cache
+	 */
+	List<CacheStatisticsExporter.QueryCacheStatistics> getCachedQueries();
+
+	/**
+	 * Resets the hibernate statistics of the session factory
+	 */
+	void clear();
+}
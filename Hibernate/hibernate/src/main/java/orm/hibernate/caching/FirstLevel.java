@@ -2,34 +2,21 @@ package orm.hibernate.caching;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
 
+import orm.hibernate.SessionFactoryRegistry;
 import orm.hibernate.annotation.Student;
 
 public class FirstLevel {
 
 	  public static void main(String[] args) {
 
-		  /**
-		   * This line creates a new instance of the Configuration class from Hibernate.
-		   * The Configuration object is used to configure Hibernate and set up its properties.
-		   */
-		  Configuration con=new Configuration();
-		  
-		  /**
-		   * This line tells the Configuration object to load the configuration settings from the file
-		   *  hibernateConfig.cfg.xml, located in the orm/hibernate directory.
-		   * The XML file contains important settings such as database connection details, dialect, 
-		   *  mappings, and other Hibernate configurations.
-		   */
-		  con.configure("orm/hibernate/hibernateConfig.cfg.xml");
-	  
 		  /**
 		   * The SessionFactory is a crucial object in Hibernate. It is a factory for Session objects, 
-		   * which are used to interact with the database. The SessionFactory is typically created once 
-		   * and used to create multiple Session instances.
+		   * which are used to interact with the database. It is expensive to build, so it is created once
+		   * per configuration file by SessionFactoryRegistry and shared by every entry point.
 		   */
-		  SessionFactory ssf=con.buildSessionFactory();
+		  SessionFactory ssf=SessionFactoryRegistry.get(SessionFactoryRegistry.DEFAULT_CONFIG,
+				new SessionFactoryRegistry.WarmUp().connections(4));
 		  
 		  /**
 		   * Created a session
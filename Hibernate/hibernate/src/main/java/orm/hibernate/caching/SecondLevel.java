@@ -2,36 +2,35 @@ package orm.hibernate.caching;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
 import org.hibernate.query.Query;
 
+import orm.hibernate.SessionFactoryRegistry;
 import orm.hibernate.annotation.Student;
 
 public class SecondLevel {
 
+	/**
+	 * Cached query of this entry point, also parsed by warmUp()
+	 */
+	public static final String STUDENT_ONE = "from Student where id=1";
 
-	  public static void main(String[] args) {
+	/**
+	 * Parses the query and opens the connections of the first requests. It caches no
+	 * rows, this example counts its own misses.
+	 */
+	public static SessionFactoryRegistry.WarmUp warmUp() {
+		return new SessionFactoryRegistry.WarmUp().hql(STUDENT_ONE).connections(4);
+	}
+
+	  public static void main(String[] args) throws Exception {
 
-		  /**
-		   * This line creates a new instance of the Configuration class from Hibernate.
-		   * The Configuration object is used to configure Hibernate and set up its properties.
-		   */
-		  Configuration con=new Configuration();
-		  
-		  /**
-		   * This line tells the Configuration object to load the configuration settings from the file
-		   *  hibernateConfig.cfg.xml, located in the orm/hibernate directory.
-		   * The XML file contains important settings such as database connection details, dialect, 
-		   *  mappings, and other Hibernate configurations.
-		   */
-		  con.configure("orm/hibernate/hibernateConfig.cfg.xml");
-	  
 		  /**
 		   * The SessionFactory is a crucial object in Hibernate. It is a factory for Session objects, 
-		   * which are used to interact with the database. The SessionFactory is typically created once 
-		   * and used to create multiple Session instances.
+		   * which are used to interact with the database. It is expensive to build, so it is created once
+		   * per configuration file by SessionFactoryRegistry and shared by every entry point.
 		   */
-		  SessionFactory ssf=con.buildSessionFactory();
+		  SessionFactory ssf=SessionFactoryRegistry.get(SessionFactoryRegistry.DEFAULT_CONFIG,
+				warmUp());
 		  
 		  /**
 		   * Created 2 sessions
@@ -55,7 +54,7 @@ public class SecondLevel {
 		  System.out.println(st2.getName());
 		  
 		  System.out.println("New session created");
-		  String hqlQuery="from Student where id=1";
+		  String hqlQuery=STUDENT_ONE;
 		  Session session=ssf.openSession();
 		  Query q1=session.createQuery(hqlQuery);
 		  
@@ -80,8 +79,30 @@ public class SecondLevel {
 		  q2.setCacheable(true);
 		  Student st4=(Student) q2.uniqueResult();
 		  System.out.println(st4.getName());
+		  session3.close();
 
-		  
+		  /**
+		   * Instead of trusting the prints above, count: the student region should show 1 miss
+		   * (session1) and 1 hit (session2), the query 1 miss and 1 hit as well. Run with
+		   * -Dcache.metrics.port=9404 to print the counters and publish them on JMX
+		   * (orm.hibernate:type=CacheStatistics,name="hibernateConfig") and on
+		   * http://localhost:9404/metrics (loopback only) until Enter is pressed
+		   */
+		  Integer metricsPort=Integer.getInteger("cache.metrics.port");
+		  if (metricsPort!=null) {
+			  try (CacheStatisticsExporter exporter=new CacheStatisticsExporter(ssf, "hibernateConfig").register().start(metricsPort)) {
+				  for (CacheStatisticsExporter.RegionStatistics region : exporter.getRegions()) {
+					  System.out.println(region.getRegion()+" hits="+region.getHitCount()+" misses="+region.getMissCount()
+					  	+" puts="+region.getPutCount()+" evictions="+region.getEvictionCount());
+				  }
+				  for (CacheStatisticsExporter.QueryCacheStatistics query : exporter.getCachedQueries()) {
+					  System.out.println(query.getQuery()+" hits="+query.getHitCount()+" misses="+query.getMissCount()
+					  	+" puts="+query.getPutCount());
+				  }
+				  System.out.println("Serving http://localhost:"+exporter.getPort()+"/metrics, press Enter to stop");
+				  System.in.read();
+			  }
+		  }
 
 	  }
 
@@ -0,0 +1,162 @@
+package orm.hibernate.criteria;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Compiled TypedCriteria queries by shape.
+ *
+ * The shape of a query is everything but its values: entity, filtered attributes and
+ * operators, projection and order. All values are bound as parameters, so a shape
+ * always renders to the same JPQL and is translated once. Later queries of the shape
+ * take the JPQL and parameter names from here, skip building and rendering the
+ * CriteriaQuery, and hit the SQL of hibernate's own query plan cache
+ * (hibernate.query.plan_cache_max_size). The JPQL does not depend on the session
+ * factory, one cache may serve several.
+ *
+ * Once maxPlans shapes are cached new shapes are still executed but not cached, a
+ * growing plan count points to shapes built from values (e.g. a varying number of
+ * conditions) that should be fixed in the code.
+ */
+public class CriteriaPlanCache implements CriteriaPlanCacheMXBean, AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(CriteriaPlanCache.class);
+
+	private final int maxPlans;
+	private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder translationNanos = new LongAdder();
+	private volatile boolean fullLogged;
+	private ObjectName objectName;
+
+	public CriteriaPlanCache(int maxPlans) {
+		if (maxPlans <= 0) {
+			throw new IllegalArgumentException("maxPlans must be > 0");
+		}
+		this.maxPlans = maxPlans;
+	}
+
+	/**
+	 * Starts a query over the entity
+	 */
+	public <T> TypedCriteria<T> from(Class<T> entity) {
+		return new TypedCriteria<>(this, entity);
+	}
+
+	/**
+	 * Cached plan of the shape, compiles and caches it on a miss
+	 */
+	Plan plan(String shape, Supplier<Plan> compiler) {
+		Plan plan = plans.get(shape);
+		if (plan != null) {
+			hits.increment();
+			return plan;
+		}
+		long start = System.nanoTime();
+		plan = compiler.get();
+		translationNanos.add(System.nanoTime() - start);
+		misses.increment();
+		if (plans.size() < maxPlans) {
+			plans.putIfAbsent(shape, plan);
+		} else if (!fullLogged) {
+			fullLogged = true;
+			LOGGER.warnf("Criteria plan cache is full (%d shapes), new shapes are not cached", maxPlans);
+		}
+		return plan;
+	}
+
+	/**
+	 * Registers the MXBean as orm.hibernate:type=CriteriaPlanCache,name=<name>
+	 */
+	public CriteriaPlanCache register(String name) throws JMException {
+		objectName = new ObjectName("orm.hibernate:type=CriteriaPlanCache,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return this;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	@Override
+	public double getHitRatio() {
+		long hit = hits.sum();
+		long total = hit + misses.sum();
+		return total == 0 ? 0 : hit / (double) total;
+	}
+
+	@Override
+	public int getPlanCount() {
+		return plans.size();
+	}
+
+	@Override
+	public double getTranslationMillis() {
+		return translationNanos.sum() / 1_000_000.0;
+	}
+
+	@Override
+	public double getAverageTranslationMicros() {
+		long count = misses.sum();
+		return count == 0 ? 0 : translationNanos.sum() / 1_000.0 / count;
+	}
+
+	@Override
+	public void clear() {
+		plans.clear();
+		hits.reset();
+		misses.reset();
+		translationNanos.reset();
+		fullLogged = false;
+	}
+
+	@Override
+	public void close() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOGGER.warn("Could not unregister criteria plan cache MBean", e);
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CriteriaPlanCache [plans=%d, hits=%d, misses=%d, hitRatio=%.3f, translation=%.1f ms]",
+				getPlanCount(), getHitCount(), getMissCount(), getHitRatio(), getTranslationMillis());
+	}
+
+	/**
+	 * JPQL rendered from the CriteriaQuery of a shape and the names of its parameters,
+	 * parameterNames[i] takes the value of the i-th condition with a value
+	 */
+	static final class Plan {
+
+		final String jpql;
+		final Class<?> resultType;
+		final String[] parameterNames;
+
+		Plan(String jpql, Class<?> resultType, String[] parameterNames) {
+			this.jpql = jpql;
+			this.resultType = resultType;
+			this.parameterNames = parameterNames;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package orm.hibernate.criteria;
+
+/**
+ * JMX view of a CriteriaPlanCache, registered as
+ * orm.hibernate:type=CriteriaPlanCache,name=<name>
+ */
+public interface CriteriaPlanCacheMXBean {
+
+	/**
+	 * Queries whose shape was already compiled
+	 */
+	long getHitCount();
+
+	/**
+	 * Queries that had to be built and translated
+	 */
+	long getMissCount();
+
+	/**
+	 * hits / (hits + misses), 0 before the first query
+	 */
+	double getHitRatio();
+
+	/**
+	 * Shapes currently cached
+	 */
+	int getPlanCount();
+
+	/**
+	 * Total time spent building and translating on misses
+	 */
+	double getTranslationMillis();
+
+	/**
+	 * Average time of one miss
+	 */
+	double getAverageTranslationMicros();
+
+	/**
+	 * Drops all plans and resets the counters
+	 */
+	void clear();
+}
@@ -1,37 +1,48 @@
 package orm.hibernate.criteria;
 
-import java.util.List;
-
-import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
-import org.hibernate.criterion.Projections;
-import org.hibernate.criterion.Restrictions;
 
+import orm.hibernate.SessionFactoryRegistry;
+
+import orm.hibernate.hql.PartitionedReader;
 import orm.hibernate.hql.Paginator;
+import orm.hibernate.hql.Paginator_;
 
 public class MainMethod {
 
+	/**
+	 * Plans are shared by every query of the application, keep one cache
+	 */
+	private static final CriteriaPlanCache PLANS = new CriteriaPlanCache(256);
+
 	public static void main(String[] args) {
-        // Get SessionFactory (Assuming you have a configured SessionFactory)
-        SessionFactory sessionFactory = new Configuration().configure("orm/hibernate/hibernateConfig.cfg.xml").buildSessionFactory();
+        // Shared SessionFactory, built once per configuration file
+        SessionFactory sessionFactory = SessionFactoryRegistry.get(SessionFactoryRegistry.DEFAULT_CONFIG,
+                new SessionFactoryRegistry.WarmUp().connections(4));
         Session session = sessionFactory.openSession();
 
         try {
-            // Create a Criteria instance
-            Criteria criteria = session.createCriteria(Paginator.class);
-
-            // Add restrictions
-            criteria.add(Restrictions.gt("id", 10)); // Id greater than 30000
-            criteria.add(Restrictions.ilike("idval", "%value%")); // idvalue like %value%
-            // Add projections
-            criteria.setProjection(Projections.projectionList()
-                    .add(Projections.sum("id"), "sumOfId")); // sum(id)
-
-            // Execute the query
-            Object results = criteria.uniqueResult();
+            // Typed query on the generated metamodel, a misspelled attribute does not compile
+            Long results = PLANS.from(Paginator.class)
+                    .greaterThan(Paginator_.id, 10) // Id greater than 10
+                    .ilike(Paginator_.idval, "%value%") // idvalue like %value%, any case
+                    .sumAsLong(Paginator_.id, session); // sum(id)
             System.out.println("Sum of IDs - "+results);
+
+            // Same shape with other values, translated only once
+            Long more = PLANS.from(Paginator.class)
+                    .greaterThan(Paginator_.id, 30000)
+                    .ilike(Paginator_.idval, "%value1%")
+                    .sumAsLong(Paginator_.id, session);
+            System.out.println("Sum of IDs - "+more);
+            System.out.println(PLANS);
+
+            // Over the whole table the sum is read in id ranges on 4 sessions at once
+            try (PartitionedReader reader = new PartitionedReader(sessionFactory, 4, 16, 1000)) {
+                Long all = reader.aggregate(Paginator.class, "select sum(e.id)", Long.class, Long::sum);
+                System.out.println("Sum of all IDs - "+all);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -0,0 +1,272 @@
+package orm.hibernate.criteria;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+
+/**
+ * Query over one entity built from its static metamodel (Paginator_ etc., generated
+ * by hibernate-jpamodelgen), replaces the deprecated org.hibernate.Criteria:
+ *
+ *   plans.from(Paginator.class)
+ *        .greaterThan(Paginator_.id, 10)
+ *        .ilike(Paginator_.idval, "%value%")
+ *        .sumAsLong(Paginator_.id, session);
+ *
+ * Attributes and value types are checked by the compiler. The conditions are and-ed.
+ * The JPA CriteriaQuery is only built when the CriteriaPlanCache has no plan for the
+ * shape of the query, see there. Not thread safe, build one per query.
+ */
+public class TypedCriteria<T> {
+
+	private enum Operator {
+		EQUAL, GREATER_THAN, GREATER_THAN_OR_EQUAL, LESS_THAN, LESS_THAN_OR_EQUAL, LIKE, ILIKE, IS_NULL
+	}
+
+	private enum Result {
+		ENTITIES, COUNT, SUM
+	}
+
+	private final CriteriaPlanCache cache;
+	private final Class<T> entity;
+	private final List<Condition> conditions = new ArrayList<>();
+	private final List<Sort> orders = new ArrayList<>();
+	private int firstResult;
+	private int maxResults = -1;
+
+	TypedCriteria(CriteriaPlanCache cache, Class<T> entity) {
+		this.cache = cache;
+		this.entity = entity;
+	}
+
+	public TypedCriteria<T> equal(SingularAttribute<? super T, ?> attribute, Object value) {
+		return add(Operator.EQUAL, attribute, value);
+	}
+
+	public <Y extends Comparable<? super Y>> TypedCriteria<T> greaterThan(SingularAttribute<? super T, Y> attribute,
+			Y value) {
+		return add(Operator.GREATER_THAN, attribute, value);
+	}
+
+	public <Y extends Comparable<? super Y>> TypedCriteria<T> greaterThanOrEqualTo(
+			SingularAttribute<? super T, Y> attribute, Y value) {
+		return add(Operator.GREATER_THAN_OR_EQUAL, attribute, value);
+	}
+
+	public <Y extends Comparable<? super Y>> TypedCriteria<T> lessThan(SingularAttribute<? super T, Y> attribute,
+			Y value) {
+		return add(Operator.LESS_THAN, attribute, value);
+	}
+
+	public <Y extends Comparable<? super Y>> TypedCriteria<T> lessThanOrEqualTo(
+			SingularAttribute<? super T, Y> attribute, Y value) {
+		return add(Operator.LESS_THAN_OR_EQUAL, attribute, value);
+	}
+
+	public TypedCriteria<T> like(SingularAttribute<? super T, String> attribute, String pattern) {
+		return add(Operator.LIKE, attribute, pattern);
+	}
+
+	/**
+	 * Case insensitive like, compares lower(attribute) with the lower case pattern
+	 */
+	public TypedCriteria<T> ilike(SingularAttribute<? super T, String> attribute, String pattern) {
+		return add(Operator.ILIKE, attribute, pattern == null ? null : pattern.toLowerCase(Locale.ROOT));
+	}
+
+	public TypedCriteria<T> isNull(SingularAttribute<? super T, ?> attribute) {
+		conditions.add(new Condition(Operator.IS_NULL, attribute, null));
+		return this;
+	}
+
+	public TypedCriteria<T> orderByAsc(SingularAttribute<? super T, ?> attribute) {
+		orders.add(new Sort(attribute, true));
+		return this;
+	}
+
+	public TypedCriteria<T> orderByDesc(SingularAttribute<? super T, ?> attribute) {
+		orders.add(new Sort(attribute, false));
+		return this;
+	}
+
+	/**
+	 * Limits are applied to the query, they are not part of the shape
+	 */
+	public TypedCriteria<T> firstResult(int firstResult) {
+		this.firstResult = firstResult;
+		return this;
+	}
+
+	public TypedCriteria<T> maxResults(int maxResults) {
+		this.maxResults = maxResults;
+		return this;
+	}
+
+	public List<T> list(Session session) {
+		return query(session, Result.ENTITIES, null, entity).list();
+	}
+
+	public long count(Session session) {
+		return query(session, Result.COUNT, null, Long.class).uniqueResult();
+	}
+
+	/**
+	 * Sum of an integer attribute over the matching rows, null when no row matches
+	 */
+	public Long sumAsLong(SingularAttribute<? super T, Integer> attribute, Session session) {
+		return query(session, Result.SUM, attribute, Long.class).uniqueResult();
+	}
+
+	private TypedCriteria<T> add(Operator operator, SingularAttribute<? super T, ?> attribute, Object value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Value of " + attribute.getName() + " is null, use isNull(..)");
+		}
+		conditions.add(new Condition(operator, attribute, value));
+		return this;
+	}
+
+	private <R> Query<R> query(Session session, Result result, SingularAttribute<? super T, ?> projected,
+			Class<R> resultType) {
+		CriteriaPlanCache.Plan plan = cache.plan(shape(result, projected),
+				() -> compile(session, result, projected, resultType));
+		Query<R> query = session.createQuery(plan.jpql, resultType);
+		int parameter = 0;
+		for (Condition condition : conditions) {
+			if (condition.operator != Operator.IS_NULL) {
+				query.setParameter(plan.parameterNames[parameter++], condition.value);
+			}
+		}
+		if (firstResult > 0) {
+			query.setFirstResult(firstResult);
+		}
+		if (maxResults >= 0) {
+			query.setMaxResults(maxResults);
+		}
+		return query;
+	}
+
+	/**
+	 * Everything that ends up in the JPQL, none of the values
+	 */
+	private String shape(Result result, SingularAttribute<? super T, ?> projected) {
+		StringBuilder shape = new StringBuilder(64).append(entity.getName()).append('|').append(result);
+		if (projected != null) {
+			shape.append('(').append(projected.getName()).append(')');
+		}
+		for (Condition condition : conditions) {
+			shape.append('|').append(condition.attribute.getName()).append(' ').append(condition.operator);
+		}
+		for (Sort order : orders) {
+			shape.append("|order ").append(order.attribute.getName()).append(order.ascending ? " asc" : " desc");
+		}
+		return shape.toString();
+	}
+
+	/**
+	 * Builds the CriteriaQuery with one named parameter per value and lets hibernate
+	 * render and translate it
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private CriteriaPlanCache.Plan compile(Session session, Result result, SingularAttribute<? super T, ?> projected,
+			Class<?> resultType) {
+		CriteriaBuilder cb = session.getCriteriaBuilder();
+		CriteriaQuery query = cb.createQuery(resultType);
+		Root<T> root = query.from(entity);
+		switch (result) {
+		case COUNT:
+			query.select(cb.count(root));
+			break;
+		case SUM:
+			query.select(cb.sumAsLong(root.get((SingularAttribute) projected)));
+			break;
+		default:
+			query.select(root);
+		}
+
+		List<Predicate> predicates = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		for (Condition condition : conditions) {
+			Path path = root.get((SingularAttribute) condition.attribute);
+			if (condition.operator == Operator.IS_NULL) {
+				predicates.add(cb.isNull(path));
+				continue;
+			}
+			String name = "p" + names.size();
+			names.add(name);
+			ParameterExpression parameter = cb.parameter(condition.value.getClass(), name);
+			switch (condition.operator) {
+			case EQUAL:
+				predicates.add(cb.equal(path, parameter));
+				break;
+			case GREATER_THAN:
+				predicates.add(cb.greaterThan((Expression<Comparable>) path, parameter));
+				break;
+			case GREATER_THAN_OR_EQUAL:
+				predicates.add(cb.greaterThanOrEqualTo((Expression<Comparable>) path, parameter));
+				break;
+			case LESS_THAN:
+				predicates.add(cb.lessThan((Expression<Comparable>) path, parameter));
+				break;
+			case LESS_THAN_OR_EQUAL:
+				predicates.add(cb.lessThanOrEqualTo((Expression<Comparable>) path, parameter));
+				break;
+			case LIKE:
+				predicates.add(cb.like(path, parameter));
+				break;
+			case ILIKE:
+				predicates.add(cb.like(cb.lower(path), parameter));
+				break;
+			default:
+				throw new IllegalStateException(condition.operator.name());
+			}
+		}
+		query.where(predicates.toArray(new Predicate[0]));
+
+		List<Order> order = new ArrayList<>();
+		for (Sort sort : orders) {
+			Path path = root.get((SingularAttribute) sort.attribute);
+			order.add(sort.ascending ? cb.asc(path) : cb.desc(path));
+		}
+		query.orderBy(order);
+
+		String jpql = session.createQuery(query).unwrap(Query.class).getQueryString();
+		return new CriteriaPlanCache.Plan(jpql, resultType, names.toArray(new String[0]));
+	}
+
+	private static final class Condition {
+
+		final Operator operator;
+		final SingularAttribute<?, ?> attribute;
+		final Object value;
+
+		Condition(Operator operator, SingularAttribute<?, ?> attribute, Object value) {
+			this.operator = operator;
+			this.attribute = attribute;
+			this.value = value;
+		}
+	}
+
+	private static final class Sort {
+
+		final SingularAttribute<?, ?> attribute;
+		final boolean ascending;
+
+		Sort(SingularAttribute<?, ?> attribute, boolean ascending) {
+			this.attribute = attribute;
+			this.ascending = ascending;
+		}
+	}
+}
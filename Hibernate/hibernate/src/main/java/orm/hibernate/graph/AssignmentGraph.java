@@ -0,0 +1,697 @@
+package orm.hibernate.graph;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+
+import orm.hibernate.annotation.manytomany.EmployeeProjects;
+
+/**
+ * In-memory index of the employee to project links of joined_table_employee_project.
+ *
+ * The links are stored twice in compressed sparse row form, once per employee and once
+ * per project: a sorted int[] of ids, an int[] of offsets into an int[] of neighbour
+ * ids, 8 bytes per link and no object per link or per id. Answering "projects of X" is a
+ * binary search plus an array range, walking the lazy collections entity by entity is
+ * not needed.
+ *
+ * Commits that change EmployeeProjects.empWorkingonProjects are applied through
+ * collection events (AssignmentGraphListener) into a small sorted overlay of added and
+ * removed links, queries merge it with the rows. When the overlay grows beyond the
+ * compaction threshold the rows are rebuilt. Readers never lock, every change publishes
+ * a new immutable state. Bulk HQL or native SQL on the join table does not fire
+ * collection events, call rebuild(..) after those. The events fire when a session
+ * flushes, a transaction that flushed its changes before load(..) registered the
+ * listener and commits after the rows were read is missed as well, load the graph at
+ * startup before such transactions run, or rebuild(..) after them.
+ *
+ * Ids must not be negative.
+ */
+public class AssignmentGraph {
+
+	public static final int DEFAULT_COMPACTION_THRESHOLD = 64 * 1024;
+
+	static final String ROLE = EmployeeProjects.class.getName() + ".empWorkingonProjects";
+
+	/**
+	 * The listener of every open factory a graph was loaded for, guarded by itself.
+	 * Listeners cannot be removed from a factory, a failed load leaves it detached.
+	 */
+	private static final Map<SessionFactory, AssignmentGraphListener> LISTENERS = new HashMap<>();
+
+	private final int compactionThreshold;
+	private final Object writeLock = new Object();
+	private volatile State state;
+
+	AssignmentGraph(State state, int compactionThreshold) {
+		this.state = state;
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Builds the index from the join table and keeps it up to date with every later
+	 * commit of sessions of this factory. A factory has one graph, later calls return it.
+	 */
+	public static AssignmentGraph load(SessionFactory sessionFactory) {
+		return load(sessionFactory, DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	/**
+	 * The listener is registered before the rows are read, under the write lock: a
+	 * commit while they are read waits for them and is applied on top, applying a
+	 * change the rows already contain does nothing. If the rows cannot be read the
+	 * listener is detached from the graph and the next call tries again. The compaction
+	 * threshold of an already loaded graph stays as it is.
+	 */
+	static AssignmentGraph load(SessionFactory sessionFactory, int compactionThreshold) {
+		SessionFactoryImplementor factory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+		synchronized (LISTENERS) {
+			AssignmentGraphListener listener = LISTENERS.get(factory);
+			if (listener == null) {
+				listener = new AssignmentGraphListener();
+				EventListenerRegistry listeners = factory.getServiceRegistry().getService(EventListenerRegistry.class);
+				listeners.appendListeners(EventType.PRE_COLLECTION_RECREATE, listener);
+				listeners.appendListeners(EventType.PRE_COLLECTION_UPDATE, listener);
+				listeners.appendListeners(EventType.PRE_COLLECTION_REMOVE, listener);
+				LISTENERS.put(factory, listener);
+				factory.addObserver(new SessionFactoryObserver() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public void sessionFactoryClosed(SessionFactory closed) {
+						synchronized (LISTENERS) {
+							LISTENERS.remove(closed);
+						}
+					}
+				});
+			} else if (listener.getGraph() != null) {
+				return listener.getGraph();
+			}
+			AssignmentGraph graph = new AssignmentGraph(null, compactionThreshold);
+			synchronized (graph.writeLock) {
+				listener.attach(graph);
+				try {
+					graph.rebuild(sessionFactory);
+				} catch (RuntimeException e) {
+					listener.attach(null);
+					throw e;
+				}
+			}
+			return graph;
+		}
+	}
+
+	/**
+	 * Index over the given links, employeeIds[i] works on projectIds[i]. Not connected
+	 * to any database, used for tests and benchmarks.
+	 */
+	public static AssignmentGraph fromLinks(int[] employeeIds, int[] projectIds) {
+		if (employeeIds.length != projectIds.length) {
+			throw new IllegalArgumentException("employeeIds and projectIds must have the same length");
+		}
+		long[] links = new long[employeeIds.length];
+		for (int i = 0; i < links.length; i++) {
+			links[i] = pack(employeeIds[i], projectIds[i]);
+		}
+		return new AssignmentGraph(State.of(links), DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	/**
+	 * Reads all links from the join table again, e.g. after a bulk update
+	 */
+	public void rebuild(SessionFactory sessionFactory) {
+		SessionFactoryImplementor factory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+		AbstractCollectionPersister persister = (AbstractCollectionPersister) factory.getMetamodel()
+				.collectionPersister(ROLE);
+		String sql = "select " + persister.getKeyColumnNames()[0] + ", " + persister.getElementColumnNames()[0]
+				+ " from " + persister.getTableName();
+
+		synchronized (writeLock) {
+			LongList links = new LongList(1024);
+			try (Session session = sessionFactory.openSession()) {
+				session.doWork(connection -> {
+					try (PreparedStatement statement = connection.prepareStatement(sql)) {
+						statement.setFetchSize(10000);
+						try (ResultSet rows = statement.executeQuery()) {
+							while (rows.next()) {
+								links.add(pack(rows.getInt(1), rows.getInt(2)));
+							}
+						}
+					}
+				});
+			}
+			state = State.of(links.toArray());
+		}
+	}
+
+	/**
+	 * Ids of the projects of the employee, ascending
+	 */
+	public int[] projectsOf(int employeeId) {
+		IntList projects = new IntList(16);
+		state.forEachProject(employeeId, projects::add);
+		return projects.toArray();
+	}
+
+	/**
+	 * Ids of the employees working on the project, ascending
+	 */
+	public int[] employeesOf(int projectId) {
+		IntList employees = new IntList(16);
+		state.forEachEmployee(projectId, employees::add);
+		return employees.toArray();
+	}
+
+	/**
+	 * Ids of the other employees that share at least one project with the employee,
+	 * ascending
+	 */
+	public int[] coworkersOf(int employeeId) {
+		State current = state;
+		IntSet coworkers = new IntSet(64);
+		current.forEachProject(employeeId, project -> current.forEachEmployee(project, coworkers::add));
+		coworkers.remove(employeeId);
+		return coworkers.toSortedArray();
+	}
+
+	/**
+	 * Ids of the projects reachable from the employee within the given number of hops,
+	 * ascending. One hop is the employee's own projects, two hops adds the projects of
+	 * the coworkers, three the projects of their coworkers and so on.
+	 */
+	public int[] projectsWithinHops(int employeeId, int hops) {
+		if (hops < 1) {
+			throw new IllegalArgumentException("hops must be >= 1");
+		}
+		State current = state;
+		IntSet employees = new IntSet(64);
+		IntSet projects = new IntSet(64);
+		employees.add(employeeId);
+		IntList frontier = new IntList(16);
+		frontier.add(employeeId);
+		for (int hop = 1; hop <= hops; hop++) {
+			IntList newProjects = new IntList(16);
+			for (int i = 0; i < frontier.size(); i++) {
+				current.forEachProject(frontier.get(i), project -> {
+					if (projects.add(project)) {
+						newProjects.add(project);
+					}
+				});
+			}
+			if (hop == hops) {
+				break;
+			}
+			IntList next = new IntList(16);
+			for (int i = 0; i < newProjects.size(); i++) {
+				current.forEachEmployee(newProjects.get(i), employee -> {
+					if (employees.add(employee)) {
+						next.add(employee);
+					}
+				});
+			}
+			frontier = next;
+		}
+		return projects.toSortedArray();
+	}
+
+	public long getLinkCount() {
+		State current = state;
+		return current.byEmployee.targets.length + current.added.size - current.removed.size;
+	}
+
+	/**
+	 * Bytes held by the arrays of the index
+	 */
+	public long getMemoryBytes() {
+		State current = state;
+		return current.byEmployee.bytes() + current.byProject.bytes() + 8L * (current.added.values.length
+				+ current.addedByProject.values.length + current.removed.values.length
+				+ current.removedByProject.values.length);
+	}
+
+	/**
+	 * Added and removed links not yet merged into the rows
+	 */
+	public int getPendingChanges() {
+		State current = state;
+		return current.added.size + current.removed.size;
+	}
+
+	/**
+	 * Merges the pending changes into the rows
+	 */
+	public void compact() {
+		synchronized (writeLock) {
+			state = State.of(state.allLinks());
+		}
+	}
+
+	/**
+	 * Applies one committed change of a collection, called by AssignmentGraphListener.
+	 * Links of the cleared employees are removed before the added links are added.
+	 */
+	void apply(int[] clearedEmployees, long[] removedLinks, long[] addedLinks) {
+		synchronized (writeLock) {
+			State current = state;
+			LongList remove = new LongList(removedLinks.length + 16);
+			for (int employee : clearedEmployees) {
+				current.forEachProject(employee, project -> remove.add(pack(employee, project)));
+			}
+			for (long link : removedLinks) {
+				remove.add(link);
+			}
+			current = current.remove(remove.toArray()).add(addedLinks);
+			if (current.added.size + current.removed.size > compactionThreshold) {
+				current = State.of(current.allLinks());
+			}
+			state = current;
+		}
+	}
+
+	static long pack(int high, int low) {
+		if (high < 0 || low < 0) {
+			throw new IllegalArgumentException("Ids must not be negative: " + high + ", " + low);
+		}
+		return ((long) high << 32) | low;
+	}
+
+	static int high(long packed) {
+		return (int) (packed >>> 32);
+	}
+
+	static int low(long packed) {
+		return (int) packed;
+	}
+
+	static long swap(long packed) {
+		return ((packed & 0xFFFFFFFFL) << 32) | (packed >>> 32);
+	}
+
+	/**
+	 * Immutable rows plus overlay, replaced as a whole on every change
+	 */
+	static final class State {
+
+		final Rows byEmployee;
+		final Rows byProject;
+		final SortedLongs added;
+		final SortedLongs addedByProject;
+		final SortedLongs removed;
+		final SortedLongs removedByProject;
+
+		private State(Rows byEmployee, Rows byProject, SortedLongs added, SortedLongs addedByProject,
+				SortedLongs removed, SortedLongs removedByProject) {
+			this.byEmployee = byEmployee;
+			this.byProject = byProject;
+			this.added = added;
+			this.addedByProject = addedByProject;
+			this.removed = removed;
+			this.removedByProject = removedByProject;
+		}
+
+		/**
+		 * Links packed as employee << 32 | project, in any order, duplicates allowed
+		 */
+		static State of(long[] links) {
+			Arrays.parallelSort(links);
+			int unique = unique(links);
+			long[] byEmployee = unique == links.length ? links : Arrays.copyOf(links, unique);
+			long[] byProject = new long[unique];
+			for (int i = 0; i < unique; i++) {
+				byProject[i] = swap(byEmployee[i]);
+			}
+			Arrays.parallelSort(byProject);
+			return new State(Rows.of(byEmployee), Rows.of(byProject), SortedLongs.EMPTY, SortedLongs.EMPTY,
+					SortedLongs.EMPTY, SortedLongs.EMPTY);
+		}
+
+		void forEachProject(int employeeId, IntConsumer action) {
+			forEach(byEmployee, added, removed, employeeId, action);
+		}
+
+		void forEachEmployee(int projectId, IntConsumer action) {
+			forEach(byProject, addedByProject, removedByProject, projectId, action);
+		}
+
+		boolean contains(long link) {
+			if (removed.contains(link)) {
+				return false;
+			}
+			return added.contains(link) || byEmployee.contains(high(link), low(link));
+		}
+
+		State add(long[] links) {
+			LongList unremove = new LongList(links.length);
+			LongList add = new LongList(links.length);
+			for (long link : links) {
+				if (removed.contains(link)) {
+					unremove.add(link);
+				} else if (!contains(link)) {
+					add.add(link);
+				}
+			}
+			return change(add.toArray(), unremove.toArray(), new long[0], new long[0]);
+		}
+
+		State remove(long[] links) {
+			LongList unadd = new LongList(links.length);
+			LongList remove = new LongList(links.length);
+			for (long link : links) {
+				if (added.contains(link)) {
+					unadd.add(link);
+				} else if (contains(link)) {
+					remove.add(link);
+				}
+			}
+			return change(new long[0], new long[0], remove.toArray(), unadd.toArray());
+		}
+
+		private State change(long[] add, long[] unremove, long[] remove, long[] unadd) {
+			if (add.length + unremove.length + remove.length + unadd.length == 0) {
+				return this;
+			}
+			return new State(byEmployee, byProject,
+					added.with(add).without(unadd), addedByProject.with(swapAll(add)).without(swapAll(unadd)),
+					removed.with(remove).without(unremove),
+					removedByProject.with(swapAll(remove)).without(swapAll(unremove)));
+		}
+
+		/**
+		 * Rows and overlay merged, packed as employee << 32 | project
+		 */
+		long[] allLinks() {
+			LongList links = new LongList(byEmployee.targets.length + added.size);
+			for (int row = 0; row < byEmployee.keys.length; row++) {
+				int employee = byEmployee.keys[row];
+				for (int i = byEmployee.offsets[row]; i < byEmployee.offsets[row + 1]; i++) {
+					long link = pack(employee, byEmployee.targets[i]);
+					if (!removed.contains(link)) {
+						links.add(link);
+					}
+				}
+			}
+			for (int i = 0; i < added.size; i++) {
+				links.add(added.values[i]);
+			}
+			return links.toArray();
+		}
+
+		/**
+		 * Merges the row of id with the added links and skips the removed ones, the
+		 * action sees the neighbours in ascending order
+		 */
+		private static void forEach(Rows rows, SortedLongs added, SortedLongs removed, int id, IntConsumer action) {
+			int row = Arrays.binarySearch(rows.keys, id);
+			int i = row < 0 ? 0 : rows.offsets[row];
+			int end = row < 0 ? 0 : rows.offsets[row + 1];
+			int j = added.size == 0 ? 0 : added.firstIndexOf(id);
+			boolean checkRemoved = removed.size > 0;
+			while (i < end || (j < added.size && high(added.values[j]) == id)) {
+				int next;
+				if (j < added.size && high(added.values[j]) == id && (i == end || low(added.values[j]) < rows.targets[i])) {
+					next = low(added.values[j++]);
+				} else {
+					next = rows.targets[i++];
+					if (checkRemoved && removed.contains(pack(id, next))) {
+						continue;
+					}
+				}
+				action.accept(next);
+			}
+		}
+
+		private static int unique(long[] sorted) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int unique = 1;
+			for (int i = 1; i < sorted.length; i++) {
+				if (sorted[i] != sorted[unique - 1]) {
+					sorted[unique++] = sorted[i];
+				}
+			}
+			return unique;
+		}
+
+		private static long[] swapAll(long[] links) {
+			long[] swapped = new long[links.length];
+			for (int i = 0; i < links.length; i++) {
+				swapped[i] = swap(links[i]);
+			}
+			return swapped;
+		}
+	}
+
+	/**
+	 * Compressed sparse rows: the neighbours of keys[r] are
+	 * targets[offsets[r] .. offsets[r + 1]), ascending
+	 */
+	static final class Rows {
+
+		final int[] keys;
+		final int[] offsets;
+		final int[] targets;
+
+		private Rows(int[] keys, int[] offsets, int[] targets) {
+			this.keys = keys;
+			this.offsets = offsets;
+			this.targets = targets;
+		}
+
+		/**
+		 * From sorted, unique links packed as key << 32 | target
+		 */
+		static Rows of(long[] links) {
+			int rows = 0;
+			for (int i = 0; i < links.length; i++) {
+				if (i == 0 || high(links[i]) != high(links[i - 1])) {
+					rows++;
+				}
+			}
+			int[] keys = new int[rows];
+			int[] offsets = new int[rows + 1];
+			int[] targets = new int[links.length];
+			int row = -1;
+			for (int i = 0; i < links.length; i++) {
+				int key = high(links[i]);
+				if (row < 0 || keys[row] != key) {
+					keys[++row] = key;
+					offsets[row] = i;
+				}
+				targets[i] = low(links[i]);
+			}
+			offsets[rows] = links.length;
+			return new Rows(keys, offsets, targets);
+		}
+
+		boolean contains(int key, int target) {
+			int row = Arrays.binarySearch(keys, key);
+			return row >= 0 && Arrays.binarySearch(targets, offsets[row], offsets[row + 1], target) >= 0;
+		}
+
+		long bytes() {
+			return 4L * (keys.length + offsets.length + targets.length);
+		}
+	}
+
+	/**
+	 * Immutable sorted set of packed links, the overlay is small so changes copy it
+	 */
+	static final class SortedLongs {
+
+		static final SortedLongs EMPTY = new SortedLongs(new long[0], 0);
+
+		final long[] values;
+		final int size;
+
+		private SortedLongs(long[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+
+		boolean contains(long value) {
+			return size > 0 && Arrays.binarySearch(values, 0, size, value) >= 0;
+		}
+
+		/**
+		 * Index of the first value whose high half is key, or of the place it would be
+		 */
+		int firstIndexOf(int key) {
+			int index = Arrays.binarySearch(values, 0, size, (long) key << 32);
+			return index < 0 ? -index - 1 : index;
+		}
+
+		SortedLongs with(long[] add) {
+			if (add.length == 0) {
+				return this;
+			}
+			long[] merged = Arrays.copyOf(values, size + add.length);
+			System.arraycopy(add, 0, merged, size, add.length);
+			Arrays.sort(merged);
+			return new SortedLongs(merged, State.unique(merged));
+		}
+
+		SortedLongs without(long[] remove) {
+			if (remove.length == 0 || size == 0) {
+				return this;
+			}
+			long[] sortedRemove = remove.clone();
+			Arrays.sort(sortedRemove);
+			long[] kept = new long[size];
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (Arrays.binarySearch(sortedRemove, values[i]) < 0) {
+					kept[count++] = values[i];
+				}
+			}
+			return count == 0 ? EMPTY : new SortedLongs(kept, count);
+		}
+	}
+
+	/**
+	 * Growable int[]
+	 */
+	static final class IntList {
+
+		private int[] values;
+		private int size;
+
+		IntList(int capacity) {
+			values = new int[capacity];
+		}
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int get(int index) {
+			return values[index];
+		}
+
+		int size() {
+			return size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Growable long[]
+	 */
+	static final class LongList {
+
+		private long[] values;
+		private int size;
+
+		LongList(int capacity) {
+			values = new long[Math.max(capacity, 1)];
+		}
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Open addressing set of non negative ints, -1 marks a free slot
+	 */
+	static final class IntSet {
+
+		private int[] slots;
+		private int size;
+
+		IntSet(int capacity) {
+			slots = new int[Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) * 2];
+			Arrays.fill(slots, -1);
+		}
+
+		boolean add(int value) {
+			if ((size + 1) * 2 > slots.length) {
+				grow();
+			}
+			int mask = slots.length - 1;
+			int slot = mix(value) & mask;
+			while (slots[slot] != -1) {
+				if (slots[slot] == value) {
+					return false;
+				}
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = value;
+			size++;
+			return true;
+		}
+
+		void remove(int value) {
+			int mask = slots.length - 1;
+			int slot = mix(value) & mask;
+			while (slots[slot] != -1) {
+				if (slots[slot] == value) {
+					int[] old = slots;
+					slots = new int[old.length];
+					Arrays.fill(slots, -1);
+					size = 0;
+					for (int v : old) {
+						if (v != -1 && v != value) {
+							add(v);
+						}
+					}
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		int[] toSortedArray() {
+			int[] values = new int[size];
+			int count = 0;
+			for (int v : slots) {
+				if (v != -1) {
+					values[count++] = v;
+				}
+			}
+			Arrays.sort(values);
+			return values;
+		}
+
+		private void grow() {
+			int[] old = slots;
+			slots = new int[old.length * 2];
+			Arrays.fill(slots, -1);
+			size = 0;
+			for (int v : old) {
+				if (v != -1) {
+					add(v);
+				}
+			}
+		}
+
+		private static int mix(int value) {
+			int h = value * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package orm.hibernate.graph;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.CollectionEntry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.PreCollectionRecreateEvent;
+import org.hibernate.event.spi.PreCollectionRecreateEventListener;
+import org.hibernate.event.spi.PreCollectionRemoveEvent;
+import org.hibernate.event.spi.PreCollectionRemoveEventListener;
+import org.hibernate.event.spi.PreCollectionUpdateEvent;
+import org.hibernate.event.spi.PreCollectionUpdateEventListener;
+import org.hibernate.proxy.HibernateProxy;
+import org.jboss.logging.Logger;
+
+import orm.hibernate.annotation.manytomany.Projects;
+
+/**
+ * Turns the collection events of EmployeeProjects.empWorkingonProjects into link
+ * changes of an AssignmentGraph.
+ *
+ * The pre events see the collection before its rows are written: recreate adds all
+ * elements, remove drops every link of the employee (also fired when the set is
+ * replaced, followed by a recreate), update diffs the elements against the snapshot
+ * taken when the set was loaded. The change is applied after the transaction commits,
+ * a rollback leaves the graph untouched. Changes flushed before the listener was
+ * registered are never seen, see AssignmentGraph.
+ */
+class AssignmentGraphListener implements PreCollectionRecreateEventListener, PreCollectionUpdateEventListener,
+		PreCollectionRemoveEventListener {
+
+	private static final Logger LOGGER = Logger.getLogger(AssignmentGraphListener.class);
+
+	private static final long[] NONE = new long[0];
+
+	/**
+	 * Null while no graph is loaded, events are ignored then
+	 */
+	private volatile AssignmentGraph graph;
+
+	AssignmentGraph getGraph() {
+		return graph;
+	}
+
+	void attach(AssignmentGraph graph) {
+		this.graph = graph;
+	}
+
+	@Override
+	public void onPreRecreateCollection(PreCollectionRecreateEvent event) {
+		if (isAssignments(event)) {
+			int employee = employeeOf(event);
+			afterCommit(event, new int[0], NONE, links(employee, elements(event.getCollection())));
+		}
+	}
+
+	@Override
+	public void onPreRemoveCollection(PreCollectionRemoveEvent event) {
+		if (isAssignments(event)) {
+			afterCommit(event, new int[] { employeeOf(event) }, NONE, NONE);
+		}
+	}
+
+	@Override
+	public void onPreUpdateCollection(PreCollectionUpdateEvent event) {
+		if (!isAssignments(event)) {
+			return;
+		}
+		PersistentCollection collection = event.getCollection();
+		int employee = employeeOf(event);
+		Serializable snapshot = collection.getStoredSnapshot();
+		if (!collection.wasInitialized() || !(snapshot instanceof Map)) {
+			/**
+			 * Nothing to diff against, forget what is known about the employee and
+			 * take the links from the set as it is now
+			 */
+			LOGGER.debugf("No snapshot for the projects of employee %d, replacing all its links", employee);
+			afterCommit(event, new int[] { employee }, NONE,
+					collection.wasInitialized() ? links(employee, elements(collection)) : NONE);
+			return;
+		}
+		Collection<?> before = ((Map<?, ?>) snapshot).keySet();
+		Collection<?> after = elements(collection);
+		AssignmentGraph.LongList removed = new AssignmentGraph.LongList(4);
+		for (Object project : before) {
+			if (!after.contains(project)) {
+				removed.add(AssignmentGraph.pack(employee, projectIdOf(project)));
+			}
+		}
+		AssignmentGraph.LongList added = new AssignmentGraph.LongList(4);
+		for (Object project : after) {
+			if (!before.contains(project)) {
+				added.add(AssignmentGraph.pack(employee, projectIdOf(project)));
+			}
+		}
+		afterCommit(event, new int[0], removed.toArray(), added.toArray());
+	}
+
+	private void afterCommit(AbstractCollectionEvent event, int[] clearedEmployees, long[] removed, long[] added) {
+		if (graph == null || clearedEmployees.length + removed.length + added.length == 0) {
+			return;
+		}
+		event.getSession().getActionQueue().registerProcess((success, session) -> {
+			AssignmentGraph current = graph;
+			if (success && current != null) {
+				current.apply(clearedEmployees, removed, added);
+			}
+		});
+	}
+
+	/**
+	 * A new collection gets its role only after it was written, take it from the
+	 * persister it is being written with
+	 */
+	private static boolean isAssignments(AbstractCollectionEvent event) {
+		PersistentCollection collection = event.getCollection();
+		String role = collection.getRole();
+		if (role == null) {
+			CollectionEntry entry = event.getSession().getPersistenceContextInternal().getCollectionEntry(collection);
+			role = entry == null || entry.getCurrentPersister() == null ? null : entry.getCurrentPersister().getRole();
+		}
+		return AssignmentGraph.ROLE.equals(role);
+	}
+
+	private static int employeeOf(AbstractCollectionEvent event) {
+		return (Integer) event.getAffectedOwnerIdOrNull();
+	}
+
+	private static Collection<?> elements(PersistentCollection collection) {
+		return (Collection<?>) collection;
+	}
+
+	private static long[] links(int employee, Collection<?> projects) {
+		long[] links = new long[projects.size()];
+		int i = 0;
+		for (Object project : projects) {
+			links[i++] = AssignmentGraph.pack(employee, projectIdOf(project));
+		}
+		return links;
+	}
+
+	/**
+	 * Id without initializing a proxy
+	 */
+	private static int projectIdOf(Object project) {
+		if (project instanceof HibernateProxy) {
+			return (Integer) ((HibernateProxy) project).getHibernateLazyInitializer().getIdentifier();
+		}
+		return ((Projects) project).getProjectId();
+	}
+}
@@ -0,0 +1,100 @@
+package orm.hibernate.hql;
+
+import java.util.Iterator;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+
+/**
+ * Inserts a large number of entities using JDBC batching.
+ *
+ * Every row saved in a Session stays in the persistence context until the session
+ * is cleared, so a long running insert loop keeps all of them on the heap and makes
+ * each flush slower than the previous one. This loader flushes and clears the session
+ * every batchSize rows (one JDBC batch) and commits every commitInterval rows so
+ * transactions stay short.
+ *
+ * The entity needs a non IDENTITY id generator (see Paginator) otherwise Hibernate
+ * silently falls back to one insert statement per row.
+ */
+public class BulkLoader {
+
+	private static final int DEFAULT_BATCH_SIZE = 50;
+
+	private final SessionFactory sessionFactory;
+	private final int batchSize;
+	private final int commitInterval;
+
+	/**
+	 * Uses hibernate.jdbc.batch_size from the configuration as flush cadence
+	 * and commits every 20 batches.
+	 */
+	public BulkLoader(SessionFactory sessionFactory) {
+		this(sessionFactory, configuredBatchSize(sessionFactory), configuredBatchSize(sessionFactory) * 20);
+	}
+
+	public BulkLoader(SessionFactory sessionFactory, int batchSize, int commitInterval) {
+		if (batchSize <= 0 || commitInterval < batchSize) {
+			throw new IllegalArgumentException("batchSize must be > 0 and commitInterval >= batchSize");
+		}
+		this.sessionFactory = sessionFactory;
+		this.batchSize = batchSize;
+		this.commitInterval = commitInterval;
+	}
+
+	/**
+	 * Saves every row returned by the iterator and returns the number of rows saved.
+	 * Rows are pulled lazily, so the caller can generate or read them on the fly.
+	 */
+	public long load(Iterator<?> rows) {
+		long saved = 0;
+		Session session = sessionFactory.openSession();
+		try {
+			Transaction tx = session.beginTransaction();
+			while (rows.hasNext()) {
+				session.save(rows.next());
+				saved++;
+				if (saved % batchSize == 0) {
+					/**
+					 * Sends the pending inserts as one JDBC batch and detaches them
+					 * so the persistence context does not grow
+					 */
+					session.flush();
+					session.clear();
+				}
+				if (saved % commitInterval == 0) {
+					tx.commit();
+					tx = session.beginTransaction();
+				}
+			}
+			tx.commit();
+		} catch (RuntimeException e) {
+			if (session.getTransaction().isActive()) {
+				session.getTransaction().rollback();
+			}
+			throw e;
+		} finally {
+			session.close();
+		}
+		return saved;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getCommitInterval() {
+		return commitInterval;
+	}
+
+	private static int configuredBatchSize(SessionFactory sessionFactory) {
+		Object value = sessionFactory.getProperties().get(AvailableSettings.STATEMENT_BATCH_SIZE);
+		if (value == null) {
+			return DEFAULT_BATCH_SIZE;
+		}
+		int size = Integer.parseInt(value.toString().trim());
+		return size > 0 ? size : DEFAULT_BATCH_SIZE;
+	}
+}
@@ -0,0 +1,435 @@
+package orm.hibernate.hql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.query.NativeQuery;
+import org.jboss.logging.Logger;
+
+/**
+ * Runs a large update or delete as many small transactions.
+ *
+ * A single "update Student set .. where name=:x" locks every matching row until it
+ * commits, keeps the undo of all of them and, like every bulk HQL statement, evicts
+ * the whole second level cache region of the entity. The executor reads the matching
+ * primary keys in order, cuts them into chunks of chunkSize keys, keeping only the
+ * first and last key of each, so sparse keys make no empty chunks, and runs the
+ * statement once per chunk, each in its own session and transaction, on parallelism
+ * threads. A chunk locks its matching rows (select .. for update) and their cache
+ * entries, writes the rows and after the transaction evicts exactly those ids from
+ * the cache and invalidates the query cache results of the table.
+ *
+ * The set and where clauses are native SQL over the columns of the entity table, with
+ * :named parameters. Do not change the primary key: rows would move between chunks.
+ * A failing chunk stops the remaining ones, the chunks committed before stay committed
+ * and are reported in the exception, the statement is safe to run again when it is
+ * idempotent.
+ */
+public class BulkMutationExecutor {
+
+	private static final Logger LOGGER = Logger.getLogger(BulkMutationExecutor.class);
+
+	/**
+	 * Synchronized query space of the native statements. Hibernate evicts the regions
+	 * of every entity whose tables are in the query spaces of a native update, or of
+	 * all entities when there are none. No table has this name, the executor does the
+	 * eviction itself.
+	 */
+	private static final String NO_EVICTION_SPACE = "bulk_mutation_executor";
+
+	private static final Set<Class<?>> INTEGRAL_IDS = new HashSet<>(
+			Arrays.asList(Integer.class, int.class, Long.class, long.class, Short.class, short.class));
+
+	private final SessionFactory sessionFactory;
+	private final int chunkSize;
+	private final int parallelism;
+	private final Consumer<Progress> progressListener;
+
+	/**
+	 * Logs the progress after every chunk
+	 */
+	public BulkMutationExecutor(SessionFactory sessionFactory, int chunkSize, int parallelism) {
+		this(sessionFactory, chunkSize, parallelism, progress -> LOGGER.info(progress));
+	}
+
+	/**
+	 * @param chunkSize        matching primary keys written by one transaction
+	 * @param parallelism      chunks running at the same time, each holds a connection
+	 * @param progressListener called after every committed chunk, from the chunk's thread
+	 */
+	public BulkMutationExecutor(SessionFactory sessionFactory, int chunkSize, int parallelism,
+			Consumer<Progress> progressListener) {
+		if (chunkSize <= 0 || parallelism <= 0) {
+			throw new IllegalArgumentException("chunkSize and parallelism must be > 0");
+		}
+		this.sessionFactory = sessionFactory;
+		this.chunkSize = chunkSize;
+		this.parallelism = parallelism;
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * update <table> set <set> where <where>, e.g. update(Student.class, "city = :city",
+	 * "name = :name", params)
+	 */
+	public Result update(Class<?> entity, String set, String where, Map<String, ?> parameters) {
+		AbstractEntityPersister persister = persister(entity);
+		return execute(persister, "update " + persister.getTableName() + " set " + set, where, parameters);
+	}
+
+	/**
+	 * delete from <table> where <where>
+	 */
+	public Result delete(Class<?> entity, String where, Map<String, ?> parameters) {
+		AbstractEntityPersister persister = persister(entity);
+		return execute(persister, "delete from " + persister.getTableName(), where, parameters);
+	}
+
+	private Result execute(AbstractEntityPersister persister, String statement, String where,
+			Map<String, ?> parameters) {
+		String table = persister.getTableName();
+		String id = persister.getIdentifierColumnNames()[0];
+		String predicate = "(" + where + ")";
+		String inChunk = predicate + " and " + id + " >= :chunkFrom and " + id + " <= :chunkTo";
+		String selectIds = "select " + id + " from " + table + " where " + inChunk
+				+ sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect().getForUpdateString();
+		String mutate = statement + " where " + inChunk;
+
+		long start = System.nanoTime();
+		List<long[]> chunks = chunks(table, id, predicate, parameters);
+		if (chunks.isEmpty()) {
+			return new Result(0, 0, 0, System.nanoTime() - start);
+		}
+
+		AtomicLong rows = new AtomicLong();
+		AtomicLong evicted = new AtomicLong();
+		AtomicInteger done = new AtomicInteger();
+		AtomicBoolean failed = new AtomicBoolean();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()), runnable -> {
+			Thread thread = new Thread(runnable, "bulk-mutation-" + table);
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (long[] chunk : chunks) {
+				futures.add(pool.submit(() -> {
+					if (failed.get()) {
+						return null;
+					}
+					try {
+						long chunkStart = System.nanoTime();
+						long[] counts = chunk(persister, selectIds, mutate, parameters, chunk[0], chunk[1]);
+						long now = System.nanoTime();
+						long total = rows.addAndGet(counts[0]);
+						evicted.addAndGet(counts[1]);
+						progressListener.accept(new Progress(done.incrementAndGet(), chunks.size(), total,
+								now - start, now - chunkStart));
+					} catch (RuntimeException e) {
+						failed.set(true);
+						throw new HibernateException("Chunk " + id + " in [" + chunk[0] + ", " + chunk[1]
+								+ "] failed", e);
+					}
+					return null;
+				}));
+			}
+			HibernateException failure = null;
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = (HibernateException) e.getCause();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					failed.set(true);
+					throw new HibernateException("Interrupted, " + done.get() + " chunks committed");
+				}
+			}
+			if (failure != null) {
+				throw new HibernateException(failure.getMessage() + ", " + done.get() + " of " + chunks.size()
+						+ " chunks with " + rows.get() + " rows were committed", failure.getCause());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return new Result(rows.get(), chunks.size(), evicted.get(), System.nanoTime() - start);
+	}
+
+	/**
+	 * First and last key of every chunkSize matching keys, in key order. Only the
+	 * bounds are kept, the keys are scrolled forward.
+	 */
+	private List<long[]> chunks(String table, String id, String predicate, Map<String, ?> parameters) {
+		List<long[]> chunks = new ArrayList<>();
+		try (Session session = sessionFactory.openSession()) {
+			NativeQuery<?> query = session.createNativeQuery(
+					"select " + id + " from " + table + " where " + predicate + " order by " + id);
+			bind(query, parameters);
+			query.setFetchSize(chunkSize).setReadOnly(true);
+			try (ScrollableResults keys = query.scroll(ScrollMode.FORWARD_ONLY)) {
+				long[] chunk = null;
+				int size = 0;
+				while (keys.next()) {
+					long key = ((Number) keys.get(0)).longValue();
+					if (chunk == null) {
+						chunk = new long[] { key, key };
+						chunks.add(chunk);
+					}
+					chunk[1] = key;
+					if (++size == chunkSize) {
+						chunk = null;
+						size = 0;
+					}
+				}
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * One transaction, returns the rows written and the ids evicted. The cache entries
+	 * of the ids are soft locked before the statement, a concurrent load of a locked id
+	 * is not put into the cache, and unlocked and evicted once the transaction is over,
+	 * like hibernate's own bulk operations do for the whole region.
+	 */
+	private long[] chunk(AbstractEntityPersister persister, String selectIds, String mutate,
+			Map<String, ?> parameters, long from, long to) {
+		List<?> ids;
+		int rows;
+		try (Session session = sessionFactory.openSession()) {
+			SharedSessionContractImplementor implementor = session.unwrap(SharedSessionContractImplementor.class);
+			Map<Object, SoftLock> locks = new LinkedHashMap<>();
+			Transaction tx = session.beginTransaction();
+			try {
+				NativeQuery<?> select = session.createNativeQuery(selectIds);
+				bind(select, parameters);
+				ids = select.setParameter("chunkFrom", from).setParameter("chunkTo", to).list();
+				if (ids.isEmpty()) {
+					tx.commit();
+					return new long[] { 0, 0 };
+				}
+				lock(implementor, persister, ids, locks);
+				NativeQuery<?> update = session.createNativeQuery(mutate).addSynchronizedQuerySpace(NO_EVICTION_SPACE);
+				bind(update, parameters);
+				rows = update.setParameter("chunkFrom", from).setParameter("chunkTo", to).executeUpdate();
+				tx.commit();
+			} catch (RuntimeException e) {
+				if (tx.isActive()) {
+					tx.rollback();
+				}
+				throw e;
+			} finally {
+				unlock(implementor, persister, locks);
+			}
+			return new long[] { rows, invalidate(implementor, persister, ids) };
+		}
+	}
+
+	/**
+	 * Soft locks the cache entries of the ids and pre invalidates the query cache
+	 * results of the table
+	 */
+	private void lock(SharedSessionContractImplementor session, AbstractEntityPersister persister, List<?> ids,
+			Map<Object, SoftLock> locks) {
+		SessionFactoryImplementor factory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+		if (persister.canWriteToCache()) {
+			EntityDataAccess cache = persister.getCacheAccessStrategy();
+			Class<?> idType = persister.getIdentifierType().getReturnedClass();
+			for (Object id : ids) {
+				Object key = cache.generateCacheKey(toId((Number) id, idType), persister, factory,
+						session.getTenantIdentifier());
+				locks.put(key, cache.lockItem(session, key, null));
+			}
+		}
+		TimestampsCache timestamps = factory.getCache().getTimestampsCache();
+		if (timestamps != null && factory.getSessionFactoryOptions().isQueryCacheEnabled()) {
+			timestamps.preInvalidate(persister.getQuerySpaces(), session);
+		}
+	}
+
+	private static void unlock(SharedSessionContractImplementor session, AbstractEntityPersister persister,
+			Map<Object, SoftLock> locks) {
+		EntityDataAccess cache = persister.getCacheAccessStrategy();
+		locks.forEach((key, lock) -> cache.unlockItem(session, key, lock));
+	}
+
+	/**
+	 * Evicts the written ids and marks the tables as changed for the query cache
+	 */
+	private long invalidate(SharedSessionContractImplementor session, AbstractEntityPersister persister,
+			List<?> ids) {
+		SessionFactoryImplementor factory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+		long evicted = 0;
+		if (persister.canWriteToCache()) {
+			Class<?> idType = persister.getIdentifierType().getReturnedClass();
+			for (Object id : ids) {
+				factory.getCache().evictEntityData(persister.getEntityName(), toId((Number) id, idType));
+				evicted++;
+			}
+		}
+		TimestampsCache timestamps = factory.getCache().getTimestampsCache();
+		if (timestamps != null && factory.getSessionFactoryOptions().isQueryCacheEnabled()) {
+			timestamps.invalidate(persister.getQuerySpaces(), session);
+		}
+		return evicted;
+	}
+
+	/**
+	 * Set clause parameters do not occur in the queries of the where clause
+	 */
+	private static void bind(NativeQuery<?> query, Map<String, ?> parameters) {
+		Set<String> names = query.getParameterMetadata().getNamedParameterNames();
+		parameters.forEach((name, value) -> {
+			if (names.contains(name)) {
+				query.setParameter(name, value);
+			}
+		});
+	}
+
+	private static Serializable toId(Number id, Class<?> idType) {
+		if (idType == Integer.class || idType == int.class) {
+			return id.intValue();
+		}
+		if (idType == Short.class || idType == short.class) {
+			return id.shortValue();
+		}
+		return id.longValue();
+	}
+
+	private AbstractEntityPersister persister(Class<?> entity) {
+		AbstractEntityPersister persister = (AbstractEntityPersister) sessionFactory
+				.unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(entity);
+		if (!INTEGRAL_IDS.contains(persister.getIdentifierType().getReturnedClass())) {
+			throw new IllegalArgumentException(entity.getName() + " has no integral primary key");
+		}
+		return persister;
+	}
+
+	/**
+	 * State after a committed chunk
+	 */
+	public static class Progress {
+
+		private final int chunksDone;
+		private final int chunks;
+		private final long rows;
+		private final long elapsedNanos;
+		private final long chunkNanos;
+
+		Progress(int chunksDone, int chunks, long rows, long elapsedNanos, long chunkNanos) {
+			this.chunksDone = chunksDone;
+			this.chunks = chunks;
+			this.rows = rows;
+			this.elapsedNanos = elapsedNanos;
+			this.chunkNanos = chunkNanos;
+		}
+
+		public int getChunksDone() {
+			return chunksDone;
+		}
+
+		public int getChunks() {
+			return chunks;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * Duration of the transaction of the chunk that just committed
+		 */
+		public long getChunkNanos() {
+			return chunkNanos;
+		}
+
+		public double getRowsPerSecond() {
+			return rows / (elapsedNanos / 1_000_000_000.0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Chunk %d/%d, %d rows in %.3f s (%.0f rows/s)", chunksDone, chunks, rows,
+					elapsedNanos / 1_000_000_000.0, getRowsPerSecond());
+		}
+	}
+
+	/**
+	 * Outcome of one update or delete
+	 */
+	public static class Result {
+
+		private final long rows;
+		private final int chunks;
+		private final long evictedEntries;
+		private final long elapsedNanos;
+
+		Result(long rows, int chunks, long evictedEntries, long elapsedNanos) {
+			this.rows = rows;
+			this.chunks = chunks;
+			this.evictedEntries = evictedEntries;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public int getChunks() {
+			return chunks;
+		}
+
+		/**
+		 * Ids evicted from the second level cache, 0 for entities that are not cached
+		 */
+		public long getEvictedEntries() {
+			return evictedEntries;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public double getRowsPerSecond() {
+			return rows / (elapsedNanos / 1_000_000_000.0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d rows in %d chunks, %d cache entries evicted, %.3f s (%.0f rows/s)", rows, chunks,
+					evictedEntries, elapsedNanos / 1_000_000_000.0, getRowsPerSecond());
+		}
+	}
+}
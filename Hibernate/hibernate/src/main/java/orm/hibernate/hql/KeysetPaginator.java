@@ -0,0 +1,231 @@
+package orm.hibernate.hql;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+
+/**
+ * Keyset (seek) pagination over one entity, ordered by a unique sort key.
+ *
+ * setFirstResult(n) becomes OFFSET n, the database still reads and throws away the
+ * first n rows, so every page is slower than the one before it. Keyset pagination
+ * remembers the sort key of the last row of a page and asks for the rows after it
+ *
+ *   select e from Paginator e where e.id > :last order by e.id
+ *
+ * which the database answers with an index seek, page 10000 costs the same as page 1.
+ *
+ * Pages hand out opaque cursors, callers pass them back to next(..) or previous(..)
+ * and never need to know which column is behind them.
+ */
+public class KeysetPaginator<T> {
+
+	private final Class<T> entityClass;
+	private final String sortKey;
+	private final int pageSize;
+	private final long totalTtlMillis;
+
+	private volatile long cachedTotal = -1;
+	private volatile long cachedTotalAt;
+
+	/**
+	 * @param entityClass mapped entity to page through
+	 * @param sortKey     unique, not null attribute to order by, e.g. "id"
+	 * @param pageSize    rows per page
+	 */
+	public KeysetPaginator(Class<T> entityClass, String sortKey, int pageSize) {
+		this(entityClass, sortKey, pageSize, null);
+	}
+
+	/**
+	 * @param totalTtl how long a counted total is reused before counting again,
+	 *                 null to never count
+	 */
+	public KeysetPaginator(Class<T> entityClass, String sortKey, int pageSize, Duration totalTtl) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be > 0");
+		}
+		this.entityClass = entityClass;
+		this.sortKey = sortKey;
+		this.pageSize = pageSize;
+		this.totalTtlMillis = totalTtl == null ? -1 : totalTtl.toMillis();
+	}
+
+	public Page<T> first(Session session) {
+		return forward(session, null);
+	}
+
+	/**
+	 * Page following the row the cursor points at
+	 */
+	public Page<T> next(Session session, String cursor) {
+		return forward(session, decode(session, cursor));
+	}
+
+	/**
+	 * Page preceding the row the cursor points at
+	 */
+	public Page<T> previous(Session session, String cursor) {
+		Object before = decode(session, cursor);
+		List<Object[]> rows = fetch(session, " where e." + sortKey + " < :key order by e." + sortKey + " desc", before);
+		boolean hasPrevious = rows.size() > pageSize;
+		if (hasPrevious) {
+			rows = rows.subList(0, pageSize);
+		}
+		rows = new ArrayList<>(rows);
+		Collections.reverse(rows);
+		return page(session, rows, hasPrevious, true);
+	}
+
+	/**
+	 * Row count of the entity, counted at most once per ttl. Returns -1 when no
+	 * ttl was configured.
+	 */
+	public long approximateTotal(Session session) {
+		if (totalTtlMillis < 0) {
+			return -1;
+		}
+		long now = System.currentTimeMillis();
+		if (cachedTotal < 0 || now - cachedTotalAt > totalTtlMillis) {
+			cachedTotal = session.createQuery("select count(e) from " + entityClass.getName() + " e", Long.class)
+					.uniqueResult();
+			cachedTotalAt = now;
+		}
+		return cachedTotal;
+	}
+
+	private Page<T> forward(Session session, Object after) {
+		String clause = after == null ? "" : " where e." + sortKey + " > :key";
+		List<Object[]> rows = fetch(session, clause + " order by e." + sortKey, after);
+		boolean hasNext = rows.size() > pageSize;
+		if (hasNext) {
+			rows = rows.subList(0, pageSize);
+		}
+		boolean hasPrevious = after != null && !rows.isEmpty() && anyBefore(session, rows.get(0)[1]);
+		return page(session, rows, hasPrevious, hasNext);
+	}
+
+	/**
+	 * Whether a row sorts before the key, the cursor of a next page may point before
+	 * the first row or at a row that was deleted since
+	 */
+	private boolean anyBefore(Session session, Object key) {
+		return !session.createQuery("select e." + sortKey + " from " + entityClass.getName() + " e where e."
+				+ sortKey + " < :key").setParameter("key", key).setMaxResults(1).list().isEmpty();
+	}
+
+	/**
+	 * Selects the entity together with its sort key and one row more than a page
+	 * so we know whether there is another page without a count query
+	 */
+	private List<Object[]> fetch(Session session, String clause, Object key) {
+		Query<Object[]> query = session.createQuery(
+				"select e, e." + sortKey + " from " + entityClass.getName() + " e" + clause, Object[].class);
+		if (key != null) {
+			query.setParameter("key", key);
+		}
+		query.setMaxResults(pageSize + 1);
+		return query.list();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Page<T> page(Session session, List<Object[]> rows, boolean hasPrevious, boolean hasNext) {
+		List<T> items = new ArrayList<>(rows.size());
+		for (Object[] row : rows) {
+			items.add((T) row[0]);
+		}
+		String previousCursor = null;
+		String nextCursor = null;
+		if (!rows.isEmpty()) {
+			previousCursor = hasPrevious ? encode(rows.get(0)[1]) : null;
+			nextCursor = hasNext ? encode(rows.get(rows.size() - 1)[1]) : null;
+		}
+		return new Page<>(items, previousCursor, nextCursor, approximateTotal(session));
+	}
+
+	private static String encode(Object key) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(String.valueOf(key).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Object decode(Session session, String cursor) {
+		if (cursor == null) {
+			throw new IllegalArgumentException("cursor must not be null, use first(..) for the first page");
+		}
+		String value;
+		try {
+			value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Not a cursor of this paginator: " + cursor, e);
+		}
+		Class<?> type = session.getSessionFactory().getMetamodel().entity(entityClass)
+				.getAttribute(sortKey).getJavaType();
+		if (type == int.class || type == Integer.class) {
+			return Integer.valueOf(value);
+		}
+		if (type == long.class || type == Long.class) {
+			return Long.valueOf(value);
+		}
+		if (type == String.class) {
+			return value;
+		}
+		throw new IllegalStateException("Unsupported sort key type " + type.getName() + " for " + sortKey);
+	}
+
+	/**
+	 * One page of results with the cursors to move around from it
+	 */
+	public static class Page<T> {
+
+		private final List<T> items;
+		private final String previousCursor;
+		private final String nextCursor;
+		private final long approximateTotal;
+
+		Page(List<T> items, String previousCursor, String nextCursor, long approximateTotal) {
+			this.items = Collections.unmodifiableList(items);
+			this.previousCursor = previousCursor;
+			this.nextCursor = nextCursor;
+			this.approximateTotal = approximateTotal;
+		}
+
+		public List<T> getItems() {
+			return items;
+		}
+
+		/**
+		 * Cursor for previous(..), null on the first page
+		 */
+		public String getPreviousCursor() {
+			return previousCursor;
+		}
+
+		/**
+		 * Cursor for next(..), null on the last page
+		 */
+		public String getNextCursor() {
+			return nextCursor;
+		}
+
+		public boolean hasPrevious() {
+			return previousCursor != null;
+		}
+
+		public boolean hasNext() {
+			return nextCursor != null;
+		}
+
+		/**
+		 * Cached row count of the whole entity, -1 when not enabled
+		 */
+		public long getApproximateTotal() {
+			return approximateTotal;
+		}
+	}
+}
@@ -1,41 +1,50 @@
 package orm.hibernate.hql;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
-import org.hibernate.cfg.Configuration;
 import org.hibernate.query.NativeQuery;
 import org.hibernate.query.Query;
 
+import orm.hibernate.SessionFactoryRegistry;
 import orm.hibernate.annotation.Student;
 import orm.hibernate.annotation.onetoone.Personal;
+import orm.hibernate.writebehind.WriteBehindBuffer;
 
 public class MainMethod {
 
+	/**
+	 * Ad hoc HQL of this entry point, warmUp() parses the same strings, the query plan
+	 * cache is keyed by the exact text
+	 */
+	public static final String STUDENTS_BY_NAME = "from Student st where st.name=:x";
+	public static final String RENUMBER_STUDENT = "update Student set id=:n where name=:x";
+	public static final String PAGINATORS = "from Paginator";
+	public static final String PAGINATORS_BY_ID = "from Paginator order by id";
+
+	/**
+	 * Parses the HQL above and opens the connections of the first requests
+	 */
+	public static SessionFactoryRegistry.WarmUp warmUp() {
+		return new SessionFactoryRegistry.WarmUp()
+				.hql(STUDENTS_BY_NAME, RENUMBER_STUDENT, PAGINATORS, PAGINATORS_BY_ID)
+				.connections(4);
+	}
+
 	public static void main(String[] args) {
-		  /**
-		   * This line creates a new instance of the Configuration class from Hibernate.
-		   * The Configuration object is used to configure Hibernate and set up its properties.
-		   */
-		  Configuration con=new Configuration();
-		  
-		  /**
-		   * This line tells the Configuration object to load the configuration settings from the file
-		   *  hibernateConfig.cfg.xml, located in the orm/hibernate directory.
-		   * The XML file contains important settings such as database connection details, dialect, 
-		   *  mappings, and other Hibernate configurations.
-		   */
-		  con.configure("orm/hibernate/hibernateConfig.cfg.xml");
-	  
 		  /**
 		   * The SessionFactory is a crucial object in Hibernate. It is a factory for Session objects, 
-		   * which are used to interact with the database. The SessionFactory is typically created once 
-		   * and used to create multiple Session instances.
+		   * which are used to interact with the database. It is expensive to build, so it is created once
+		   * per configuration file by SessionFactoryRegistry and shared by every entry point.
 		   */
-		  SessionFactory ssf=con.buildSessionFactory();
+		  SessionFactory ssf=SessionFactoryRegistry.get(SessionFactoryRegistry.DEFAULT_CONFIG,
+				warmUp());
 		  
 		  /**
 		   * Created a session
@@ -59,7 +68,7 @@ public class MainMethod {
 		   * Student_data is the table created
 		   * st here is alias
 		   */
-		  hqlQuery="from Student st where st.name=:x";
+		  hqlQuery=STUDENTS_BY_NAME;
 		  
 		  /**
 		   * Query is an interface
@@ -79,48 +88,66 @@ public class MainMethod {
 		  /**
 		   * Using session we created a new transaction
 		   */
-		  hqlQuery=" update Student set id=:n where name=:x";
+		  hqlQuery=RENUMBER_STUDENT;
 		  query=session.createQuery(hqlQuery);
 		  query.setParameter("n", 2);
 		  query.setParameter("x", "Harsh");
 		  int rowsaffected=query.executeUpdate();
 		  System.out.println("Updated Rows - "+rowsaffected);
-		  
-		  
-		  hqlQuery=" delete from Student where name=:x";
-		  query=session.createQuery(hqlQuery);
-		  query.setParameter("x", "Harsh");
-		  rowsaffected=query.executeUpdate();
-		  System.out.println("Deleted Rows - "+rowsaffected);
 		  tx.commit();
 
+		  /**
+		   * Frequent changes of the same student, each one its own update statement and
+		   * commit. WriteBehindBuffer keeps them per id and writes the row once per flush,
+		   * close() writes what is still pending.
+		   */
+		  try (WriteBehindBuffer<Student, Integer> profiles=new WriteBehindBuffer<>(ssf, Student.class,
+				  new WriteBehindBuffer.Options().maxLagMillis(500))) {
+			  for (String city : new String[] {"Pune", "Mumbai", "Delhi"}) {
+				  profiles.update(2, st -> st.setCity(city));
+			  }
+			  profiles.flush();
+			  System.out.println(profiles);
+		  }
+		  
+		  /**
+		   * One delete statement over a large table locks every matching row until it commits
+		   * and evicts the whole student cache region. BulkMutationExecutor deletes chunks of
+		   * 1000 ids in their own transactions on 4 threads and evicts only the deleted ids.
+		   * The id update above stays a single statement, chunks are bounded by matching ids.
+		   */
+		  BulkMutationExecutor.Result deleted=new BulkMutationExecutor(ssf, 1000, 4)
+				  .delete(Student.class, "name = :x", Collections.singletonMap("x", "Harsh"));
+		  System.out.println("Deleted Rows - "+deleted.getRows());
+
 		  
 		  /**
 		   * In Joined Operation, here we use OneToOne mapping relation where payroll
 		   * is a part of Personal, so using Personal instance variable
 		   * we will perform join operation
+		   * 
+		   * PayrollReport reads the join from a cursor with a fetch size and passes the columns
+		   * of each row to the callback, no entity, Object[] or row object is created. Measured
+		   * against the Object[] query (PayrollReportBenchmark) it takes about a third less time
+		   * and allocation, its list() of PayrollReportRow is typed but not cheaper than Object[].
 		   */
-		  hqlQuery="select psl.firstname,psl.lastname,prl.payrate from Personal as psl inner join psl.personalEmployeesPayroll as prl";
-		  query=session.createQuery(hqlQuery);
-		  
-		  List<Object[]> joinResult=query.list();
-		  for(Object[] obj: joinResult) {
-			  System.out.println(obj[0]+" "+obj[1]+" "+obj[2]);
-		  }
-		  tx.begin();
+		  new PayrollReport(500).forEach(session,
+				  (firstname, lastname, payrate) -> System.out.println(firstname+" "+lastname+" "+payrate));
+		  List<Paginator> rows=new ArrayList<>();
 		  for (int i = 1; i < 201; i++) {
 			  Paginator pg=new Paginator();
 			  pg.setIdval("value "+i);
-			  session.save(pg);
-	    	  tx.commit();
-			  tx.begin();
-	    	  /**
-	    	   * Whenever we commit, transaction gets completed
-	    	   * so we need to again start the transaction
-	    	   */
+			  rows.add(pg);
 		  }
+		  /**
+		   * Committing after every row means one insert statement and one commit
+		   * per row. BulkLoader inserts them in JDBC batches of hibernate.jdbc.batch_size,
+		   * flushing and clearing its own session after every batch.
+		   */
+		  long inserted=new BulkLoader(ssf).load(rows.iterator());
+		  System.out.println("Inserted Rows - "+inserted);
 		  
-		  hqlQuery=" from Paginator";
+		  hqlQuery=PAGINATORS;
 		  query=session.createQuery(hqlQuery);
 		  query.setFirstResult(100); // Starting from which row
 		  query.setMaxResults(10); // fetch 10 values
@@ -131,6 +158,20 @@ public class MainMethod {
 			  System.out.println(objf.getId());
 		  }
 		  
+		  /**
+		   * Offset paging reads and skips every earlier row, so deep pages get slower.
+		   * Keyset paging continues after the id of the last row we have seen
+		   * (where id > :last order by id), the cursor of a page leads to the next one.
+		   */
+		  KeysetPaginator<Paginator> paginator=new KeysetPaginator<>(Paginator.class, "id", 10);
+		  KeysetPaginator.Page<Paginator> page=paginator.first(session);
+		  if (page.hasNext()) {
+			  page=paginator.next(session, page.getNextCursor());
+			  for(Paginator objf:page.getItems()) {
+				  System.out.println(objf.getId());
+			  }
+		  }
+		  
 		  
 		  /**
 		   * Executing Native Queries
@@ -143,6 +184,21 @@ public class MainMethod {
 			  System.out.println(objn[0]+" "+objn[1]);
 		  }
 		  
+		  /**
+		   * list() loads every row into memory at once. For large tables scroll over
+		   * the rows and write them out one by one, each entity is evicted again from
+		   * the session once it is written.
+		   */
+		  try {
+			  StreamingExporter.Result exported=new StreamingExporter(1000).export(session,
+					  session.createQuery(PAGINATORS_BY_ID, Paginator.class),
+					  (Paginator p) -> p.getId()+","+p.getIdval(),
+					  Paths.get("paginator.csv"));
+			  System.out.println("Exported Rows - "+exported.getRows());
+		  } catch (IOException e) {
+			  e.printStackTrace();
+		  }
+		  
 		  session.close();
 
 	}
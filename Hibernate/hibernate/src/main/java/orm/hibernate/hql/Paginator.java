@@ -3,13 +3,46 @@ package orm.hibernate.hql;
 import javax.persistence.Entity;
 import javax.persistence.*;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.search.engine.backend.types.Projectable;
+import org.hibernate.search.engine.backend.types.Sortable;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.GenericField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.KeywordField;
+
+import orm.hibernate.search.IdvalAnalysisConfigurer;
+
+/**
+ * Indexed in the embedded Lucene index (hibernate.search.* in the configuration), see
+ * orm.hibernate.search.PaginatorSearch
+ */
 @Entity
+@Indexed
 public class Paginator {
 
+	/**
+	 * IDENTITY forces Hibernate to fire every insert immediately to read back the
+	 * generated key, which disables JDBC batching. The pooled generator reserves
+	 * 50 ids per round trip to the paginator_seq sequence (a table on MySQL),
+	 * so inserts can be grouped into hibernate.jdbc.batch_size batches.
+	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "paginator_id")
+	@GenericGenerator(
+			name = "paginator_id",
+			strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+			parameters = {
+					@Parameter(name = "sequence_name", value = "paginator_seq"),
+					@Parameter(name = "increment_size", value = "50"),
+					@Parameter(name = "optimizer", value = "pooled")
+			})
+	@GenericField(name = "id_value", sortable = Sortable.YES, projectable = Projectable.YES)
 	private int id;
-	
+
+	@FullTextField(analyzer = IdvalAnalysisConfigurer.NGRAM)
+	@KeywordField(name = "idval_keyword", normalizer = IdvalAnalysisConfigurer.LOWERCASE)
 	private String idval;
 
 	public int getId() {
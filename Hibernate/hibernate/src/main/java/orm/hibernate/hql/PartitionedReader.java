@@ -0,0 +1,209 @@
+package orm.hibernate.hql;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.Query;
+
+/**
+ * Reads a whole table on several connections at once.
+ *
+ * The id range of the matching rows is cut into partitions. A fork join pool splits
+ * the partitions in halves until one is left per task, every task reads its partition
+ * on its own StatelessSession (no persistence context, no cache, its own connection)
+ * and the partial results are merged pairwise on the way back up. With one session a
+ * full scan or an aggregate uses one core of the database and one of the client.
+ *
+ * The connection pool must allow parallelism connections next to the application's,
+ * hibernate.hikari.maximumPoolSize. The id must be integral. Partitions are ranges of
+ * equal width, ids with big gaps give uneven partitions, more partitions than threads
+ * even that out.
+ */
+public class PartitionedReader implements AutoCloseable {
+
+	private final SessionFactory sessionFactory;
+	private final ForkJoinPool pool;
+	private final int partitions;
+	private final int fetchSize;
+
+	/**
+	 * @param parallelism partitions read at the same time, one connection each
+	 * @param partitions  number of id ranges, a few times parallelism
+	 * @param fetchSize   rows per round trip when scanning
+	 */
+	public PartitionedReader(SessionFactory sessionFactory, int parallelism, int partitions, int fetchSize) {
+		if (parallelism <= 0 || partitions <= 0 || fetchSize <= 0) {
+			throw new IllegalArgumentException("parallelism, partitions and fetchSize must be > 0");
+		}
+		this.sessionFactory = sessionFactory;
+		this.pool = new ForkJoinPool(parallelism);
+		this.partitions = partitions;
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Streams every entity matching the where clause (HQL over alias e, may be null)
+	 * through the collector. The collector's combiner merges the partial results of the
+	 * partitions, it must not depend on their order.
+	 */
+	public <T, A, R> R scan(Class<T> entity, String where, Map<String, ?> parameters,
+			Collector<? super T, A, R> collector) {
+		A result = run(entity, where, parameters, (range) -> {
+			A partial = collector.supplier().get();
+			try (StatelessSession session = sessionFactory.openStatelessSession()) {
+				Query<T> query = session.createQuery("from " + entityName(entity) + " e where "
+						+ restriction(entity, where), entity);
+				bind(entity, query, parameters, range);
+				query.setFetchSize(fetchSize);
+				try (ScrollableResults rows = query.scroll(ScrollMode.FORWARD_ONLY)) {
+					while (rows.next()) {
+						@SuppressWarnings("unchecked")
+						T row = (T) rows.get(0);
+						collector.accumulator().accept(partial, row);
+					}
+				}
+			}
+			return partial;
+		}, collector.combiner(), collector.supplier().get());
+		return collector.finisher().apply(result);
+	}
+
+	/**
+	 * Runs an aggregate select (HQL over alias e, e.g. "select sum(e.id)") once per
+	 * partition and merges the partial results with the combiner. Partitions without
+	 * a matching row (null result) are skipped, the result is null when no partition
+	 * has one, like the SQL aggregate.
+	 */
+	public <R> R aggregate(Class<?> entity, String select, Class<R> resultType, String where,
+			Map<String, ?> parameters, BinaryOperator<R> combiner) {
+		return run(entity, where, parameters, range -> {
+			try (StatelessSession session = sessionFactory.openStatelessSession()) {
+				Query<R> query = session.createQuery(select + " from " + entityName(entity) + " e where "
+						+ restriction(entity, where), resultType);
+				bind(entity, query, parameters, range);
+				return query.uniqueResult();
+			}
+		}, (left, right) -> left == null ? right : right == null ? left : combiner.apply(left, right), null);
+	}
+
+	/**
+	 * Same as aggregate(..) without a where clause
+	 */
+	public <R> R aggregate(Class<?> entity, String select, Class<R> resultType, BinaryOperator<R> combiner) {
+		return aggregate(entity, select, resultType, null, Collections.emptyMap(), combiner);
+	}
+
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	private <P> P run(Class<?> entity, String where, Map<String, ?> parameters, Function<long[], P> reader,
+			BinaryOperator<P> combiner, P empty) {
+		long[] bounds;
+		try (StatelessSession session = sessionFactory.openStatelessSession()) {
+			Query<Object[]> query = session.createQuery("select min(e." + idName(entity) + "), max(e."
+					+ idName(entity) + ") from " + entityName(entity) + " e"
+					+ (where == null ? "" : " where " + where), Object[].class);
+			parameters.forEach(query::setParameter);
+			Object[] minMax = query.uniqueResult();
+			if (minMax[0] == null) {
+				return empty;
+			}
+			bounds = new long[] { ((Number) minMax[0]).longValue(), ((Number) minMax[1]).longValue() };
+		}
+		long width = (bounds[1] - bounds[0]) / partitions + 1;
+		int count = (int) ((bounds[1] - bounds[0]) / width + 1);
+		return pool.invoke(new PartitionTask<>(bounds[0], width, bounds[1], 0, count, reader, combiner));
+	}
+
+	private String restriction(Class<?> entity, String where) {
+		String id = "e." + idName(entity);
+		return (where == null ? "" : "(" + where + ") and ") + id + " between :partitionFrom and :partitionTo";
+	}
+
+	/**
+	 * The bounds are bound in the Java type of the id, an Integer id does not take a Long
+	 */
+	private void bind(Class<?> entity, Query<?> query, Map<String, ?> parameters, long[] range) {
+		parameters.forEach(query::setParameter);
+		Class<?> idType = persister(entity).getIdentifierType().getReturnedClass();
+		query.setParameter("partitionFrom", toId(range[0], idType));
+		query.setParameter("partitionTo", toId(range[1], idType));
+	}
+
+	private static Number toId(long id, Class<?> idType) {
+		if (idType == Integer.class || idType == int.class) {
+			return (int) id;
+		}
+		if (idType == Short.class || idType == short.class) {
+			return (short) id;
+		}
+		return id;
+	}
+
+	private EntityPersister persister(Class<?> entity) {
+		return sessionFactory.unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(entity);
+	}
+
+	private String entityName(Class<?> entity) {
+		return persister(entity).getEntityName();
+	}
+
+	private String idName(Class<?> entity) {
+		return persister(entity).getIdentifierPropertyName();
+	}
+
+	/**
+	 * Partitions [first, last) of the range, split in halves until one is left. A
+	 * partition is the inclusive id range [from, to], the last one ends at end.
+	 */
+	private static final class PartitionTask<P> extends RecursiveTask<P> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long start;
+		private final long width;
+		private final long end;
+		private final int first;
+		private final int last;
+		private final transient Function<long[], P> reader;
+		private final transient BinaryOperator<P> combiner;
+
+		PartitionTask(long start, long width, long end, int first, int last, Function<long[], P> reader,
+				BinaryOperator<P> combiner) {
+			this.start = start;
+			this.width = width;
+			this.end = end;
+			this.first = first;
+			this.last = last;
+			this.reader = reader;
+			this.combiner = combiner;
+		}
+
+		@Override
+		protected P compute() {
+			if (last - first == 1) {
+				long from = start + first * width;
+				return reader.apply(new long[] { from, Math.min(from + width - 1, end) });
+			}
+			int middle = (first + last) >>> 1;
+			PartitionTask<P> left = new PartitionTask<>(start, width, end, first, middle, reader, combiner);
+			PartitionTask<P> right = new PartitionTask<>(start, width, end, middle, last, reader, combiner);
+			left.fork();
+			P rightResult = right.compute();
+			return combiner.apply(left.join(), rightResult);
+		}
+	}
+}
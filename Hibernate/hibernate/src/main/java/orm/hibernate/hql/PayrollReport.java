@@ -0,0 +1,124 @@
+package orm.hibernate.hql;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.query.Query;
+
+import orm.hibernate.annotation.onetoone.Payroll;
+import orm.hibernate.annotation.onetoone.Personal;
+
+/**
+ * First name, last name and pay rate of every employee, from the Personal to Payroll join.
+ *
+ * list() and stream() create PayrollReportRow objects directly from the result set, no
+ * Personal or Payroll entity is built, so nothing is added to the persistence context and
+ * no loaded state snapshot is kept for dirty checking. That makes them much cheaper than
+ * selecting the entities, but not cheaper than selecting the three columns as Object[]:
+ * hibernate still builds an Object[] per row before the constructor runs, the row object
+ * comes on top. forEach(..) is the path for large reports, it reads the join over the JDBC
+ * connection of the session with the fetch size and hands the columns of each row to a
+ * callback, no Object[] or row object is created and the rows are never held together.
+ * list() and stream() do not flush the session before they run, forEach(..) flushes it
+ * itself because its SQL bypasses the auto flush of HQL queries.
+ */
+public class PayrollReport {
+
+	static final String HQL = "select new orm.hibernate.hql.PayrollReportRow(psl.firstname, psl.lastname, prl.payrate)"
+			+ " from Personal as psl inner join psl.personalEmployeesPayroll as prl";
+
+	private final int fetchSize;
+
+	/**
+	 * @param fetchSize rows the driver fetches per round trip when streaming
+	 */
+	public PayrollReport(int fetchSize) {
+		if (fetchSize <= 0) {
+			throw new IllegalArgumentException("fetchSize must be > 0");
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	public List<PayrollReportRow> list(Session session) {
+		return query(session).list();
+	}
+
+	/**
+	 * Rows as they are read from the cursor, the stream holds the result set open and
+	 * must be closed, e.g. with try-with-resources
+	 */
+	public Stream<PayrollReportRow> stream(Session session) {
+		return query(session).setFetchSize(fetchSize).stream();
+	}
+
+	/**
+	 * Calls the handler once per row, while the rows are read from the cursor, and
+	 * returns the number of rows.
+	 *
+	 * The join runs as plain SQL on the connection of the session, not as HQL: hibernate
+	 * does not auto flush it, does not check the second level or query cache and does
+	 * not apply filters. The session is flushed first, so pending changes of Personal and
+	 * Payroll are in the rows, inside the transaction of the session.
+	 */
+	public long forEach(Session session, RowHandler handler) {
+		String sql = sql(session.getSessionFactory().unwrap(SessionFactoryImplementor.class));
+		if (session.isDirty()) {
+			session.flush();
+		}
+		long[] rows = new long[1];
+		session.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				statement.setFetchSize(fetchSize);
+				try (ResultSet result = statement.executeQuery()) {
+					while (result.next()) {
+						String firstname = result.getString(1);
+						String lastname = result.getString(2);
+						double payrate = result.getDouble(3);
+						handler.row(firstname, lastname, result.wasNull() ? null : payrate);
+						rows[0]++;
+					}
+				}
+			}
+		});
+		return rows[0];
+	}
+
+	/**
+	 * The join of HQL as SQL, table and column names from the mappings
+	 */
+	private static String sql(SessionFactoryImplementor factory) {
+		AbstractEntityPersister personal = (AbstractEntityPersister) factory.getMetamodel()
+				.entityPersister(Personal.class);
+		AbstractEntityPersister payroll = (AbstractEntityPersister) factory.getMetamodel()
+				.entityPersister(Payroll.class);
+		return "select psl." + personal.getPropertyColumnNames("firstname")[0]
+				+ ", psl." + personal.getPropertyColumnNames("lastname")[0]
+				+ ", prl." + payroll.getPropertyColumnNames("payrate")[0]
+				+ " from " + personal.getTableName() + " psl inner join " + payroll.getTableName()
+				+ " prl on prl." + payroll.getIdentifierColumnNames()[0] + " = psl."
+				+ personal.getIdentifierColumnNames()[0];
+	}
+
+	private static Query<PayrollReportRow> query(Session session) {
+		return session.createQuery(HQL, PayrollReportRow.class)
+				.setReadOnly(true)
+				.setHibernateFlushMode(FlushMode.MANUAL)
+				.setCacheMode(CacheMode.IGNORE);
+	}
+
+	/**
+	 * Receives the columns of one row of forEach(..), payrate is null for a NULL column
+	 */
+	@FunctionalInterface
+	public interface RowHandler {
+
+		void row(String firstname, String lastname, Double payrate);
+	}
+}
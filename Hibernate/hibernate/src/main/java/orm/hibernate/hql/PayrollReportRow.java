@@ -0,0 +1,55 @@
+package orm.hibernate.hql;
+
+import java.util.Objects;
+
+/**
+ * One line of the payroll report, created by the constructor expression of
+ * PayrollReport. Immutable, it is not an entity and never enters a persistence context.
+ */
+public final class PayrollReportRow {
+
+	private final String firstname;
+	private final String lastname;
+	private final double payrate;
+
+	public PayrollReportRow(String firstname, String lastname, double payrate) {
+		this.firstname = firstname;
+		this.lastname = lastname;
+		this.payrate = payrate;
+	}
+
+	public String getFirstname() {
+		return firstname;
+	}
+
+	public String getLastname() {
+		return lastname;
+	}
+
+	public double getPayrate() {
+		return payrate;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PayrollReportRow)) {
+			return false;
+		}
+		PayrollReportRow other = (PayrollReportRow) obj;
+		return Double.compare(payrate, other.payrate) == 0 && Objects.equals(firstname, other.firstname)
+				&& Objects.equals(lastname, other.lastname);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(firstname, lastname, payrate);
+	}
+
+	@Override
+	public String toString() {
+		return firstname + " " + lastname + " " + payrate;
+	}
+}
@@ -0,0 +1,150 @@
+package orm.hibernate.hql;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.Query;
+
+/**
+ * Writes the result of a query to a file one row at a time.
+ *
+ * query.list() materializes the whole result set and every entity in it stays in the
+ * persistence context until the session closes. The exporter scrolls a forward only
+ * cursor instead, evicts each entity right after it was written, and encodes lines
+ * straight into a direct buffer that is drained into a FileChannel, so heap usage
+ * does not depend on the number of rows.
+ *
+ * With MySQL the driver only streams when the url has useCursorFetch=true (see
+ * hibernateConfig.cfg.xml), otherwise it still buffers the full result set.
+ */
+public class StreamingExporter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final int fetchSize;
+
+	public StreamingExporter(int fetchSize) {
+		if (fetchSize <= 0) {
+			throw new IllegalArgumentException("fetchSize must be > 0");
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Scrolls the query, HQL or native, and writes formatter(row) followed by a new
+	 * line for every row. A row is the entity or value for single column selects and
+	 * the Object[] otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> Result export(Session session, Query<?> query, Function<? super R, ? extends CharSequence> formatter,
+			Path target) throws IOException {
+		query.setFetchSize(fetchSize);
+		query.setReadOnly(true);
+		query.setCacheMode(CacheMode.IGNORE);
+
+		long rows = 0;
+		int peakManagedEntities = 0;
+		CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		PersistenceContext context = session.unwrap(SessionImplementor.class).getPersistenceContext();
+
+		try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+				ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+			while (results.next()) {
+				Object[] row = results.get();
+				Object value = row.length == 1 ? row[0] : row;
+
+				write(channel, encoder, buffer, formatter.apply((R) value));
+				write(channel, encoder, buffer, "\n");
+				rows++;
+
+				peakManagedEntities = Math.max(peakManagedEntities, session.getStatistics().getEntityCount());
+				/**
+				 * Entity is written, nothing references it any more, drop it
+				 * from the persistence context
+				 */
+				for (Object column : row) {
+					if (column != null && context.isEntryFor(column)) {
+						session.evict(column);
+					}
+				}
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			return new Result(rows, channel.size(), peakManagedEntities);
+		}
+	}
+
+	private static void write(FileChannel channel, CharsetEncoder encoder, ByteBuffer buffer, CharSequence text)
+			throws IOException {
+		CharBuffer chars = CharBuffer.wrap(text);
+		while (true) {
+			CoderResult result = encoder.encode(chars, buffer, true);
+			if (result.isOverflow()) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				buffer.clear();
+			} else if (result.isUnderflow()) {
+				encoder.reset();
+				return;
+			} else {
+				result.throwException();
+			}
+		}
+	}
+
+	/**
+	 * Outcome of one export
+	 */
+	public static class Result {
+
+		private final long rows;
+		private final long bytes;
+		private final int peakManagedEntities;
+
+		Result(long rows, long bytes, int peakManagedEntities) {
+			this.rows = rows;
+			this.bytes = bytes;
+			this.peakManagedEntities = peakManagedEntities;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Highest number of entities held by the persistence context during the export
+		 */
+		public int getPeakManagedEntities() {
+			return peakManagedEntities;
+		}
+
+		@Override
+		public String toString() {
+			return "Result [rows=" + rows + ", bytes=" + bytes + ", peakManagedEntities=" + peakManagedEntities + "]";
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package orm.hibernate.pool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Counters of one connection pool. HikariCP reports wait and usage times through
+ * the IMetricsTracker callbacks, the pool sizes are read from its PoolStats (which
+ * HikariCP refreshes at most once a second) and the acquisition latency is recorded
+ * by PooledConnectionProvider.
+ *
+ * All counters are LongAdders or a single compare and set for the maximum, cheap
+ * enough to stay enabled under load.
+ */
+public class PoolMetrics implements MetricsTrackerFactory, PoolMetricsMXBean {
+
+	private final LongAdder acquisitions = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final LongAdder latencyCount = new LongAdder();
+	private final LongAdder latencyNanos = new LongAdder();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+	private final LongAdder usages = new LongAdder();
+	private final LongAdder usageMillis = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder created = new LongAdder();
+
+	private volatile PoolStats poolStats;
+
+	@Override
+	public IMetricsTracker create(String poolName, PoolStats poolStats) {
+		this.poolStats = poolStats;
+		return new IMetricsTracker() {
+
+			@Override
+			public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+				created.increment();
+			}
+
+			@Override
+			public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+				acquisitions.increment();
+				waitNanos.add(elapsedAcquiredNanos);
+				updateMax(maxWaitNanos, elapsedAcquiredNanos);
+			}
+
+			@Override
+			public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+				usages.increment();
+				usageMillis.add(elapsedBorrowedMillis);
+			}
+
+			@Override
+			public void recordConnectionTimeout() {
+				timeouts.increment();
+			}
+		};
+	}
+
+	void recordAcquisitionLatency(long nanos) {
+		latencyCount.increment();
+		latencyNanos.add(nanos);
+		updateMax(maxLatencyNanos, nanos);
+	}
+
+	@Override
+	public int getActiveConnections() {
+		PoolStats stats = poolStats;
+		return stats == null ? 0 : stats.getActiveConnections();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		PoolStats stats = poolStats;
+		return stats == null ? 0 : stats.getIdleConnections();
+	}
+
+	@Override
+	public int getTotalConnections() {
+		PoolStats stats = poolStats;
+		return stats == null ? 0 : stats.getTotalConnections();
+	}
+
+	@Override
+	public int getMaxConnections() {
+		PoolStats stats = poolStats;
+		return stats == null ? 0 : stats.getMaxConnections();
+	}
+
+	@Override
+	public int getPendingThreads() {
+		PoolStats stats = poolStats;
+		return stats == null ? 0 : stats.getPendingThreads();
+	}
+
+	@Override
+	public long getAcquisitionCount() {
+		return acquisitions.sum();
+	}
+
+	@Override
+	public long getConnectionTimeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public double getMeanWaitMicros() {
+		return mean(waitNanos, acquisitions) / 1000.0;
+	}
+
+	@Override
+	public double getMaxWaitMicros() {
+		return maxWaitNanos.get() / 1000.0;
+	}
+
+	@Override
+	public double getMeanAcquisitionLatencyMicros() {
+		return mean(latencyNanos, latencyCount) / 1000.0;
+	}
+
+	@Override
+	public double getMaxAcquisitionLatencyMicros() {
+		return maxLatencyNanos.get() / 1000.0;
+	}
+
+	@Override
+	public double getMeanUsageMillis() {
+		return mean(usageMillis, usages);
+	}
+
+	@Override
+	public long getConnectionsCreated() {
+		return created.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PoolMetrics [active=%d, idle=%d, total=%d, pending=%d, acquisitions=%d, timeouts=%d, "
+				+ "meanWait=%.1fus, maxWait=%.1fus, meanLatency=%.1fus, maxLatency=%.1fus, meanUsage=%.1fms]",
+				getActiveConnections(), getIdleConnections(), getTotalConnections(), getPendingThreads(),
+				getAcquisitionCount(), getConnectionTimeouts(), getMeanWaitMicros(), getMaxWaitMicros(),
+				getMeanAcquisitionLatencyMicros(), getMaxAcquisitionLatencyMicros(), getMeanUsageMillis());
+	}
+
+	private static double mean(LongAdder total, LongAdder count) {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) total.sum() / n;
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package orm.hibernate.pool;
+
+/**
+ * JMX view of PoolMetrics, registered as orm.hibernate:type=PoolMetrics,name=<pool name>
+ */
+public interface PoolMetricsMXBean {
+
+	int getActiveConnections();
+
+	int getIdleConnections();
+
+	int getTotalConnections();
+
+	int getMaxConnections();
+
+	/**
+	 * Threads currently blocked waiting for a connection
+	 */
+	int getPendingThreads();
+
+	long getAcquisitionCount();
+
+	long getConnectionTimeouts();
+
+	/**
+	 * Time spent inside the pool waiting for a free connection
+	 */
+	double getMeanWaitMicros();
+
+	double getMaxWaitMicros();
+
+	/**
+	 * Time Hibernate spent in ConnectionProvider.getConnection(), pool wait included
+	 */
+	double getMeanAcquisitionLatencyMicros();
+
+	double getMaxAcquisitionLatencyMicros();
+
+	/**
+	 * How long a connection was held before it was returned to the pool
+	 */
+	double getMeanUsageMillis();
+
+	long getConnectionsCreated();
+}
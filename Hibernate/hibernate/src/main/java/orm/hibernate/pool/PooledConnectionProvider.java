@@ -0,0 +1,206 @@
+package orm.hibernate.pool;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.hikaricp.internal.HikariConfigurationUtil;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+import org.jboss.logging.Logger;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import orm.hibernate.statements.StatementMetrics;
+
+/**
+ * HikariCP backed ConnectionProvider with pool metrics.
+ *
+ * Enabled with hibernate.connection.provider_class in a cfg.xml or persistence.xml.
+ * The connection url, user and password are taken from the usual hibernate (or
+ * javax.persistence.jdbc) settings, everything else is passed to HikariCP with the
+ * hibernate.hikari. prefix, e.g.
+ *
+ *   hibernate.hikari.minimumIdle              smallest number of idle connections
+ *   hibernate.hikari.maximumPoolSize          largest number of connections
+ *   hibernate.hikari.leakDetectionThreshold   ms a connection may be held before a leak is logged
+ *   hibernate.hikari.dataSource.cachePrepStmts  driver property, here MySQL statement cache
+ *
+ * Metrics are available from getMetrics() / metricsOf(SessionFactory) and over JMX
+ * as orm.hibernate:type=PoolMetrics,name=<pool name>.
+ *
+ * With hibernate.statement_metrics.enabled the connections are handed out wrapped by
+ * StatementMetrics, which times every statement per shape and logs the slow ones:
+ *
+ *   hibernate.statement_metrics.slow_threshold_ms          slow statement, default 100
+ *   hibernate.statement_metrics.slow_sample_rate           part of the slow ones logged, default 1
+ *   hibernate.statement_metrics.slow_log_size              slow statements kept, default 100
+ *   hibernate.statement_metrics.max_shapes                 shapes with their own histogram, default 1000
+ *   hibernate.statement_metrics.snapshot_file              file the readings are written to, default none
+ *   hibernate.statement_metrics.snapshot_interval_seconds  default 60
+ *
+ * They are available from statementMetricsOf(SessionFactory) and over JMX as
+ * orm.hibernate:type=StatementMetrics,name=<pool name>.
+ */
+public class PooledConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = Logger.getLogger(PooledConnectionProvider.class);
+
+	private HikariDataSource dataSource;
+	private PoolMetrics metrics;
+	private StatementMetrics statementMetrics;
+	private ObjectName objectName;
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void configure(Map props) throws HibernateException {
+		try {
+			HikariConfig config = HikariConfigurationUtil.loadConfiguration(props);
+			metrics = new PoolMetrics();
+			config.setMetricsTrackerFactory(metrics);
+			dataSource = new HikariDataSource(config);
+		} catch (Exception e) {
+			throw new HibernateException("Could not start the connection pool", e);
+		}
+		registerMBean();
+		statementMetrics = StatementMetrics.fromProperties(props);
+		if (statementMetrics != null) {
+			try {
+				statementMetrics.register(dataSource.getPoolName());
+			} catch (JMException e) {
+				LOGGER.warnf("Could not register statement metrics MBean of pool %s: %s", dataSource.getPoolName(),
+						e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		Connection connection = dataSource.getConnection();
+		metrics.recordAcquisitionLatency(System.nanoTime() - start);
+		return statementMetrics == null ? connection : statementMetrics.wrap(connection);
+	}
+
+	@Override
+	public void closeConnection(Connection conn) throws SQLException {
+		conn.close();
+	}
+
+	@Override
+	public boolean supportsAggressiveRelease() {
+		return false;
+	}
+
+	public PoolMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Null unless hibernate.statement_metrics.enabled is true
+	 */
+	public StatementMetrics getStatementMetrics() {
+		return statementMetrics;
+	}
+
+	/**
+	 * Metrics of the pool behind a session factory, null when it does not use this provider
+	 */
+	public static PoolMetrics metricsOf(SessionFactory sessionFactory) {
+		ConnectionProvider provider = sessionFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+				.getService(ConnectionProvider.class);
+		return provider instanceof PooledConnectionProvider ? ((PooledConnectionProvider) provider).getMetrics() : null;
+	}
+
+	/**
+	 * Statement metrics of the connections of a session factory, null when it does not
+	 * use this provider or the metrics are not enabled
+	 */
+	public static StatementMetrics statementMetricsOf(SessionFactory sessionFactory) {
+		ConnectionProvider provider = sessionFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+				.getService(ConnectionProvider.class);
+		return provider instanceof PooledConnectionProvider
+				? ((PooledConnectionProvider) provider).getStatementMetrics()
+				: null;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public boolean isUnwrappableAs(Class unwrapType) {
+		return ConnectionProvider.class.equals(unwrapType) || PooledConnectionProvider.class.isAssignableFrom(unwrapType)
+				|| DataSource.class.isAssignableFrom(unwrapType) || PoolMetrics.class.equals(unwrapType)
+				|| (StatementMetrics.class.equals(unwrapType) && statementMetrics != null);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T unwrap(Class<T> unwrapType) {
+		if (ConnectionProvider.class.equals(unwrapType) || PooledConnectionProvider.class.isAssignableFrom(unwrapType)) {
+			return (T) this;
+		}
+		if (DataSource.class.isAssignableFrom(unwrapType)) {
+			return (T) dataSource;
+		}
+		if (PoolMetrics.class.equals(unwrapType)) {
+			return (T) metrics;
+		}
+		if (StatementMetrics.class.equals(unwrapType) && statementMetrics != null) {
+			return (T) statementMetrics;
+		}
+		throw new UnknownUnwrapTypeException(unwrapType);
+	}
+
+	@Override
+	public void stop() {
+		unregisterMBean();
+		if (statementMetrics != null) {
+			statementMetrics.close();
+		}
+		if (dataSource != null) {
+			dataSource.close();
+		}
+	}
+
+	private void registerMBean() {
+		try {
+			objectName = new ObjectName("orm.hibernate:type=PoolMetrics,name=" + ObjectName.quote(dataSource.getPoolName()));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				LOGGER.warnf("Pool metrics MBean %s already registered, give each pool its own hibernate.hikari.poolName",
+						objectName);
+				objectName = null;
+				return;
+			}
+			server.registerMBean(metrics, objectName);
+		} catch (JMException e) {
+			LOGGER.warn("Could not register pool metrics MBean", e);
+			objectName = null;
+		}
+	}
+
+	private void unregisterMBean() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			LOGGER.warn("Could not unregister pool metrics MBean", e);
+		}
+		objectName = null;
+	}
+}
@@ -0,0 +1,38 @@
+package orm.hibernate.search;
+
+import org.apache.lucene.analysis.core.LowerCaseFilterFactory;
+import org.apache.lucene.analysis.ngram.NGramTokenizerFactory;
+import org.hibernate.search.backend.lucene.analysis.LuceneAnalysisConfigurationContext;
+import org.hibernate.search.backend.lucene.analysis.LuceneAnalysisConfigurer;
+
+/**
+ * Analysis of the Paginator.idval fields, set as hibernate.search.backend.analysis.configurer.
+ *
+ * The n-gram analyzer cuts the whole value, spaces included, into lower case
+ * trigrams at consecutive positions: "Value 12" becomes "val" "alu" "lue" "ue " ...
+ * A phrase query of the trigrams of a search text matches exactly the values that
+ * contain the text, so a '%text%' filter becomes a lookup of a few terms instead of a
+ * scan over every row.
+ */
+public class IdvalAnalysisConfigurer implements LuceneAnalysisConfigurer {
+
+	public static final String NGRAM = "idval_ngram";
+	public static final String LOWERCASE = "lowercase";
+
+	/**
+	 * Shortest text the n-gram field can find, shorter texts fall back to a wildcard
+	 * query on the keyword field
+	 */
+	public static final int GRAM_SIZE = 3;
+
+	@Override
+	public void configure(LuceneAnalysisConfigurationContext context) {
+		context.analyzer(NGRAM).custom()
+				.tokenizer(NGramTokenizerFactory.class)
+					.param("minGramSize", String.valueOf(GRAM_SIZE))
+					.param("maxGramSize", String.valueOf(GRAM_SIZE))
+				.tokenFilter(LowerCaseFilterFactory.class);
+		context.normalizer(LOWERCASE).custom()
+				.tokenFilter(LowerCaseFilterFactory.class);
+	}
+}
@@ -0,0 +1,141 @@
+package orm.hibernate.search;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.search.engine.search.predicate.dsl.PredicateFinalStep;
+import org.hibernate.search.engine.search.predicate.dsl.SearchPredicateFactory;
+import org.hibernate.search.engine.search.query.SearchScroll;
+import org.hibernate.search.engine.search.query.SearchScrollResult;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.session.SearchSession;
+
+import orm.hibernate.hql.Paginator;
+
+/**
+ * Substring and prefix search on Paginator.idval through the embedded Lucene index.
+ *
+ * "idval ilike '%value%'" cannot use a B-tree index, every row is read. The index
+ * holds the trigrams of every idval (IdvalAnalysisConfigurer) and answers the same
+ * filter from its term dictionary, ids and sum(id) come from the index doc values,
+ * the table is not read at all. Aggregates still visit every matching id, for a text
+ * that matches most of the table the SQL scan is faster (PaginatorSearchBenchmark).
+ *
+ * Sessions index the Paginators they insert, update or delete on commit. Rows written
+ * by a StatelessSession, bulk HQL or plain SQL are not seen, call rebuild(..) after
+ * those. With the default write-sync synchronization a commit returns before the
+ * change is searchable (within a second), tests use sync.
+ */
+public class PaginatorSearch {
+
+	private final int fetchSize;
+
+	/**
+	 * @param fetchSize ids read from the index per chunk when aggregating, and
+	 *                  entities loaded per batch when rebuilding
+	 */
+	public PaginatorSearch(int fetchSize) {
+		if (fetchSize <= 0) {
+			throw new IllegalArgumentException("fetchSize must be > 0");
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Ids of the rows whose idval contains the text, any case, ascending
+	 */
+	public List<Integer> idsContaining(Session session, String text) {
+		return searchSession(session).search(Paginator.class)
+				.select(f -> f.field("id_value", Integer.class))
+				.where(f -> contains(f, text))
+				.sort(f -> f.field("id_value"))
+				.fetchAllHits();
+	}
+
+	/**
+	 * Ids of the rows whose idval starts with the prefix, any case, ascending
+	 */
+	public List<Integer> idsStartingWith(Session session, String prefix) {
+		return searchSession(session).search(Paginator.class)
+				.select(f -> f.field("id_value", Integer.class))
+				.where(f -> f.wildcard().field("idval_keyword").matching(escape(lowerCase(prefix)) + "*"))
+				.sort(f -> f.field("id_value"))
+				.fetchAllHits();
+	}
+
+	/**
+	 * count(*) where idval ilike '%text%'
+	 */
+	public long countContaining(Session session, String text) {
+		return searchSession(session).search(Paginator.class)
+				.where(f -> contains(f, text))
+				.fetchTotalHitCount();
+	}
+
+	/**
+	 * sum(id) where id > idGreaterThan and idval ilike '%text%', null when no row
+	 * matches, like the SQL
+	 */
+	public Long sumOfIdsContaining(Session session, String text, int idGreaterThan) {
+		long sum = 0;
+		long hits = 0;
+		try (SearchScroll<Integer> scroll = searchSession(session).search(Paginator.class)
+				.select(f -> f.field("id_value", Integer.class))
+				.where(f -> f.bool()
+						.must(f.range().field("id_value").greaterThan(idGreaterThan))
+						.must(contains(f, text)))
+				.sort(f -> f.indexOrder())
+				.scroll(fetchSize)) {
+			for (SearchScrollResult<Integer> chunk = scroll.next(); chunk.hasHits(); chunk = scroll.next()) {
+				for (Integer id : chunk.hits()) {
+					sum += id;
+				}
+				hits += chunk.hits().size();
+			}
+		}
+		return hits == 0 ? null : sum;
+	}
+
+	/**
+	 * Drops the index and builds it again from the table, loading the entities on the
+	 * given number of threads. Returns the number of indexed rows.
+	 */
+	public long rebuild(SessionFactory sessionFactory, int threads) throws InterruptedException {
+		Search.mapping(sessionFactory).scope(Paginator.class).massIndexer()
+				.purgeAllOnStart(true)
+				.threadsToLoadObjects(threads)
+				.batchSizeToLoadObjects(fetchSize)
+				.startAndWait();
+		try (Session session = sessionFactory.openSession()) {
+			return searchSession(session).search(Paginator.class).where(f -> f.matchAll()).fetchTotalHitCount();
+		}
+	}
+
+	private static SearchSession searchSession(Session session) {
+		return Search.session(session);
+	}
+
+	/**
+	 * Phrase of trigrams, texts shorter than a trigram scan the terms of the keyword
+	 * field instead (still no table access)
+	 */
+	private static PredicateFinalStep contains(SearchPredicateFactory f, String text) {
+		if (text.isEmpty()) {
+			return f.matchAll();
+		}
+		if (text.length() < IdvalAnalysisConfigurer.GRAM_SIZE) {
+			return f.wildcard().field("idval_keyword").matching("*" + escape(lowerCase(text)) + "*");
+		}
+		return f.phrase().field("idval").matching(text);
+	}
+
+	private static String lowerCase(String text) {
+		return text.toLowerCase(Locale.ROOT);
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("*", "\\*").replace("?", "\\?");
+	}
+}
@@ -0,0 +1,248 @@
+package orm.hibernate.session;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.context.internal.ManagedSessionContext;
+import org.jboss.logging.Logger;
+
+import orm.hibernate.pool.PoolMetrics;
+import orm.hibernate.pool.PooledConnectionProvider;
+
+/**
+ * Runs every unit of work on its own thread with its own Session and transaction.
+ *
+ * A task opens a Session, binds it as the current session of its thread
+ * (sessionFactory.getCurrentSession(), current_session_context_class=managed), begins a
+ * transaction, runs the work and commits, or rolls back when the work throws. The
+ * session is unbound and closed in any case, a pooled thread does not keep the
+ * ThreadLocal of ManagedSessionContext or the session of its previous task.
+ *
+ * Tasks run on virtual threads when the JVM has them (Java 21), one cheap thread per
+ * task, otherwise on a fixed pool of platform threads. A semaphore with one permit per
+ * pooled connection lets only as many tasks work as there are connections, the others
+ * wait for a permit before they open their session. A virtual thread waiting on the
+ * semaphore gives up its carrier, one waiting for a connection inside the pool or
+ * blocked in the synchronized code of a JDBC driver would pin it.
+ */
+public class SessionPerTaskExecutor implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(SessionPerTaskExecutor.class);
+
+	private final SessionFactory sessionFactory;
+	private final ExecutorService threads;
+	private final boolean virtual;
+	private final Semaphore permits;
+	private final int maxConcurrent;
+	private final AtomicInteger active = new AtomicInteger();
+	private final LongAdder committed = new LongAdder();
+	private final LongAdder rolledBack = new LongAdder();
+
+	/**
+	 * One permit per connection of the factory's PooledConnectionProvider
+	 */
+	public SessionPerTaskExecutor(SessionFactory sessionFactory) {
+		this(sessionFactory, poolSize(sessionFactory));
+	}
+
+	/**
+	 * At most maxConcurrent tasks work at the same time, on virtual threads if the JVM
+	 * has them, otherwise on maxConcurrent platform threads
+	 */
+	public SessionPerTaskExecutor(SessionFactory sessionFactory, int maxConcurrent) {
+		this(sessionFactory, maxConcurrent, null);
+	}
+
+	/**
+	 * At most maxConcurrent tasks work at the same time on the given threads, the executor
+	 * is shut down by close()
+	 */
+	public SessionPerTaskExecutor(SessionFactory sessionFactory, int maxConcurrent, ExecutorService threads) {
+		if (maxConcurrent <= 0) {
+			throw new IllegalArgumentException("maxConcurrent must be > 0");
+		}
+		Object context = sessionFactory.getProperties().get(AvailableSettings.CURRENT_SESSION_CONTEXT_CLASS);
+		if (!"managed".equals(context) && !ManagedSessionContext.class.getName().equals(context)) {
+			throw new HibernateException("SessionPerTaskExecutor binds its sessions with ManagedSessionContext,"
+					+ " set current_session_context_class to managed (is " + context + ")");
+		}
+		this.sessionFactory = sessionFactory;
+		this.maxConcurrent = maxConcurrent;
+		this.permits = new Semaphore(maxConcurrent);
+		if (threads != null) {
+			this.threads = threads;
+			this.virtual = false;
+		} else {
+			ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+			this.virtual = virtualThreads != null;
+			this.threads = virtual ? virtualThreads : platformThreads(maxConcurrent);
+		}
+	}
+
+	/**
+	 * Runs the work in its own session and transaction. The future completes with the
+	 * result after the commit, or exceptionally with what the work or the commit threw
+	 * after the rollback.
+	 */
+	public <T> CompletableFuture<T> submit(Function<Session, T> work) {
+		return CompletableFuture.supplyAsync(() -> run(work), threads);
+	}
+
+	/**
+	 * Work without a result
+	 */
+	public CompletableFuture<Void> execute(Consumer<Session> work) {
+		return submit(session -> {
+			work.accept(session);
+			return null;
+		});
+	}
+
+	private <T> T run(Function<Session, T> work) {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HibernateException("Interrupted while waiting for a session", e);
+		}
+		active.incrementAndGet();
+		try (Session session = sessionFactory.openSession()) {
+			Session outer = ManagedSessionContext.bind(session);
+			try {
+				session.beginTransaction();
+				T result = work.apply(session);
+				session.getTransaction().commit();
+				committed.increment();
+				return result;
+			} catch (RuntimeException | Error e) {
+				rolledBack.increment();
+				try {
+					if (session.getTransaction().isActive()) {
+						session.getTransaction().rollback();
+					}
+				} catch (RuntimeException rollback) {
+					e.addSuppressed(rollback);
+				}
+				throw e;
+			} finally {
+				/**
+				 * A task run by its submitting thread (caller runs) gives the thread its
+				 * session back
+				 */
+				if (outer != null) {
+					ManagedSessionContext.bind(outer);
+				} else {
+					ManagedSessionContext.unbind(sessionFactory);
+				}
+			}
+		} finally {
+			active.decrementAndGet();
+			permits.release();
+		}
+	}
+
+	/**
+	 * true when the tasks run on virtual threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * Tasks holding a permit and a session right now
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * Tasks waiting for a permit
+	 */
+	public int getWaiting() {
+		return permits.getQueueLength();
+	}
+
+	public long getCommitted() {
+		return committed.sum();
+	}
+
+	public long getRolledBack() {
+		return rolledBack.sum();
+	}
+
+	/**
+	 * Waits for the submitted tasks to finish
+	 */
+	@Override
+	public void close() {
+		threads.shutdown();
+		try {
+			if (!threads.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOGGER.warnf("%d session tasks still running after one minute", active.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SessionPerTaskExecutor [virtual=" + virtual + ", maxConcurrent=" + maxConcurrent + ", active="
+				+ getActive() + ", waiting=" + getWaiting() + ", committed=" + getCommitted() + ", rolledBack="
+				+ getRolledBack() + "]";
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor() of Java 21, null on older JVMs. The
+	 * project compiles for 1.8, so it is looked up by reflection.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			/**
+			 * Missing before Java 21, a preview feature that is not enabled on 19 and 20
+			 */
+			return null;
+		}
+	}
+
+	static ExecutorService platformThreads(int size) {
+		AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(size, runnable -> {
+			Thread thread = new Thread(runnable, "session-task-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * maximumPoolSize of the PooledConnectionProvider, hibernate.connection.pool_size
+	 * for other providers
+	 */
+	private static int poolSize(SessionFactory sessionFactory) {
+		PoolMetrics metrics = PooledConnectionProvider.metricsOf(sessionFactory);
+		if (metrics != null && metrics.getMaxConnections() > 0) {
+			return metrics.getMaxConnections();
+		}
+		Object size = sessionFactory.getProperties().get(AvailableSettings.POOL_SIZE);
+		return size == null ? 10 : Integer.parseInt(size.toString());
+	}
+}
@@ -0,0 +1,228 @@
+package orm.hibernate.statements;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Dynamic proxies of Connection and Statement that report to StatementMetrics.
+ *
+ * The connection proxy wraps the statements it creates, a prepared statement keeps
+ * its SQL and the counter of its shape and remembers the values bound to it, only as
+ * references, they are turned into text when the statement is slow. Each execute is
+ * timed, its update count or the number of rows its result set returned (see
+ * CountingResultSet) is added to the shape. Every other call is passed on as it is.
+ */
+final class JdbcInterceptor {
+
+	private JdbcInterceptor() {
+	}
+
+	static Connection connection(Connection connection, StatementMetrics metrics) {
+		return (Connection) Proxy.newProxyInstance(JdbcInterceptor.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler(connection, metrics));
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * equals and hashCode of a proxy are its identity, not those of the target
+	 */
+	private static Object identity(Object proxy, Method method, Object[] args) {
+		return method.getName().equals("equals") ? proxy == args[0] : System.identityHashCode(proxy);
+	}
+
+	private static boolean isIdentityMethod(Method method) {
+		String name = method.getName();
+		return (name.equals("equals") && method.getParameterCount() == 1)
+				|| (name.equals("hashCode") && method.getParameterCount() == 0);
+	}
+
+	private static final class ConnectionHandler implements InvocationHandler {
+
+		private final Connection target;
+		private final StatementMetrics metrics;
+
+		ConnectionHandler(Connection target, StatementMetrics metrics) {
+			this.target = target;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (isIdentityMethod(method)) {
+				return identity(proxy, method, args);
+			}
+			Object result = JdbcInterceptor.invoke(target, method, args);
+			switch (method.getName()) {
+			case "prepareStatement":
+				return statement(PreparedStatement.class, (Statement) result, (String) args[0], proxy);
+			case "prepareCall":
+				return statement(CallableStatement.class, (Statement) result, (String) args[0], proxy);
+			case "createStatement":
+				return statement(Statement.class, (Statement) result, null, proxy);
+			default:
+				return result;
+			}
+		}
+
+		private Object statement(Class<? extends Statement> type, Statement statement, String sql, Object connection) {
+			return Proxy.newProxyInstance(JdbcInterceptor.class.getClassLoader(), new Class<?>[] { type },
+					new StatementHandler(statement, sql, sql == null ? null : metrics.counterOf(sql), metrics,
+							(Connection) connection));
+		}
+	}
+
+	private static final class StatementHandler implements InvocationHandler {
+
+		private final Statement target;
+		private final String preparedSql;
+		private final StatementMetrics.Counter prepared;
+		private final StatementMetrics metrics;
+		private final Connection connection;
+		private Object[] binds;
+		private int batchRows;
+		private StatementMetrics.Counter executed;
+		private CountingResultSet resultSet;
+
+		StatementHandler(Statement target, String preparedSql, StatementMetrics.Counter prepared,
+				StatementMetrics metrics, Connection connection) {
+			this.target = target;
+			this.preparedSql = preparedSql;
+			this.prepared = prepared;
+			this.metrics = metrics;
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.startsWith("execute")) {
+				return execute(proxy, method, args);
+			}
+			if (isIdentityMethod(method)) {
+				return identity(proxy, method, args);
+			}
+			if (name.startsWith("set") && prepared != null && args != null && args.length >= 2
+					&& args[0] instanceof Integer) {
+				bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+			}
+			switch (name) {
+			case "clearParameters":
+				binds = null;
+				break;
+			case "addBatch":
+				batchRows++;
+				break;
+			case "clearBatch":
+				batchRows = 0;
+				break;
+			case "getResultSet":
+				return resultSet(proxy, (ResultSet) JdbcInterceptor.invoke(target, method, args));
+			case "getConnection":
+				return connection;
+			case "close":
+				closeResultSet();
+				break;
+			default:
+				break;
+			}
+			return JdbcInterceptor.invoke(target, method, args);
+		}
+
+		private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+			String sql = preparedSql;
+			StatementMetrics.Counter counter = prepared;
+			if (args != null && args.length > 0 && args[0] instanceof String) {
+				sql = (String) args[0];
+				counter = metrics.counterOf(sql);
+			}
+			if (counter == null) {
+				/**
+				 * executeBatch of a plain Statement, the batch holds several SQL strings
+				 */
+				sql = "(statement batch)";
+				counter = metrics.counterOf(sql);
+			}
+			closeResultSet();
+			executed = counter;
+			boolean failed = true;
+			long rows = 0;
+			Object result = null;
+			long start = System.nanoTime();
+			try {
+				result = JdbcInterceptor.invoke(target, method, args);
+				failed = false;
+			} finally {
+				long nanos = System.nanoTime() - start;
+				if (result instanceof Integer) {
+					rows = Math.max(0, (Integer) result);
+				} else if (result instanceof Long) {
+					rows = Math.max(0, (Long) result);
+				} else if (result instanceof int[]) {
+					for (int count : (int[]) result) {
+						rows += count >= 0 ? count : 1;
+					}
+				} else if (result instanceof long[]) {
+					for (long count : (long[]) result) {
+						rows += count >= 0 ? count : 1;
+					}
+				} else if (Boolean.FALSE.equals(result)) {
+					rows = Math.max(0, target.getUpdateCount());
+				}
+				metrics.record(counter, sql, nanos, rows, failed, binds, batchRows);
+				if (method.getName().startsWith("executeBatch") || method.getName().startsWith("executeLargeBatch")) {
+					batchRows = 0;
+				}
+			}
+			if (result instanceof ResultSet) {
+				return resultSet(proxy, (ResultSet) result);
+			}
+			return result;
+		}
+
+		/**
+		 * The counting result set of the last execution, the same one for every call
+		 */
+		private ResultSet resultSet(Object statement, ResultSet rs) {
+			if (rs == null || executed == null) {
+				return rs;
+			}
+			if (resultSet != null && resultSet.getTarget() == rs) {
+				return resultSet;
+			}
+			closeResultSet();
+			resultSet = new CountingResultSet(rs, (Statement) statement, executed, metrics);
+			return resultSet;
+		}
+
+		private void closeResultSet() {
+			if (resultSet != null) {
+				resultSet.recordRows();
+				resultSet = null;
+			}
+		}
+
+		private void bind(int index, Object value) {
+			if (binds == null) {
+				binds = new Object[Math.max(8, index)];
+			} else if (index > binds.length) {
+				binds = Arrays.copyOf(binds, Math.max(index, binds.length * 2));
+			}
+			binds[index - 1] = value;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package orm.hibernate.statements;
+
+/**
+ * Reduces SQL to its shape, the statement without the values in it.
+ *
+ *   select * from one_to_many_customer where custId=42 and custName='Harsh'
+ *   select * from one_to_many_customer where custId=? and custName=?
+ *
+ * Statements that differ only in literals, in the length of an in (...) list or in
+ * white space have the same shape, so counting shapes shows when the same query runs
+ * over and over. Hibernate already binds values as parameters, the literals come from
+ * native SQL and inlined HQL constants.
+ */
+public final class SqlShapes {
+
+	private SqlShapes() {
+	}
+
+	public static String normalize(String sql) {
+		StringBuilder shape = new StringBuilder(sql.length());
+		int length = sql.length();
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				/**
+				 * String literal, '' is an escaped quote inside it
+				 */
+				i++;
+				while (i < length) {
+					if (sql.charAt(i) == '\'') {
+						if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+							i += 2;
+							continue;
+						}
+						break;
+					}
+					i++;
+				}
+				i++;
+				shape.append('?');
+			} else if (Character.isWhitespace(c)) {
+				while (i < length && Character.isWhitespace(sql.charAt(i))) {
+					i++;
+				}
+				if (shape.length() > 0 && i < length) {
+					shape.append(' ');
+				}
+			} else if (isDigit(c) && !partOfIdentifier(shape)) {
+				while (i < length && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+					i++;
+				}
+				shape.append('?');
+			} else {
+				shape.append(Character.toLowerCase(c));
+				i++;
+			}
+		}
+		return collapseInLists(shape);
+	}
+
+	/**
+	 * in (?, ?, ?) becomes in (?), batch and subselect fetching otherwise produce a
+	 * new shape per batch size
+	 */
+	private static String collapseInLists(StringBuilder shape) {
+		StringBuilder out = new StringBuilder(shape.length());
+		int length = shape.length();
+		int i = 0;
+		while (i < length) {
+			char c = shape.charAt(i);
+			if (c == '(' && endsWithIn(out)) {
+				int j = i + 1;
+				boolean onlyParameters = true;
+				boolean any = false;
+				while (j < length && shape.charAt(j) != ')') {
+					char p = shape.charAt(j);
+					if (p == '?') {
+						any = true;
+					} else if (p != ',' && p != ' ') {
+						onlyParameters = false;
+						break;
+					}
+					j++;
+				}
+				if (onlyParameters && any && j < length) {
+					out.append("(?)");
+					i = j + 1;
+					continue;
+				}
+			}
+			out.append(c);
+			i++;
+		}
+		return out.toString();
+	}
+
+	private static boolean endsWithIn(StringBuilder out) {
+		int end = out.length();
+		while (end > 0 && out.charAt(end - 1) == ' ') {
+			end--;
+		}
+		return end >= 2 && out.charAt(end - 1) == 'n' && out.charAt(end - 2) == 'i'
+				&& !partOfIdentifier(out, end - 2);
+	}
+
+	/**
+	 * Digits right after a letter, digit, _ or . belong to a name like orders0_ or t1.id
+	 */
+	private static boolean partOfIdentifier(StringBuilder shape) {
+		return partOfIdentifier(shape, shape.length());
+	}
+
+	private static boolean partOfIdentifier(CharSequence text, int end) {
+		if (end == 0) {
+			return false;
+		}
+		char previous = text.charAt(end - 1);
+		return Character.isLetterOrDigit(previous) || previous == '_' || previous == '.' || previous == '$';
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
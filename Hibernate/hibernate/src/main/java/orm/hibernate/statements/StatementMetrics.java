@@ -0,0 +1,656 @@
+package orm.hibernate.statements;
+
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.jboss.logging.Logger;
+
+/**
+ * Latency and row counts of every JDBC statement, per shape (see SqlShapes), and a log
+ * of the slow ones.
+ *
+ * PooledConnectionProvider hands out connections wrapped by wrap(connection) when
+ * hibernate.statement_metrics.enabled is true. The wrapper times each execute on the
+ * statements of the connection and counts the rows of the result sets and the update
+ * counts. Unlike show_sql nothing is written per statement: the time goes into an
+ * HdrHistogram of the shape (2 significant digits, in microseconds) and the counters
+ * are LongAdders, recording does not block. The shape of a SQL string is computed once
+ * and then looked up by the string, Hibernate reuses the same SQL strings.
+ *
+ * A statement slower than slowThresholdMillis is logged with its bind values and the
+ * first caller outside of Hibernate, JDBC and the pool, which costs a stack trace. With
+ * slowSampleRate below 1 only that part of the slow statements is logged. The log
+ * keeps the last slowLogSize entries.
+ *
+ * The readings are available over JMX, from PooledConnectionProvider.statementMetricsOf
+ * and, when snapshotFile is set, written to that file every snapshotIntervalSeconds.
+ */
+public class StatementMetrics implements StatementMetricsMXBean, AutoCloseable {
+
+	public static final String PREFIX = "hibernate.statement_metrics.";
+
+	private static final Logger LOGGER = Logger.getLogger(StatementMetrics.class);
+
+	/**
+	 * SQL strings whose shape is remembered, native SQL with literals in it would
+	 * otherwise grow the map without end
+	 */
+	private static final int MAX_SQL_STRINGS = 10_000;
+
+	private static final int TOP_SHAPES = 20;
+
+	private static final String[] NOT_ENTRY_POINTS = { "java.", "javax.", "jdk.", "sun.", "com.sun.", "org.hibernate.",
+			"com.zaxxer.", "org.h2.", "com.mysql.", "net.bytebuddy.", "orm.hibernate.pool." };
+
+	private final Options options;
+	private final ConcurrentHashMap<String, Counter> bySql = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Counter> byShape = new ConcurrentHashMap<>();
+	private final Counter other = new Counter("(other shapes)");
+	private final LongAdder slowStatements = new LongAdder();
+	private final ArrayDeque<SlowStatement> slowLog = new ArrayDeque<>();
+	private final ScheduledExecutorService snapshots;
+	private String name = "statements";
+	private ObjectName objectName;
+
+	public StatementMetrics(Options options) {
+		this.options = options;
+		if (options.snapshotFile == null) {
+			this.snapshots = null;
+		} else {
+			this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "statement-metrics-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			snapshots.scheduleWithFixedDelay(this::writeSnapshotQuietly, options.snapshotIntervalSeconds,
+					options.snapshotIntervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Metrics configured by the hibernate.statement_metrics.* settings, null unless
+	 * hibernate.statement_metrics.enabled is true
+	 */
+	@SuppressWarnings("rawtypes")
+	public static StatementMetrics fromProperties(Map props) {
+		if (!ConfigurationHelper.getBoolean(PREFIX + "enabled", props, false)) {
+			return null;
+		}
+		Options options = new Options()
+				.slowThresholdMillis(ConfigurationHelper.getInt(PREFIX + "slow_threshold_ms", props, 100))
+				.slowLogSize(ConfigurationHelper.getInt(PREFIX + "slow_log_size", props, 100))
+				.maxShapes(ConfigurationHelper.getInt(PREFIX + "max_shapes", props, 1000))
+				.snapshotIntervalSeconds(ConfigurationHelper.getInt(PREFIX + "snapshot_interval_seconds", props, 60));
+		String sampleRate = ConfigurationHelper.getString(PREFIX + "slow_sample_rate", props);
+		if (sampleRate != null) {
+			options.slowSampleRate(Double.parseDouble(sampleRate));
+		}
+		String snapshotFile = ConfigurationHelper.getString(PREFIX + "snapshot_file", props);
+		if (snapshotFile != null && !snapshotFile.trim().isEmpty()) {
+			options.snapshotFile(Paths.get(snapshotFile.trim()));
+		}
+		return new StatementMetrics(options);
+	}
+
+	/**
+	 * The connection with its statements timed by these metrics
+	 */
+	public Connection wrap(Connection connection) {
+		return JdbcInterceptor.connection(connection, this);
+	}
+
+	Counter counterOf(String sql) {
+		Counter counter = bySql.get(sql);
+		if (counter != null) {
+			return counter;
+		}
+		String shape = SqlShapes.normalize(sql);
+		counter = byShape.get(shape);
+		if (counter == null) {
+			if (byShape.size() >= options.maxShapes) {
+				counter = other;
+			} else {
+				counter = byShape.computeIfAbsent(shape, Counter::new);
+			}
+		}
+		if (bySql.size() < MAX_SQL_STRINGS) {
+			bySql.putIfAbsent(sql, counter);
+		}
+		return counter;
+	}
+
+	/**
+	 * One execution, rows are the update count, result set rows are added by recordRows
+	 */
+	void record(Counter counter, String sql, long nanos, long rows, boolean failed, Object[] binds, int batchRows) {
+		counter.latency.recordValue(Math.max(1, nanos / 1000));
+		counter.executions.increment();
+		counter.nanos.add(nanos);
+		counter.maxNanos.accumulate(nanos);
+		if (rows > 0) {
+			counter.rows.add(rows);
+		}
+		if (failed) {
+			counter.errors.increment();
+		}
+		if (nanos >= options.slowThresholdNanos) {
+			slow(sql, nanos, binds, batchRows);
+		}
+	}
+
+	void recordRows(Counter counter, long rows) {
+		counter.rows.add(rows);
+	}
+
+	private void slow(String sql, long nanos, Object[] binds, int batchRows) {
+		slowStatements.increment();
+		if (options.slowSampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= options.slowSampleRate) {
+			return;
+		}
+		SlowStatement statement = new SlowStatement(new Date(), nanos / 1_000_000.0, sql, describe(binds), batchRows,
+				entryPoint());
+		LOGGER.warnf("Slow statement, %.1f ms from %s: %s %s", statement.getMillis(), statement.getEntryPoint(), sql,
+				statement.getBinds());
+		synchronized (slowLog) {
+			if (slowLog.size() >= options.slowLogSize) {
+				slowLog.removeLast();
+			}
+			slowLog.addFirst(statement);
+		}
+	}
+
+	/**
+	 * First frame of the stack that is not Hibernate, JDBC, the pool or this interceptor
+	 */
+	static String entryPoint() {
+		for (StackTraceElement frame : new Throwable().getStackTrace()) {
+			if (!notAnEntryPoint(frame.getClassName())) {
+				return frame.toString();
+			}
+		}
+		return "unknown";
+	}
+
+	private static boolean notAnEntryPoint(String className) {
+		for (String prefix : NOT_ENTRY_POINTS) {
+			if (className.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return className.contains("$Proxy") || className.equals(StatementMetrics.class.getName())
+				|| className.startsWith(JdbcInterceptor.class.getName());
+	}
+
+	private static String describe(Object[] binds) {
+		if (binds == null) {
+			return "[]";
+		}
+		StringBuilder text = new StringBuilder("[");
+		int last = binds.length - 1;
+		while (last >= 0 && binds[last] == null) {
+			last--;
+		}
+		for (int i = 0; i <= last; i++) {
+			if (i > 0) {
+				text.append(", ");
+			}
+			Object value = binds[i];
+			if (value == null) {
+				text.append("null");
+			} else if (value instanceof CharSequence) {
+				String string = value.toString();
+				text.append('\'').append(string.length() > 64 ? string.substring(0, 64) + "..." : string).append('\'');
+			} else if (value instanceof Number || value instanceof Boolean || value instanceof Date
+					|| value instanceof Enum || value instanceof java.time.temporal.Temporal) {
+				text.append(value);
+			} else if (value.getClass().isArray()) {
+				text.append(value.getClass().getComponentType().getSimpleName()).append('[')
+						.append(Array.getLength(value)).append(']');
+			} else {
+				text.append(value.getClass().getSimpleName());
+			}
+		}
+		return text.append(']').toString();
+	}
+
+	@Override
+	public long getExecutions() {
+		return counters().stream().mapToLong(c -> c.executions.sum()).sum();
+	}
+
+	@Override
+	public long getRows() {
+		return counters().stream().mapToLong(c -> c.rows.sum()).sum();
+	}
+
+	@Override
+	public long getErrors() {
+		return counters().stream().mapToLong(c -> c.errors.sum()).sum();
+	}
+
+	@Override
+	public double getTotalMillis() {
+		return counters().stream().mapToLong(c -> c.nanos.sum()).sum() / 1_000_000.0;
+	}
+
+	@Override
+	public int getShapeCount() {
+		return byShape.size();
+	}
+
+	@Override
+	public long getSlowThresholdMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(options.slowThresholdNanos);
+	}
+
+	@Override
+	public long getSlowStatements() {
+		return slowStatements.sum();
+	}
+
+	@Override
+	public List<Shape> getTopShapes() {
+		List<Shape> shapes = getShapes();
+		return shapes.size() > TOP_SHAPES ? new ArrayList<>(shapes.subList(0, TOP_SHAPES)) : shapes;
+	}
+
+	/**
+	 * Every shape, the one with the most time spent in it first
+	 */
+	public List<Shape> getShapes() {
+		List<Shape> shapes = new ArrayList<>();
+		for (Counter counter : counters()) {
+			if (counter.executions.sum() > 0) {
+				shapes.add(counter.snapshot());
+			}
+		}
+		shapes.sort(Comparator.comparingDouble(Shape::getTotalMillis).reversed());
+		return shapes;
+	}
+
+	/**
+	 * Readings of one shape, null when it has not run
+	 */
+	public Shape getShape(String sql) {
+		Counter counter = byShape.get(SqlShapes.normalize(sql));
+		return counter == null ? null : counter.snapshot();
+	}
+
+	@Override
+	public List<SlowStatement> getSlowLog() {
+		synchronized (slowLog) {
+			return new ArrayList<>(slowLog);
+		}
+	}
+
+	@Override
+	public void reset() {
+		bySql.clear();
+		byShape.clear();
+		other.reset();
+		slowStatements.reset();
+		synchronized (slowLog) {
+			slowLog.clear();
+		}
+	}
+
+	private List<Counter> counters() {
+		List<Counter> counters = new ArrayList<>(byShape.values());
+		counters.add(other);
+		return counters;
+	}
+
+	/**
+	 * Writes all shapes and the slow log to the snapshot file, tab separated. The file
+	 * is replaced at once, a reader never sees half of it.
+	 */
+	@Override
+	public void writeSnapshot() throws IOException {
+		if (options.snapshotFile == null) {
+			throw new IllegalStateException("No snapshot file configured, set " + PREFIX + "snapshot_file");
+		}
+		writeSnapshot(options.snapshotFile);
+	}
+
+	public void writeSnapshot(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try (Writer out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			out.write(String.format("# %s at %s%n", this, Instant.now()));
+			out.write("executions\trows\terrors\ttotal_ms\tmean_us\tp50_us\tp95_us\tp99_us\tmax_us\tshape\n");
+			for (Shape shape : getShapes()) {
+				out.write(String.format("%d\t%d\t%d\t%.1f\t%.1f\t%d\t%d\t%d\t%d\t%s%n", shape.getExecutions(),
+						shape.getRows(), shape.getErrors(), shape.getTotalMillis(), shape.getMeanMicros(),
+						shape.getP50Micros(), shape.getP95Micros(), shape.getP99Micros(), shape.getMaxMicros(),
+						shape.getShape()));
+			}
+			out.write("\n# slow statements, newest first\n");
+			out.write("time\tms\tbatch_rows\tentry_point\tsql\tbinds\n");
+			for (SlowStatement statement : getSlowLog()) {
+				out.write(String.format("%s\t%.1f\t%d\t%s\t%s\t%s%n", statement.getTime().toInstant(),
+						statement.getMillis(), statement.getBatchRows(), statement.getEntryPoint(),
+						statement.getSql().replace('\n', ' ').replace('\t', ' '), statement.getBinds()));
+			}
+		}
+		try {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+	}
+
+	private void writeSnapshotQuietly() {
+		try {
+			writeSnapshot();
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Could not write statement metrics snapshot " + options.snapshotFile, e);
+		}
+	}
+
+	/**
+	 * Registers the MXBean as orm.hibernate:type=StatementMetrics,name=<name>
+	 */
+	public StatementMetrics register(String name) throws JMException {
+		this.name = name;
+		objectName = new ObjectName("orm.hibernate:type=StatementMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return this;
+	}
+
+	/**
+	 * Stops the snapshots, writing a last one, and unregisters the MXBean
+	 */
+	@Override
+	public void close() {
+		if (snapshots != null) {
+			snapshots.shutdown();
+			try {
+				snapshots.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			writeSnapshotQuietly();
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOGGER.warn("Could not unregister statement metrics MBean", e);
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StatementMetrics %s [executions=%d, rows=%d, errors=%d, total=%.1f ms, shapes=%d, slow=%d]",
+				name, getExecutions(), getRows(), getErrors(), getTotalMillis(), getShapeCount(), getSlowStatements());
+	}
+
+	/**
+	 * Counters of one shape
+	 */
+	static final class Counter {
+
+		private final String shape;
+		private final Histogram latency = new ConcurrentHistogram(2);
+		private final LongAdder executions = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		Counter(String shape) {
+			this.shape = shape;
+		}
+
+		Shape snapshot() {
+			Histogram copy = latency.copy();
+			long count = executions.sum();
+			long total = nanos.sum();
+			return new Shape(shape, count, rows.sum(), errors.sum(), total / 1_000_000.0,
+					count == 0 ? 0 : total / 1000.0 / count, copy.getValueAtPercentile(50),
+					copy.getValueAtPercentile(95), copy.getValueAtPercentile(99), maxNanos.get() / 1000);
+		}
+
+		void reset() {
+			latency.reset();
+			executions.reset();
+			rows.reset();
+			errors.reset();
+			nanos.reset();
+			maxNanos.reset();
+		}
+	}
+
+	/**
+	 * Readings of one statement shape. The percentiles come from the histogram and are
+	 * exact to 2 significant digits, mean and max are exact.
+	 */
+	public static class Shape {
+
+		private final String shape;
+		private final long executions;
+		private final long rows;
+		private final long errors;
+		private final double totalMillis;
+		private final double meanMicros;
+		private final long p50Micros;
+		private final long p95Micros;
+		private final long p99Micros;
+		private final long maxMicros;
+
+		@ConstructorProperties({ "shape", "executions", "rows", "errors", "totalMillis", "meanMicros", "p50Micros",
+				"p95Micros", "p99Micros", "maxMicros" })
+		public Shape(String shape, long executions, long rows, long errors, double totalMillis, double meanMicros,
+				long p50Micros, long p95Micros, long p99Micros, long maxMicros) {
+			this.shape = shape;
+			this.executions = executions;
+			this.rows = rows;
+			this.errors = errors;
+			this.totalMillis = totalMillis;
+			this.meanMicros = meanMicros;
+			this.p50Micros = p50Micros;
+			this.p95Micros = p95Micros;
+			this.p99Micros = p99Micros;
+			this.maxMicros = maxMicros;
+		}
+
+		public String getShape() {
+			return shape;
+		}
+
+		public long getExecutions() {
+			return executions;
+		}
+
+		/**
+		 * Rows read by the result sets or changed, summed over the executions
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public double getTotalMillis() {
+			return totalMillis;
+		}
+
+		public double getMeanMicros() {
+			return meanMicros;
+		}
+
+		public long getP50Micros() {
+			return p50Micros;
+		}
+
+		public long getP95Micros() {
+			return p95Micros;
+		}
+
+		public long getP99Micros() {
+			return p99Micros;
+		}
+
+		public long getMaxMicros() {
+			return maxMicros;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d x %s [rows=%d, mean=%.1fus, p50=%dus, p99=%dus, max=%dus]", executions, shape,
+					rows, meanMicros, p50Micros, p99Micros, maxMicros);
+		}
+	}
+
+	/**
+	 * A statement slower than the threshold, with its binds and who ran it. The binds of
+	 * a batch are those of its last row.
+	 */
+	public static class SlowStatement {
+
+		private final Date time;
+		private final double millis;
+		private final String sql;
+		private final String binds;
+		private final int batchRows;
+		private final String entryPoint;
+
+		@ConstructorProperties({ "time", "millis", "sql", "binds", "batchRows", "entryPoint" })
+		public SlowStatement(Date time, double millis, String sql, String binds, int batchRows, String entryPoint) {
+			this.time = time;
+			this.millis = millis;
+			this.sql = sql;
+			this.binds = binds;
+			this.batchRows = batchRows;
+			this.entryPoint = entryPoint;
+		}
+
+		public Date getTime() {
+			return time;
+		}
+
+		public double getMillis() {
+			return millis;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		public String getBinds() {
+			return binds;
+		}
+
+		/**
+		 * Rows of the JDBC batch, 0 for a single statement
+		 */
+		public int getBatchRows() {
+			return batchRows;
+		}
+
+		public String getEntryPoint() {
+			return entryPoint;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.1f ms from %s: %s %s", millis, entryPoint, sql, binds);
+		}
+	}
+
+	public static class Options {
+
+		private long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(100);
+		private double slowSampleRate = 1;
+		private int slowLogSize = 100;
+		private int maxShapes = 1000;
+		private Path snapshotFile;
+		private long snapshotIntervalSeconds = 60;
+
+		/**
+		 * Statements that take this long or longer are slow, default 100
+		 */
+		public Options slowThresholdMillis(long millis) {
+			this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+			return this;
+		}
+
+		/**
+		 * Part of the slow statements that are logged, between 0 and 1, default 1
+		 */
+		public Options slowSampleRate(double rate) {
+			if (rate < 0 || rate > 1) {
+				throw new IllegalArgumentException("slowSampleRate must be between 0 and 1: " + rate);
+			}
+			this.slowSampleRate = rate;
+			return this;
+		}
+
+		/**
+		 * Slow statements kept, older ones are dropped, default 100
+		 */
+		public Options slowLogSize(int size) {
+			this.slowLogSize = Math.max(1, size);
+			return this;
+		}
+
+		/**
+		 * Shapes with their own histogram, later ones are counted together, default 1000
+		 */
+		public Options maxShapes(int shapes) {
+			this.maxShapes = shapes;
+			return this;
+		}
+
+		/**
+		 * File the readings are written to every snapshotIntervalSeconds, default none
+		 */
+		public Options snapshotFile(Path file) {
+			this.snapshotFile = file;
+			return this;
+		}
+
+		public Options snapshotIntervalSeconds(long seconds) {
+			if (seconds <= 0) {
+				throw new IllegalArgumentException("snapshotIntervalSeconds must be > 0");
+			}
+			this.snapshotIntervalSeconds = seconds;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package orm.hibernate.statements;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * JMX view of StatementMetrics, registered as orm.hibernate:type=StatementMetrics,name=<pool name>
+ */
+public interface StatementMetricsMXBean {
+
+	/**
+	 * Statements executed, a JDBC batch counts once
+	 */
+	long getExecutions();
+
+	/**
+	 * Rows read by queries and changed by updates, inserts and deletes
+	 */
+	long getRows();
+
+	long getErrors();
+
+	double getTotalMillis();
+
+	/**
+	 * Distinct statement shapes seen, see SqlShapes
+	 */
+	int getShapeCount();
+
+	long getSlowThresholdMillis();
+
+	/**
+	 * Statements slower than the threshold, also those not sampled into the slow log
+	 */
+	long getSlowStatements();
+
+	/**
+	 * The shapes with the most time spent in them, at most 20
+	 */
+	List<StatementMetrics.Shape> getTopShapes();
+
+	/**
+	 * The latest sampled slow statements, newest first
+	 */
+	List<StatementMetrics.SlowStatement> getSlowLog();
+
+	/**
+	 * Writes the snapshot file now
+	 */
+	void writeSnapshot() throws IOException;
+
+	/**
+	 * Forgets all shapes and the slow log
+	 */
+	void reset();
+}
@@ -0,0 +1,179 @@
+package orm.hibernate.statements;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Records every SQL statement one session sends, grouped by shape (see SqlShapes) and
+ * by unit of work, a unit of work ends with each commit or rollback.
+ *
+ *   StatementRecorder recorder = new StatementRecorder();
+ *   try (Session session = recorder.openSession(ssf)) {
+ *       CustomerQueries.listing(session);
+ *   }
+ *   recorder.assertAtMost(2, "loading customers");
+ *   recorder.assertNoNPlusOne();
+ *
+ * A select shape that runs threshold times or more in one unit of work is reported as
+ * N+1, that is a lazy association touched in a loop. Statements are counted when they
+ * are prepared, a JDBC batch counts once however many rows it holds. A recorder belongs
+ * to one session and, like the session, is not thread safe.
+ */
+public class StatementRecorder extends BaseSessionEventListener implements StatementInspector {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_N_PLUS_ONE_THRESHOLD = 3;
+
+	private final int nPlusOneThreshold;
+	private final List<UnitOfWork> completed = new ArrayList<>();
+	private UnitOfWork current = new UnitOfWork();
+
+	public StatementRecorder() {
+		this(DEFAULT_N_PLUS_ONE_THRESHOLD);
+	}
+
+	/**
+	 * @param nPlusOneThreshold executions of one select shape within a unit of work
+	 *                          that count as N+1
+	 */
+	public StatementRecorder(int nPlusOneThreshold) {
+		if (nPlusOneThreshold < 2) {
+			throw new IllegalArgumentException("nPlusOneThreshold must be >= 2");
+		}
+		this.nPlusOneThreshold = nPlusOneThreshold;
+	}
+
+	/**
+	 * Opens a session that reports its statements and transactions to this recorder
+	 */
+	public Session openSession(SessionFactory sessionFactory) {
+		return sessionFactory.withOptions().statementInspector(this).eventListeners(this).openSession();
+	}
+
+	@Override
+	public String inspect(String sql) {
+		current.record(SqlShapes.normalize(sql));
+		return sql;
+	}
+
+	@Override
+	public void transactionCompletion(boolean successful) {
+		if (current.statements > 0) {
+			completed.add(current);
+			current = new UnitOfWork();
+		}
+	}
+
+	/**
+	 * Finished units of work followed by the current one, when it has statements
+	 */
+	public List<UnitOfWork> getUnitsOfWork() {
+		List<UnitOfWork> units = new ArrayList<>(completed);
+		if (current.statements > 0) {
+			units.add(current);
+		}
+		return units;
+	}
+
+	public int getStatementCount() {
+		int count = current.statements;
+		for (UnitOfWork unit : completed) {
+			count += unit.statements;
+		}
+		return count;
+	}
+
+	/**
+	 * Executions per shape over all units of work, in order of first execution
+	 */
+	public Map<String, Integer> getShapes() {
+		Map<String, Integer> shapes = new LinkedHashMap<>();
+		for (UnitOfWork unit : getUnitsOfWork()) {
+			unit.shapes.forEach((shape, count) -> shapes.merge(shape, count, Integer::sum));
+		}
+		return shapes;
+	}
+
+	/**
+	 * Select shapes that ran at least nPlusOneThreshold times in one unit of work
+	 */
+	public Map<String, Integer> getNPlusOneSuspects() {
+		Map<String, Integer> suspects = new LinkedHashMap<>();
+		for (UnitOfWork unit : getUnitsOfWork()) {
+			unit.shapes.forEach((shape, count) -> {
+				if (count >= nPlusOneThreshold && shape.startsWith("select")) {
+					suspects.merge(shape, count, Math::max);
+				}
+			});
+		}
+		return suspects;
+	}
+
+	/**
+	 * Forgets everything recorded so far
+	 */
+	public void reset() {
+		completed.clear();
+		current = new UnitOfWork();
+	}
+
+	/**
+	 * Fails with an AssertionError listing the statements when more than budget were
+	 * recorded since the last reset
+	 */
+	public void assertAtMost(int budget, String operation) {
+		int count = getStatementCount();
+		if (count > budget) {
+			throw new AssertionError(operation + " issued " + count + " statements, budget is " + budget
+					+ describe(getShapes()));
+		}
+	}
+
+	/**
+	 * Fails with an AssertionError when a select shape repeats nPlusOneThreshold times
+	 * or more within a unit of work
+	 */
+	public void assertNoNPlusOne() {
+		Map<String, Integer> suspects = getNPlusOneSuspects();
+		if (!suspects.isEmpty()) {
+			throw new AssertionError("N+1 selects detected" + describe(suspects));
+		}
+	}
+
+	private static String describe(Map<String, Integer> shapes) {
+		StringBuilder text = new StringBuilder();
+		shapes.forEach((shape, count) -> text.append("\n  ").append(count).append(" x ").append(shape));
+		return text.toString();
+	}
+
+	/**
+	 * Statements of one transaction, or of the statements outside of any
+	 */
+	public static class UnitOfWork {
+
+		private final Map<String, Integer> shapes = new LinkedHashMap<>();
+		private int statements;
+
+		void record(String shape) {
+			shapes.merge(shape, 1, Integer::sum);
+			statements++;
+		}
+
+		public int getStatementCount() {
+			return statements;
+		}
+
+		public Map<String, Integer> getShapes() {
+			return Collections.unmodifiableMap(shapes);
+		}
+	}
+}
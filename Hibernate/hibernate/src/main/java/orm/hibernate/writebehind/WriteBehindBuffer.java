@@ -0,0 +1,485 @@
+package orm.hibernate.writebehind;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.jboss.logging.Logger;
+
+/**
+ * Collects frequent changes of the same rows in memory and writes them later in JDBC
+ * batches, for counters and profile fields that change many times a second.
+ *
+ * A change is a function on the entity (st -> st.setCity("Pune")), the changes of one
+ * id are kept in order. A flush loads the rows of up to batchSize ids with one
+ * multiLoad, applies their changes one after the other and commits, hibernate writes
+ * only the rows that became dirty as one JDBC batch of updates. Ten changes of one
+ * student become one update. As the changes are applied to the state at flush time,
+ * other writers of the row in the meantime are not overwritten.
+ *
+ * The flush is an ordinary entity update, so a READ_WRITE second level cache entry is
+ * soft locked during the flush transaction and replaced after its commit, the cache
+ * never holds state the database does not have. Until the flush readers see the last
+ * committed state, read(..) applies the pending changes on top of it.
+ *
+ * A flush runs when maxPendingRows rows have pending changes, every maxLagMillis, and
+ * on flush() and close(). With more than maxPendingChanges changes in memory the
+ * caller of update(..) flushes itself, as does an update(..) that races with close().
+ * What a crash loses depends on the Durability. A failed flush queues its changes
+ * again in front of newer ones, after maxAttempts failures they are dropped and their
+ * futures fail. The changes of a row that does not exist, or one of which throws, are
+ * dropped at once.
+ */
+public class WriteBehindBuffer<T, ID extends Serializable> implements WriteBehindBufferMXBean, AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(WriteBehindBuffer.class);
+
+	/**
+	 * When the caller's change is safe
+	 */
+	public enum Durability {
+		/**
+		 * No buffering, update(..) writes the change in its own transaction before it returns
+		 */
+		WRITE_THROUGH,
+		/**
+		 * update(..) returns after the flush that wrote the change committed, the change is
+		 * never lost, but waits up to maxLagMillis. Callers share flushes (group commit).
+		 */
+		WAIT_FOR_FLUSH,
+		/**
+		 * update(..) returns at once, the returned future completes at the flush. Changes
+		 * of the last maxLagMillis are lost when the JVM dies.
+		 */
+		BUFFERED
+	}
+
+	private final SessionFactory sessionFactory;
+	private final Class<T> entity;
+	private final Options options;
+	private final Map<ID, Pending<T>> pending = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService flusher;
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private final AtomicLong pendingChanges = new AtomicLong();
+	private final Object flushLock = new Object();
+	private volatile boolean closed;
+	private ObjectName objectName;
+
+	private final LongAdder changes = new LongAdder();
+	private final LongAdder rowsWritten = new LongAdder();
+	private final LongAdder flushes = new LongAdder();
+	private final LongAdder failedFlushes = new LongAdder();
+	private final LongAdder droppedChanges = new LongAdder();
+	private final LongAdder lagNanos = new LongAdder();
+	private final LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0);
+
+	public WriteBehindBuffer(SessionFactory sessionFactory, Class<T> entity, Options options) {
+		this.sessionFactory = sessionFactory;
+		this.entity = entity;
+		this.options = options;
+		if (options.durability == Durability.WRITE_THROUGH) {
+			this.flusher = null;
+		} else {
+			this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "write-behind-" + entity.getSimpleName());
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flushQuietly, options.maxLagMillis, options.maxLagMillis,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Queues a change of the row with the given id. The future completes when the change
+	 * is committed, with WRITE_THROUGH and WAIT_FOR_FLUSH that has happened on return.
+	 */
+	public CompletableFuture<Void> update(ID id, Consumer<? super T> change) {
+		if (closed) {
+			throw new IllegalStateException("WriteBehindBuffer of " + entity.getSimpleName() + " is closed");
+		}
+		changes.increment();
+		if (options.durability == Durability.WRITE_THROUGH) {
+			writeThrough(id, change);
+			return CompletableFuture.completedFuture(null);
+		}
+		Pending<T> queued = pending.compute(id, (key, previous) -> {
+			Pending<T> next = previous == null ? new Pending<>() : previous;
+			synchronized (next.changes) {
+				next.changes.add(change);
+			}
+			return next;
+		});
+		if (pendingChanges.incrementAndGet() > options.maxPendingChanges) {
+			/**
+			 * Callers faster than the flushes write themselves, the buffer does not grow
+			 * without limit
+			 */
+			flush();
+		} else if (closed) {
+			/**
+			 * close() may have flushed before this change was queued, no flusher is left
+			 */
+			flush();
+		} else if (pending.size() >= options.maxPendingRows && flushRequested.compareAndSet(false, true)) {
+			try {
+				flusher.execute(this::flushQuietly);
+			} catch (RejectedExecutionException e) {
+				flush();
+			}
+		}
+		if (options.durability == Durability.WAIT_FOR_FLUSH) {
+			queued.flushed.join();
+		}
+		return queued.flushed;
+	}
+
+	/**
+	 * The row as the database will have it after the next flush, detached, null when
+	 * there is no row
+	 */
+	public T read(ID id) {
+		try (Session session = sessionFactory.openSession()) {
+			session.setDefaultReadOnly(true);
+			T row = session.get(entity, id);
+			if (row == null) {
+				return null;
+			}
+			session.detach(row);
+			Pending<T> queued = pending.get(id);
+			if (queued != null) {
+				synchronized (queued.changes) {
+					queued.changes.forEach(change -> change.accept(row));
+				}
+			}
+			return row;
+		}
+	}
+
+	/**
+	 * Writes every pending change before it returns
+	 */
+	@Override
+	public void flush() {
+		synchronized (flushLock) {
+			flushRequested.set(false);
+			List<ID> ids = new ArrayList<>(pending.keySet());
+			for (int from = 0; from < ids.size(); from += options.batchSize) {
+				flushBatch(ids.subList(from, Math.min(from + options.batchSize, ids.size())));
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			LOGGER.error("Write-behind flush of " + entity.getSimpleName() + " failed", e);
+		}
+	}
+
+	/**
+	 * One transaction and one JDBC batch. Changes queued for an id after it was taken
+	 * here wait for the next flush.
+	 */
+	private void flushBatch(List<ID> ids) {
+		Map<ID, Pending<T>> batch = new LinkedHashMap<>();
+		for (ID id : ids) {
+			Pending<T> queued = pending.remove(id);
+			if (queued != null) {
+				batch.put(id, queued);
+				pendingChanges.addAndGet(-queued.changes.size());
+			}
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<ID> loaded = new ArrayList<>(batch.keySet());
+		Transaction tx = null;
+		try (Session session = sessionFactory.openSession()) {
+			tx = session.beginTransaction();
+			List<T> rows = session.byMultipleIds(entity).withBatchSize(loaded.size()).multiLoad(loaded);
+			Map<Pending<T>, RuntimeException> dropped = new IdentityHashMap<>();
+			for (int i = 0; i < loaded.size(); i++) {
+				Pending<T> queued = batch.get(loaded.get(i));
+				T row = rows.get(i);
+				if (row == null) {
+					dropped.put(queued, new HibernateException(
+							"No " + entity.getSimpleName() + " row with id " + loaded.get(i)));
+					continue;
+				}
+				try {
+					for (Consumer<? super T> change : queued.changes) {
+						change.accept(row);
+					}
+				} catch (RuntimeException e) {
+					/**
+					 * A change that throws is not retried, the row is not written and the
+					 * other rows of the batch are
+					 */
+					session.detach(row);
+					dropped.put(queued, e);
+				}
+			}
+			tx.commit();
+			flushes.increment();
+			long now = System.nanoTime();
+			for (Pending<T> queued : batch.values()) {
+				RuntimeException failure = dropped.get(queued);
+				if (failure != null) {
+					droppedChanges.add(queued.changes.size());
+					queued.flushed.completeExceptionally(failure);
+					continue;
+				}
+				rowsWritten.increment();
+				lagNanos.add(now - queued.firstNanos);
+				maxLagNanos.accumulate(now - queued.firstNanos);
+				queued.flushed.complete(null);
+			}
+		} catch (RuntimeException e) {
+			if (tx != null && tx.isActive()) {
+				try {
+					tx.rollback();
+				} catch (RuntimeException rollback) {
+					e.addSuppressed(rollback);
+				}
+			}
+			failedFlushes.increment();
+			requeue(batch, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Puts the changes of a failed batch back in front of the changes queued since
+	 */
+	private void requeue(Map<ID, Pending<T>> batch, RuntimeException failure) {
+		batch.forEach((id, failed) -> {
+			if (++failed.attempts >= options.maxAttempts) {
+				droppedChanges.add(failed.changes.size());
+				failed.flushed.completeExceptionally(failure);
+				return;
+			}
+			pendingChanges.addAndGet(failed.changes.size());
+			pending.merge(id, failed, (newer, older) -> {
+				synchronized (older.changes) {
+					older.changes.addAll(newer.changes);
+				}
+				older.flushed.whenComplete((result, e) -> {
+					if (e == null) {
+						newer.flushed.complete(null);
+					} else {
+						newer.flushed.completeExceptionally(e);
+					}
+				});
+				return older;
+			});
+		});
+	}
+
+	private void writeThrough(ID id, Consumer<? super T> change) {
+		try (Session session = sessionFactory.openSession()) {
+			Transaction tx = session.beginTransaction();
+			try {
+				T row = session.get(entity, id);
+				if (row == null) {
+					throw new HibernateException("No " + entity.getSimpleName() + " row with id " + id);
+				}
+				change.accept(row);
+				tx.commit();
+				rowsWritten.increment();
+			} catch (RuntimeException e) {
+				if (tx.isActive()) {
+					tx.rollback();
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Registers the metrics as orm.hibernate:type=WriteBehindBuffer,name=<name>
+	 */
+	public WriteBehindBuffer<T, ID> register(String name) throws JMException {
+		objectName = new ObjectName("orm.hibernate:type=WriteBehindBuffer,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return this;
+	}
+
+	@Override
+	public String getDurability() {
+		return options.durability.name();
+	}
+
+	@Override
+	public int getPendingRows() {
+		return pending.size();
+	}
+
+	@Override
+	public long getPendingChanges() {
+		return Math.max(0, pendingChanges.get());
+	}
+
+	@Override
+	public long getChanges() {
+		return changes.sum();
+	}
+
+	@Override
+	public long getRowsWritten() {
+		return rowsWritten.sum();
+	}
+
+	@Override
+	public long getFlushes() {
+		return flushes.sum();
+	}
+
+	@Override
+	public long getFailedFlushes() {
+		return failedFlushes.sum();
+	}
+
+	@Override
+	public long getDroppedChanges() {
+		return droppedChanges.sum();
+	}
+
+	@Override
+	public double getAverageFlushLagMillis() {
+		long rows = rowsWritten.sum();
+		return rows == 0 || options.durability == Durability.WRITE_THROUGH ? 0 : lagNanos.sum() / 1_000_000.0 / rows;
+	}
+
+	@Override
+	public long getMaxFlushLagMillis() {
+		return maxLagNanos.get() / 1_000_000;
+	}
+
+	/**
+	 * Stops accepting changes and writes the pending ones
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (flusher != null) {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			flush();
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOGGER.warn("Could not unregister write-behind buffer MBean", e);
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "WriteBehindBuffer [entity=" + entity.getSimpleName() + ", durability=" + getDurability()
+				+ ", pendingRows=" + getPendingRows() + ", changes=" + getChanges() + ", rowsWritten="
+				+ getRowsWritten() + ", flushes=" + getFlushes() + ", failedFlushes=" + getFailedFlushes()
+				+ ", droppedChanges=" + getDroppedChanges() + ", averageFlushLagMillis="
+				+ String.format("%.1f", getAverageFlushLagMillis()) + ", maxFlushLagMillis=" + getMaxFlushLagMillis()
+				+ "]";
+	}
+
+	/**
+	 * The changes of one row since its last flush
+	 */
+	private static final class Pending<T> {
+
+		private final List<Consumer<? super T>> changes = new ArrayList<>();
+		private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+		private final long firstNanos = System.nanoTime();
+		private int attempts;
+	}
+
+	/**
+	 * When and how a buffer writes
+	 */
+	public static class Options {
+
+		private Durability durability = Durability.BUFFERED;
+		private int maxPendingRows = 1000;
+		private long maxPendingChanges = 100_000;
+		private long maxLagMillis = 1000;
+		private int batchSize = 50;
+		private int maxAttempts = 3;
+
+		public Options durability(Durability durability) {
+			this.durability = durability;
+			return this;
+		}
+
+		/**
+		 * Rows with pending changes that start a flush
+		 */
+		public Options maxPendingRows(int rows) {
+			this.maxPendingRows = rows;
+			return this;
+		}
+
+		/**
+		 * Changes in memory at which update(..) flushes on the caller's thread
+		 */
+		public Options maxPendingChanges(long changes) {
+			this.maxPendingChanges = changes;
+			return this;
+		}
+
+		/**
+		 * Time between the flushes of the timer
+		 */
+		public Options maxLagMillis(long millis) {
+			this.maxLagMillis = millis;
+			return this;
+		}
+
+		/**
+		 * Rows per flush transaction, best hibernate.jdbc.batch_size
+		 */
+		public Options batchSize(int rows) {
+			this.batchSize = rows;
+			return this;
+		}
+
+		/**
+		 * Failed flushes of a change before it is dropped
+		 */
+		public Options maxAttempts(int attempts) {
+			this.maxAttempts = attempts;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package orm.hibernate.writebehind;
+
+/**
+ * JMX view of a WriteBehindBuffer, registered by register(name) as
+ * orm.hibernate:type=WriteBehindBuffer,name=<name>
+ */
+public interface WriteBehindBufferMXBean {
+
+	/**
+	 * WRITE_THROUGH, WAIT_FOR_FLUSH or BUFFERED
+	 */
+	String getDurability();
+
+	/**
+	 * Rows with changes not written yet
+	 */
+	int getPendingRows();
+
+	/**
+	 * Changes not written yet
+	 */
+	long getPendingChanges();
+
+	/**
+	 * Changes accepted by update(..)
+	 */
+	long getChanges();
+
+	/**
+	 * Rows updated by the flushes, changes - rowsWritten changes were merged into other ones
+	 */
+	long getRowsWritten();
+
+	long getFlushes();
+
+	/**
+	 * Flushes that failed, their changes were queued again
+	 */
+	long getFailedFlushes();
+
+	/**
+	 * Changes given up after maxAttempts failed flushes or because their row did not exist
+	 */
+	long getDroppedChanges();
+
+	/**
+	 * Time from the first change of a row to the commit that wrote it, average over all rows
+	 */
+	double getAverageFlushLagMillis();
+
+	long getMaxFlushLagMillis();
+
+	/**
+	 * Writes the pending changes now
+	 */
+	void flush();
+}
@@ -0,0 +1,368 @@
+package orm.hibernate.xmlbasedconfig;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+/**
+ * Imports coder ratings from a CSV file with lines of the form
+ *
+ *   name,rating
+ *
+ * The file is memory mapped and parsed straight from the mapped bytes, only the name
+ * becomes a String (it is a field of Coders), the rating is parsed without one.
+ * Parsing runs on its own thread and hands batches of Coders over a bounded queue to
+ * the calling thread, which inserts them through a StatelessSession. A stateless
+ * session has no persistence context and no dirty checking, every insert goes
+ * directly into the current JDBC batch.
+ *
+ * A line that does not parse stops the import: the open transaction is rolled back
+ * and the IOException tells how many rows the transactions before it committed.
+ */
+public class CodersCsvImporter {
+
+	/**
+	 * Largest region mapped at once, a MappedByteBuffer is indexed by int
+	 */
+	private static final long MAX_REGION = Integer.MAX_VALUE;
+
+	private static final Coders[] END_OF_FILE = new Coders[0];
+
+	/**
+	 * Sent instead of END_OF_FILE when the parser failed
+	 */
+	private static final Coders[] PARSE_FAILED = new Coders[0];
+
+	private final SessionFactory sessionFactory;
+	private final int batchSize;
+	private final int batchesPerTransaction;
+	private final int queueCapacity;
+	private final long maxRegion;
+
+	/**
+	 * @param batchSize             rows handed from the parser to the writer at once,
+	 *                              use hibernate.jdbc.batch_size
+	 * @param batchesPerTransaction batches inserted before each commit
+	 * @param queueCapacity         batches the parser may run ahead of the writer
+	 */
+	public CodersCsvImporter(SessionFactory sessionFactory, int batchSize, int batchesPerTransaction, int queueCapacity) {
+		this(sessionFactory, batchSize, batchesPerTransaction, queueCapacity, MAX_REGION);
+	}
+
+	CodersCsvImporter(SessionFactory sessionFactory, int batchSize, int batchesPerTransaction, int queueCapacity,
+			long maxRegion) {
+		if (batchSize <= 0 || batchesPerTransaction <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException("batchSize, batchesPerTransaction and queueCapacity must be > 0");
+		}
+		this.sessionFactory = sessionFactory;
+		this.batchSize = batchSize;
+		this.batchesPerTransaction = batchesPerTransaction;
+		this.queueCapacity = queueCapacity;
+		this.maxRegion = maxRegion;
+	}
+
+	public Report importFile(Path csv) throws IOException, InterruptedException {
+		BlockingQueue<Coders[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+		AtomicReference<Throwable> parseFailure = new AtomicReference<>();
+		AtomicLong parserAllocated = new AtomicLong();
+		AtomicBoolean writerGone = new AtomicBoolean();
+
+		long start = System.nanoTime();
+		long writerAllocatedBefore = allocatedBytes();
+
+		Thread parser = new Thread(() -> {
+			long before = allocatedBytes();
+			try {
+				parse(csv, queue);
+			} catch (Throwable e) {
+				parseFailure.set(e);
+			} finally {
+				parserAllocated.set(allocatedBytes() - before);
+				Coders[] end = parseFailure.get() == null ? END_OF_FILE : PARSE_FAILED;
+				if (writerGone.get()) {
+					// nobody takes from the queue anymore, put would block forever
+					queue.offer(end);
+				} else {
+					try {
+						queue.put(end);
+					} catch (InterruptedException e) {
+						queue.offer(end);
+					}
+				}
+			}
+		}, "coders-csv-parser");
+		parser.setDaemon(true);
+		parser.start();
+
+		long rows;
+		try {
+			rows = write(queue, csv, parseFailure);
+		} catch (IOException | RuntimeException | InterruptedException e) {
+			writerGone.set(true);
+			parser.interrupt();
+			joinQuietly(parser);
+			throw e;
+		}
+		parser.join();
+
+		long elapsed = System.nanoTime() - start;
+		long allocated = parserAllocated.get() + (allocatedBytes() - writerAllocatedBefore);
+		return new Report(rows, elapsed, allocatedBytes() < 0 ? -1 : allocated);
+	}
+
+	/**
+	 * Waits for the parser after the writer failed, keeps the interrupt of the
+	 * calling thread for its caller
+	 */
+	private static void joinQuietly(Thread parser) {
+		boolean interrupted = false;
+		while (parser.isAlive()) {
+			try {
+				parser.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writer stage, inserts batches until the parser signals the end of the file or
+	 * its failure, which rolls back the open transaction
+	 */
+	private long write(BlockingQueue<Coders[]> queue, Path csv, AtomicReference<Throwable> parseFailure)
+			throws IOException, InterruptedException {
+		long rows = 0;
+		long committed = 0;
+		StatelessSession session = sessionFactory.openStatelessSession();
+		try {
+			Transaction tx = session.beginTransaction();
+			int batches = 0;
+			Coders[] batch;
+			while ((batch = queue.take()) != END_OF_FILE) {
+				if (batch == PARSE_FAILED) {
+					tx.rollback();
+					throw new IOException("Failed to parse " + csv + ", " + committed
+							+ " rows were committed before, the rest was rolled back", parseFailure.get());
+				}
+				for (Coders coder : batch) {
+					session.insert(coder);
+				}
+				rows += batch.length;
+				if (++batches % batchesPerTransaction == 0) {
+					tx.commit();
+					committed = rows;
+					tx = session.beginTransaction();
+				}
+			}
+			tx.commit();
+		} catch (RuntimeException | InterruptedException e) {
+			if (session.getTransaction().isActive()) {
+				session.getTransaction().rollback();
+			}
+			throw e;
+		} finally {
+			session.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Parser stage, maps the file region by region. A region ends at the last
+	 * complete line it contains, the next region starts right after it.
+	 */
+	private void parse(Path csv, BlockingQueue<Coders[]> queue) throws IOException, InterruptedException {
+		try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			Coders[] batch = new Coders[batchSize];
+			int filled = 0;
+			byte[] scratch = new byte[256];
+			while (position < size) {
+				long length = Math.min(maxRegion, size - position);
+				boolean last = position + length == size;
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int lineStart = 0;
+				int limit = region.limit();
+				for (int i = 0; i < limit; i++) {
+					if (region.get(i) == '\n') {
+						Coders coder = parseLine(region, lineStart, i, scratch);
+						if (coder != null) {
+							batch[filled++] = coder;
+							if (filled == batchSize) {
+								queue.put(batch);
+								batch = new Coders[batchSize];
+								filled = 0;
+							}
+						}
+						lineStart = i + 1;
+					}
+				}
+				if (last) {
+					Coders coder = parseLine(region, lineStart, limit, scratch);
+					if (coder != null) {
+						batch[filled++] = coder;
+					}
+					position = size;
+				} else {
+					if (lineStart == 0) {
+						throw new IOException("Line longer than " + maxRegion + " bytes at offset " + position);
+					}
+					position += lineStart;
+				}
+			}
+			if (filled > 0) {
+				Coders[] rest = new Coders[filled];
+				System.arraycopy(batch, 0, rest, 0, filled);
+				queue.put(rest);
+			}
+		}
+	}
+
+	/**
+	 * Parses the bytes [start, end) of one line, returns null for blank lines.
+	 * The name bytes are copied into the reusable scratch array before decoding.
+	 */
+	private static Coders parseLine(MappedByteBuffer region, int start, int end, byte[] scratch)
+			throws IOException {
+		if (end > start && region.get(end - 1) == '\r') {
+			end--;
+		}
+		if (end == start) {
+			return null;
+		}
+		int comma = -1;
+		for (int i = end - 1; i >= start; i--) {
+			if (region.get(i) == ',') {
+				comma = i;
+				break;
+			}
+		}
+		if (comma < 0) {
+			throw new IOException("Expected name,rating but found no comma");
+		}
+		int nameLength = comma - start;
+		if (nameLength > scratch.length) {
+			throw new IOException("Name longer than " + scratch.length + " bytes");
+		}
+		for (int i = 0; i < nameLength; i++) {
+			scratch[i] = region.get(start + i);
+		}
+		Coders coder = new Coders();
+		coder.setName(new String(scratch, 0, nameLength, StandardCharsets.UTF_8));
+		coder.setRating(parseRating(region, comma + 1, end));
+		return coder;
+	}
+
+	/**
+	 * Parses [-]digits[.digits] without creating a String
+	 */
+	private static float parseRating(MappedByteBuffer region, int start, int end) throws IOException {
+		boolean negative = false;
+		int i = start;
+		if (i < end && region.get(i) == '-') {
+			negative = true;
+			i++;
+		}
+		if (i == end) {
+			throw new IOException("Empty rating");
+		}
+		long digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for (; i < end; i++) {
+			byte b = region.get(i);
+			if (b == '.' && !fraction) {
+				fraction = true;
+			} else if (b >= '0' && b <= '9') {
+				if (digits < Long.MAX_VALUE / 10) {
+					digits = digits * 10 + (b - '0');
+					if (fraction) {
+						scale++;
+					}
+				} else if (!fraction) {
+					throw new IOException("Rating out of range");
+				}
+			} else {
+				throw new IOException("Invalid character '" + (char) b + "' in rating");
+			}
+		}
+		double value = digits / Math.pow(10, scale);
+		return (float) (negative ? -value : value);
+	}
+
+	/**
+	 * Bytes allocated so far by the current thread, -1 when the JVM cannot tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+			if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+				return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Throughput and allocation of one import
+	 */
+	public static class Report {
+
+		private final long rows;
+		private final long elapsedNanos;
+		private final long allocatedBytes;
+
+		Report(long rows, long elapsedNanos, long allocatedBytes) {
+			this.rows = rows;
+			this.elapsedNanos = elapsedNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public double getRowsPerSecond() {
+			return rows / (elapsedNanos / 1_000_000_000.0);
+		}
+
+		/**
+		 * Bytes allocated by the parser and writer threads, -1 if not measurable
+		 */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public double getAllocatedMegabytesPerSecond() {
+			return allocatedBytes < 0 ? -1 : allocatedBytes / 1024.0 / 1024.0 / (elapsedNanos / 1_000_000_000.0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Imported %d rows in %.3f s (%.0f rows/s), allocated %.1f MB (%.1f MB/s, %d bytes/row)",
+					rows, elapsedNanos / 1_000_000_000.0, getRowsPerSecond(), allocatedBytes / 1024.0 / 1024.0,
+					getAllocatedMegabytesPerSecond(), rows == 0 || allocatedBytes < 0 ? -1 : allocatedBytes / rows);
+		}
+	}
+}
@@ -1,33 +1,24 @@
 package orm.hibernate.xmlbasedconfig;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
-import org.hibernate.cfg.Configuration;
+
+import orm.hibernate.SessionFactoryRegistry;
 
 public class MainMethod {
 
 	  public static void main(String[] args) {
-		  /**
-		   * This line creates a new instance of the Configuration class from Hibernate.
-		   * The Configuration object is used to configure Hibernate and set up its properties.
-		   */
-		  Configuration con=new Configuration();
-		  
-		  /**
-		   * This line tells the Configuration object to load the configuration settings from the file
-		   *  hibernateConfig.cfg.xml, located in the orm/hibernate directory.
-		   * The XML file contains important settings such as database connection details, dialect, 
-		   *  mappings, and other Hibernate configurations.
-		   */
-		  con.configure("orm/hibernate/hibernateXmlBasedConfig.cfg.xml");
-	  
 		  /**
 		   * The SessionFactory is a crucial object in Hibernate. It is a factory for Session objects, 
-		   * which are used to interact with the database. The SessionFactory is typically created once 
-		   * and used to create multiple Session instances.
+		   * which are used to interact with the database. It is expensive to build, so it is created once
+		   * per configuration file by SessionFactoryRegistry and shared by every entry point.
 		   */
-		  SessionFactory ssf=con.buildSessionFactory();
+		  SessionFactory ssf=SessionFactoryRegistry.get(SessionFactoryRegistry.XML_BASED_CONFIG,
+				new SessionFactoryRegistry.WarmUp().connections(2));
 		  
 		  /**
 		   * Created a session
@@ -45,6 +36,26 @@ public class MainMethod {
 		  session.save(code);
 		  tx.commit();
 		  session.close();
+		  
+		  /**
+		   * For large files of name,rating lines use the importer, it parses the
+		   * memory mapped file on one thread and inserts through a StatelessSession
+		   * in JDBC batches on another.
+		   */
+		  if(args.length>0) {
+			  try {
+				  CodersCsvImporter.Report report=new CodersCsvImporter(ssf, 50, 20, 16).importFile(Paths.get(args[0]));
+				  System.out.println(report);
+			  } catch (IOException e) {
+				  e.printStackTrace();
+			  } catch (InterruptedException e) {
+				  /**
+				   * Keep the interrupt for whoever runs this thread, the import stops here
+				   */
+				  Thread.currentThread().interrupt();
+				  System.out.println("Import interrupted");
+			  }
+		  }
 		
 		  
 	  }
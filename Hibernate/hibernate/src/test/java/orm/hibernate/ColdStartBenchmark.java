@@ -0,0 +1,46 @@
+package orm.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import orm.hibernate.annotation.Student;
+
+/**
+ * Time from process start to the first answered query, with and without
+ * SessionFactoryRegistry warm up. Run once per mode so every run starts with a
+ * cold JVM:
+ *
+ *   ColdStartBenchmark cold
+ *   ColdStartBenchmark warm
+ *
+ * In warm mode the warm up is part of the bootstrap, the interesting number is the
+ * latency of the first request once the factory is handed out.
+ */
+public class ColdStartBenchmark {
+
+	private static final String CONFIG = "orm/hibernate/hibernateTestConfig.cfg.xml";
+	private static final String HQL = "from Student st where st.name=:x";
+
+	public static void main(String[] args) {
+		boolean warm = args.length > 0 && args[0].equals("warm");
+		long start = System.nanoTime();
+		SessionFactory ssf = warm
+				? SessionFactoryRegistry.get(CONFIG, new SessionFactoryRegistry.WarmUp()
+						.hql(HQL)
+						.connections(4)
+						.cachedEntities(1000, Student.class))
+				: SessionFactoryRegistry.get(CONFIG);
+		long ready = System.nanoTime();
+
+		try (Session session = ssf.openSession()) {
+			session.get(Student.class, 1);
+			session.createQuery(HQL, Student.class).setParameter("x", "Harsh").list();
+		}
+		long answered = System.nanoTime();
+
+		System.out.printf("%s bootstrap %d ms, first request %.2f ms, start to first answer %d ms%n",
+				warm ? "warm" : "cold", (ready - start) / 1_000_000, (answered - ready) / 1_000_000.0,
+				(answered - start) / 1_000_000);
+		SessionFactoryRegistry.closeAll();
+	}
+}
@@ -0,0 +1,94 @@
+package orm.hibernate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.ManagedEntity;
+import org.hibernate.engine.spi.PersistentAttributeInterceptable;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.annotation.Address;
+import orm.hibernate.annotation.Student;
+import orm.hibernate.annotation.manytomany.EmployeeProjects;
+import orm.hibernate.annotation.manytomany.Projects;
+import orm.hibernate.annotation.onetomany.Customer;
+import orm.hibernate.annotation.onetomany.CustomerOrder;
+import orm.hibernate.hql.Paginator;
+
+/**
+ * Checks that the build ran the hibernate-enhance-maven-plugin over the entities
+ */
+public class EnhancementTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+	}
+
+	@Test
+	public void entitiesAreEnhanced() {
+		for (Class<?> entity : new Class<?>[] { Student.class, Address.class, Customer.class, CustomerOrder.class,
+				Paginator.class, EmployeeProjects.class, Projects.class }) {
+			assertTrue(ManagedEntity.class.isAssignableFrom(entity), entity.getName());
+			assertTrue(SelfDirtinessTracker.class.isAssignableFrom(entity), entity.getName());
+			assertTrue(PersistentAttributeInterceptable.class.isAssignableFrom(entity), entity.getName());
+		}
+	}
+
+	@Test
+	public void settersTrackTheChangedAttributes() {
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			Student st = new Student();
+			st.setId(7);
+			st.setName("Harsh");
+			st.setCity("Mumbai");
+			session.save(st);
+			session.getTransaction().commit();
+		}
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			Student st = session.get(Student.class, 7);
+			SelfDirtinessTracker tracker = (SelfDirtinessTracker) st;
+			assertFalse(tracker.$$_hibernate_hasDirtyAttributes());
+
+			st.setCity("Pune");
+			assertArrayEquals(new String[] { "city" }, tracker.$$_hibernate_getDirtyAttributes());
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void settingTheOwningSideUpdatesTheInverseSide() {
+		Customer cust = new Customer();
+		CustomerOrder order = new CustomerOrder();
+		order.setCustomerIdhavingMultipleOrders(cust);
+		assertEquals(Arrays.asList(order), cust.getAllOrdersofACustomer());
+
+		/**
+		 * Setting both sides, like annotation.MainMethod does, adds nothing twice
+		 */
+		cust.setAllOrdersofACustomer(new ArrayList<>(Arrays.asList(order)));
+		order.setCustomerIdhavingMultipleOrders(cust);
+		assertEquals(1, cust.getAllOrdersofACustomer().size());
+
+		Projects project = new Projects();
+		EmployeeProjects employee = new EmployeeProjects();
+		employee.setEmpWorkingonProjects(new HashSet<>(Arrays.asList(project)));
+		assertEquals(Collections.singleton(employee), project.getProjectAssignToemp());
+	}
+}
@@ -0,0 +1,105 @@
+package orm.hibernate;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.cfg.Configuration;
+
+import orm.hibernate.hql.Paginator;
+
+/**
+ * Flush time of one session holding many managed entities, enhanced hql.Paginator
+ * (in-line dirty tracking) against the unenhanced PlainPaginator (snapshot comparison).
+ * Every 100th entity is modified before the first flush, the second flush has nothing
+ * to write. Pass the sizes as first argument (default 10000,100000,1000000), 1M managed
+ * entities need about -Xmx3g.
+ */
+public class FlushBenchmark {
+
+	public static void main(String[] args) {
+		String sizes = args.length > 0 ? args[0] : "10000,100000,1000000";
+		SessionFactory ssf = new Configuration().configure("orm/hibernate/hibernateTestConfig.cfg.xml")
+				.addAnnotatedClass(PlainPaginator.class)
+				.buildSessionFactory();
+		try {
+			/**
+			 * Warm up both paths once so class loading and JIT are not measured
+			 */
+			run(ssf, Paginator.class, 10000, null, Paginator::setIdval, Paginator::getIdval);
+			run(ssf, PlainPaginator.class, 10000, PlainPaginator::setId, PlainPaginator::setIdval,
+					PlainPaginator::getIdval);
+
+			System.out.printf("%-10s %-15s %14s %14s%n", "entities", "entity", "flush 1% dirty", "flush clean");
+			for (String size : sizes.split(",")) {
+				int entities = Integer.parseInt(size.trim());
+				report(entities, "enhanced", run(ssf, Paginator.class, entities, null, Paginator::setIdval,
+						Paginator::getIdval));
+				report(entities, "snapshot", run(ssf, PlainPaginator.class, entities, PlainPaginator::setId,
+						PlainPaginator::setIdval, PlainPaginator::getIdval));
+			}
+		} finally {
+			ssf.close();
+		}
+	}
+
+	/**
+	 * Returns the nanos of the dirty and of the clean flush
+	 */
+	private static <T> long[] run(SessionFactory ssf, Class<T> entity, int entities, BiConsumer<T, Integer> id,
+			BiConsumer<T, String> setter, Function<T, String> getter) {
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= entities; i++) {
+				T row = newInstance(entity);
+				if (id != null) {
+					id.accept(row, i);
+				}
+				setter.accept(row, "value " + i);
+				session.insert(row);
+			}
+			session.getTransaction().commit();
+		}
+
+		long[] nanos = new long[2];
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			List<T> managed = session.createQuery("from " + entity.getName(), entity).list();
+			for (int i = 0; i < managed.size(); i += 100) {
+				T row = managed.get(i);
+				setter.accept(row, getter.apply(row) + " changed");
+			}
+			long start = System.nanoTime();
+			session.flush();
+			nanos[0] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			session.flush();
+			nanos[1] = System.nanoTime() - start;
+			session.getTransaction().rollback();
+		}
+
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			session.createQuery("delete from " + entity.getName()).executeUpdate();
+			session.getTransaction().commit();
+		}
+		return nanos;
+	}
+
+	private static <T> T newInstance(Class<T> entity) {
+		try {
+			return entity.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void report(int entities, String name, long[] nanos) {
+		System.out.printf("%-10d %-15s %11.1f ms %11.1f ms%n", entities, name, nanos[0] / 1_000_000.0,
+				nanos[1] / 1_000_000.0);
+	}
+}
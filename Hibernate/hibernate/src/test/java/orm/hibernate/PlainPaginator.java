@@ -0,0 +1,35 @@
+package orm.hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Same attributes as hql.Paginator. Classes under src/test are not run through the
+ * hibernate-enhance-maven-plugin, so this one is flushed with snapshot comparison.
+ */
+@Entity
+@Table(name = "plain_paginator")
+public class PlainPaginator {
+
+	@Id
+	private int id;
+
+	private String idval;
+
+	public int getId() {
+		return id;
+	}
+
+	public void setId(int id) {
+		this.id = id;
+	}
+
+	public String getIdval() {
+		return idval;
+	}
+
+	public void setIdval(String idval) {
+		this.idval = idval;
+	}
+}
@@ -0,0 +1,173 @@
+package orm.hibernate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import orm.hibernate.annotation.Student;
+import orm.hibernate.caching.SecondLevel;
+import orm.hibernate.hql.MainMethod;
+import orm.hibernate.hql.Paginator;
+import orm.hibernate.pool.PoolMetrics;
+import orm.hibernate.pool.PooledConnectionProvider;
+
+public class SessionFactoryRegistryTest {
+
+	private static final String CONFIG = TestDatabase.CONFIG;
+	private static final String HQL = "from Student st where st.name=:x";
+
+	/**
+	 * Every test starts without factories, whatever ran before
+	 */
+	@BeforeEach
+	public void closeFactories() {
+		SessionFactoryRegistry.closeAll();
+	}
+
+	@AfterAll
+	public static void tearDown() {
+		SessionFactoryRegistry.closeAll();
+	}
+
+	@Test
+	public void buildsOneWarmFactoryPerConfiguration() {
+		SessionFactory ssf = SessionFactoryRegistry.get(CONFIG,
+				new SessionFactoryRegistry.WarmUp().hql(HQL).connections(3));
+
+		assertSame(ssf, SessionFactoryRegistry.get(CONFIG));
+		assertTrue(SessionFactoryRegistry.bootstrapMillis(CONFIG) >= 0);
+
+		/**
+		 * The warm up parsed the HQL, the first lookup finds it in the plan cache
+		 */
+		Statistics statistics = ssf.getStatistics();
+		long misses = statistics.getQueryPlanCacheMissCount();
+		assertTrue(misses >= 1);
+		try (Session session = ssf.openSession()) {
+			session.createQuery(HQL);
+		}
+		assertEquals(misses, statistics.getQueryPlanCacheMissCount());
+		assertEquals(1, statistics.getQueryPlanCacheHitCount());
+
+		PoolMetrics pool = PooledConnectionProvider.metricsOf(ssf);
+		assertTrue(pool.getAcquisitionCount() >= 3);
+		assertTrue(pool.getConnectionsCreated() + 1 >= 3);
+	}
+
+	@Test
+	public void runsTheWarmUpOfALaterCallOnTheBuiltFactory() {
+		SessionFactory ssf = SessionFactoryRegistry.get(CONFIG);
+		Statistics statistics = ssf.getStatistics();
+		statistics.clear();
+		PoolMetrics pool = PooledConnectionProvider.metricsOf(ssf);
+		long acquisitions = pool.getAcquisitionCount();
+
+		assertSame(ssf, SessionFactoryRegistry.get(CONFIG, new SessionFactoryRegistry.WarmUp().hql(HQL).connections(2)));
+
+		assertEquals(1, statistics.getQueryPlanCacheMissCount());
+		assertEquals(acquisitions + 2, pool.getAcquisitionCount());
+		try (Session session = ssf.openSession()) {
+			session.createQuery(HQL);
+		}
+		assertEquals(1, statistics.getQueryPlanCacheHitCount());
+	}
+
+	@Test
+	public void warmsUpAFactoryOnlyOnce() {
+		SessionFactory ssf = SessionFactoryRegistry.get(CONFIG, new SessionFactoryRegistry.WarmUp().connections(2));
+		Statistics statistics = ssf.getStatistics();
+		statistics.clear();
+		PoolMetrics pool = PooledConnectionProvider.metricsOf(ssf);
+		long acquisitions = pool.getAcquisitionCount();
+
+		assertSame(ssf, SessionFactoryRegistry.get(CONFIG, new SessionFactoryRegistry.WarmUp().hql(HQL).connections(2)));
+
+		assertEquals(0, statistics.getQueryPlanCacheMissCount());
+		assertEquals(acquisitions, pool.getAcquisitionCount());
+	}
+
+	/**
+	 * The HQL of the entry points parses against the mappings of the default
+	 * configuration, the test configuration has the same ones. After the warm up
+	 * every query the entry point creates is found in the plan cache.
+	 */
+	@Test
+	public void warmUpsOfTheEntryPointsParseTheirHql() {
+		SessionFactory ssf = SessionFactoryRegistry.get(CONFIG, MainMethod.warmUp());
+		Statistics statistics = ssf.getStatistics();
+		statistics.clear();
+		try (Session session = ssf.openSession()) {
+			session.createQuery(MainMethod.STUDENTS_BY_NAME);
+			session.createQuery(MainMethod.RENUMBER_STUDENT);
+			session.createQuery(MainMethod.PAGINATORS);
+			session.createQuery(MainMethod.PAGINATORS_BY_ID, Paginator.class);
+		}
+		assertEquals(0, statistics.getQueryPlanCacheMissCount());
+		assertEquals(4, statistics.getQueryPlanCacheHitCount());
+
+		SessionFactoryRegistry.close(CONFIG);
+		ssf = SessionFactoryRegistry.get(CONFIG, SecondLevel.warmUp());
+		statistics = ssf.getStatistics();
+		statistics.clear();
+		try (Session session = ssf.openSession()) {
+			session.createQuery(SecondLevel.STUDENT_ONE);
+		}
+		assertEquals(0, statistics.getQueryPlanCacheMissCount());
+		assertEquals(1, statistics.getQueryPlanCacheHitCount());
+	}
+
+	/**
+	 * The factory the failed warm up was running against is closed, its pool MBean
+	 * is gone again
+	 */
+	@Test
+	public void closesTheFactoryWhenItsWarmUpFails() throws Exception {
+		ObjectName pools = new ObjectName("orm.hibernate:type=PoolMetrics,*");
+		int before = ManagementFactory.getPlatformMBeanServer().queryNames(pools, null).size();
+
+		assertThrows(RuntimeException.class, () -> SessionFactoryRegistry.get(CONFIG,
+				new SessionFactoryRegistry.WarmUp().hql("from NoSuchEntity")));
+
+		assertEquals(before, ManagementFactory.getPlatformMBeanServer().queryNames(pools, null).size());
+		assertEquals(-1, SessionFactoryRegistry.bootstrapMillis(CONFIG));
+	}
+
+	@Test
+	public void loadsCachedEntitiesIntoTheSecondLevelCache() {
+		SessionFactory ssf = SessionFactoryRegistry.get(CONFIG);
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			Student st = new Student();
+			st.setId(42);
+			st.setName("Harsh");
+			st.setCity("Mumbai");
+			session.save(st);
+			session.getTransaction().commit();
+		}
+		ssf.getCache().evictAllRegions();
+
+		SessionFactoryRegistry.warmUp(ssf, new SessionFactoryRegistry.WarmUp().cachedEntities(10, Student.class));
+
+		assertTrue(ssf.getCache().containsEntity(Student.class, 42));
+	}
+
+	@Test
+	public void closedFactoryIsRebuiltOnNextUse() {
+		SessionFactory first = SessionFactoryRegistry.get("orm/hibernate/hibernateXmlBasedTestConfig.cfg.xml");
+		SessionFactoryRegistry.close("orm/hibernate/hibernateXmlBasedTestConfig.cfg.xml");
+		assertTrue(first.isClosed());
+
+		SessionFactory second = SessionFactoryRegistry.get("orm/hibernate/hibernateXmlBasedTestConfig.cfg.xml");
+		assertNotSame(first, second);
+		assertTrue(second.isOpen());
+	}
+}
@@ -0,0 +1,93 @@
+package orm.hibernate;
+
+import java.util.Iterator;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import orm.hibernate.hql.BulkLoader;
+import orm.hibernate.hql.Paginator;
+
+/**
+ * SessionFactory of hibernateTestConfig.cfg.xml (in-memory H2, schema created on start
+ * and dropped on close) for the tests of one class
+ *
+ *   @RegisterExtension
+ *   static final TestDatabase DATABASE = new TestDatabase();
+ *
+ * The factory is built before the @BeforeAll methods of the class run and closed after
+ * its @AfterAll methods.
+ */
+public final class TestDatabase implements BeforeAllCallback, AfterAllCallback {
+
+	public static final String CONFIG = "orm/hibernate/hibernateTestConfig.cfg.xml";
+
+	private final UnaryOperator<Configuration> settings;
+	private SessionFactory sessionFactory;
+
+	public TestDatabase() {
+		this(UnaryOperator.identity());
+	}
+
+	/**
+	 * @param settings changes the test configuration before the factory is built
+	 */
+	public TestDatabase(UnaryOperator<Configuration> settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * The test configuration, for tests that build factories of their own
+	 */
+	public static Configuration configuration() {
+		return new Configuration().configure(CONFIG);
+	}
+
+	public SessionFactory sessionFactory() {
+		if (sessionFactory == null) {
+			throw new IllegalStateException("TestDatabase is not started, register it with @RegisterExtension");
+		}
+		return sessionFactory;
+	}
+
+	@Override
+	public void beforeAll(ExtensionContext context) {
+		sessionFactory = settings.apply(configuration()).buildSessionFactory();
+	}
+
+	@Override
+	public void afterAll(ExtensionContext context) {
+		if (sessionFactory != null) {
+			sessionFactory.close();
+			sessionFactory = null;
+		}
+	}
+
+	/**
+	 * Paginators from..to (inclusive) with idval "value <i>"
+	 */
+	public static Iterator<Paginator> paginators(int from, int to) {
+		return paginators(from, to, i -> "value " + i);
+	}
+
+	public static Iterator<Paginator> paginators(int from, int to, IntFunction<String> idval) {
+		return IntStream.rangeClosed(from, to).mapToObj(i -> {
+			Paginator pg = new Paginator();
+			pg.setIdval(idval.apply(i));
+			return pg;
+		}).iterator();
+	}
+
+	/**
+	 * Inserts the paginators in JDBC batches, returns the number of rows
+	 */
+	public static long loadPaginators(SessionFactory sessionFactory, Iterator<Paginator> paginators) {
+		return new BulkLoader(sessionFactory).load(paginators);
+	}
+}
@@ -0,0 +1,101 @@
+package orm.hibernate.annotation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.Random;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.BlobProxy;
+
+/**
+ * Loads every address of the in-memory test database once without reading the photos
+ * and once reading each photo through its stream. Pass the number of addresses (default
+ * 100000) and the photo size in bytes (default 2048).
+ */
+public class AddressPhotoBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int photoSize = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+		SessionFactory ssf = new Configuration().configure("orm/hibernate/hibernateTestConfig.cfg.xml")
+				.buildSessionFactory();
+		try {
+			insert(ssf, rows, photoSize);
+
+			/**
+			 * Warm up both paths once so class loading and JIT are not measured
+			 */
+			load(ssf, false);
+			load(ssf, true);
+
+			for (boolean photos : new boolean[] { false, true }) {
+				long allocated = allocatedBytes();
+				long start = System.nanoTime();
+				long bytes = load(ssf, photos);
+				long nanos = System.nanoTime() - start;
+				allocated = allocatedBytes() - allocated;
+				double seconds = nanos / 1_000_000_000.0;
+				System.out.printf("%-15s %8d rows in %7.3f s -> %10.0f rows/s, %6.1f MB photo bytes, %8.1f MB allocated%n",
+						photos ? "with photos" : "without photos", rows, seconds, rows / seconds,
+						bytes / 1024.0 / 1024.0, allocated / 1024.0 / 1024.0);
+			}
+		} finally {
+			ssf.close();
+		}
+	}
+
+	private static void insert(SessionFactory ssf, int rows, int photoSize) {
+		byte[] photo = new byte[photoSize];
+		new Random(1).nextBytes(photo);
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int i = 0; i < rows; i++) {
+				Address address = new Address();
+				address.setAddress1("line " + i);
+				address.setAddress2("city " + (i % 100));
+				address.setPhoto(BlobProxy.generateProxy(photo));
+				session.insert(address);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	/**
+	 * Scrolls all addresses, returns the photo bytes read
+	 */
+	private static long load(SessionFactory ssf, boolean photos) throws IOException, SQLException {
+		long bytes = 0;
+		byte[] buffer = new byte[8192];
+		try (Session session = ssf.openSession();
+				ScrollableResults results = session.createQuery("from student_address_data").setFetchSize(1000)
+						.scroll(ScrollMode.FORWARD_ONLY)) {
+			int count = 0;
+			while (results.next()) {
+				Address address = (Address) results.get(0);
+				if (photos) {
+					try (InputStream in = address.getPhoto().getBinaryStream()) {
+						for (int n; (n = in.read(buffer)) > 0;) {
+							bytes += n;
+						}
+					}
+				}
+				if (++count % 1000 == 0) {
+					session.clear();
+				}
+			}
+		}
+		return bytes;
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,62 @@
+package orm.hibernate.annotation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.statements.StatementRecorder;
+
+public class AddressPhotosTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+	}
+
+	@Test
+	public void photoIsStreamedInAndOutAndOnlyLoadedOnAccess(@TempDir Path dir) throws Exception {
+		byte[] image = new byte[64 * 1024];
+		new Random(7).nextBytes(image);
+		Path source = Files.write(dir.resolve("photo.png"), image);
+
+		int id;
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			Address address = new Address();
+			address.setAddress1("abc");
+			address.setAddress2("xyz");
+			AddressPhotos.attach(session, address, source);
+			session.getTransaction().commit();
+			id = address.getUnique_identifier();
+		}
+
+		StatementRecorder recorder = new StatementRecorder();
+		try (Session session = recorder.openSession(ssf)) {
+			Address address = session.get(Address.class, id);
+			assertEquals("abc", address.getAddress1());
+			assertFalse(Hibernate.isPropertyInitialized(address, "photo"));
+			recorder.assertAtMost(1, "loading an address without its photo");
+
+			Path target = dir.resolve("copy.png");
+			assertEquals(image.length, AddressPhotos.copyTo(address, target));
+			assertArrayEquals(image, Files.readAllBytes(target));
+			assertEquals(2, recorder.getStatementCount());
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package orm.hibernate.annotation.manytomany;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.JoinTable;
+import javax.persistence.ManyToMany;
+import javax.persistence.Table;
+
+/**
+ * EmployeeProjects as it was mapped before, projects in a List (a bag). Only used by
+ * ManyToManyUpdateBenchmark.
+ */
+@Entity
+@Table(name = "bag_employeeprojects")
+public class BagEmployee {
+
+	@Id
+	private int empId;
+
+	@ManyToMany
+	@JoinTable(name = "bag_employee_project", joinColumns = { @JoinColumn(name = "employee_ids") },
+			inverseJoinColumns = { @JoinColumn(name = "project_ids") })
+	private List<Projects> empWorkingonProjects = new ArrayList<>();
+
+	public int getEmpId() {
+		return empId;
+	}
+
+	public void setEmpId(int empId) {
+		this.empId = empId;
+	}
+
+	public List<Projects> getEmpWorkingonProjects() {
+		return empWorkingonProjects;
+	}
+
+	public void setEmpWorkingonProjects(List<Projects> empWorkingonProjects) {
+		this.empWorkingonProjects = empWorkingonProjects;
+	}
+}
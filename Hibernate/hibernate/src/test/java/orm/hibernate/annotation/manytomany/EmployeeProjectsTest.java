@@ -0,0 +1,78 @@
+package orm.hibernate.annotation.manytomany;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.statements.StatementRecorder;
+
+public class EmployeeProjectsTest {
+
+	private static final int PROJECTS = 1000;
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			EmployeeProjects employee = new EmployeeProjects();
+			employee.setEmpId(1);
+			employee.setEmpName("Harsh");
+			for (int i = 1; i <= PROJECTS + 1; i++) {
+				Projects project = new Projects();
+				project.setProjectId(i);
+				project.setProjectName("Project " + i);
+				session.save(project);
+				if (i <= PROJECTS) {
+					employee.getEmpWorkingonProjects().add(project);
+				}
+			}
+			session.save(employee);
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void addingAndRemovingOneProjectWritesOneJoinRow() {
+		StatementRecorder recorder = new StatementRecorder();
+		try (Session session = recorder.openSession(ssf)) {
+			session.beginTransaction();
+			EmployeeProjects employee = session.get(EmployeeProjects.class, 1);
+			employee.getEmpWorkingonProjects().add(session.load(Projects.class, PROJECTS + 1));
+			session.getTransaction().commit();
+
+			session.beginTransaction();
+			employee.getEmpWorkingonProjects().remove(session.load(Projects.class, 1));
+			session.getTransaction().commit();
+		}
+
+		Map<String, Integer> added = recorder.getUnitsOfWork().get(0).getShapes();
+		assertEquals(1, count(added, "insert into joined_table_employee_project"));
+		assertEquals(0, count(added, "delete from joined_table_employee_project"));
+
+		Map<String, Integer> removed = recorder.getUnitsOfWork().get(1).getShapes();
+		assertEquals(0, count(removed, "insert into joined_table_employee_project"));
+		assertEquals(1, count(removed, "delete from joined_table_employee_project"));
+
+		try (Session session = ssf.openSession()) {
+			assertEquals(PROJECTS, session.get(EmployeeProjects.class, 1).getEmpWorkingonProjects().size());
+		}
+	}
+
+	private static int count(Map<String, Integer> shapes, String prefix) {
+		return shapes.entrySet().stream().filter(e -> e.getKey().startsWith(prefix)).mapToInt(Map.Entry::getValue)
+				.sum();
+	}
+}
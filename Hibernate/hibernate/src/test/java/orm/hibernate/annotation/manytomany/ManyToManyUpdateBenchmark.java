@@ -0,0 +1,153 @@
+package orm.hibernate.annotation.manytomany;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.statements.StatementRecorder;
+
+/**
+ * Adds one project to and removes one project from an employee with many projects,
+ * with the old List mapping (BagEmployee) and the Set of EmployeeProjects. An operation
+ * is one change: a transaction that loads the employee, initializes the collection and
+ * commits. The first CHANGES operations add the spare projects, the next CHANGES remove
+ * them again. Before the run one such round is recorded for both mappings and the
+ * prepared statements per change (a JDBC batch counts as one) and the statements that
+ * wrote to the join table are printed.
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=ManyToManyUpdateBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManyToManyUpdateBenchmark {
+
+	private static final int CHANGES = 20;
+	private static final int BAG_EMPLOYEE = 1;
+	private static final int SET_EMPLOYEE = 2;
+
+	@Param({ "1000", "10000" })
+	public int links;
+
+	private SessionFactory ssf;
+	private long changes;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = TestDatabase.configuration()
+				.addAnnotatedClass(BagEmployee.class)
+				.setProperty("hibernate.generate_statistics", "false")
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:manyToManyUpdateBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1")
+				.buildSessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			BagEmployee bag = new BagEmployee();
+			bag.setEmpId(BAG_EMPLOYEE);
+			EmployeeProjects set = new EmployeeProjects();
+			set.setEmpId(SET_EMPLOYEE);
+			for (int i = 1; i <= links + CHANGES; i++) {
+				Projects project = new Projects();
+				project.setProjectId(i);
+				session.save(project);
+				if (i <= links) {
+					bag.getEmpWorkingonProjects().add(project);
+					set.getEmpWorkingonProjects().add(project);
+				}
+				if (i % 50 == 0) {
+					session.flush();
+				}
+			}
+			session.save(bag);
+			session.save(set);
+			session.getTransaction().commit();
+		}
+		record("List", BagEmployee.class, BAG_EMPLOYEE, BagEmployee::getEmpWorkingonProjects);
+		record("Set", EmployeeProjects.class, SET_EMPLOYEE, EmployeeProjects::getEmpWorkingonProjects);
+		changes = 0;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	@Benchmark
+	public int list() {
+		return change(BagEmployee.class, BAG_EMPLOYEE, BagEmployee::getEmpWorkingonProjects);
+	}
+
+	@Benchmark
+	public int set() {
+		return change(EmployeeProjects.class, SET_EMPLOYEE, EmployeeProjects::getEmpWorkingonProjects);
+	}
+
+	private <E> int change(Class<E> entity, int employeeId, Function<E, Collection<Projects>> projects) {
+		try (Session session = ssf.openSession()) {
+			return change(session, (int) (changes++ % (CHANGES * 2)), entity, employeeId, projects);
+		}
+	}
+
+	/**
+	 * Adds the CHANGES spare projects and removes them again, then prints the statements
+	 */
+	private <E> void record(String type, Class<E> entity, int employeeId, Function<E, Collection<Projects>> projects) {
+		StatementRecorder recorder = new StatementRecorder();
+		for (int i = 0; i < CHANGES * 2; i++) {
+			try (Session session = recorder.openSession(ssf)) {
+				change(session, i, entity, employeeId, projects);
+			}
+		}
+		System.out.printf("%n%d links, %s: %d statements per change%n", links, type,
+				recorder.getStatementCount() / (CHANGES * 2));
+		recorder.getShapes().forEach((shape, count) -> {
+			if (!shape.startsWith("select")) {
+				System.out.printf("  %s x %s%n", count, shape);
+			}
+		});
+	}
+
+	/**
+	 * Change i of a round adds or removes a spare project, returns the collection size
+	 */
+	private <E> int change(Session session, int i, Class<E> entity, int employeeId,
+			Function<E, Collection<Projects>> projects) {
+		int project = links + 1 + i % CHANGES;
+		session.beginTransaction();
+		Collection<Projects> collection = projects.apply(session.get(entity, employeeId));
+		if (i < CHANGES) {
+			collection.add(session.load(Projects.class, project));
+		} else {
+			collection.remove(session.load(Projects.class, project));
+		}
+		session.getTransaction().commit();
+		return collection.size();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ManyToManyUpdateBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
@@ -0,0 +1,125 @@
+package orm.hibernate.annotation.onetomany;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+
+public class CustomerQueriesTest {
+
+	private static final int CUSTOMERS = 1000;
+	private static final int ORDERS_PER_CUSTOMER = 3;
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			int orderCode = 0;
+			for (int i = 1; i <= CUSTOMERS; i++) {
+				Customer cust = new Customer();
+				cust.setCustId(i);
+				cust.setCustName("Customer " + i);
+				cust.setCustCity("Mumbai");
+				List<CustomerOrder> orders = new ArrayList<>();
+				for (int j = 0; j < ORDERS_PER_CUSTOMER; j++) {
+					CustomerOrder order = new CustomerOrder();
+					order.setUnqiueOrderCode(++orderCode);
+					order.setOrderNumber("ORD" + orderCode);
+					order.setCustomerIdhavingMultipleOrders(cust);
+					orders.add(order);
+				}
+				cust.setAllOrdersofACustomer(orders);
+				session.save(cust);
+				if (i % 50 == 0) {
+					session.flush();
+					session.clear();
+				}
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@BeforeEach
+	public void resetStatistics() {
+		ssf.getStatistics().clear();
+	}
+
+	@Test
+	public void listingLoadsCustomersOnly() {
+		try (Session session = ssf.openSession()) {
+			List<Customer> customers = CustomerQueries.listing(session);
+
+			assertEquals(CUSTOMERS, customers.size());
+			assertFalse(Hibernate.isInitialized(customers.get(0).getAllOrdersofACustomer()));
+			assertEquals(1, statements());
+		}
+	}
+
+	@Test
+	public void touchingOrdersAfterListingLoadsAllOfThemWithOneSubselect() {
+		try (Session session = ssf.openSession()) {
+			List<Customer> customers = CustomerQueries.listing(session);
+			int orders = 0;
+			for (Customer customer : customers) {
+				orders += customer.getAllOrdersofACustomer().size();
+			}
+
+			assertEquals(CUSTOMERS * ORDERS_PER_CUSTOMER, orders);
+			assertEquals(2, statements());
+		}
+	}
+
+	/**
+	 * One select of the customers and one subselect of the orders, no join
+	 */
+	@Test
+	public void withOrdersLoadsCustomersThenAllOrdersWithOneSubselect() {
+		try (Session session = ssf.openSession()) {
+			List<Customer> customers = CustomerQueries.withOrders(session);
+			assertEquals(2, statements());
+
+			int orders = 0;
+			for (Customer customer : customers) {
+				assertTrue(Hibernate.isInitialized(customer.getAllOrdersofACustomer()));
+				orders += customer.getAllOrdersofACustomer().size();
+			}
+
+			assertEquals(CUSTOMERS, customers.size());
+			assertEquals(CUSTOMERS * ORDERS_PER_CUSTOMER, orders);
+			assertEquals(2, statements());
+		}
+	}
+
+	@Test
+	public void detailLoadsOneCustomerWithOrdersInOneSelect() {
+		try (Session session = ssf.openSession()) {
+			Customer customer = CustomerQueries.detail(session, 42);
+
+			assertTrue(Hibernate.isInitialized(customer.getAllOrdersofACustomer()));
+			assertEquals(ORDERS_PER_CUSTOMER, customer.getAllOrdersofACustomer().size());
+			assertEquals(1, statements());
+		}
+	}
+
+	private static long statements() {
+		Statistics statistics = ssf.getStatistics();
+		return statistics.getPrepareStatementCount();
+	}
+}
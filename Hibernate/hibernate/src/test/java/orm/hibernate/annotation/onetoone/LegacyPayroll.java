@@ -0,0 +1,48 @@
+package orm.hibernate.annotation.onetoone;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+
+/**
+ * Payroll as it was mapped before the shared primary key, the personal is the inverse
+ * side of the foreign key of LegacyPersonal. Only used by PayrollLoadBenchmark.
+ */
+@Entity
+@Table(name = "legacy_one_to_one_payroll")
+public class LegacyPayroll {
+
+	@Id
+	private int empid_of_payroll;
+
+	private double payrate;
+
+	@OneToOne(mappedBy = "personalEmployeesPayroll", fetch = FetchType.LAZY)
+	private LegacyPersonal personal;
+
+	public int getEmpid_of_payroll() {
+		return empid_of_payroll;
+	}
+
+	public void setEmpid_of_payroll(int empid_of_payroll) {
+		this.empid_of_payroll = empid_of_payroll;
+	}
+
+	public double getPayrate() {
+		return payrate;
+	}
+
+	public void setPayrate(double payrate) {
+		this.payrate = payrate;
+	}
+
+	public LegacyPersonal getPersonal() {
+		return personal;
+	}
+
+	public void setPersonal(LegacyPersonal personal) {
+		this.personal = personal;
+	}
+}
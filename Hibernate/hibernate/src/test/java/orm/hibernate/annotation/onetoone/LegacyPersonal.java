@@ -0,0 +1,52 @@
+package orm.hibernate.annotation.onetoone;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+
+/**
+ * Personal as it was mapped before the shared primary key, with its own foreign key
+ * column to the payroll. The old column referenced the unique payrate, hibernate 5.6
+ * fails to load either side of that join (see PayrollLoadBenchmark), this one
+ * references the payroll id. Only used by PayrollLoadBenchmark.
+ */
+@Entity
+@Table(name = "legacy_one_to_one_personal")
+public class LegacyPersonal {
+
+	@Id
+	private int empid_personal;
+
+	private String firstname;
+
+	@OneToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "foreignkey_payroll_id")
+	private LegacyPayroll personalEmployeesPayroll;
+
+	public int getEmpid_personal() {
+		return empid_personal;
+	}
+
+	public void setEmpid_personal(int empid_personal) {
+		this.empid_personal = empid_personal;
+	}
+
+	public String getFirstname() {
+		return firstname;
+	}
+
+	public void setFirstname(String firstname) {
+		this.firstname = firstname;
+	}
+
+	public LegacyPayroll getPersonalEmployeesPayroll() {
+		return personalEmployeesPayroll;
+	}
+
+	public void setPersonalEmployeesPayroll(LegacyPayroll personalEmployeesPayroll) {
+		this.personalEmployeesPayroll = personalEmployeesPayroll;
+	}
+}
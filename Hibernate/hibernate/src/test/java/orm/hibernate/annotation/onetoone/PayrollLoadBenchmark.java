@@ -0,0 +1,150 @@
+package orm.hibernate.annotation.onetoone;
+
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.TestDatabase;
+
+/**
+ * Loads every payroll row with the old foreign key one-to-one (LegacyPersonal and
+ * LegacyPayroll, not enhanced) and with the shared primary key mapping of Payroll and
+ * Personal. Rows per load are a parameter, the request measured 1000000:
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=PayrollLoadBenchmark -Djmh.args="-p rows=1000000"
+ *
+ * The exact old mapping, a foreign key on the unique payrate, cannot be measured:
+ * hibernate 5.6 resolves the inverse side by unique key with the payroll id instead of
+ * the payrate and fails on every load of a Personal or Payroll that is not already in
+ * the session. The legacy entities use a foreign key to the payroll id instead, the
+ * fastest variant of the old shape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayrollLoadBenchmark {
+
+	@Param({ "100000" })
+	public int rows;
+
+	private SessionFactory ssf;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = TestDatabase.configuration()
+				.addAnnotatedClass(LegacyPersonal.class)
+				.addAnnotatedClass(LegacyPayroll.class)
+				.setProperty("hibernate.generate_statistics", "false")
+				/**
+				 * H2 would hand out the cached result of an unchanged query, every load reads the rows
+				 */
+				.setProperty("hibernate.connection.url",
+						"jdbc:h2:mem:payrollLoadBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0")
+				.buildSessionFactory();
+		insert(ssf, rows);
+		if (load(ssf, LegacyPayroll.class, rows) != rows || load(ssf, Payroll.class, rows) != rows) {
+			throw new IllegalStateException("Both mappings must load every row");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	@Benchmark
+	public long foreignKey() {
+		return load(ssf, LegacyPayroll.class, rows);
+	}
+
+	@Benchmark
+	public long sharedPrimaryKey() {
+		return load(ssf, Payroll.class, rows);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PayrollLoadBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+
+	private static void insert(SessionFactory ssf, int rows) {
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			session.doWork(connection -> {
+				try (PreparedStatement payroll = connection.prepareStatement(
+						"insert into legacy_one_to_one_payroll (empid_of_payroll, payrate) values (?, ?)");
+						PreparedStatement personal = connection.prepareStatement("insert into legacy_one_to_one_personal"
+								+ " (empid_personal, firstname, foreignkey_payroll_id) values (?, ?, ?)")) {
+					for (int i = 1; i <= rows; i++) {
+						payroll.setInt(1, i);
+						payroll.setDouble(2, 1000 + i);
+						payroll.addBatch();
+						personal.setInt(1, i);
+						personal.setString(2, "First" + i);
+						personal.setInt(3, i);
+						personal.addBatch();
+						if (i % 1000 == 0 || i == rows) {
+							payroll.executeBatch();
+							personal.executeBatch();
+						}
+					}
+				}
+			});
+			session.getTransaction().commit();
+		}
+
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= rows; i++) {
+				Personal ps = new Personal();
+				ps.setEmpid_personal(i);
+				ps.setFirstname("First" + i);
+				ps.setLastname("Last" + i);
+				Payroll py = new Payroll();
+				py.setPayrate(1000 + i);
+				py.setPersonal(ps);
+				session.insert(ps);
+				session.insert(py);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	private static long load(SessionFactory ssf, Class<?> entity, int maxRows) {
+		long loaded = 0;
+		try (Session session = ssf.openSession();
+				ScrollableResults results = session.createQuery("from " + entity.getName()).setMaxResults(maxRows)
+						.setFetchSize(1000).scroll(ScrollMode.FORWARD_ONLY)) {
+			while (results.next()) {
+				if (++loaded % 1000 == 0) {
+					session.clear();
+				}
+			}
+		}
+		return loaded;
+	}
+}
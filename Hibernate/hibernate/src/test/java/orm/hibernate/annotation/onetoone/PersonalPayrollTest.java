@@ -0,0 +1,82 @@
+package orm.hibernate.annotation.onetoone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.statements.StatementRecorder;
+
+public class PersonalPayrollTest {
+
+	private static final int EMPLOYEES = 20;
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= EMPLOYEES; i++) {
+				Personal ps = new Personal();
+				ps.setEmpid_personal(i);
+				ps.setFirstname("First" + i);
+				ps.setLastname("Last" + i);
+				Payroll py = new Payroll();
+				py.setPayrate(1000);
+				py.setPersonal(ps);
+				session.save(ps);
+				session.save(py);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void payrollSharesThePrimaryKeyOfPersonal() {
+		try (Session session = ssf.openSession()) {
+			Payroll py = session.get(Payroll.class, 5);
+			assertEquals(5, py.getEmpid_of_payroll());
+			assertEquals("First5", py.getPersonal().getFirstname());
+		}
+	}
+
+	@Test
+	public void loadingPayrollsDoesNotLoadPersonals() {
+		StatementRecorder recorder = new StatementRecorder();
+		try (Session session = recorder.openSession(ssf)) {
+			List<Payroll> payrolls = session.createQuery("from Payroll", Payroll.class).list();
+
+			assertEquals(EMPLOYEES, payrolls.size());
+			for (Payroll py : payrolls) {
+				assertFalse(Hibernate.isInitialized(py.getPersonal()));
+				assertEquals(py.getEmpid_of_payroll(), py.getPersonal().getEmpid_personal());
+			}
+			recorder.assertAtMost(1, "loading payrolls");
+		}
+	}
+
+	@Test
+	public void loadingPersonalsLoadsThePayrollOnlyOnAccess() {
+		StatementRecorder recorder = new StatementRecorder();
+		try (Session session = recorder.openSession(ssf)) {
+			List<Personal> personals = session.createQuery("from Personal", Personal.class).list();
+			assertFalse(Hibernate.isPropertyInitialized(personals.get(0), "personalEmployeesPayroll"));
+			recorder.assertAtMost(1, "loading personals");
+
+			assertEquals(1000, personals.get(0).getPersonalEmployeesPayroll().getPayrate());
+			assertEquals(2, recorder.getStatementCount());
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package orm.hibernate.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+import orm.hibernate.annotation.onetomany.Customer;
+import orm.hibernate.hql.Paginator;
+import orm.hibernate.session.SessionPerTaskExecutor;
+import orm.jpa.Workers;
+
+/**
+ * A fan-out handler needs two students, two workers, two customers and two paginator
+ * rows by id. 32 benchmark threads, the clients, run handlers against POOL_SIZE
+ * connections:
+ *
+ *   blocking      one session, eight session.get one after the other
+ *   perRead       eight futures, each read in its own session (SessionPerTaskExecutor)
+ *   coalesced     eight futures of one AsyncDatabase.Reads batch, read in one session
+ *
+ * Reports handlers per second and the sampled latency of a handler with its
+ * percentiles. Change the number of clients with -t:
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=AsyncRepositoryBenchmark -Djmh.args="-t 64"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class AsyncRepositoryBenchmark {
+
+	private static final int POOL_SIZE = 10;
+	private static final int ROWS = 10_000;
+
+	private SessionFactory ssf;
+	private int[] paginatorIds;
+
+	@State(Scope.Benchmark)
+	public static class Tasks {
+
+		private SessionPerTaskExecutor tasks;
+
+		@Setup(Level.Trial)
+		public void setUp(AsyncRepositoryBenchmark benchmark) {
+			tasks = new SessionPerTaskExecutor(benchmark.ssf, POOL_SIZE);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			tasks.close();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Database {
+
+		private AsyncDatabase database;
+
+		@Setup(Level.Trial)
+		public void setUp(AsyncRepositoryBenchmark benchmark) {
+			database = new AsyncDatabase(benchmark.ssf, POOL_SIZE, 1000, 500);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			System.out.printf("%n%s%n", database);
+			database.close();
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = TestDatabase.configuration()
+				.addAnnotatedClass(Workers.class)
+				.setProperty("hibernate.hikari.maximumPoolSize", String.valueOf(POOL_SIZE))
+				.setProperty("hibernate.cache.use_second_level_cache", "false")
+				.setProperty("hibernate.cache.use_query_cache", "false")
+				.setProperty("hibernate.generate_statistics", "false")
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:asyncRepositoryBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1")
+				.buildSessionFactory();
+		paginatorIds = new int[ROWS];
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int id = 1; id <= ROWS; id++) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName("Student " + id);
+				session.insert(st);
+				Workers worker = new Workers();
+				worker.setId(id);
+				worker.setName("Worker " + id);
+				session.insert(worker);
+				Customer customer = new Customer();
+				customer.setCustId(id);
+				customer.setCustName("Customer " + id);
+				session.insert(customer);
+				Paginator pg = new Paginator();
+				pg.setIdval("value " + id);
+				paginatorIds[id - 1] = (Integer) session.insert(pg);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	@Benchmark
+	public List<Object> blocking() {
+		List<Object> rows = new ArrayList<>();
+		try (Session session = ssf.openSession()) {
+			for (Object[] read : reads()) {
+				rows.add(session.get((Class<?>) read[0], (Integer) read[1]));
+			}
+		}
+		return rows;
+	}
+
+	@Benchmark
+	public List<CompletableFuture<Object>> perRead(Tasks tasks) {
+		List<CompletableFuture<Object>> rows = new ArrayList<>();
+		for (Object[] read : reads()) {
+			rows.add(tasks.tasks.submit(session -> session.get((Class<?>) read[0], (Integer) read[1])));
+		}
+		CompletableFuture.allOf(rows.toArray(new CompletableFuture<?>[0])).join();
+		return rows;
+	}
+
+	@Benchmark
+	public Object coalesced(Database database) {
+		AsyncDatabase.Reads batch = database.database.reads();
+		for (Object[] read : reads()) {
+			batch.get((Class<?>) read[0], read[1]);
+		}
+		return batch.submitAll().join();
+	}
+
+	private List<Object[]> reads() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		List<Object[]> reads = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			reads.add(new Object[] { Student.class, random.nextInt(ROWS) + 1 });
+			reads.add(new Object[] { Workers.class, random.nextInt(ROWS) + 1 });
+			reads.add(new Object[] { Customer.class, random.nextInt(ROWS) + 1 });
+			reads.add(new Object[] { Paginator.class, paginatorIds[random.nextInt(ROWS)] });
+		}
+		return reads;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(AsyncRepositoryBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
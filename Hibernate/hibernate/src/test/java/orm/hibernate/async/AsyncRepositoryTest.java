@@ -0,0 +1,159 @@
+package orm.hibernate.async;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+import orm.hibernate.annotation.onetomany.Customer;
+import orm.hibernate.hql.Paginator;
+import orm.jpa.Workers;
+
+public class AsyncRepositoryTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase(configuration -> configuration
+			.addAnnotatedClass(Workers.class)
+			.setProperty("hibernate.cache.use_second_level_cache", "false"));
+
+	private static SessionFactory ssf;
+	private static int paginatorId;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int id = 1; id <= 3; id++) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName("Student " + id);
+				session.save(st);
+				Workers worker = new Workers();
+				worker.setId(id);
+				worker.setName("Worker " + id);
+				session.save(worker);
+			}
+			Customer customer = new Customer();
+			customer.setCustId(1);
+			customer.setCustName("Harsh");
+			session.save(customer);
+			Paginator pg = new Paginator();
+			pg.setIdval("value 1");
+			paginatorId = (Integer) session.save(pg);
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void coalescesReadsIssuedTogetherIntoOneSession() {
+		try (AsyncDatabase database = new AsyncDatabase(ssf, 2, 100, 500)) {
+			long statements = ssf.getStatistics().getPrepareStatementCount();
+			AsyncDatabase.Reads reads = database.reads();
+			CompletableFuture<Student> student = reads.get(Student.class, 1);
+			CompletableFuture<Customer> customer = reads.get(Customer.class, 1);
+			CompletableFuture<Paginator> paginator = reads.get(Paginator.class, paginatorId);
+			CompletableFuture<Workers> worker = reads.get(Workers.class, 2);
+			CompletableFuture<Workers> sameWorker = reads.get(Workers.class, 2);
+			CompletableFuture<Workers> missing = reads.get(Workers.class, 99);
+			CompletableFuture<Long> students = reads.read(
+					session -> session.createQuery("select count(s) from Student s", Long.class).uniqueResult());
+			reads.submitAll().join();
+
+			assertEquals("Student 1", student.join().getName());
+			assertEquals("Harsh", customer.join().getCustName());
+			assertEquals("value 1", paginator.join().getIdval());
+			assertEquals("Worker 2", worker.join().getName());
+			assertSame(worker.join(), sameWorker.join());
+			assertNull(missing.join());
+			assertEquals(3, students.join());
+			assertEquals(1, database.getReadBatches());
+			assertEquals(7, database.getReads());
+			/**
+			 * One multiLoad per entity and the count
+			 */
+			assertEquals(5, ssf.getStatistics().getPrepareStatementCount() - statements);
+
+			AsyncRepository<Workers, Integer> workers = database.repository(Workers.class);
+			assertEquals(Arrays.asList("Worker 3", "Worker 1"), workers.findAllById(Arrays.asList(3, 42, 1)).join()
+					.stream().map(Workers::getName).collect(Collectors.toList()));
+			assertEquals(1, workers.findWhere("e.name = :name", Collections.singletonMap("name", "Worker 2")).join()
+					.size());
+		}
+	}
+
+	@Test
+	public void failsOnlyTheReadThatFailed() {
+		try (AsyncDatabase database = new AsyncDatabase(ssf, 1, 100, 500)) {
+			AsyncDatabase.Reads reads = database.reads();
+			CompletableFuture<Student> student = reads.get(Student.class, 2);
+			CompletableFuture<Object> failing = reads.read(session -> {
+				throw new IllegalStateException("read failed");
+			});
+			CompletableFuture<Workers> worker = reads.get(Workers.class, 1);
+			reads.submitAll().exceptionally(e -> null).join();
+
+			assertEquals("Student 2", student.join().getName());
+			assertEquals("Worker 1", worker.join().getName());
+			CompletionException e = assertThrows(CompletionException.class, failing::join);
+			assertEquals("read failed", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void writesInTheirOwnTransaction() {
+		try (AsyncDatabase database = new AsyncDatabase(ssf)) {
+			AsyncRepository<Student, Integer> students = database.repository(Student.class);
+			Student st = new Student();
+			st.setId(10);
+			st.setName("Saved");
+			assertEquals(10, students.save(st).join());
+
+			st.setCity("Pune");
+			students.merge(st).join();
+			assertEquals("Pune", students.findById(10).join().getCity());
+
+			assertTrue(students.deleteById(10).join());
+			assertFalse(students.deleteById(10).join());
+			assertNull(students.findById(10).join());
+			assertEquals(4, database.getWrites());
+		}
+	}
+
+	@Test
+	public void runsTasksOnTheCallerWhenTheQueueIsFull() {
+		AsyncDatabase database = new AsyncDatabase(ssf, 1, 1, 500);
+		List<CompletableFuture<Integer>> writes = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			writes.add(database.write(session -> {
+				session.createNativeQuery("select 1").getSingleResult();
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 1;
+			}));
+		}
+		assertEquals(4, writes.stream().mapToInt(CompletableFuture::join).sum());
+		assertTrue(database.getCallerRuns() >= 1);
+		database.close();
+
+		CompletionException e = assertThrows(CompletionException.class, () -> database.get(Student.class, 1).join());
+		assertTrue(e.getCause() instanceof RejectedExecutionException);
+	}
+}
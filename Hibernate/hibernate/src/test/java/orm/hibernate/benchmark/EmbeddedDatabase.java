@@ -0,0 +1,56 @@
+package orm.hibernate.benchmark;
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+
+/**
+ * The configuration of the application, hibernateConfig.cfg.xml with its mappings,
+ * batching, cache and pool settings, against an in-memory H2 database instead of the
+ * MySQL server it names. Benchmarks measure the mappings the application runs with
+ * and need no database server.
+ *
+ * Overridden are the connection (H2 in MySQL mode), the dialect, the schema (created
+ * on start, dropped on close), SQL logging (off) and the Lucene index (in memory). The
+ * MySQL driver settings of the pool (dataSource.*) are removed. H2 would return the
+ * result of a repeated query from its own cache (QUERY_CACHE_SIZE), MySQL 8 has no such
+ * cache, it is turned off. The statement metrics snapshot goes to target.
+ */
+public final class EmbeddedDatabase {
+
+	public static final String APPLICATION_CONFIG = "orm/hibernate/hibernateConfig.cfg.xml";
+
+	private EmbeddedDatabase() {
+	}
+
+	/**
+	 * @param name database and pool name, factories with different names do not share tables
+	 */
+	public static Configuration configuration(String name) {
+		Configuration configuration = new Configuration().configure(APPLICATION_CONFIG);
+		Properties properties = configuration.getProperties();
+		for (Object key : new ArrayList<>(properties.keySet())) {
+			if (key.toString().startsWith("hibernate.hikari.dataSource.")) {
+				properties.remove(key);
+			}
+		}
+		return configuration
+				.setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0")
+				.setProperty("hibernate.connection.username", "sa")
+				.setProperty("hibernate.connection.password", "")
+				.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+				.setProperty("hibernate.hikari.poolName", name)
+				.setProperty("hibernate.hbm2ddl.auto", "create-drop")
+				.setProperty("hibernate.show_sql", "false")
+				.setProperty("hibernate.format_sql", "false")
+				.setProperty("hibernate.search.backend.directory.type", "local-heap")
+				.setProperty("hibernate.statement_metrics.snapshot_file", "target/statement-metrics-" + name + ".tsv");
+	}
+
+	public static SessionFactory start(String name) {
+		return configuration(name).buildSessionFactory();
+	}
+}
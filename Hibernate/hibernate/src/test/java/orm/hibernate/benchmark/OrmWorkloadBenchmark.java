@@ -0,0 +1,219 @@
+package orm.hibernate.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.annotation.Student;
+import orm.hibernate.annotation.Student_;
+import orm.hibernate.annotation.manytomany.EmployeeProjects;
+import orm.hibernate.annotation.onetomany.Customer;
+import orm.hibernate.criteria.CriteriaPlanCache;
+import orm.hibernate.hql.PayrollReport;
+import orm.hibernate.hql.PayrollReportRow;
+
+/**
+ * The mappings and settings of hibernateConfig.cfg.xml on an in-memory H2 database
+ * filled by SyntheticDataGenerator, so the usual access paths can be measured without a
+ * MySQL server: get and load by id, HQL, TypedCriteria, joins and the second level and
+ * query cache. The keys are drawn up front from the same Zipf distribution as the data
+ * with fixed seeds, every run looks up the same keys in the same order.
+ *
+ *   mvn -P benchmark verify
+ *   mvn -P benchmark verify -Djmh.benchmarks=OrmWorkloadBenchmark.get -Djmh.args="-p scale=100000 -p skew=0.8"
+ *
+ * or java -cp <test classpath> orm.hibernate.benchmark.OrmWorkloadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrmWorkloadBenchmark {
+
+	private static final int KEYS = 1 << 16;
+
+	/**
+	 * Students, the other tables are sized after it, see SyntheticDataGenerator
+	 */
+	@Param({ "10000" })
+	public int scale;
+
+	/**
+	 * Zipf exponent of the data and of the looked up keys
+	 */
+	@Param({ "1.0" })
+	public double skew;
+
+	private SessionFactory ssf;
+	private CriteriaPlanCache plans;
+	private int[] students;
+	private int[] customers;
+	private int[] members;
+	private String[] cities;
+	private String[] names;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = EmbeddedDatabase.configuration("ormWorkloadBenchmark")
+				.setProperty("hibernate.generate_statistics", "false")
+				.buildSessionFactory();
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(scale, skew, 1);
+		System.out.println();
+		System.out.println(generator.generate(ssf));
+		plans = new CriteriaPlanCache(256);
+		students = generator.zipf(generator.getStudents()).samples(KEYS, 2);
+		customers = generator.zipf(generator.getCustomers()).samples(KEYS, 3);
+		members = generator.zipf(generator.getProjectMembers()).samples(KEYS, 4);
+		cities = new String[KEYS];
+		int[] city = generator.zipf(SyntheticDataGenerator.CITIES.length).samples(KEYS, 5);
+		names = new String[KEYS];
+		int[] name = generator.zipf(SyntheticDataGenerator.NAMES).samples(KEYS, 6);
+		for (int i = 0; i < KEYS; i++) {
+			cities[i] = SyntheticDataGenerator.CITIES[city[i] - 1];
+			names[i] = "Name " + name[i];
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	/**
+	 * Position in the key arrays, one per benchmark thread
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int next;
+
+		int next() {
+			next = (next + 1) & (KEYS - 1);
+			return next;
+		}
+	}
+
+	/**
+	 * Student is cached in the student region, the hot ids come from the second level cache
+	 */
+	@Benchmark
+	public Student getCached(Cursor cursor) {
+		try (Session session = ssf.openSession()) {
+			return session.get(Student.class, students[cursor.next()]);
+		}
+	}
+
+	@Benchmark
+	public Student getUncached(Cursor cursor) {
+		try (Session session = ssf.openSession()) {
+			session.setCacheMode(CacheMode.IGNORE);
+			return session.get(Student.class, students[cursor.next()]);
+		}
+	}
+
+	/**
+	 * Customer is not cached, load returns a proxy that selects the row on first access
+	 */
+	@Benchmark
+	public String loadProxy(Cursor cursor) {
+		try (Session session = ssf.openSession()) {
+			return session.load(Customer.class, customers[cursor.next()]).getCustName();
+		}
+	}
+
+	/**
+	 * The query of hql.MainMethod, first page of the students with a name
+	 */
+	@Benchmark
+	public List<Student> hql(Cursor cursor) {
+		try (Session session = ssf.openSession()) {
+			return session.createQuery("from Student st where st.name=:x", Student.class)
+					.setParameter("x", names[cursor.next()])
+					.setMaxResults(20)
+					.list();
+		}
+	}
+
+	/**
+	 * The same query from the query cache, the students from the second level cache
+	 */
+	@Benchmark
+	public List<Student> hqlQueryCache(Cursor cursor) {
+		try (Session session = ssf.openSession()) {
+			return session.createQuery("from Student st where st.name=:x", Student.class)
+					.setParameter("x", names[cursor.next()])
+					.setMaxResults(20)
+					.setCacheable(true)
+					.list();
+		}
+	}
+
+	@Benchmark
+	public long criteriaCount(Cursor cursor) {
+		try (Session session = ssf.openSession()) {
+			return plans.from(Student.class).equal(Student_.city, cities[cursor.next()]).count(session);
+		}
+	}
+
+	/**
+	 * One to many, a customer with all its orders in one select
+	 */
+	@Benchmark
+	public int joinFetchOrders(Cursor cursor) {
+		try (Session session = ssf.openSession()) {
+			return session.createQuery(
+					"select distinct c from Customer c left join fetch c.allOrdersofACustomer where c.custId=:id",
+					Customer.class)
+					.setParameter("id", customers[cursor.next()])
+					.getSingleResult()
+					.getAllOrdersofACustomer().size();
+		}
+	}
+
+	/**
+	 * Many to many through joined_table_employee_project, lazy collection of a member
+	 */
+	@Benchmark
+	public int manyToMany(Cursor cursor) {
+		try (Session session = ssf.openSession()) {
+			return session.get(EmployeeProjects.class, members[cursor.next()]).getEmpWorkingonProjects().size();
+		}
+	}
+
+	/**
+	 * One to one, the Personal to Payroll join over all scale / 10 rows
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public List<PayrollReportRow> payrollReport() {
+		try (Session session = ssf.openSession()) {
+			return new PayrollReport(500).list(session);
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(OrmWorkloadBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
@@ -0,0 +1,374 @@
+package orm.hibernate.benchmark;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import orm.hibernate.annotation.Address;
+import orm.hibernate.annotation.Employee;
+import orm.hibernate.annotation.EmployeeAddress;
+import orm.hibernate.annotation.Student;
+import orm.hibernate.annotation.manytomany.EmployeeProjects;
+import orm.hibernate.annotation.manytomany.Projects;
+import orm.hibernate.annotation.onetomany.Customer;
+import orm.hibernate.annotation.onetomany.CustomerOrder;
+import orm.hibernate.annotation.onetoone.Payroll;
+import orm.hibernate.annotation.onetoone.Personal;
+import orm.hibernate.hql.Paginator;
+
+/**
+ * Fills every table of the application mappings with synthetic rows. The volume
+ * follows the scale: scale students and paginator rows, scale / 10 customers,
+ * employees, personal and payroll rows, addresses and project members, scale / 2
+ * orders and scale / 100 projects.
+ *
+ * Values that are looked up are Zipf distributed with the exponent skew, as real data
+ * usually is: a few cities hold most students and customers, a few customers place
+ * most orders, a few projects have most members and a few names are common. Skew 0 is
+ * uniform. The same seed generates the same rows.
+ *
+ * Rows without associations are inserted with a StatelessSession, the project
+ * members with a Session because a StatelessSession does not write collections. Both
+ * commit every batchSize * 100 rows. Address photos are left empty.
+ */
+public class SyntheticDataGenerator {
+
+	static final String[] CITIES = { "Mumbai", "Delhi", "Bengaluru", "Hyderabad", "Ahmedabad", "Chennai",
+			"Kolkata", "Pune", "Jaipur", "Surat", "Lucknow", "Kanpur", "Nagpur", "Indore", "Thane", "Bhopal",
+			"Visakhapatnam", "Patna", "Vadodara", "Ghaziabad", "Ludhiana", "Agra", "Nashik", "Faridabad",
+			"Meerut", "Rajkot", "Varanasi", "Srinagar", "Aurangabad", "Dhanbad", "Amritsar", "Ranchi" };
+
+	static final String[] DEPARTMENTS = { "Engineering", "Sales", "Support", "Operations", "Finance",
+			"Marketing", "Legal", "Research", "Human Resources", "Facilities" };
+
+	/**
+	 * Distinct names of students, employees and last names, "Name 1" is the most common
+	 */
+	static final int NAMES = 500;
+
+	private final int scale;
+	private final double skew;
+	private final long seed;
+	private int batchSize = 50;
+
+	/**
+	 * @param scale number of students, the other tables are sized after it
+	 * @param skew  Zipf exponent of the looked up values, 0 is uniform, around 1 is typical
+	 * @param seed  seed of the random values
+	 */
+	public SyntheticDataGenerator(int scale, double skew, long seed) {
+		if (scale < 100) {
+			throw new IllegalArgumentException("scale must be at least 100: " + scale);
+		}
+		if (skew < 0) {
+			throw new IllegalArgumentException("skew must not be negative: " + skew);
+		}
+		this.scale = scale;
+		this.skew = skew;
+		this.seed = seed;
+	}
+
+	/**
+	 * Rows per transaction divided by 100, should be hibernate.jdbc.batch_size (default 50)
+	 */
+	public SyntheticDataGenerator batchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	public int getStudents() {
+		return scale;
+	}
+
+	public int getCustomers() {
+		return scale / 10;
+	}
+
+	public int getOrders() {
+		return scale / 2;
+	}
+
+	public int getPersonals() {
+		return scale / 10;
+	}
+
+	public int getEmployees() {
+		return scale / 10;
+	}
+
+	public int getAddresses() {
+		return scale / 10;
+	}
+
+	public int getProjectMembers() {
+		return scale / 10;
+	}
+
+	public int getProjects() {
+		return scale / 100;
+	}
+
+	public int getPaginators() {
+		return scale;
+	}
+
+	public double getSkew() {
+		return skew;
+	}
+
+	/**
+	 * Zipf sampler over n ranks with the skew of this generator
+	 */
+	public Zipf zipf(int n) {
+		return new Zipf(n, skew);
+	}
+
+	/**
+	 * Inserts the rows into the empty tables
+	 *
+	 * @return rows inserted per table
+	 */
+	public Result generate(SessionFactory ssf) {
+		long start = System.nanoTime();
+		Random random = new Random(seed);
+		Zipf cities = zipf(CITIES.length);
+		Zipf names = zipf(NAMES);
+		Zipf departments = zipf(DEPARTMENTS.length);
+		Zipf buyers = zipf(getCustomers());
+		Zipf popular = zipf(getProjects());
+		Date now = new Date(1_700_000_000_000L);
+		Map<String, Long> rows = new LinkedHashMap<>();
+
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			Batch batch = new Batch(session);
+
+			for (int id = 1; id <= getStudents(); id++) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName("Name " + names.sample(random));
+				st.setCity(CITIES[cities.sample(random) - 1]);
+				batch.insert(st);
+			}
+			rows.put("Student_data", (long) getStudents());
+
+			for (int id = 1; id <= getPaginators(); id++) {
+				Paginator pg = new Paginator();
+				pg.setIdval("value " + id);
+				batch.insert(pg);
+			}
+			rows.put("Paginator", (long) getPaginators());
+
+			Customer[] customers = new Customer[getCustomers()];
+			for (int id = 1; id <= customers.length; id++) {
+				Customer customer = new Customer();
+				customer.setCustId(id);
+				customer.setCustName("Customer " + id);
+				customer.setCustCity(CITIES[cities.sample(random) - 1]);
+				customers[id - 1] = customer;
+				batch.insert(customer);
+			}
+			rows.put("one_to_many_customer", (long) customers.length);
+
+			for (int code = 1; code <= getOrders(); code++) {
+				CustomerOrder order = new CustomerOrder();
+				order.setUnqiueOrderCode(code);
+				order.setOrderNumber("ORD-" + code);
+				order.setCustomerIdhavingMultipleOrders(customers[buyers.sample(random) - 1]);
+				batch.insert(order);
+			}
+			rows.put("many_to_one_customerorder", (long) getOrders());
+
+			for (int id = 1; id <= getPersonals(); id++) {
+				Personal personal = new Personal();
+				personal.setEmpid_personal(id);
+				personal.setFirstname("First " + id);
+				personal.setLastname("Last " + names.sample(random));
+				batch.insert(personal);
+				Payroll payroll = new Payroll();
+				payroll.setEmpid_of_payroll(id);
+				payroll.setPersonal(personal);
+				/**
+				 * Log normal pay, most near the median and a long tail of high rates
+				 */
+				payroll.setPayrate(Math.round(Math.exp(3.4 + 0.5 * random.nextGaussian()) * 100) / 100.0);
+				batch.insert(payroll);
+			}
+			rows.put("one_to_one_personal", (long) getPersonals());
+			rows.put("one_to_one_payroll", (long) getPersonals());
+
+			for (int id = 1; id <= getEmployees(); id++) {
+				Employee employee = new Employee();
+				employee.setEmpid(String.format("E%07d", id));
+				employee.setDeptname(DEPARTMENTS[departments.sample(random) - 1]);
+				EmployeeAddress address = new EmployeeAddress();
+				address.setAddress1(random.nextInt(500) + 1 + " Main Road");
+				address.setAddress2(CITIES[cities.sample(random) - 1]);
+				employee.setEmpAddr(address);
+				batch.insert(employee);
+			}
+			rows.put("Employee", (long) getEmployees());
+
+			for (int i = 1; i <= getAddresses(); i++) {
+				Address address = new Address();
+				address.setAddress1(random.nextInt(500) + 1 + " Station Road");
+				address.setAddress2(CITIES[cities.sample(random) - 1]);
+				Date created = new Date(now.getTime() - (long) random.nextInt(3 * 365) * 86_400_000L);
+				address.setStores_timestamp(created);
+				address.setStores_date(created);
+				address.setForm(random.nextInt(10) < 8 ? Address.formStatus.SUBMITED : Address.formStatus.PENDING);
+				batch.insert(address);
+			}
+			rows.put("student_address_data", (long) getAddresses());
+
+			for (int id = 1; id <= getProjects(); id++) {
+				Projects project = new Projects();
+				project.setProjectId(id);
+				project.setProjectName("Project " + id);
+				batch.insert(project);
+			}
+			rows.put("many_to_many_projects", (long) getProjects());
+			batch.commit();
+		}
+
+		long members = 0;
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int id = 1; id <= getProjectMembers(); id++) {
+				EmployeeProjects employee = new EmployeeProjects();
+				employee.setEmpId(id);
+				employee.setEmpName("Name " + names.sample(random));
+				/**
+				 * 1 to 4 projects, the popular ones more often
+				 */
+				Set<Projects> projects = new HashSet<>();
+				int count = 1 + random.nextInt(Math.min(4, getProjects()));
+				while (projects.size() < count) {
+					projects.add(session.load(Projects.class, popular.sample(random)));
+				}
+				employee.setEmpWorkingonProjects(projects);
+				session.persist(employee);
+				members += count;
+				if (id % batchSize == 0) {
+					session.flush();
+					session.clear();
+				}
+				if (id % (batchSize * 100) == 0) {
+					session.getTransaction().commit();
+					session.beginTransaction();
+				}
+			}
+			session.getTransaction().commit();
+		}
+		rows.put("many_to_many_employeeprojects", (long) getProjectMembers());
+		rows.put("joined_table_employee_project", members);
+		return new Result(rows, (System.nanoTime() - start) / 1_000_000);
+	}
+
+	private final class Batch {
+
+		private final StatelessSession session;
+		private int rows;
+
+		Batch(StatelessSession session) {
+			this.session = session;
+			session.beginTransaction();
+		}
+
+		void insert(Object entity) {
+			session.insert(entity);
+			if (++rows % (batchSize * 100) == 0) {
+				commit();
+				session.beginTransaction();
+			}
+		}
+
+		void commit() {
+			session.getTransaction().commit();
+		}
+	}
+
+	/**
+	 * Zipf distribution over the ranks 1..n, rank k is drawn with a probability
+	 * proportional to 1 / k^skew. Sampling is a binary search in the cumulative
+	 * probabilities, computed once per sampler.
+	 */
+	public static final class Zipf {
+
+		private final double[] cumulative;
+
+		public Zipf(int n, double skew) {
+			if (n < 1) {
+				throw new IllegalArgumentException("n must be at least 1: " + n);
+			}
+			cumulative = new double[n];
+			double sum = 0;
+			for (int k = 1; k <= n; k++) {
+				sum += 1 / Math.pow(k, skew);
+				cumulative[k - 1] = sum;
+			}
+			for (int k = 0; k < n; k++) {
+				cumulative[k] /= sum;
+			}
+		}
+
+		/**
+		 * @return rank between 1 and n
+		 */
+		public int sample(Random random) {
+			int index = Arrays.binarySearch(cumulative, random.nextDouble());
+			return Math.min(index < 0 ? -index : index + 1, cumulative.length);
+		}
+
+		/**
+		 * n ranks drawn with the seed, the same seed gives the same ranks
+		 */
+		public int[] samples(int n, long seed) {
+			Random random = new Random(seed);
+			int[] ranks = new int[n];
+			for (int i = 0; i < n; i++) {
+				ranks[i] = sample(random);
+			}
+			return ranks;
+		}
+	}
+
+	public static final class Result {
+
+		private final Map<String, Long> rows;
+		private final long millis;
+
+		Result(Map<String, Long> rows, long millis) {
+			this.rows = rows;
+			this.millis = millis;
+		}
+
+		/**
+		 * Rows inserted per table name, in insert order
+		 */
+		public Map<String, Long> getRows() {
+			return rows;
+		}
+
+		public long getTotalRows() {
+			return rows.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("SyntheticDataGenerator.Result [rows=%d, millis=%d, tables=%s]", getTotalRows(),
+					millis, rows);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package orm.hibernate.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import orm.hibernate.benchmark.SyntheticDataGenerator.Zipf;
+
+public class SyntheticDataGeneratorTest {
+
+	private static SessionFactory ssf;
+	private static SyntheticDataGenerator generator;
+	private static SyntheticDataGenerator.Result result;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = EmbeddedDatabase.start("syntheticDataGeneratorTest");
+		generator = new SyntheticDataGenerator(1000, 1.0, 7);
+		result = generator.generate(ssf);
+	}
+
+	@AfterAll
+	public static void tearDown() {
+		ssf.close();
+	}
+
+	@Test
+	public void fillsEveryMappedTable() {
+		assertEquals(11, result.getRows().size());
+		try (Session session = ssf.openSession()) {
+			for (Map.Entry<String, Long> table : result.getRows().entrySet()) {
+				Object rows = session.createNativeQuery("select count(*) from " + table.getKey()).uniqueResult();
+				assertEquals(table.getValue().longValue(), ((Number) rows).longValue(), table.getKey());
+				assertTrue(table.getValue() > 0, table.getKey());
+			}
+		}
+		assertEquals(1000, result.getRows().get("Student_data"));
+		assertEquals(500, result.getRows().get("many_to_one_customerorder"));
+		assertEquals(10, result.getRows().get("many_to_many_projects"));
+	}
+
+	@Test
+	public void skewsTheLookedUpValues() {
+		try (Session session = ssf.openSession()) {
+			List<Long> perCity = session
+					.createQuery("select count(st) from Student st group by st.city order by count(st) desc", Long.class)
+					.list();
+			/**
+			 * With skew 1 the first of 32 cities has about a quarter of the students
+			 */
+			assertTrue(perCity.get(0) > 150, perCity.toString());
+			assertTrue(perCity.get(0) > 10 * perCity.get(perCity.size() - 1), perCity.toString());
+
+			List<Long> perCustomer = session.createQuery(
+					"select count(o) from CustomerOrder o group by o.customerIdhavingMultipleOrders order by count(o) desc",
+					Long.class).list();
+			assertTrue(perCustomer.get(0) > 50, perCustomer.toString());
+
+			Object members = session.createNativeQuery(
+					"select count(*) from joined_table_employee_project where project_ids = 1").uniqueResult();
+			assertTrue(((Number) members).longValue() > result.getRows().get("joined_table_employee_project") / 10);
+		}
+	}
+
+	@Test
+	public void zipfIsReproducibleAndUniformWithoutSkew() {
+		Zipf zipf = new Zipf(100, 1.2);
+		assertArrayEquals(zipf.samples(1000, 42), zipf.samples(1000, 42));
+		for (int rank : zipf.samples(10_000, 1)) {
+			assertTrue(rank >= 1 && rank <= 100);
+		}
+
+		int[] counts = new int[10];
+		for (int rank : new Zipf(10, 0).samples(100_000, 3)) {
+			counts[rank - 1]++;
+		}
+		for (int count : counts) {
+			assertEquals(10_000, count, 500);
+		}
+		assertThrows(IllegalArgumentException.class, () -> new SyntheticDataGenerator(10, 1.0, 1));
+	}
+}
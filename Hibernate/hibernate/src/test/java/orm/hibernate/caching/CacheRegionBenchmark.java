@@ -0,0 +1,112 @@
+package orm.hibernate.caching;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+
+import orm.hibernate.annotation.Student;
+import orm.hibernate.hql.BulkLoader;
+
+/**
+ * Throughput and hit ratio of the Student region with Ehcache 2 and with Caffeine,
+ * both limited to 10000 entries. Like SecondLevel every access opens a new session
+ * and calls session.get(Student.class, id), ids follow a Zipf distribution over more
+ * students than fit into the region so the eviction policy matters.
+ *
+ *   CacheRegionBenchmark [students] [threads] [seconds]
+ */
+public class CacheRegionBenchmark {
+
+	private static final String[][] FACTORIES = {
+			{ "Ehcache 2", "org.hibernate.cache.ehcache.EhCacheRegionFactory" },
+			{ "Caffeine", "jcache" } };
+
+	public static void main(String[] args) throws Exception {
+		int students = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		double[] zipf = zipfCumulative(students, 1.0);
+
+		for (String[] factory : FACTORIES) {
+			SessionFactory ssf = new Configuration().configure("orm/hibernate/hibernateTestConfig.cfg.xml")
+					.setProperty("hibernate.cache.region.factory_class", factory[1])
+					.setProperty("net.sf.ehcache.configurationResourceName", "/ehcache-benchmark.xml")
+					.setProperty("hibernate.generate_statistics", "true")
+					.buildSessionFactory();
+			try {
+				new BulkLoader(ssf).load(IntStream.range(0, students).mapToObj(i -> {
+					Student st = new Student();
+					st.setId(i);
+					st.setName("student " + i);
+					st.setCity("Mumbai");
+					return st;
+				}).iterator());
+
+				run(ssf, zipf, threads, seconds / 2, 1);
+				ssf.getStatistics().clear();
+				long reads = run(ssf, zipf, threads, seconds, 2);
+
+				Statistics stats = ssf.getStatistics();
+				long hits = stats.getSecondLevelCacheHitCount();
+				long misses = stats.getSecondLevelCacheMissCount();
+				System.out.printf("%-10s %10.0f reads/s, hit ratio %.3f (%d hits, %d misses)%n", factory[0],
+						reads / (double) seconds, hits / (double) (hits + misses), hits, misses);
+			} finally {
+				ssf.close();
+			}
+		}
+	}
+
+	private static long run(SessionFactory ssf, double[] zipf, int threads, int seconds, long seed)
+			throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		Future<?>[] futures = new Future<?>[threads];
+		long[] reads = new long[threads];
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			futures[t] = pool.submit(() -> {
+				Random random = new Random(seed * 31 + thread);
+				while (System.nanoTime() < deadline) {
+					int id = sample(zipf, random);
+					try (Session session = ssf.openSession()) {
+						session.get(Student.class, id);
+					}
+					reads[thread]++;
+				}
+			});
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		pool.shutdown();
+		return Arrays.stream(reads).sum();
+	}
+
+	private static double[] zipfCumulative(int n, double exponent) {
+		double[] cumulative = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1.0 / Math.pow(i + 1, exponent);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < n; i++) {
+			cumulative[i] /= sum;
+		}
+		return cumulative;
+	}
+
+	private static int sample(double[] cumulative, Random random) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		return index >= 0 ? index : -index - 1;
+	}
+}
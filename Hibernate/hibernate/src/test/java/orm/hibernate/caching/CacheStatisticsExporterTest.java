@@ -0,0 +1,141 @@
+package orm.hibernate.caching;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+
+public class CacheStatisticsExporterTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+	private static CacheStatisticsExporter exporter;
+
+	@BeforeAll
+	public static void setUp() throws Exception {
+		ssf = DATABASE.sessionFactory();
+		exporter = new CacheStatisticsExporter(ssf, "hibernateTestConfig").register().start(0);
+
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			Student st = new Student();
+			st.setId(1);
+			st.setName("Harsh");
+			st.setCity("Mumbai");
+			session.save(st);
+			session.getTransaction().commit();
+		}
+	}
+
+	@AfterAll
+	public static void tearDown() {
+		exporter.close();
+	}
+
+	@BeforeEach
+	public void emptyCaches() {
+		ssf.getCache().evictAllRegions();
+		exporter.clear();
+	}
+
+	/**
+	 * Same two reads as SecondLevel.main, the first goes to the database and fills
+	 * the region, the second is served from it
+	 */
+	@Test
+	public void twoGetsInTwoSessionsAreOneMissAndOneHit() {
+		try (Session session1 = ssf.openSession()) {
+			session1.get(Student.class, 1);
+		}
+		try (Session session2 = ssf.openSession()) {
+			session2.get(Student.class, 1);
+		}
+
+		CacheStatisticsExporter.RegionStatistics student = region("student");
+		assertEquals(1, student.getMissCount());
+		assertEquals(1, student.getHitCount());
+		assertEquals(1, student.getPutCount());
+	}
+
+	@Test
+	public void cachedQueryIsCountedPerQueryString() {
+		String hql = "from Student where id=1";
+		for (int i = 0; i < 2; i++) {
+			try (Session session = ssf.openSession()) {
+				session.createQuery(hql).setCacheable(true).uniqueResult();
+			}
+		}
+
+		CacheStatisticsExporter.QueryCacheStatistics query = exporter.getCachedQueries().stream()
+				.filter(q -> q.getQuery().equals(hql)).findFirst().orElseThrow(AssertionError::new);
+		assertEquals(1, query.getMissCount());
+		assertEquals(1, query.getHitCount());
+		assertEquals(1, query.getPutCount());
+		assertEquals(1, query.getExecutionCount());
+	}
+
+	@Test
+	public void countersArePublishedOverJmxAndHttp() throws Exception {
+		try (Session session = ssf.openSession()) {
+			session.get(Student.class, 1);
+		}
+
+		ObjectName name = new ObjectName("orm.hibernate:type=CacheStatistics,name=\"hibernateTestConfig\"");
+		CompositeData[] regions = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name,
+				"Regions");
+		boolean found = false;
+		for (CompositeData region : regions) {
+			if ("student".equals(region.get("region"))) {
+				assertEquals(1L, region.get("missCount"));
+				found = true;
+			}
+		}
+		assertTrue(found);
+
+		assertTrue(exporter.getAddress().isLoopbackAddress());
+		HttpURLConnection connection = (HttpURLConnection) new URL("http",
+				exporter.getAddress().getHostAddress(), exporter.getPort(), "/metrics").openConnection();
+		assertEquals(200, connection.getResponseCode());
+		String body;
+		try (InputStream in = connection.getInputStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int n; (n = in.read(buffer)) > 0;) {
+				out.write(buffer, 0, n);
+			}
+			body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+		assertTrue(body.contains("hibernate_cache_region_misses_total{region=\"student\"} 1\n"), body);
+		/**
+		 * Evictions the provider does not report are left out, not published as -1
+		 */
+		assertFalse(body.contains(" -1\n"), body);
+		assertEquals(region("student").getEvictionCount() >= 0,
+				body.contains("hibernate_cache_region_evictions_total{region=\"student\"}"), body);
+	}
+
+	private static CacheStatisticsExporter.RegionStatistics region(String name) {
+		return exporter.getRegions().stream().filter(r -> r.getRegion().equals(name)).findFirst()
+				.orElseThrow(AssertionError::new);
+	}
+}
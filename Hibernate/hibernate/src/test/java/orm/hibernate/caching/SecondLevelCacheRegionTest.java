@@ -0,0 +1,66 @@
+package orm.hibernate.caching;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+
+public class SecondLevelCacheRegionTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+	}
+
+	@Test
+	public void regionsAreSizedFromApplicationConf() {
+		CacheManager cacheManager = ((JCacheRegionFactory) ssf.unwrap(SessionFactoryImplementor.class).getCache()
+				.getRegionFactory()).getCacheManager();
+
+		assertEquals(10000, maximumSize(cacheManager.getCache("student")));
+		assertEquals(1000, maximumSize(cacheManager.getCache("default-query-results-region")));
+	}
+
+	@Test
+	public void secondSessionReadsStudentFromTheRegion() {
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			Student st = new Student();
+			st.setId(1);
+			st.setName("Harsh");
+			st.setCity("Mumbai");
+			session.save(st);
+			session.getTransaction().commit();
+		}
+		ssf.getCache().evictAllRegions();
+
+		try (Session session1 = ssf.openSession()) {
+			session1.get(Student.class, 1);
+		}
+		assertTrue(ssf.getCache().containsEntity(Student.class, 1));
+	}
+
+	private static long maximumSize(Cache<?, ?> cache) {
+		@SuppressWarnings("unchecked")
+		CaffeineConfiguration<Object, Object> config = cache.getConfiguration(CaffeineConfiguration.class);
+		return config.getMaximumSize().getAsLong();
+	}
+}
@@ -0,0 +1,117 @@
+package orm.hibernate.criteria;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.hql.BulkLoader;
+import orm.hibernate.hql.Paginator;
+import orm.hibernate.hql.Paginator_;
+
+/**
+ * The filter of criteria.MainMethod, sum(id) where id > ? and idval ilike ?, with a
+ * different id on every call over a small table, so translation dominates: the legacy
+ * org.hibernate.Criteria, a CriteriaQuery built on every call, and TypedCriteria.
+ *
+ *   java -cp <test classpath> org.openjdk.jmh.Main TypedCriteriaBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypedCriteriaBenchmark {
+
+	private SessionFactory ssf;
+	private CriteriaPlanCache plans;
+	private int min;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = new Configuration().configure("orm/hibernate/hibernateTestConfig.cfg.xml")
+				.setProperty("hibernate.generate_statistics", "false")
+				.buildSessionFactory();
+		plans = new CriteriaPlanCache(256);
+		new BulkLoader(ssf).load(IntStream.rangeClosed(1, 100).mapToObj(i -> {
+			Paginator pg = new Paginator();
+			pg.setIdval("value " + i);
+			return pg;
+		}).iterator());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.out.println();
+		System.out.println(plans);
+		ssf.close();
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public Object legacyCriteria() {
+		try (Session session = ssf.openSession()) {
+			Criteria criteria = session.createCriteria(Paginator.class);
+			criteria.add(Restrictions.gt("id", nextMin()));
+			criteria.add(Restrictions.ilike("idval", "%value%"));
+			criteria.setProjection(Projections.projectionList().add(Projections.sum("id"), "sumOfId"));
+			return criteria.uniqueResult();
+		}
+	}
+
+	@Benchmark
+	public Long criteriaQuery() {
+		try (Session session = ssf.openSession()) {
+			CriteriaBuilder cb = session.getCriteriaBuilder();
+			CriteriaQuery<Long> query = cb.createQuery(Long.class);
+			Root<Paginator> root = query.from(Paginator.class);
+			query.select(cb.sumAsLong(root.get(Paginator_.id)));
+			query.where(cb.greaterThan(root.get(Paginator_.id), nextMin()),
+					cb.like(cb.lower(root.get(Paginator_.idval)), "%value%"));
+			return session.createQuery(query).uniqueResult();
+		}
+	}
+
+	@Benchmark
+	public Long typedCriteria() {
+		try (Session session = ssf.openSession()) {
+			return plans.from(Paginator.class).greaterThan(Paginator_.id, nextMin())
+					.ilike(Paginator_.idval, "%value%").sumAsLong(Paginator_.id, session);
+		}
+	}
+
+	private int nextMin() {
+		min = (min + 1) % 100_000;
+		return min;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TypedCriteriaBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
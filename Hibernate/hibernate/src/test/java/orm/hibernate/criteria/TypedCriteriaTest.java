@@ -0,0 +1,79 @@
+package orm.hibernate.criteria;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.hql.Paginator;
+import orm.hibernate.hql.Paginator_;
+
+public class TypedCriteriaTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		TestDatabase.loadPaginators(ssf, TestDatabase.paginators(1, 100, i -> (i % 2 == 0 ? "Value " : "other ") + i));
+	}
+
+	@Test
+	public void matchesHqlAndTranslatesEachShapeOnce() {
+		CriteriaPlanCache plans = new CriteriaPlanCache(16);
+		try (Session session = ssf.openSession()) {
+			for (int min : new int[] { 10, 20, 30 }) {
+				Long expected = session.createQuery(
+						"select sum(p.id) from Paginator p where p.id > :min and lower(p.idval) like '%value%'", Long.class)
+						.setParameter("min", min).uniqueResult();
+				assertEquals(expected, plans.from(Paginator.class).greaterThan(Paginator_.id, min)
+						.ilike(Paginator_.idval, "%VALUE%").sumAsLong(Paginator_.id, session));
+			}
+			assertEquals(1, plans.getMissCount());
+			assertEquals(2, plans.getHitCount());
+
+			assertEquals(50, plans.from(Paginator.class).ilike(Paginator_.idval, "value%").count(session));
+			assertEquals(0, plans.from(Paginator.class).like(Paginator_.idval, "value%").count(session));
+			assertEquals(0, plans.from(Paginator.class).isNull(Paginator_.idval).count(session));
+			assertNull(plans.from(Paginator.class).lessThan(Paginator_.id, 0).sumAsLong(Paginator_.id, session));
+
+			List<Paginator> last = plans.from(Paginator.class).like(Paginator_.idval, "Value%")
+					.orderByDesc(Paginator_.id).maxResults(3).list(session);
+			assertEquals(3, last.size());
+			assertTrue(last.get(0).getId() > last.get(1).getId());
+			assertTrue(last.get(1).getId() > last.get(2).getId());
+		}
+		assertEquals(6, plans.getPlanCount());
+		assertEquals(2 / 8.0, plans.getHitRatio(), 1e-9);
+		assertTrue(plans.getTranslationMillis() > 0);
+	}
+
+	@Test
+	public void stopsCachingWhenFullAndPublishesOnJmx() throws Exception {
+		try (CriteriaPlanCache plans = new CriteriaPlanCache(1).register("test");
+				Session session = ssf.openSession()) {
+			plans.from(Paginator.class).greaterThan(Paginator_.id, 1).count(session);
+			plans.from(Paginator.class).lessThan(Paginator_.id, 1).count(session);
+			plans.from(Paginator.class).lessThan(Paginator_.id, 5).count(session);
+			assertEquals(1, plans.getPlanCount());
+			assertEquals(3, plans.getMissCount());
+
+			ObjectName name = new ObjectName("orm.hibernate:type=CriteriaPlanCache,name=\"test\"");
+			assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "MissCount"));
+			plans.clear();
+			assertEquals(0L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "MissCount"));
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package orm.hibernate.graph;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.manytomany.EmployeeProjects;
+import orm.hibernate.annotation.manytomany.Projects;
+
+/**
+ * Memory and query latency of AssignmentGraph, as sampled latency so the percentiles
+ * are reported.
+ *
+ * The in-memory benchmarks query an index of synthetic links (default 10,000,000:
+ * 1,000,000 employees with 10 projects each out of 100,000, skewed towards low project
+ * ids), the setup prints the bytes of its arrays and the heap it took. projectsOfPending
+ * queries a copy with 1000 links waiting for compact(), build and applyAndCompact time
+ * the rebuilds. The database benchmarks store a smaller graph (default 100,000 links) in
+ * H2 and compare coworkersOf with walking the lazy collections of the entities.
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=AssignmentGraphBenchmark -Djmh.args="-p links=1000000"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AssignmentGraphBenchmark {
+
+	private static final int LINKS_PER_EMPLOYEE = 10;
+
+	private final Random random = new Random(7);
+
+	@State(Scope.Benchmark)
+	public static class InMemory {
+
+		@Param({ "10000000" })
+		public int links;
+
+		int employees;
+		int projects;
+		int[] employeeIds;
+		int[] projectIds;
+		long[] added;
+		AssignmentGraph graph;
+		AssignmentGraph pending;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			employees = links / LINKS_PER_EMPLOYEE;
+			projects = Math.max(1, employees / 10);
+			employeeIds = new int[links];
+			projectIds = new int[links];
+			generate(employeeIds, projectIds, projects, new Random(42));
+
+			long heapBefore = usedHeap();
+			graph = AssignmentGraph.fromLinks(employeeIds, projectIds);
+			long heap = usedHeap() - heapBefore;
+			System.out.printf("%n%,d links, %,d employees, %,d projects, arrays %.1f MB (%.1f bytes/link), heap %.1f MB%n",
+					graph.getLinkCount(), employees, projects, graph.getMemoryBytes() / 1024.0 / 1024.0,
+					graph.getMemoryBytes() / (double) graph.getLinkCount(), heap / 1024.0 / 1024.0);
+
+			/**
+			 * Commits arrive as pending changes, a rebuild merges them into the rows
+			 */
+			Random random = new Random(7);
+			added = new long[1000];
+			for (int i = 0; i < added.length; i++) {
+				added[i] = AssignmentGraph.pack(random.nextInt(employees), random.nextInt(projects));
+			}
+			pending = AssignmentGraph.fromLinks(employeeIds, projectIds);
+			pending.apply(new int[0], new long[0], added);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Database {
+
+		@Param({ "100000" })
+		public int databaseLinks;
+
+		int employees;
+		SessionFactory ssf;
+		AssignmentGraph graph;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			employees = Math.max(1, databaseLinks / LINKS_PER_EMPLOYEE);
+			int projects = Math.max(1, employees / 10);
+			int[] employeeIds = new int[databaseLinks];
+			int[] projectIds = new int[databaseLinks];
+			generate(employeeIds, projectIds, projects, new Random(42));
+
+			ssf = TestDatabase.configuration()
+					.setProperty("hibernate.generate_statistics", "false")
+					.setProperty("hibernate.connection.url", "jdbc:h2:mem:assignmentGraphBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1")
+					.buildSessionFactory();
+			try (Session session = ssf.openSession()) {
+				session.beginTransaction();
+				for (int id = 0; id < projects; id++) {
+					Projects project = new Projects();
+					project.setProjectId(id);
+					session.save(project);
+				}
+				EmployeeProjects employee = null;
+				for (int i = 0; i < databaseLinks; i++) {
+					if (employee == null || employee.getEmpId() != employeeIds[i]) {
+						if (employeeIds[i] % 100 == 0) {
+							session.flush();
+							session.clear();
+						}
+						employee = new EmployeeProjects();
+						employee.setEmpId(employeeIds[i]);
+						session.save(employee);
+					}
+					employee.getEmpWorkingonProjects().add(session.load(Projects.class, projectIds[i]));
+				}
+				session.getTransaction().commit();
+			}
+			graph = AssignmentGraph.load(ssf);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			ssf.close();
+		}
+	}
+
+	@Benchmark
+	public int[] projectsOf(InMemory index) {
+		return index.graph.projectsOf(random.nextInt(index.employees));
+	}
+
+	@Benchmark
+	public int[] employeesOf(InMemory index) {
+		return index.graph.employeesOf(random.nextInt(index.projects));
+	}
+
+	@Benchmark
+	public int[] coworkersOf(InMemory index) {
+		return index.graph.coworkersOf(random.nextInt(index.employees));
+	}
+
+	@Benchmark
+	public int[] projectsWithinTwoHops(InMemory index) {
+		return index.graph.projectsWithinHops(random.nextInt(index.employees), 2);
+	}
+
+	@Benchmark
+	public int[] projectsOfPending(InMemory index) {
+		return index.pending.projectsOf(random.nextInt(index.employees));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public AssignmentGraph build(InMemory index) {
+		return AssignmentGraph.fromLinks(index.employeeIds, index.projectIds);
+	}
+
+	/**
+	 * Merges 1000 added links into a fresh copy of the rows
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public AssignmentGraph applyAndCompact(InMemory index) {
+		AssignmentGraph graph = AssignmentGraph.fromLinks(index.employeeIds, index.projectIds);
+		graph.apply(new int[0], new long[0], index.added);
+		graph.compact();
+		return graph;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public AssignmentGraph rebuildFromJoinTable(Database database) {
+		database.graph.rebuild(database.ssf);
+		return database.graph;
+	}
+
+	@Benchmark
+	public int[] coworkersOfIndexed(Database database) {
+		return database.graph.coworkersOf(random.nextInt(database.employees));
+	}
+
+	@Benchmark
+	public int coworkersOfEntityWalk(Database database) {
+		int id = random.nextInt(database.employees);
+		try (Session session = database.ssf.openSession()) {
+			EmployeeProjects employee = session.get(EmployeeProjects.class, id);
+			Set<Integer> coworkers = new HashSet<>();
+			for (Projects project : employee.getEmpWorkingonProjects()) {
+				for (EmployeeProjects coworker : project.getProjectAssignToemp()) {
+					coworkers.add(coworker.getEmpId());
+				}
+			}
+			coworkers.remove(id);
+			return coworkers.size();
+		}
+	}
+
+	/**
+	 * LINKS_PER_EMPLOYEE links per employee, project = projects * u^2 for uniform u,
+	 * so low ids are popular
+	 */
+	static void generate(int[] employeeIds, int[] projectIds, int projects, Random random) {
+		for (int i = 0; i < employeeIds.length; i++) {
+			employeeIds[i] = i / LINKS_PER_EMPLOYEE;
+			double u = random.nextDouble();
+			projectIds[i] = (int) (projects * u * u);
+		}
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(AssignmentGraphBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,213 @@
+package orm.hibernate.graph;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.manytomany.EmployeeProjects;
+import orm.hibernate.annotation.manytomany.Projects;
+
+public class AssignmentGraphTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+	private static AssignmentGraph graph;
+
+	/**
+	 * Employees 1..4 and projects 10..15, employee 1 on 10 and 11, 2 on 11 and 12,
+	 * 3 on 12 and 13, 4 on 14
+	 */
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int id = 10; id <= 15; id++) {
+				Projects project = new Projects();
+				project.setProjectId(id);
+				project.setProjectName("Project " + id);
+				session.save(project);
+			}
+			int[][] assignments = { { 10, 11 }, { 11, 12 }, { 12, 13 }, { 14 } };
+			for (int i = 0; i < assignments.length; i++) {
+				EmployeeProjects employee = new EmployeeProjects();
+				employee.setEmpId(i + 1);
+				for (int project : assignments[i]) {
+					employee.getEmpWorkingonProjects().add(session.load(Projects.class, project));
+				}
+				session.save(employee);
+			}
+			session.getTransaction().commit();
+		}
+		graph = AssignmentGraph.load(ssf, 2);
+	}
+
+	@Test
+	public void followsTheJoinTableThroughCommittedChanges() {
+		assertArrayEquals(new int[] { 10, 11 }, graph.projectsOf(1));
+		assertArrayEquals(new int[] { 2, 3 }, graph.employeesOf(12));
+		assertArrayEquals(new int[] { 2 }, graph.coworkersOf(1));
+		assertArrayEquals(new int[] { 10, 11 }, graph.projectsWithinHops(1, 1));
+		assertArrayEquals(new int[] { 10, 11, 12 }, graph.projectsWithinHops(1, 2));
+		assertArrayEquals(new int[] { 10, 11, 12, 13 }, graph.projectsWithinHops(1, 3));
+		assertArrayEquals(new int[0], graph.projectsOf(99));
+		assertArrayEquals(new int[0], graph.coworkersOf(4));
+
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			EmployeeProjects employee = session.get(EmployeeProjects.class, 4);
+			employee.getEmpWorkingonProjects().add(session.load(Projects.class, 10));
+			employee.getEmpWorkingonProjects().remove(session.load(Projects.class, 14));
+			session.flush();
+			assertArrayEquals(new int[] { 14 }, graph.projectsOf(4));
+			session.getTransaction().rollback();
+		}
+		assertArrayEquals(new int[] { 14 }, graph.projectsOf(4));
+
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			EmployeeProjects employee = session.get(EmployeeProjects.class, 4);
+			employee.getEmpWorkingonProjects().add(session.load(Projects.class, 10));
+			employee.getEmpWorkingonProjects().add(session.load(Projects.class, 15));
+			employee.getEmpWorkingonProjects().remove(session.load(Projects.class, 14));
+			session.getTransaction().commit();
+		}
+		assertArrayEquals(new int[] { 10, 15 }, graph.projectsOf(4));
+		assertArrayEquals(new int[] { 1, 4 }, graph.employeesOf(10));
+		assertArrayEquals(new int[0], graph.employeesOf(14));
+		assertArrayEquals(new int[] { 2, 4 }, graph.coworkersOf(1));
+
+		/**
+		 * A new employee, a replaced set and a deleted employee
+		 */
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			EmployeeProjects employee = new EmployeeProjects();
+			employee.setEmpId(5);
+			employee.getEmpWorkingonProjects().add(session.load(Projects.class, 13));
+			session.save(employee);
+			EmployeeProjects replaced = session.get(EmployeeProjects.class, 4);
+			replaced.setEmpWorkingonProjects(new HashSet<>());
+			replaced.getEmpWorkingonProjects().add(session.load(Projects.class, 14));
+			session.delete(session.get(EmployeeProjects.class, 3));
+			session.getTransaction().commit();
+		}
+		assertArrayEquals(new int[] { 13 }, graph.projectsOf(5));
+		assertArrayEquals(new int[] { 14 }, graph.projectsOf(4));
+		assertArrayEquals(new int[0], graph.projectsOf(3));
+		assertArrayEquals(new int[] { 5 }, graph.employeesOf(13));
+
+		/**
+		 * The overlay was compacted (threshold 2), the rows agree with the table
+		 */
+		assertTrue(graph.getPendingChanges() <= 2);
+		AssignmentGraph reloaded = AssignmentGraph.fromLinks(new int[0], new int[0]);
+		reloaded.rebuild(ssf);
+		for (int employee = 1; employee <= 5; employee++) {
+			assertArrayEquals(reloaded.projectsOf(employee), graph.projectsOf(employee));
+		}
+		assertEquals(reloaded.getLinkCount(), graph.getLinkCount());
+	}
+
+	@Test
+	public void loadsOneGraphPerFactory() {
+		assertSame(graph, AssignmentGraph.load(ssf));
+		EventListenerRegistry listeners = ssf.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+				.getService(EventListenerRegistry.class);
+		for (EventType<?> type : new EventType<?>[] { EventType.PRE_COLLECTION_RECREATE,
+				EventType.PRE_COLLECTION_UPDATE, EventType.PRE_COLLECTION_REMOVE }) {
+			assertEquals(1, graphListeners(listeners, type), type.eventName());
+		}
+	}
+
+	/**
+	 * The first load cannot read the join table, it leaves no graph behind and commits
+	 * still work. The next load reads the rows.
+	 */
+	@Test
+	public void aFailedLoadLeavesNoGraph() {
+		SessionFactory other = TestDatabase.configuration()
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:assignment_graph_failure;MODE=MySQL;DB_CLOSE_DELAY=-1")
+				.buildSessionFactory();
+		try {
+			String table = ((AbstractCollectionPersister) other.unwrap(SessionFactoryImplementor.class).getMetamodel()
+					.collectionPersister(AssignmentGraph.ROLE)).getTableName();
+			execute(other, "alter table " + table + " rename to hidden_links");
+			assertThrows(HibernateException.class, () -> AssignmentGraph.load(other));
+			execute(other, "alter table hidden_links rename to " + table);
+
+			try (Session session = other.openSession()) {
+				session.beginTransaction();
+				Projects project = new Projects();
+				project.setProjectId(10);
+				project.setProjectName("Project 10");
+				session.save(project);
+				EmployeeProjects employee = new EmployeeProjects();
+				employee.setEmpId(1);
+				employee.getEmpWorkingonProjects().add(project);
+				session.save(employee);
+				session.getTransaction().commit();
+			}
+
+			AssignmentGraph loaded = AssignmentGraph.load(other);
+			assertArrayEquals(new int[] { 10 }, loaded.projectsOf(1));
+		} finally {
+			other.close();
+		}
+	}
+
+	private static void execute(SessionFactory factory, String sql) {
+		try (Session session = factory.openSession()) {
+			session.beginTransaction();
+			session.createNativeQuery(sql).executeUpdate();
+			session.getTransaction().commit();
+		}
+	}
+
+	private static int graphListeners(EventListenerRegistry listeners, EventType<?> type) {
+		int[] registered = new int[1];
+		listeners.getEventListenerGroup(type).fireEventOnEachListener(null, (listener, event) -> {
+			if (listener instanceof AssignmentGraphListener) {
+				registered[0]++;
+			}
+		});
+		return registered[0];
+	}
+
+	@Test
+	public void mergesPendingChangesWithTheRows() {
+		AssignmentGraph links = AssignmentGraph.fromLinks(new int[] { 1, 1, 2, 1 }, new int[] { 7, 3, 3, 7 });
+		assertArrayEquals(new int[] { 3, 7 }, links.projectsOf(1));
+		assertEquals(3, links.getLinkCount());
+
+		links.apply(new int[0], new long[] { AssignmentGraph.pack(1, 3) },
+				new long[] { AssignmentGraph.pack(1, 5), AssignmentGraph.pack(1, 9), AssignmentGraph.pack(2, 3) });
+		assertArrayEquals(new int[] { 5, 7, 9 }, links.projectsOf(1));
+		assertArrayEquals(new int[] { 2 }, links.employeesOf(3));
+		assertEquals(3, links.getPendingChanges());
+
+		links.apply(new int[] { 1 }, new long[0], new long[] { AssignmentGraph.pack(1, 3) });
+		assertArrayEquals(new int[] { 3 }, links.projectsOf(1));
+		assertArrayEquals(new int[] { 2 }, links.coworkersOf(1));
+
+		links.compact();
+		assertEquals(0, links.getPendingChanges());
+		assertArrayEquals(new int[] { 3 }, links.projectsOf(1));
+		assertArrayEquals(new int[] { 1, 2 }, links.employeesOf(3));
+		assertEquals(2, links.getLinkCount());
+	}
+}
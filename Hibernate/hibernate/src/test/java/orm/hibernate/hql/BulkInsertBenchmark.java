@@ -0,0 +1,66 @@
+package orm.hibernate.hql;
+
+import java.util.Iterator;
+import java.util.stream.IntStream;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+
+/**
+ * Compares rows per second of the old commit per row loop from hql.MainMethod
+ * with BulkLoader. Runs against the in-memory test database, pass the number
+ * of rows as first argument (default 20000).
+ */
+public class BulkInsertBenchmark {
+
+	public static void main(String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		SessionFactory ssf = new Configuration().configure("orm/hibernate/hibernateTestConfig.cfg.xml")
+				.buildSessionFactory();
+		try {
+			/**
+			 * Warm up both paths once so class loading and JIT are not measured
+			 */
+			commitPerRow(ssf, 1000);
+			new BulkLoader(ssf).load(paginators(1000));
+
+			long start = System.nanoTime();
+			commitPerRow(ssf, rows);
+			report("commit per row", rows, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			new BulkLoader(ssf).load(paginators(rows));
+			report("BulkLoader", rows, System.nanoTime() - start);
+		} finally {
+			ssf.close();
+		}
+	}
+
+	private static void commitPerRow(SessionFactory ssf, int rows) {
+		Session session = ssf.openSession();
+		Transaction tx = session.beginTransaction();
+		Iterator<Paginator> it = paginators(rows);
+		while (it.hasNext()) {
+			session.save(it.next());
+			tx.commit();
+			tx.begin();
+		}
+		tx.commit();
+		session.close();
+	}
+
+	private static Iterator<Paginator> paginators(int rows) {
+		return IntStream.rangeClosed(1, rows).mapToObj(i -> {
+			Paginator pg = new Paginator();
+			pg.setIdval("value " + i);
+			return pg;
+		}).iterator();
+	}
+
+	private static void report(String name, int rows, long nanos) {
+		double seconds = nanos / 1_000_000_000.0;
+		System.out.printf("%-15s %8d rows in %7.3f s -> %10.0f rows/s%n", name, rows, seconds, rows / seconds);
+	}
+}
@@ -0,0 +1,54 @@
+package orm.hibernate.hql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Iterator;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+
+public class BulkLoaderTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase(configuration -> configuration
+			.setProperty("hibernate.generate_statistics", "true"));
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+	}
+
+	@Test
+	public void insertsEveryRowInBatches() {
+		Iterator<Paginator> rows = TestDatabase.paginators(1, 1000);
+
+		ssf.getStatistics().clear();
+		long inserted = new BulkLoader(ssf, 50, 200).load(rows);
+
+		assertEquals(1000, inserted);
+		assertEquals(1000, ssf.getStatistics().getEntityInsertCount());
+		/**
+		 * One prepared insert per batch plus the pooled sequence calls,
+		 * commit per row would prepare 1000 inserts
+		 */
+		assertTrue(ssf.getStatistics().getPrepareStatementCount() < 100,
+				"prepared " + ssf.getStatistics().getPrepareStatementCount() + " statements");
+
+		try (Session session = ssf.openSession()) {
+			Long count = session.createQuery("select count(p) from Paginator p", Long.class).uniqueResult();
+			assertEquals(1000L, count.longValue());
+		}
+	}
+
+	@Test
+	public void rejectsCommitIntervalSmallerThanBatch() {
+		assertThrows(IllegalArgumentException.class, () -> new BulkLoader(ssf, 50, 10));
+	}
+}
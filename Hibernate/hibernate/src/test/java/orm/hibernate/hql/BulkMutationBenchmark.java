@@ -0,0 +1,150 @@
+package orm.hibernate.hql;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+
+/**
+ * Updates the city of every second student, as a single HQL executeUpdate and with
+ * BulkMutationExecutor at parallelism 1 and 4. Before each update the first CACHED
+ * students, as many as the student region holds, are cached, half of them are updated.
+ * After each iteration the longest transaction and the student cache entries left are
+ * printed. The request measured 500000 students:
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=BulkMutationBenchmark -Djmh.args="-p students=500000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkMutationBenchmark {
+
+	private static final int CACHED = 10_000;
+	private static final String[] CITIES = { "Mumbai", "Delhi" };
+
+	@Param({ "100000" })
+	public int students;
+
+	@Param({ "10000" })
+	public int chunkSize;
+
+	private SessionFactory ssf;
+	private LongAccumulator longest;
+	private int updates;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = TestDatabase.configuration()
+				.setProperty("hibernate.cache.use_query_cache", "false")
+				.setProperty("hibernate.generate_statistics", "false")
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:bulkMutationBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1")
+				.buildSessionFactory();
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int id = 1; id <= students; id++) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName(id % 2 == 0 ? "Harsh" : "Other");
+				st.setCity("Pune");
+				session.insert(st);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void cacheAll() {
+		try (Session session = ssf.openSession()) {
+			for (int id = 1; id <= Math.min(students, CACHED); id++) {
+				session.get(Student.class, id);
+			}
+		}
+		longest = new LongAccumulator(Math::max, 0);
+	}
+
+	@TearDown(Level.Iteration)
+	public void report() {
+		int cached = 0;
+		for (int id = 1; id <= Math.min(students, CACHED); id++) {
+			if (ssf.getCache().containsEntity(Student.class, id)) {
+				cached++;
+			}
+		}
+		System.out.printf("%nlongest transaction %d ms, %d students cached after%n", longest.get() / 1_000_000, cached);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	@Benchmark
+	public int executeUpdate() {
+		long start = System.nanoTime();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			int rows = session.createQuery("update Student set city = :city where name = :name")
+					.setParameter("city", nextCity()).setParameter("name", "Harsh").executeUpdate();
+			session.getTransaction().commit();
+			longest.accumulate(System.nanoTime() - start);
+			return rows;
+		}
+	}
+
+	@Benchmark
+	public long chunkedSerial() {
+		return chunked(1);
+	}
+
+	@Benchmark
+	public long chunkedParallel() {
+		return chunked(4);
+	}
+
+	private long chunked(int parallelism) {
+		BulkMutationExecutor executor = new BulkMutationExecutor(ssf, chunkSize, parallelism,
+				progress -> longest.accumulate(progress.getChunkNanos()));
+		Map<String, Object> params = new HashMap<>();
+		params.put("city", nextCity());
+		params.put("name", "Harsh");
+		return executor.update(Student.class, "city = :city", "name = :name", params).getRows();
+	}
+
+	/**
+	 * Every update writes a city the rows do not have yet
+	 */
+	private String nextCity() {
+		return CITIES[updates++ % CITIES.length];
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(BulkMutationBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
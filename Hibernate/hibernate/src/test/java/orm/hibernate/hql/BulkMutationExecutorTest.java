@@ -0,0 +1,147 @@
+package orm.hibernate.hql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+
+public class BulkMutationExecutorTest {
+
+	private static final int STUDENTS = 1000;
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	/**
+	 * Even ids are named Harsh, all live in Pune and are in the student region
+	 */
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int id = 1; id <= STUDENTS; id++) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName(id % 2 == 0 ? "Harsh" : "Other");
+				st.setCity("Pune");
+				session.save(st);
+			}
+			session.getTransaction().commit();
+		}
+		try (Session session = ssf.openSession()) {
+			for (int id = 1; id <= STUDENTS; id++) {
+				session.get(Student.class, id);
+			}
+		}
+	}
+
+	@Test
+	public void updatesAndDeletesInChunksEvictingOnlyTheWrittenRows() {
+		assertEquals(STUDENTS, countInPune());
+
+		List<BulkMutationExecutor.Progress> progress = new CopyOnWriteArrayList<>();
+		BulkMutationExecutor executor = new BulkMutationExecutor(ssf, 100, 4, progress::add);
+		BulkMutationExecutor.Result updated = executor.update(Student.class, "city = :city", "name = :name",
+				params("city", "Mumbai", "name", "Harsh"));
+
+		/**
+		 * 500 matching keys, 100 per chunk
+		 */
+		assertEquals(STUDENTS / 2, updated.getRows());
+		assertEquals(5, updated.getChunks());
+		assertEquals(STUDENTS / 2, updated.getEvictedEntries());
+		assertEquals(5, progress.size());
+		assertEquals(STUDENTS / 2, progress.stream().mapToLong(BulkMutationExecutor.Progress::getRows).max().getAsLong());
+		for (int id = 1; id <= STUDENTS; id++) {
+			assertEquals(id % 2 != 0, ssf.getCache().containsEntity(Student.class, id), "id " + id);
+		}
+		try (Session session = ssf.openSession()) {
+			assertEquals("Mumbai", session.get(Student.class, 2).getCity());
+			assertEquals("Pune", session.get(Student.class, 3).getCity());
+		}
+		assertEquals(STUDENTS / 2, countInPune());
+
+		BulkMutationExecutor.Result deleted = executor.delete(Student.class, "name = :name", params("name", "Harsh"));
+		assertEquals(STUDENTS / 2, deleted.getRows());
+		try (Session session = ssf.openSession()) {
+			assertEquals(STUDENTS / 2, session.createQuery("select count(*) from Student", Long.class).uniqueResult());
+			assertNull(session.get(Student.class, 2));
+		}
+		assertEquals(0, executor.delete(Student.class, "name = :name", params("name", "Harsh")).getRows());
+	}
+
+	@Test
+	public void reportsTheCommittedChunksOfAFailure() {
+		BulkMutationExecutor executor = new BulkMutationExecutor(ssf, 100, 2, progress -> {
+		});
+		HibernateException e = assertThrows(HibernateException.class,
+				() -> executor.update(Student.class, "no_such_column = 1", "1 = 1", Collections.emptyMap()));
+		assertTrue(e.getMessage().contains("chunks with 0 rows were committed"), e.getMessage());
+	}
+
+	/**
+	 * Three matching keys two billion apart are one chunk, not two million. The rows are
+	 * removed again, the other tests count the students.
+	 */
+	@Test
+	public void cutsChunksFromTheMatchingKeysNotTheKeyRange() {
+		int[] ids = { 1_000_001, 1_500_000_000, Integer.MAX_VALUE };
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int id : ids) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName("Sparse");
+				st.setCity("Nagpur");
+				session.save(st);
+			}
+			session.getTransaction().commit();
+		}
+
+		BulkMutationExecutor executor = new BulkMutationExecutor(ssf, 1000, 4, progress -> {
+		});
+		BulkMutationExecutor.Result updated = executor.update(Student.class, "city = :city", "name = :name",
+				params("city", "Nashik", "name", "Sparse"));
+		assertEquals(3, updated.getRows());
+		assertEquals(1, updated.getChunks());
+
+		BulkMutationExecutor.Result deleted = new BulkMutationExecutor(ssf, 2, 4, progress -> {
+		}).delete(Student.class, "name = :name and city = :city", params("name", "Sparse", "city", "Nashik"));
+		assertEquals(3, deleted.getRows());
+		assertEquals(2, deleted.getChunks());
+	}
+
+	/**
+	 * Cacheable, the result stays in the query cache until the table changes
+	 */
+	private static long countInPune() {
+		try (Session session = ssf.openSession()) {
+			return session.createQuery("select count(*) from Student where city = 'Pune'", Long.class)
+					.setCacheable(true).uniqueResult();
+		}
+	}
+
+	private static Map<String, Object> params(Object... keysAndValues) {
+		Map<String, Object> params = new LinkedHashMap<>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			params.put((String) keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return params;
+	}
+}
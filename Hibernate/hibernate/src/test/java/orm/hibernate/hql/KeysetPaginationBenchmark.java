@@ -0,0 +1,83 @@
+package orm.hibernate.hql;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+
+/**
+ * Page latency of offset paging (setFirstResult) against KeysetPaginator at
+ * page 1 and page 10000 with 10 rows per page. Runs against the in-memory
+ * test database.
+ */
+public class KeysetPaginationBenchmark {
+
+	private static final int PAGE_SIZE = 10;
+	private static final int DEEP_PAGE = 10000;
+	private static final int ROUNDS = 200;
+
+	public static void main(String[] args) {
+		SessionFactory ssf = new Configuration().configure("orm/hibernate/hibernateTestConfig.cfg.xml")
+				.buildSessionFactory();
+		try {
+			new BulkLoader(ssf).load(IntStream.rangeClosed(1, PAGE_SIZE * (DEEP_PAGE + 1)).mapToObj(i -> {
+				Paginator pg = new Paginator();
+				pg.setIdval("value " + i);
+				return pg;
+			}).iterator());
+
+			KeysetPaginator<Paginator> paginator = new KeysetPaginator<>(Paginator.class, "id", PAGE_SIZE);
+			String deepCursor;
+			try (Session session = ssf.openSession()) {
+				/**
+				 * The cursor a client holds after reading pages 1 .. DEEP_PAGE - 1
+				 */
+				KeysetPaginator.Page<Paginator> page = paginator.first(session);
+				for (int i = 2; i < DEEP_PAGE; i++) {
+					page = paginator.next(session, page.getNextCursor());
+					session.clear();
+				}
+				deepCursor = page.getNextCursor();
+			}
+
+			for (int run = 0; run < 2; run++) {
+				boolean print = run == 1;
+				measure(ssf, "offset page 1", print, s -> offsetPage(s, 1));
+				measure(ssf, "offset page " + DEEP_PAGE, print, s -> offsetPage(s, DEEP_PAGE));
+				measure(ssf, "keyset page 1", print, s -> paginator.first(s).getItems());
+				final String cursor = deepCursor;
+				measure(ssf, "keyset page " + DEEP_PAGE, print, s -> paginator.next(s, cursor).getItems());
+			}
+		} finally {
+			ssf.close();
+		}
+	}
+
+	private static List<Paginator> offsetPage(Session session, int page) {
+		return session.createQuery("from Paginator order by id", Paginator.class)
+				.setFirstResult((page - 1) * PAGE_SIZE)
+				.setMaxResults(PAGE_SIZE)
+				.list();
+	}
+
+	private static void measure(SessionFactory ssf, String name, boolean print,
+			Function<Session, List<Paginator>> pageLoader) {
+		long total = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			try (Session session = ssf.openSession()) {
+				long start = System.nanoTime();
+				List<Paginator> rows = pageLoader.apply(session);
+				total += System.nanoTime() - start;
+				if (rows.size() != PAGE_SIZE) {
+					throw new IllegalStateException(name + " returned " + rows.size() + " rows");
+				}
+			}
+		}
+		if (print) {
+			System.out.printf("%-20s %10.1f us/page%n", name, total / 1000.0 / ROUNDS);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package orm.hibernate.hql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+
+public class KeysetPaginatorTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+	private static List<Integer> allIds;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		TestDatabase.loadPaginators(ssf, TestDatabase.paginators(1, 95));
+		try (Session session = ssf.openSession()) {
+			allIds = session.createQuery("select p.id from Paginator p order by p.id", Integer.class).list();
+		}
+	}
+
+	@Test
+	public void walksForwardThenBackwardOverEveryRow() {
+		KeysetPaginator<Paginator> paginator = new KeysetPaginator<>(Paginator.class, "id", 10);
+		try (Session session = ssf.openSession()) {
+			List<Integer> forward = new ArrayList<>();
+			KeysetPaginator.Page<Paginator> page = paginator.first(session);
+			assertFalse(page.hasPrevious());
+			int pages = 1;
+			ids(page, forward);
+			while (page.hasNext()) {
+				page = paginator.next(session, page.getNextCursor());
+				ids(page, forward);
+				pages++;
+			}
+			assertEquals(allIds, forward);
+			assertEquals(10, pages);
+			assertEquals(5, page.getItems().size());
+
+			List<Integer> backward = new ArrayList<>();
+			while (page.hasPrevious()) {
+				page = paginator.previous(session, page.getPreviousCursor());
+				List<Integer> ids = new ArrayList<>();
+				ids(page, ids);
+				backward.addAll(0, ids);
+			}
+			assertEquals(allIds.subList(0, 90), backward);
+			assertFalse(page.hasPrevious());
+			assertTrue(page.hasNext());
+		}
+	}
+
+	/**
+	 * A cursor before the first row leads to the first rows, which have no previous page
+	 */
+	@Test
+	public void firstRowsHaveNoPreviousPage() {
+		KeysetPaginator<Paginator> paginator = new KeysetPaginator<>(Paginator.class, "id", 10);
+		try (Session session = ssf.openSession()) {
+			KeysetPaginator.Page<Paginator> page = paginator.next(session, cursor(allIds.get(0) - 1));
+			assertEquals(allIds.get(0), page.getItems().get(0).getId());
+			assertFalse(page.hasPrevious());
+
+			page = paginator.next(session, cursor(allIds.get(0)));
+			assertTrue(page.hasPrevious());
+			assertEquals(1, paginator.previous(session, page.getPreviousCursor()).getItems().size());
+		}
+	}
+
+	@Test
+	public void cachesApproximateTotal() {
+		KeysetPaginator<Paginator> paginator = new KeysetPaginator<>(Paginator.class, "id", 10, Duration.ofHours(1));
+		try (Session session = ssf.openSession()) {
+			assertEquals(95, paginator.first(session).getApproximateTotal());
+			assertEquals(-1, new KeysetPaginator<>(Paginator.class, "id", 10).first(session).getApproximateTotal());
+		}
+	}
+
+	@Test
+	public void rejectsForeignCursor() {
+		KeysetPaginator<Paginator> paginator = new KeysetPaginator<>(Paginator.class, "id", 10);
+		try (Session session = ssf.openSession()) {
+			assertThrows(IllegalArgumentException.class, () -> paginator.next(session, "%%%"));
+		}
+	}
+
+	private static String cursor(int id) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void ids(KeysetPaginator.Page<Paginator> page, List<Integer> into) {
+		for (Paginator p : page.getItems()) {
+			into.add(p.getId());
+		}
+	}
+}
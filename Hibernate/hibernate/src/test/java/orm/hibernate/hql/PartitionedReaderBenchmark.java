@@ -0,0 +1,135 @@
+package orm.hibernate.hql;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.TestDatabase;
+
+/**
+ * Sums the ids and the idval lengths of all paginator rows, with one session and with
+ * PartitionedReader at each parallelism. The pool allows one connection per partition
+ * read at the same time up to the number of cores, H2's query cache is off, it would
+ * answer the repeated single session sum from the last result. The request measured
+ * 2000000 rows and the number of cores:
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=PartitionedReaderBenchmark -Djmh.args="-p rows=2000000 -p parallelism=1,2,4,16"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionedReaderBenchmark {
+
+	@Param({ "200000" })
+	public int rows;
+
+	private SessionFactory ssf;
+	private long idvalLengths;
+
+	@State(Scope.Benchmark)
+	public static class Reader {
+
+		@Param({ "1", "2", "4" })
+		public int parallelism;
+
+		@Param({ "4" })
+		public int partitionsPerThread;
+
+		private PartitionedReader reader;
+
+		/**
+		 * The partitioned scan must see every row of the single session scan
+		 */
+		@Setup(Level.Trial)
+		public void setUp(PartitionedReaderBenchmark benchmark) {
+			reader = new PartitionedReader(benchmark.ssf, parallelism, parallelism * partitionsPerThread, 1000);
+			if (benchmark.partitionedScan(this) != benchmark.idvalLengths) {
+				throw new IllegalStateException("Partitioned scan does not match the single session");
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			reader.close();
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		ssf = TestDatabase.configuration()
+				.setProperty("hibernate.hikari.maximumPoolSize", String.valueOf(Math.max(4, cores) + 1))
+				.setProperty("hibernate.generate_statistics", "false")
+				.setProperty("hibernate.connection.url",
+						"jdbc:h2:mem:partitionedreader;MODE=MySQL;DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0")
+				.buildSessionFactory();
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= rows; i++) {
+				Paginator pg = new Paginator();
+				pg.setIdval("value " + i);
+				session.insert(pg);
+			}
+			session.getTransaction().commit();
+		}
+		idvalLengths = singleSessionScan();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	@Benchmark
+	public Long singleSessionSum() {
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			return session.createQuery("select sum(e.id) from Paginator e", Long.class).uniqueResult();
+		}
+	}
+
+	@Benchmark
+	public long singleSessionScan() {
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			return session.createQuery("from Paginator e", Paginator.class).stream()
+					.mapToLong(p -> p.getIdval().length()).sum();
+		}
+	}
+
+	@Benchmark
+	public Long partitionedSum(Reader reader) {
+		return reader.reader.aggregate(Paginator.class, "select sum(e.id)", Long.class, Long::sum);
+	}
+
+	@Benchmark
+	public long partitionedScan(Reader reader) {
+		return reader.reader.scan(Paginator.class, null, Collections.emptyMap(),
+				Collectors.summingLong((Paginator p) -> p.getIdval().length()));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PartitionedReaderBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
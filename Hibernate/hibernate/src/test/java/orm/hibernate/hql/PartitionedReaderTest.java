@@ -0,0 +1,58 @@
+package orm.hibernate.hql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+
+public class PartitionedReaderTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		TestDatabase.loadPaginators(ssf, TestDatabase.paginators(1, 1003, i -> (i % 3 == 0 ? "value " : "other ") + i));
+	}
+
+	@Test
+	public void mergesThePartitionsIntoTheSingleSessionResult() {
+		List<Integer> ids;
+		Long sum;
+		try (Session session = ssf.openSession()) {
+			ids = session.createQuery("select p.id from Paginator p where p.idval like 'value%' order by p.id",
+					Integer.class).list();
+			sum = session.createQuery("select sum(p.id) from Paginator p where p.idval like 'value%'", Long.class)
+					.uniqueResult();
+		}
+
+		try (PartitionedReader reader = new PartitionedReader(ssf, 3, 7, 100)) {
+			List<Integer> scanned = reader.scan(Paginator.class, "e.idval like :prefix",
+					Collections.singletonMap("prefix", "value%"),
+					Collectors.mapping(Paginator::getId, Collectors.toList()));
+			Collections.sort(scanned);
+			assertEquals(ids, scanned);
+
+			assertEquals(sum, reader.aggregate(Paginator.class, "select sum(e.id)", Long.class,
+					"e.idval like :prefix", Collections.singletonMap("prefix", "value%"), Long::sum));
+			assertEquals(1003L, reader.aggregate(Paginator.class, "select count(e)", Long.class, Long::sum));
+
+			assertNull(reader.aggregate(Paginator.class, "select sum(e.id)", Long.class, "e.idval = :none",
+					Collections.singletonMap("none", "none"), Long::sum));
+			assertEquals(0, reader.scan(Paginator.class, "e.idval = 'none'", Collections.emptyMap(),
+					Collectors.counting()));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package orm.hibernate.hql;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.annotation.onetoone.Payroll;
+import orm.hibernate.annotation.onetoone.Personal;
+
+/**
+ * Payroll report over the in-memory test database: the Object[] query hql.MainMethod used,
+ * the same join selecting entities, and PayrollReport as list, as stream and with a row
+ * callback. Run with
+ * the gc profiler to see the allocation per report, e.g.
+ *
+ *   java -cp <test classpath> org.openjdk.jmh.Main PayrollReportBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayrollReportBenchmark {
+
+	@Param({ "10000" })
+	public int employees;
+
+	private SessionFactory ssf;
+	private PayrollReport report;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = new Configuration().configure("orm/hibernate/hibernateTestConfig.cfg.xml")
+				.setProperty("hibernate.generate_statistics", "false")
+				/**
+				 * H2 would hand out the cached result of an unchanged query, every report reads the rows
+				 */
+				.setProperty("hibernate.connection.url",
+						"jdbc:h2:mem:payrollReportBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0")
+				.buildSessionFactory();
+		report = new PayrollReport(1000);
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= employees; i++) {
+				Payroll py = new Payroll();
+				py.setEmpid_of_payroll(i);
+				py.setPayrate(1000 + i);
+				Personal ps = new Personal();
+				ps.setEmpid_personal(i);
+				ps.setFirstname("First" + i);
+				ps.setLastname("Last" + i);
+				py.setPersonal(ps);
+				session.insert(ps);
+				session.insert(py);
+			}
+			session.getTransaction().commit();
+		}
+		try (Session session = ssf.openSession()) {
+			if (report.list(session).size() != employees) {
+				throw new IllegalStateException("Report does not return one row per employee");
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public void objectArray(Blackhole bh) {
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			List<Object[]> rows = session.createQuery("select psl.firstname,psl.lastname,prl.payrate from Personal as psl"
+					+ " inner join psl.personalEmployeesPayroll as prl").list();
+			for (Object[] row : rows) {
+				bh.consume(row[0]);
+				bh.consume(row[1]);
+				bh.consume(row[2]);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public void entities(Blackhole bh) {
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			List<Object[]> rows = session.createQuery(
+					"select psl, prl from Personal as psl inner join psl.personalEmployeesPayroll as prl").list();
+			for (Object[] row : rows) {
+				Personal ps = (Personal) row[0];
+				bh.consume(ps.getFirstname());
+				bh.consume(ps.getLastname());
+				bh.consume(((Payroll) row[1]).getPayrate());
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Benchmark
+	public void dtoList(Blackhole bh) {
+		try (Session session = ssf.openSession()) {
+			for (PayrollReportRow row : report.list(session)) {
+				bh.consume(row);
+			}
+		}
+	}
+
+	@Benchmark
+	public void dtoStream(Blackhole bh) {
+		try (Session session = ssf.openSession(); Stream<PayrollReportRow> rows = report.stream(session)) {
+			rows.forEach(bh::consume);
+		}
+	}
+
+	@Benchmark
+	public long callback(Blackhole bh) {
+		try (Session session = ssf.openSession()) {
+			return report.forEach(session, (firstname, lastname, payrate) -> {
+				bh.consume(firstname);
+				bh.consume(lastname);
+				bh.consume(payrate);
+			});
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PayrollReportBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
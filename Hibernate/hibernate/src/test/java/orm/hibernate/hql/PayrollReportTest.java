@@ -0,0 +1,130 @@
+package orm.hibernate.hql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.onetoone.Payroll;
+import orm.hibernate.annotation.onetoone.Personal;
+
+public class PayrollReportTest {
+
+	private static final int EMPLOYEES = 50;
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= EMPLOYEES; i++) {
+				Payroll py = new Payroll();
+				py.setEmpid_of_payroll(i);
+				py.setPayrate(1000 + i);
+				Personal ps = new Personal();
+				ps.setEmpid_personal(i);
+				ps.setFirstname("First" + i);
+				ps.setLastname("Last" + i);
+				py.setPersonal(ps);
+				session.save(ps);
+				session.save(py);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void rowsAreDtosAndNoEntityIsManaged() {
+		try (Session session = ssf.openSession()) {
+			List<PayrollReportRow> rows = new PayrollReport(10).list(session);
+
+			assertEquals(EMPLOYEES, rows.size());
+			assertTrue(rows.contains(new PayrollReportRow("First7", "Last7", 1007)));
+			assertEquals(0, session.getStatistics().getEntityCount());
+		}
+	}
+
+	@Test
+	public void streamReturnsTheSameRows() {
+		try (Session session = ssf.openSession()) {
+			PayrollReport report = new PayrollReport(10);
+			List<PayrollReportRow> streamed;
+			try (Stream<PayrollReportRow> rows = report.stream(session)) {
+				streamed = rows.collect(Collectors.toList());
+			}
+
+			assertEquals(report.list(session), streamed);
+			assertEquals(0, session.getStatistics().getEntityCount());
+		}
+	}
+
+	@Test
+	public void callbackSeesTheSameRows() {
+		try (Session session = ssf.openSession()) {
+			PayrollReport report = new PayrollReport(10);
+			List<PayrollReportRow> called = new ArrayList<>();
+			long rows = report.forEach(session,
+					(firstname, lastname, payrate) -> called.add(new PayrollReportRow(firstname, lastname, payrate)));
+
+			assertEquals(EMPLOYEES, rows);
+			assertEquals(new HashSet<>(report.list(session)), new HashSet<>(called));
+			assertEquals(0, session.getStatistics().getEntityCount());
+		}
+	}
+
+	/**
+	 * forEach(..) reads with plain SQL, it flushes the session first like an HQL query
+	 * would and passes a NULL pay rate as null. The generated schema does not allow
+	 * NULL, tables created outside of hibernate may.
+	 */
+	@Test
+	public void callbackSeesUnflushedChangesAndNullPayRates() {
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			session.createNativeQuery("alter table " + payrollTable() + " modify payrate double null").executeUpdate();
+			session.getTransaction().commit();
+			session.beginTransaction();
+			session.createNativeQuery("update " + payrollTable() + " set payrate = null where "
+					+ payrollId() + " = 2").executeUpdate();
+			session.get(Personal.class, 1).setFirstname("Renamed");
+
+			List<Object[]> called = new ArrayList<>();
+			new PayrollReport(10).forEach(session,
+					(firstname, lastname, payrate) -> called.add(new Object[] { firstname, lastname, payrate }));
+
+			assertTrue(called.stream().anyMatch(row -> "Renamed".equals(row[0])));
+			assertTrue(called.stream().anyMatch(row -> "First2".equals(row[0]) && row[2] == null));
+			session.getTransaction().rollback();
+		}
+	}
+
+	private static String payrollTable() {
+		return persister(Payroll.class).getTableName();
+	}
+
+	private static String payrollId() {
+		return persister(Payroll.class).getIdentifierColumnNames()[0];
+	}
+
+	private static AbstractEntityPersister persister(Class<?> entity) {
+		return (AbstractEntityPersister) ssf.unwrap(SessionFactoryImplementor.class).getMetamodel()
+				.entityPersister(entity);
+	}
+}
@@ -0,0 +1,90 @@
+package orm.hibernate.hql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.xmlbasedconfig.Coders;
+
+/**
+ * Runs Hibernate/SQL/Migration_pooled_ids.sql over tables filled with ids from the
+ * IDENTITY days. The MySQL dialect makes Hibernate keep paginator_seq and coders_seq
+ * as next_val tables like on MySQL, H2 runs in MySQL mode.
+ */
+public class PooledIdMigrationTest {
+
+	private static final int EXISTING_ROWS = 120;
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase(configuration -> configuration
+			.addResource("orm/hibernate/xmlbasedconfig/Coders.hbm.xml")
+			.setProperty("hibernate.connection.url", "jdbc:h2:mem:pooledIdMigration;MODE=MySQL;DB_CLOSE_DELAY=-1")
+			.setProperty("hibernate.dialect", "org.hibernate.dialect.MySQL57Dialect"));
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+	}
+
+	@Test
+	public void newIdsStartAboveTheExistingRows() throws Exception {
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int id = 1; id <= EXISTING_ROWS; id++) {
+				session.createNativeQuery("insert into Paginator (id, idval) values (:id, :v)")
+						.setParameter("id", id).setParameter("v", "value " + id).executeUpdate();
+				session.createNativeQuery(
+						"insert into coders_information (coder_id, coder_username, coder_rating) values (:id, :n, 1)")
+						.setParameter("id", id).setParameter("n", "coder " + id).executeUpdate();
+			}
+			for (String update : migration()) {
+				assertEquals(1, session.createNativeQuery(update).executeUpdate(), update);
+			}
+			session.getTransaction().commit();
+		}
+
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			Paginator pg = new Paginator();
+			pg.setIdval("after migration");
+			session.persist(pg);
+			Coders coder = new Coders();
+			coder.setName("after migration");
+			session.persist(coder);
+			session.getTransaction().commit();
+			assertTrue(pg.getId() > EXISTING_ROWS, "paginator id " + pg.getId());
+			assertTrue(coder.getId() > EXISTING_ROWS, "coder id " + coder.getId());
+		}
+		try (Session session = ssf.openSession()) {
+			assertEquals(EXISTING_ROWS + 1L,
+					session.createQuery("select count(p) from Paginator p", Long.class).uniqueResult());
+		}
+	}
+
+	private static List<String> migration() throws Exception {
+		String sql = new String(Files.readAllBytes(Paths.get("../SQL/Migration_pooled_ids.sql")),
+				StandardCharsets.UTF_8);
+		sql = sql.substring(sql.indexOf("**/") + 3);
+		List<String> updates = new ArrayList<>();
+		for (String statement : sql.split(";")) {
+			if (statement.trim().startsWith("update")) {
+				updates.add(statement.trim());
+			}
+		}
+		assertEquals(2, updates.size());
+		return updates;
+	}
+}
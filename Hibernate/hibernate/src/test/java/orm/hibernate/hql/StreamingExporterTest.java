@@ -0,0 +1,81 @@
+package orm.hibernate.hql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import org.junit.jupiter.api.io.TempDir;
+
+public class StreamingExporterTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase(configuration -> configuration
+			.setProperty("hibernate.generate_statistics", "true"));
+
+	private static SessionFactory ssf;
+
+	@TempDir
+	Path dir;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+	}
+
+	/**
+	 * What the session keeps alive must not grow with the number of rows,
+	 * exporting 30 times more rows still holds at most one entity
+	 */
+	@Test
+	public void persistenceContextStaysBoundedAsRowsGrow() throws IOException {
+		StreamingExporter.Result small = exportAfterLoading(100);
+		StreamingExporter.Result large = exportAfterLoading(2900);
+
+		assertEquals(100, small.getRows());
+		assertEquals(3000, large.getRows());
+		assertEquals(1, small.getPeakManagedEntities());
+		assertEquals(1, large.getPeakManagedEntities());
+	}
+
+	@Test
+	public void writesOneLinePerRowForNativeQueries() throws IOException {
+		Path file = dir.resolve("native.csv");
+		try (Session session = ssf.openSession()) {
+			session.doWork(connection -> connection.createStatement()
+					.execute("insert into one_to_one_personal (empid_personal, firstname, lastname) values (7, 'Harsh', 'Pandya')"));
+			StreamingExporter.Result result = new StreamingExporter(10).export(session,
+					session.createNativeQuery("select empid_personal, firstname from one_to_one_personal"),
+					(Object[] row) -> row[0] + " " + row[1], file);
+			assertEquals(1, result.getRows());
+			assertEquals(0, result.getPeakManagedEntities());
+		}
+		assertEquals("7 Harsh", Files.readAllLines(file, StandardCharsets.UTF_8).get(0));
+	}
+
+	private StreamingExporter.Result exportAfterLoading(int rows) throws IOException {
+		TestDatabase.loadPaginators(ssf, TestDatabase.paginators(0, rows - 1));
+		Path file = dir.resolve("paginator-" + rows + ".csv");
+		StreamingExporter.Result result;
+		try (Session session = ssf.openSession()) {
+			result = new StreamingExporter(100).export(session,
+					session.createQuery("from Paginator order by id", Paginator.class),
+					(Paginator p) -> p.getId() + "," + p.getIdval(), file);
+			assertEquals(0, session.getStatistics().getEntityCount());
+		}
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals(result.getRows(), lines.size());
+		assertEquals(Files.size(file), result.getBytes());
+		return result;
+	}
+}
@@ -0,0 +1,46 @@
+package orm.hibernate.pool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+
+import orm.hibernate.TestDatabase;
+
+public class PooledConnectionProviderTest {
+
+	@Test
+	public void recordsAcquisitionsAndExposesThemOverJmx() throws Exception {
+		SessionFactory ssf = TestDatabase.configuration()
+				.setProperty("hibernate.hikari.poolName", "pool-metrics-test")
+				.buildSessionFactory();
+		ObjectName name = new ObjectName("orm.hibernate:type=PoolMetrics,name=\"pool-metrics-test\"");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			PoolMetrics metrics = PooledConnectionProvider.metricsOf(ssf);
+			assertNotNull(metrics);
+			long before = metrics.getAcquisitionCount();
+
+			try (Session first = ssf.openSession(); Session second = ssf.openSession()) {
+				first.doWork(c1 -> second.doWork(c2 -> {
+					assertEquals(2, metrics.getActiveConnections());
+				}));
+			}
+
+			assertEquals(before + 2, metrics.getAcquisitionCount());
+			assertEquals(4, metrics.getMaxConnections());
+			assertTrue(metrics.getMaxAcquisitionLatencyMicros() > 0);
+			assertEquals(0, metrics.getConnectionTimeouts());
+			assertEquals(metrics.getAcquisitionCount(), server.getAttribute(name, "AcquisitionCount"));
+		} finally {
+			ssf.close();
+		}
+		assertFalse(server.isRegistered(name));
+	}
+}
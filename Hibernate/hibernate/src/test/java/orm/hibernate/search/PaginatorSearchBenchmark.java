@@ -0,0 +1,140 @@
+package orm.hibernate.search;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.hql.Paginator;
+
+/**
+ * sum(id) where id > 10 and idval ilike '%text%' over rows 'value <n>', as SQL on H2
+ * (a scan of every row) and from the Lucene index on disk, for texts matching many,
+ * few and no rows. Also times the rebuild of the index on 1 and 4 loading threads.
+ * The request measured 1000000 rows:
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=PaginatorSearchBenchmark -Djmh.args="-p rows=1000000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaginatorSearchBenchmark {
+
+	@Param({ "100000" })
+	public int rows;
+
+	private SessionFactory ssf;
+	private PaginatorSearch search;
+
+	@State(Scope.Benchmark)
+	public static class Text {
+
+		@Param({ "value", "99999", "value 4242", "nowhere" })
+		public String text;
+
+		/**
+		 * Both ways must find the same sum
+		 */
+		@Setup(Level.Trial)
+		public void setUp(PaginatorSearchBenchmark benchmark) {
+			try (Session session = benchmark.ssf.openSession()) {
+				Long sql = benchmark.sql(session, text);
+				Long index = benchmark.search.sumOfIdsContaining(session, text, 10);
+				if (sql == null ? index != null : !sql.equals(index)) {
+					throw new IllegalStateException("Sums differ for " + text + ": " + sql + " " + index);
+				}
+				System.out.printf("%n'%s' matches %d rows%n", text, benchmark.search.countContaining(session, text));
+			}
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		ssf = TestDatabase.configuration()
+				.setProperty("hibernate.search.backend.directory.type", "local-filesystem")
+				.setProperty("hibernate.search.backend.directory.root", Files.createTempDirectory("paginator-index").toString())
+				.setProperty("hibernate.generate_statistics", "false")
+				/**
+				 * H2 would hand out the cached result of an unchanged query, every sql() scans the rows
+				 */
+				.setProperty("hibernate.connection.url",
+						"jdbc:h2:mem:paginatorSearchBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0")
+				.buildSessionFactory();
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= rows; i++) {
+				Paginator pg = new Paginator();
+				pg.setIdval("value " + i);
+				session.insert(pg);
+			}
+			session.getTransaction().commit();
+		}
+		search = new PaginatorSearch(10000);
+		search.rebuild(ssf, 4);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	@Benchmark
+	public Long sql(Text text) {
+		try (Session session = ssf.openSession()) {
+			return sql(session, text.text);
+		}
+	}
+
+	@Benchmark
+	public Long index(Text text) {
+		try (Session session = ssf.openSession()) {
+			return search.sumOfIdsContaining(session, text.text, 10);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	public long rebuildOneThread() throws InterruptedException {
+		return search.rebuild(ssf, 1);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	public long rebuildFourThreads() throws InterruptedException {
+		return search.rebuild(ssf, 4);
+	}
+
+	private Long sql(Session session, String text) {
+		return session.createQuery("select sum(p.id) from Paginator p where p.id > 10"
+				+ " and lower(p.idval) like :text", Long.class)
+				.setParameter("text", "%" + text + "%").uniqueResult();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PaginatorSearchBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
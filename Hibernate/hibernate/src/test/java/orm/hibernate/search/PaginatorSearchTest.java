@@ -0,0 +1,100 @@
+package orm.hibernate.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.hql.Paginator;
+import orm.hibernate.statements.StatementRecorder;
+
+public class PaginatorSearchTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+	private static PaginatorSearch search;
+
+	/**
+	 * 200 rows written by a StatelessSession, not indexed until the rebuild
+	 */
+	@BeforeAll
+	public static void setUp() throws InterruptedException {
+		ssf = DATABASE.sessionFactory();
+		search = new PaginatorSearch(50);
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= 200; i++) {
+				Paginator pg = new Paginator();
+				pg.setIdval((i % 2 == 0 ? "Value " : "other ") + i);
+				session.insert(pg);
+			}
+			session.getTransaction().commit();
+		}
+		assertEquals(200, search.rebuild(ssf, 4));
+	}
+
+	@Test
+	public void answersIlikeFiltersFromTheIndexOnly() {
+		try (Session session = ssf.openSession()) {
+			for (String text : new String[] { "value", "VALUE 1", "ue 1", "e 1", "1", "12", "her 7", "x", "" }) {
+				assertEquals(sqlIds(session, "%" + text + "%"), search.idsContaining(session, text), text);
+				assertEquals(sqlIds(session, "%" + text + "%").size(), search.countContaining(session, text), text);
+			}
+			assertEquals(sqlIds(session, "other 1%"), search.idsStartingWith(session, "Other 1"));
+			assertEquals(sqlIds(session, "v%"), search.idsStartingWith(session, "v"));
+			assertEquals(Collections.emptyList(), search.idsStartingWith(session, "*"));
+
+			Long expected = session.createQuery(
+					"select sum(p.id) from Paginator p where p.id > 10 and lower(p.idval) like '%value%'", Long.class)
+					.uniqueResult();
+			StatementRecorder recorder = new StatementRecorder();
+			try (Session recorded = recorder.openSession(ssf)) {
+				assertEquals(expected, search.sumOfIdsContaining(recorded, "value", 10));
+				assertNull(search.sumOfIdsContaining(recorded, "nowhere", 10));
+			}
+			assertEquals(0, recorder.getStatementCount());
+		}
+	}
+
+	@Test
+	public void followsInsertsUpdatesAndDeletes() {
+		int id;
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			Paginator pg = new Paginator();
+			pg.setIdval("Needle in a haystack");
+			session.save(pg);
+			session.getTransaction().commit();
+			id = pg.getId();
+		}
+		try (Session session = ssf.openSession()) {
+			assertEquals(Collections.singletonList(id), search.idsContaining(session, "needle"));
+
+			session.beginTransaction();
+			session.get(Paginator.class, id).setIdval("Haystack only");
+			session.getTransaction().commit();
+			assertEquals(Collections.emptyList(), search.idsContaining(session, "needle"));
+			assertEquals(Collections.singletonList(id), search.idsStartingWith(session, "haystack"));
+
+			session.beginTransaction();
+			session.delete(session.get(Paginator.class, id));
+			session.getTransaction().commit();
+			assertEquals(Collections.emptyList(), search.idsContaining(session, "haystack"));
+		}
+	}
+
+	private static List<Integer> sqlIds(Session session, String pattern) {
+		return session.createQuery("select p.id from Paginator p where lower(p.idval) like :pattern order by p.id",
+				Integer.class).setParameter("pattern", pattern.toLowerCase()).list();
+	}
+}
@@ -0,0 +1,113 @@
+package orm.hibernate.session;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+
+/**
+ * Load test of SessionPerTaskExecutor. REQUESTS short requests (load a student, change its
+ * city, commit) are submitted at once, like a burst of concurrent clients, and each
+ * request's latency counts from its submission to its commit, waiting included. Runs on
+ * virtual threads (only on Java 21 and later), on platform threads as many as there are
+ * connections, and on a platform pool of 200 threads like a servlet container, all
+ * bounded to the POOL_SIZE connections. Reports requests per second and the p50 and p99
+ * latency of the best of three rounds. Pass the number of requests (default 20000).
+ *
+ * This is a load driver with a main, not a JMH benchmark: JMH times each call on its
+ * own threads and starts the next call when one returns, so it cannot submit a burst
+ * to the executor's threads and count the time a request waits in the queue, which is
+ * what tells the thread kinds apart.
+ */
+public class SessionPerTaskBenchmark {
+
+	private static final int POOL_SIZE = 10;
+	private static final int STUDENTS = 10_000;
+
+	public static void main(String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		SessionFactory ssf = TestDatabase.configuration()
+				.setProperty("hibernate.hikari.maximumPoolSize", String.valueOf(POOL_SIZE))
+				.setProperty("hibernate.cache.use_second_level_cache", "false")
+				.setProperty("hibernate.cache.use_query_cache", "false")
+				.setProperty("hibernate.generate_statistics", "false")
+				.buildSessionFactory();
+		try {
+			try (StatelessSession session = ssf.openStatelessSession()) {
+				session.beginTransaction();
+				for (int id = 1; id <= STUDENTS; id++) {
+					Student st = new Student();
+					st.setId(id);
+					st.setName("Student " + id);
+					st.setCity("Pune");
+					session.insert(st);
+				}
+				session.getTransaction().commit();
+			}
+			System.out.printf("%d requests, %d connections, %d cores%n", requests, POOL_SIZE,
+					Runtime.getRuntime().availableProcessors());
+			System.out.printf("%-24s %12s %10s %10s%n", "threads", "requests/s", "p50 ms", "p99 ms");
+
+			ExecutorService virtualThreads = SessionPerTaskExecutor.newVirtualThreadPerTaskExecutor();
+			if (virtualThreads == null) {
+				System.out.printf("%-24s %s%n", "virtual", "not available before Java 21, running on "
+						+ System.getProperty("java.version"));
+			} else {
+				virtualThreads.shutdown();
+				run(ssf, requests, "virtual", null);
+			}
+			run(ssf, requests, "platform x" + POOL_SIZE, SessionPerTaskExecutor.platformThreads(POOL_SIZE));
+			run(ssf, requests, "platform x200", SessionPerTaskExecutor.platformThreads(200));
+		} finally {
+			ssf.close();
+		}
+	}
+
+	/**
+	 * Best of three rounds, the first warms up. Given platform threads are shared by the
+	 * rounds and shut down afterwards, virtual threads are started per round.
+	 */
+	private static void run(SessionFactory ssf, int requests, String name, ExecutorService threads)
+			throws Exception {
+		double bestRate = 0;
+		long[] bestLatencies = null;
+		for (int round = 0; round < 3; round++) {
+			long[] latencies = new long[requests];
+			CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+			SessionPerTaskExecutor executor = threads == null ? new SessionPerTaskExecutor(ssf, POOL_SIZE)
+					: new SessionPerTaskExecutor(ssf, POOL_SIZE, threads);
+			long start = System.nanoTime();
+			for (int i = 0; i < requests; i++) {
+				int request = i;
+				long submitted = System.nanoTime();
+				futures[i] = executor.execute(session -> {
+					Student st = session.get(Student.class, ThreadLocalRandom.current().nextInt(STUDENTS) + 1);
+					st.setCity(st.getCity().equals("Pune") ? "Delhi" : "Pune");
+				}).thenRun(() -> latencies[request] = System.nanoTime() - submitted);
+			}
+			CompletableFuture.allOf(futures).get();
+			long elapsed = System.nanoTime() - start;
+			if (threads == null) {
+				executor.close();
+			}
+			double rate = requests * 1_000_000_000.0 / elapsed;
+			if (rate > bestRate) {
+				bestRate = rate;
+				bestLatencies = latencies;
+			}
+		}
+		if (threads != null) {
+			threads.shutdown();
+		}
+		Arrays.sort(bestLatencies);
+		System.out.printf("%-24s %12.0f %10.2f %10.2f%n", name, bestRate,
+				bestLatencies[bestLatencies.length / 2] / 1_000_000.0,
+				bestLatencies[(int) (bestLatencies.length * 0.99)] / 1_000_000.0);
+	}
+}
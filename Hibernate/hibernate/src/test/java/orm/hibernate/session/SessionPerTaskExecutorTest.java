@@ -0,0 +1,115 @@
+package orm.hibernate.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.context.internal.ManagedSessionContext;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+
+public class SessionPerTaskExecutorTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+	}
+
+	@Test
+	public void runsEveryTaskInItsOwnCurrentSessionAndLeavesTheThreadClean() throws Exception {
+		ExecutorService thread = SessionPerTaskExecutor.platformThreads(1);
+		try (SessionPerTaskExecutor executor = new SessionPerTaskExecutor(ssf, 1, thread)) {
+			Session first = executor.submit(session -> {
+				assertSame(session, ssf.getCurrentSession());
+				Student st = new Student();
+				st.setId(1);
+				st.setName("Harsh");
+				ssf.getCurrentSession().save(st);
+				return session;
+			}).get();
+			assertFalse(first.isOpen());
+			assertFalse(thread.submit(() -> ManagedSessionContext.hasBind(ssf)).get());
+
+			CompletableFuture<Void> failed = executor.execute(session -> {
+				Student st = new Student();
+				st.setId(2);
+				st.setName("Rolled back");
+				session.save(st);
+				session.flush();
+				throw new IllegalStateException("work failed");
+			});
+			ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+			assertEquals("work failed", e.getCause().getMessage());
+			assertFalse(thread.submit(() -> ManagedSessionContext.hasBind(ssf)).get());
+
+			Session second = executor.submit(session -> {
+				assertEquals("Harsh", session.get(Student.class, 1).getName());
+				assertNull(session.get(Student.class, 2));
+				return session;
+			}).get();
+			assertNotSame(first, second);
+			assertEquals(2, executor.getCommitted());
+			assertEquals(1, executor.getRolledBack());
+		}
+	}
+
+	@Test
+	public void letsNoMoreTasksWorkThanThereArePermits() throws Exception {
+		try (SessionPerTaskExecutor executor = new SessionPerTaskExecutor(ssf)) {
+			assertEquals(4, executor.getMaxConcurrent());
+		}
+		AtomicInteger working = new AtomicInteger();
+		LongAccumulator mostWorking = new LongAccumulator(Math::max, 0);
+		try (SessionPerTaskExecutor executor = new SessionPerTaskExecutor(ssf, 2,
+				SessionPerTaskExecutor.platformThreads(8))) {
+			List<CompletableFuture<Void>> tasks = new ArrayList<>();
+			for (int i = 0; i < 40; i++) {
+				tasks.add(executor.execute(session -> {
+					mostWorking.accumulate(working.incrementAndGet());
+					session.createNativeQuery("select 1").getSingleResult();
+					try {
+						Thread.sleep(2);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					working.decrementAndGet();
+				}));
+			}
+			CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).get();
+			assertEquals(2, mostWorking.get());
+			assertEquals(40, executor.getCommitted());
+			assertEquals(0, executor.getActive());
+		}
+	}
+
+	@Test
+	public void requiresTheManagedSessionContext() {
+		SessionFactory threadBound = TestDatabase.configuration()
+				.setProperty("hibernate.current_session_context_class", "thread")
+				.setProperty("hibernate.hbm2ddl.auto", "none")
+				.buildSessionFactory();
+		try {
+			assertThrows(HibernateException.class, () -> new SessionPerTaskExecutor(threadBound, 1));
+		} finally {
+			threadBound.close();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package orm.hibernate.statements;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.annotation.Student;
+import orm.hibernate.benchmark.EmbeddedDatabase;
+import orm.hibernate.benchmark.SyntheticDataGenerator;
+import orm.hibernate.pool.PooledConnectionProvider;
+
+/**
+ * Cost of watching the statements: nothing, show_sql with format_sql as the
+ * application had them (printed into a stream that discards it, a console is slower
+ * still) and StatementMetrics. A get by id is one short statement, the city query
+ * reads 200 rows through the wrapped result set.
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=StatementMetricsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementMetricsBenchmark {
+
+	@Param({ "none", "show_sql", "metrics" })
+	public String mode;
+
+	private SessionFactory ssf;
+	private PrintStream stdout;
+	private int id;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = EmbeddedDatabase.configuration("statementMetricsBenchmark")
+				.setProperty("hibernate.generate_statistics", "false")
+				.setProperty("hibernate.show_sql", String.valueOf(mode.equals("show_sql")))
+				.setProperty("hibernate.format_sql", String.valueOf(mode.equals("show_sql")))
+				.setProperty("hibernate.statement_metrics.enabled", String.valueOf(mode.equals("metrics")))
+				.buildSessionFactory();
+		new SyntheticDataGenerator(10_000, 1.0, 1).generate(ssf);
+		stdout = System.out;
+		if (mode.equals("show_sql")) {
+			System.setOut(new PrintStream(new OutputStream() {
+
+				@Override
+				public void write(int b) {
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+				}
+			}));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(stdout);
+		StatementMetrics metrics = PooledConnectionProvider.statementMetricsOf(ssf);
+		if (metrics != null) {
+			System.out.println();
+			System.out.println(metrics);
+			metrics.getTopShapes().forEach(System.out::println);
+		}
+		ssf.close();
+	}
+
+	@Benchmark
+	public Student getById() {
+		id = id % 10_000 + 1;
+		try (Session session = ssf.openSession()) {
+			session.setCacheMode(CacheMode.IGNORE);
+			return session.get(Student.class, id);
+		}
+	}
+
+	@Benchmark
+	public List<Student> query200Rows() {
+		try (Session session = ssf.openSession()) {
+			session.setCacheMode(CacheMode.IGNORE);
+			return session.createQuery("from Student st where st.city = :c", Student.class)
+					.setParameter("c", "Mumbai")
+					.setMaxResults(200)
+					.list();
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(StatementMetricsBenchmark.class.getSimpleName())
+				.addProfiler("gc").build()).run();
+	}
+}
@@ -0,0 +1,136 @@
+package orm.hibernate.statements;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+import orm.hibernate.pool.PooledConnectionProvider;
+
+public class StatementMetricsTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase(configuration -> configuration
+			.setProperty("hibernate.hikari.poolName", "statementMetricsTest")
+			.setProperty("hibernate.statement_metrics.enabled", "true")
+			.setProperty("hibernate.statement_metrics.slow_threshold_ms", "25")
+			.setProperty("hibernate.statement_metrics.slow_log_size", "2"));
+
+	private static SessionFactory ssf;
+	private static StatementMetrics metrics;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		metrics = PooledConnectionProvider.statementMetricsOf(ssf);
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			session.createNativeQuery("create alias PAUSE for \"java.lang.Thread.sleep(long)\"").executeUpdate();
+			for (int id = 1; id <= 20; id++) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName("Student " + id);
+				st.setCity(id % 2 == 0 ? "Pune" : "Delhi");
+				session.save(st);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void recordsExecutionsAndRowsPerShape() {
+		assertNotNull(metrics);
+		StatementMetrics.Shape insert = metrics.getShape("insert into Student_data (city, name, id) values (?, ?, ?)");
+		assertNotNull(insert, metrics.getShapes().toString());
+		/**
+		 * The 20 inserts went out as one JDBC batch
+		 */
+		assertEquals(1, insert.getExecutions());
+		assertEquals(20, insert.getRows());
+
+		long before = metrics.getExecutions();
+		try (Session session = ssf.openSession()) {
+			session.setCacheMode(CacheMode.IGNORE);
+			for (int id = 1; id <= 5; id++) {
+				assertNotNull(session.get(Student.class, id));
+			}
+			assertEquals(10, session.createQuery("from Student st where st.city = :c", Student.class)
+					.setParameter("c", "Pune").list().size());
+		}
+		assertEquals(before + 6, metrics.getExecutions());
+
+		StatementMetrics.Shape byCity = metrics.getShapes().stream()
+				.filter(shape -> shape.getShape().startsWith("select") && shape.getShape().endsWith(".city=?"))
+				.findFirst().orElseThrow(AssertionError::new);
+		assertEquals(1, byCity.getExecutions());
+		assertEquals(10, byCity.getRows());
+		assertTrue(byCity.getP99Micros() >= byCity.getP50Micros());
+		assertTrue(byCity.getMaxMicros() > 0);
+	}
+
+	@Test
+	public void logsSlowStatementsWithBindsAndCaller() {
+		for (int i = 1; i <= 3; i++) {
+			try (Session session = ssf.openSession()) {
+				session.createNativeQuery("select count(*) from Student_data where name = :n and PAUSE(:ms) is null")
+						.setParameter("n", "Student " + i)
+						.setParameter("ms", 30L)
+						.uniqueResult();
+			}
+		}
+		assertTrue(metrics.getSlowStatements() >= 3);
+
+		/**
+		 * The log keeps the newest slow_log_size entries
+		 */
+		List<StatementMetrics.SlowStatement> slowLog = metrics.getSlowLog();
+		assertEquals(2, slowLog.size());
+		StatementMetrics.SlowStatement newest = slowLog.get(0);
+		assertEquals("['Student 3', 30]", newest.getBinds());
+		assertTrue(newest.getMillis() >= 25);
+		assertTrue(newest.getEntryPoint().startsWith(StatementMetricsTest.class.getName() + ".logsSlowStatements"),
+				newest.getEntryPoint());
+		assertEquals("['Student 2', 30]", slowLog.get(1).getBinds());
+	}
+
+	@Test
+	public void readingsOverJmxAndSnapshotFile() throws Exception {
+		try (Session session = ssf.openSession()) {
+			session.createQuery("select count(st) from Student st", Long.class).uniqueResult();
+		}
+		ObjectName name = new ObjectName("orm.hibernate:type=StatementMetrics,name=\"statementMetricsTest\"");
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		assertTrue((Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Executions") > 0);
+		CompositeData[] top = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name,
+				"TopShapes");
+		assertTrue(top.length > 0);
+		assertTrue(top[0].containsKey("p99Micros"));
+
+		Path file = Files.createTempDirectory("statement-metrics").resolve("snapshot.tsv");
+		metrics.writeSnapshot(file);
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertTrue(lines.get(0).startsWith("# StatementMetrics statementMetricsTest"), lines.get(0));
+		assertTrue(lines.stream().anyMatch(line -> line.endsWith("\tinsert into student_data (city, name, id) values (?, ?, ?)")),
+				lines.toString());
+		assertTrue(lines.contains("# slow statements, newest first"));
+
+		assertNull(StatementMetrics.fromProperties(Collections.emptyMap()));
+		assertThrows(IllegalStateException.class, metrics::writeSnapshot);
+	}
+}
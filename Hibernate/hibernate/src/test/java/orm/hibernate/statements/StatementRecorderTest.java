@@ -0,0 +1,113 @@
+package orm.hibernate.statements;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.onetomany.Customer;
+import orm.hibernate.annotation.onetomany.CustomerOrder;
+import orm.hibernate.annotation.onetomany.CustomerQueries;
+
+public class StatementRecorderTest {
+
+	private static final int CUSTOMERS = 20;
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int i = 1; i <= CUSTOMERS; i++) {
+				Customer cust = new Customer();
+				cust.setCustId(i);
+				cust.setCustName("Customer " + i);
+				cust.setCustCity("Mumbai");
+				CustomerOrder order = new CustomerOrder();
+				order.setUnqiueOrderCode(i);
+				order.setOrderNumber("ORD" + i);
+				order.setCustomerIdhavingMultipleOrders(cust);
+				List<CustomerOrder> orders = new ArrayList<>();
+				orders.add(order);
+				cust.setAllOrdersofACustomer(orders);
+				session.save(cust);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void shapesIgnoreLiteralsInListsAndWhiteSpace() {
+		assertEquals("select * from one_to_many_customer where custid=? and custname=?",
+				SqlShapes.normalize("select *  from one_to_many_customer\n where custId=42 and custName='O''Brien'"));
+		assertEquals("select c0_.custid from t1 c0_ where c0_.custid in (?) limit ?",
+				SqlShapes.normalize("select c0_.custId from t1 c0_ where c0_.custId in (?, ?, 7) limit 10"));
+		assertEquals(SqlShapes.normalize("delete from x where id in (1, 2)"),
+				SqlShapes.normalize("delete from x where id in (3)"));
+	}
+
+	@Test
+	public void listingCustomersStaysWithinBudget() {
+		StatementRecorder recorder = new StatementRecorder();
+		try (Session session = recorder.openSession(ssf)) {
+			for (Customer customer : CustomerQueries.listing(session)) {
+				customer.getAllOrdersofACustomer().size();
+			}
+		}
+		recorder.assertAtMost(2, "loading customers with their orders");
+		recorder.assertNoNPlusOne();
+	}
+
+	@Test
+	public void lazyManyToOneTouchedInALoopIsReportedAsNPlusOne() {
+		StatementRecorder recorder = new StatementRecorder();
+		try (Session session = recorder.openSession(ssf)) {
+			for (CustomerOrder order : session.createQuery("from CustomerOrder", CustomerOrder.class).list()) {
+				order.getCustomerIdhavingMultipleOrders().getCustName();
+			}
+		}
+
+		Map<String, Integer> suspects = recorder.getNPlusOneSuspects();
+		assertEquals(1, suspects.size());
+		assertEquals(CUSTOMERS, suspects.values().iterator().next().intValue());
+		assertTrue(suspects.keySet().iterator().next().contains("one_to_many_customer"));
+
+		AssertionError budget = assertThrows(AssertionError.class, () -> recorder.assertAtMost(2, "loading orders"));
+		assertTrue(budget.getMessage().startsWith("loading orders issued " + (CUSTOMERS + 1) + " statements"));
+		assertThrows(AssertionError.class, recorder::assertNoNPlusOne);
+	}
+
+	@Test
+	public void eachTransactionIsItsOwnUnitOfWork() {
+		StatementRecorder recorder = new StatementRecorder();
+		try (Session session = recorder.openSession(ssf)) {
+			session.beginTransaction();
+			session.get(Customer.class, 1);
+			session.get(Customer.class, 2);
+			session.getTransaction().commit();
+
+			session.beginTransaction();
+			session.get(Customer.class, 3);
+			session.getTransaction().commit();
+		}
+
+		List<StatementRecorder.UnitOfWork> units = recorder.getUnitsOfWork();
+		assertEquals(2, units.size());
+		assertEquals(2, units.get(0).getStatementCount());
+		assertEquals(1, units.get(1).getStatementCount());
+		assertEquals(1, units.get(0).getShapes().size());
+	}
+}
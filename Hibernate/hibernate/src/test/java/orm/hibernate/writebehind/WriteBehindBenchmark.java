@@ -0,0 +1,118 @@
+package orm.hibernate.writebehind;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+import orm.hibernate.writebehind.WriteBehindBuffer.Durability;
+import orm.hibernate.writebehind.WriteBehindBuffer.Options;
+
+/**
+ * THREADS benchmark threads change the city of random students, 80% of the changes go
+ * to the hottest 10% of the STUDENTS rows. Runs write through (one transaction per
+ * change), write behind waiting for the flush (maxLag 10 ms) and buffered write behind
+ * (maxLag 100 ms), and reports the changes per second. Every iteration uses a buffer of
+ * its own, closing it flushes the rest, then the update statements hibernate executed
+ * and the flush lag are printed.
+ *
+ *   mvn -P benchmark verify -Djmh.benchmarks=WriteBehindBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(WriteBehindBenchmark.THREADS)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+	static final int THREADS = 8;
+	private static final int STUDENTS = 10_000;
+
+	@Param({ "WRITE_THROUGH", "WAIT_FOR_FLUSH", "BUFFERED" })
+	public Durability durability;
+
+	private SessionFactory ssf;
+	private WriteBehindBuffer<Student, Integer> buffer;
+	private long updates;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ssf = TestDatabase.configuration()
+				.setProperty("hibernate.hikari.maximumPoolSize", String.valueOf(THREADS + 2))
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:writeBehindBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1")
+				.buildSessionFactory();
+		try (StatelessSession session = ssf.openStatelessSession()) {
+			session.beginTransaction();
+			for (int id = 1; id <= STUDENTS; id++) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName("Student " + id);
+				st.setCity("Pune");
+				session.insert(st);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void openBuffer() {
+		Options options = new Options().durability(durability);
+		if (durability == Durability.WAIT_FOR_FLUSH) {
+			options.maxLagMillis(10);
+		} else if (durability == Durability.BUFFERED) {
+			options.maxLagMillis(100);
+		}
+		updates = ssf.getStatistics().getEntityUpdateCount();
+		buffer = new WriteBehindBuffer<>(ssf, Student.class, options);
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeBuffer() {
+		buffer.close();
+		Statistics statistics = ssf.getStatistics();
+		System.out.printf("%n%d updates, flush lag avg %.1f ms, max %d ms%n",
+				statistics.getEntityUpdateCount() - updates, buffer.getAverageFlushLagMillis(),
+				buffer.getMaxFlushLagMillis());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ssf.close();
+	}
+
+	@Benchmark
+	public CompletableFuture<Void> change() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int id = random.nextInt(10) < 8 ? random.nextInt(STUDENTS / 10) + 1 : random.nextInt(STUDENTS) + 1;
+		String city = "City " + random.nextInt(100);
+		return buffer.update(id, st -> st.setCity(city));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(WriteBehindBenchmark.class.getSimpleName()).build()).run();
+	}
+}
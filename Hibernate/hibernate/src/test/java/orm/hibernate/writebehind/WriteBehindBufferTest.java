@@ -0,0 +1,155 @@
+package orm.hibernate.writebehind;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import orm.hibernate.TestDatabase;
+import orm.hibernate.annotation.Student;
+import orm.hibernate.writebehind.WriteBehindBuffer.Durability;
+import orm.hibernate.writebehind.WriteBehindBuffer.Options;
+
+public class WriteBehindBufferTest {
+
+	@RegisterExtension
+	static final TestDatabase DATABASE = new TestDatabase();
+
+	private static SessionFactory ssf;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = DATABASE.sessionFactory();
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			for (int id = 1; id <= 20; id++) {
+				Student st = new Student();
+				st.setId(id);
+				st.setName("Student " + id);
+				st.setCity("Pune");
+				session.save(st);
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void mergesTheChangesOfARowIntoOneUpdate() {
+		Options options = new Options().durability(Durability.BUFFERED).maxLagMillis(60_000);
+		try (WriteBehindBuffer<Student, Integer> buffer = new WriteBehindBuffer<>(ssf, Student.class, options)) {
+			for (int i = 1; i <= 10; i++) {
+				String city = "City " + i;
+				buffer.update(1, st -> st.setCity(city));
+			}
+			for (int i = 1; i <= 5; i++) {
+				buffer.update(2, st -> st.setName(st.getName() + "+"));
+			}
+			assertEquals(2, buffer.getPendingRows());
+			assertEquals("City 10", buffer.read(1).getCity());
+			assertEquals("Student 2+++++", buffer.read(2).getName());
+			assertEquals("Pune", city(1));
+
+			/**
+			 * Another writer changes the row before the flush, the buffered change is
+			 * applied on top of it
+			 */
+			try (Session session = ssf.openSession()) {
+				session.beginTransaction();
+				session.get(Student.class, 1).setName("Renamed");
+				session.getTransaction().commit();
+			}
+
+			Statistics statistics = ssf.getStatistics();
+			long updates = statistics.getEntityUpdateCount();
+			buffer.flush();
+			assertEquals(2, statistics.getEntityUpdateCount() - updates);
+			assertEquals(15, buffer.getChanges());
+			assertEquals(2, buffer.getRowsWritten());
+			assertEquals(0, buffer.getPendingRows());
+
+			/**
+			 * The second level cache entry was replaced by the flush
+			 */
+			assertTrue(ssf.getCache().containsEntity(Student.class, 1));
+			long hits = statistics.getSecondLevelCacheHitCount();
+			assertEquals("City 10", city(1));
+			assertEquals(hits + 1, statistics.getSecondLevelCacheHitCount());
+			try (Session session = ssf.openSession()) {
+				assertEquals("Renamed", session.get(Student.class, 1).getName());
+				assertEquals("Student 2+++++", session.get(Student.class, 2).getName());
+			}
+		}
+	}
+
+	@Test
+	public void flushesOnSizeAndTimeAndWaitsWhenAsked() throws Exception {
+		Options bySize = new Options().maxPendingRows(3).maxLagMillis(60_000);
+		try (WriteBehindBuffer<Student, Integer> buffer = new WriteBehindBuffer<>(ssf, Student.class, bySize)) {
+			CompletableFuture<Void> first = buffer.update(3, st -> st.setCity("Delhi"));
+			buffer.update(4, st -> st.setCity("Delhi"));
+			assertFalse(first.isDone());
+			buffer.update(5, st -> st.setCity("Delhi"));
+			first.get(10, TimeUnit.SECONDS);
+			assertEquals("Delhi", city(3));
+		}
+
+		Options byTime = new Options().maxLagMillis(20);
+		try (WriteBehindBuffer<Student, Integer> buffer = new WriteBehindBuffer<>(ssf, Student.class, byTime)) {
+			buffer.update(6, st -> st.setCity("Goa")).get(10, TimeUnit.SECONDS);
+			assertEquals("Goa", city(6));
+			assertTrue(buffer.getMaxFlushLagMillis() >= 1);
+		}
+
+		Options waiting = new Options().durability(Durability.WAIT_FOR_FLUSH).maxLagMillis(20);
+		try (WriteBehindBuffer<Student, Integer> buffer = new WriteBehindBuffer<>(ssf, Student.class, waiting)) {
+			assertTrue(buffer.update(7, st -> st.setCity("Agra")).isDone());
+			assertEquals("Agra", city(7));
+		}
+
+		Options through = new Options().durability(Durability.WRITE_THROUGH);
+		try (WriteBehindBuffer<Student, Integer> buffer = new WriteBehindBuffer<>(ssf, Student.class, through)) {
+			buffer.update(8, st -> st.setCity("Surat"));
+			assertEquals("Surat", city(8));
+			assertEquals("WRITE_THROUGH", buffer.getDurability());
+		}
+	}
+
+	@Test
+	public void dropsOnlyTheChangesThatCannotBeApplied() {
+		Options options = new Options().maxLagMillis(60_000);
+		try (WriteBehindBuffer<Student, Integer> buffer = new WriteBehindBuffer<>(ssf, Student.class, options)) {
+			CompletableFuture<Void> missing = buffer.update(999, st -> st.setCity("Nowhere"));
+			CompletableFuture<Void> failing = buffer.update(9, st -> {
+				st.setCity("Half");
+				throw new IllegalStateException("change failed");
+			});
+			CompletableFuture<Void> fine = buffer.update(10, st -> st.setCity("Kochi"));
+			buffer.flush();
+
+			assertThrows(ExecutionException.class, missing::get);
+			assertThrows(ExecutionException.class, failing::get);
+			assertNull(fine.join());
+			assertEquals(2, buffer.getDroppedChanges());
+			assertEquals("Pune", city(9));
+			assertEquals("Kochi", city(10));
+		}
+
+		WriteBehindBuffer<Student, Integer> closed = new WriteBehindBuffer<>(ssf, Student.class, new Options());
+		closed.close();
+		assertThrows(IllegalStateException.class, () -> closed.update(1, st -> st.setCity("Late")));
+	}
+
+	private static String city(int id) {
+		try (Session session = ssf.openSession()) {
+			return session.get(Student.class, id).getCity();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package orm.hibernate.xmlbasedconfig;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CodersCsvImporterTest {
+
+	private static SessionFactory ssf;
+
+	@TempDir
+	Path dir;
+
+	@BeforeAll
+	public static void setUp() {
+		ssf = new Configuration().configure("orm/hibernate/hibernateXmlBasedTestConfig.cfg.xml")
+				.setProperty("hibernate.generate_statistics", "true")
+				.buildSessionFactory();
+	}
+
+	@AfterAll
+	public static void tearDown() {
+		ssf.close();
+	}
+
+	@BeforeEach
+	public void clean() {
+		try (Session session = ssf.openSession()) {
+			session.beginTransaction();
+			session.createQuery("delete from Coders").executeUpdate();
+			session.getTransaction().commit();
+		}
+	}
+
+	@Test
+	public void importsEveryLineInBatches() throws IOException, InterruptedException {
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			csv.append("coder").append(i).append(',').append(i % 10).append(".5\n");
+		}
+		Path file = write(csv.toString());
+
+		ssf.getStatistics().clear();
+		CodersCsvImporter.Report report = new CodersCsvImporter(ssf, 50, 4, 8).importFile(file);
+
+		assertEquals(1000, report.getRows());
+		assertTrue(report.getRowsPerSecond() > 0);
+		assertTrue(ssf.getStatistics().getPrepareStatementCount() < 100,
+				"prepared " + ssf.getStatistics().getPrepareStatementCount() + " statements");
+		try (Session session = ssf.openSession()) {
+			assertEquals(1000L, session.createQuery("select count(c) from Coders c", Long.class).uniqueResult());
+			Coders coder = session.createQuery("from Coders where name = 'coder7'", Coders.class).uniqueResult();
+			assertEquals(7.5f, coder.getRating());
+		}
+	}
+
+	/**
+	 * Small mapped regions force lines to be split across region boundaries
+	 */
+	@Test
+	public void handlesLinesAcrossRegionsAndWindowsLineEndings() throws IOException, InterruptedException {
+		Path file = write("Harsh,7\r\nMeet,-1.25\r\n\r\nünïcode,10.0");
+
+		CodersCsvImporter.Report report = new CodersCsvImporter(ssf, 2, 1, 1, 16).importFile(file);
+
+		assertEquals(3, report.getRows());
+		try (Session session = ssf.openSession()) {
+			List<Coders> coders = session.createQuery("from Coders order by name", Coders.class).list();
+			assertEquals("Harsh", coders.get(0).getName());
+			assertEquals(7f, coders.get(0).getRating());
+			assertEquals(-1.25f, coders.get(1).getRating());
+			assertEquals("ünïcode", coders.get(2).getName());
+		}
+	}
+
+	@Test
+	public void reportsMalformedLines() throws IOException {
+		Path file = write("Harsh,7\nno rating here\n");
+
+		assertThrows(IOException.class, () -> new CodersCsvImporter(ssf, 10, 1, 1).importFile(file));
+	}
+
+	/**
+	 * One row per batch, two batches per transaction: Harsh and Meet are committed,
+	 * Ana is in the open transaction when the parser fails
+	 */
+	@Test
+	public void rollsBackTheOpenTransactionWhenParsingFails() throws IOException {
+		Path file = write("Harsh,7\nMeet,8\nAna,9\nno rating here\nZed,1\n");
+
+		IOException e = assertThrows(IOException.class, () -> new CodersCsvImporter(ssf, 1, 2, 1).importFile(file));
+
+		assertTrue(e.getMessage().contains(", 2 rows were committed before"), e.getMessage());
+		try (Session session = ssf.openSession()) {
+			assertEquals(2L, session.createQuery("select count(c) from Coders c", Long.class).uniqueResult());
+			assertNull(session.createQuery("from Coders where name = 'Ana'", Coders.class).uniqueResult());
+		}
+	}
+
+	/**
+	 * The writer fails while the parser is blocked on the full queue, the import
+	 * must still end with the parser thread
+	 */
+	@Test
+	public void stopsTheParserWhenTheWriterFails() throws IOException {
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			csv.append("Coder").append(i).append(",5\n");
+		}
+		Path file = write(csv.toString());
+		SessionFactory closed = new Configuration().configure("orm/hibernate/hibernateXmlBasedTestConfig.cfg.xml")
+				.setProperty("hibernate.hbm2ddl.auto", "none")
+				.buildSessionFactory();
+		closed.close();
+
+		assertThrows(IllegalStateException.class, () -> new CodersCsvImporter(closed, 1, 1, 1).importFile(file));
+
+		assertTrue(Thread.getAllStackTraces().keySet().stream()
+				.noneMatch(t -> t.getName().equals("coders-csv-parser") && t.isAlive()));
+	}
+
+	private Path write(String content) throws IOException {
+		Path file = dir.resolve("coders.csv");
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}